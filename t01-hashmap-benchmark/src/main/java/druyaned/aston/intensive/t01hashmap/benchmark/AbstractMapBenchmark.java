@@ -0,0 +1,64 @@
+package druyaned.aston.intensive.t01hashmap.benchmark;
+
+import druyaned.aston.intensive.t01hashmap.HashMapTask;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Common state of the map benchmarks: the map under test filled with
+ * {@link #size} present keys and the same number of absent keys.
+ *
+ * @author druyaned
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public abstract class AbstractMapBenchmark {
+
+    /**
+     * Number of operations in a single invocation of the batch benchmarks.
+     */
+    public static final int BATCH = 1000;
+
+    protected static final Object VALUE = new Object();
+
+    @Param({"1000", "10000", "100000", "1000000", "10000000"})
+    public int size;
+
+    @Param({"INTEGER", "STRING", "POOR_HASH"})
+    public KeyType keyType;
+
+    @Param
+    public MapType mapType;
+
+    protected HashMapTask<Object, Object> map;
+    protected Object[] present;
+    protected Object[] absent;
+
+    @Setup(Level.Trial)
+    public void setUpMap() {
+        if (size < BATCH) {
+            throw new IllegalArgumentException(
+                    "size=" + size + " must not be less than " + BATCH);
+        }
+        present = keyType.create(0, size);
+        absent = keyType.create(size, size);
+        map = mapType.create();
+        for (Object key : present) {
+            map.put(key, VALUE);
+        }
+    }
+}
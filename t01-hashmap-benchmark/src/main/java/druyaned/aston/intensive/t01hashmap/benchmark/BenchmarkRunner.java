@@ -0,0 +1,35 @@
+package druyaned.aston.intensive.t01hashmap.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point of the benchmarks jar. Accepts the usual JMH command line and
+ * always adds the GC profiler, so allocation rate per operation
+ * (<code>gc.alloc.rate.norm</code>) is reported next to throughput and
+ * average time.
+ *
+ * <pre>
+ * mvn -pl t01-hashmap-benchmark -am package
+ * java -jar t01-hashmap-benchmark/target/benchmarks.jar LookupBenchmark -p size=1000000
+ * </pre>
+ *
+ * @author druyaned
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args)
+            throws CommandLineOptionException, RunnerException {
+
+        Options options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
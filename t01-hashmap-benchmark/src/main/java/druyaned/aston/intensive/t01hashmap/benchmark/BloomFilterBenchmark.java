@@ -0,0 +1,95 @@
+package druyaned.aston.intensive.t01hashmap.benchmark;
+
+import druyaned.aston.intensive.t01hashmap.HashMapImpl;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Lookups in a {@link HashMapImpl} with and without the Bloom filter
+ * ({@link HashMapImpl#setBloomFilter(int)}); <code>bitsPerKey = 0</code> is
+ * the map without it. Keys are looked up in a shuffled order, so a large
+ * table is read from memory rather than from the cache: a miss which the
+ * filter rejects reads one block of the filter instead of a bucket and the
+ * nodes of its chain, while a hit pays for the block on top of them. The
+ * false positive rate and the memory of the filter are printed by
+ * {@link BloomFilterReport}.
+ *
+ * @author druyaned
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class BloomFilterBenchmark {
+
+    private static final Object VALUE = new Object();
+
+    @Param({"100000", "10000000"})
+    public int size;
+
+    @Param({"0", "8", "12"})
+    public int bitsPerKey;
+
+    @Param({"INTEGER", "EMAIL"})
+    public KeyType keyType;
+
+    private HashMapImpl<Object, Object> map;
+    private Object[] present;
+    private Object[] absent;
+    private int cursor = 0;
+
+    @Setup(Level.Trial)
+    public void setUpMap() {
+        present = keyType.create(0, size);
+        absent = keyType.create(size, size);
+        map = new HashMapImpl<>(size);
+        for (Object key : present) {
+            map.put(key, VALUE);
+        }
+        map.setBloomFilter(bitsPerKey);
+        shuffle(present, 1);
+        shuffle(absent, 2);
+    }
+
+    @Benchmark
+    public Object hit() {
+        return map.get(present[next()]);
+    }
+
+    @Benchmark
+    public Object miss() {
+        return map.get(absent[next()]);
+    }
+
+    private int next() {
+        int i = cursor;
+        if (++cursor == size) {
+            cursor = 0;
+        }
+        return i;
+    }
+
+    private static void shuffle(Object[] keys, long seed) {
+        Random random = new Random(seed);
+        for (int i = keys.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            Object key = keys[i];
+            keys[i] = keys[j];
+            keys[j] = key;
+        }
+    }
+}
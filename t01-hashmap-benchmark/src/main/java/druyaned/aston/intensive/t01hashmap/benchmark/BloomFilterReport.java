@@ -0,0 +1,58 @@
+package druyaned.aston.intensive.t01hashmap.benchmark;
+
+import druyaned.aston.intensive.t01hashmap.HashMapImpl;
+
+/**
+ * Prints the false positive rate and the memory of the Bloom filter of a
+ * {@link HashMapImpl} ({@link HashMapImpl#setBloomFilter(int)}) for several
+ * bits per key. The map is filled with the integer keys
+ * <code>[0, size)</code> and the filter is asked for a million keys from
+ * <code>[size, size + 10^6)</code>, none of which is present; the memory is
+ * given per entry of the map, so it grows with the free space of the table,
+ * which the filter is sized for. The speed of the lookups is measured by
+ * {@link BloomFilterBenchmark}.
+ *
+ * <pre>
+ * java -cp t01-hashmap-benchmark/target/benchmarks.jar \
+ *     druyaned.aston.intensive.t01hashmap.benchmark.BloomFilterReport \
+ *     1000000
+ * </pre>
+ *
+ * @author druyaned
+ */
+public class BloomFilterReport {
+
+    private static final Object VALUE = new Object();
+    private static final int PROBES = 1_000_000;
+    private static final int[] BITS_PER_KEY = {4, 8, 10, 12, 16, 24};
+
+    public static void main(String[] args) {
+        int[] sizes = args.length == 0
+                ? new int[] {100_000, 1_000_000}
+                : new int[args.length];
+        for (int i = 0; i < args.length; i++) {
+            sizes[i] = Integer.parseInt(args[i]);
+        }
+
+        System.out.printf("%12s %10s %12s %16s%n",
+                "size", "bitsPerKey", "fpRate, %", "bytes/entry");
+        for (int size : sizes) {
+            HashMapImpl<Integer, Object> map = new HashMapImpl<>();
+            for (int key = 0; key < size; key++) {
+                map.put(key, VALUE);
+            }
+            for (int bitsPerKey : BITS_PER_KEY) {
+                map.setBloomFilter(bitsPerKey);
+                int positives = 0;
+                for (int key = size; key < size + PROBES; key++) {
+                    if (map.mightContainKey(key)) {
+                        positives++;
+                    }
+                }
+                System.out.printf("%12d %10d %12.3f %16.2f%n",
+                        size, bitsPerKey, 100.0 * positives / PROBES,
+                        (double) map.bloomFilterBytes() / size);
+            }
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package druyaned.aston.intensive.t01hashmap.benchmark;
+
+import druyaned.aston.intensive.t01hashmap.BoundedCache;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Throughput of {@link BoundedCache} on a Zipfian trace: each access is a get
+ * followed by a put on a miss, as a cache in front of a slower store is used.
+ * The cache is warmed by the whole trace before the measurement. Hit ratios
+ * of the same traces are printed by {@link HitRatioReport}.
+ *
+ * @author druyaned
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class CacheBenchmark {
+
+    private static final int TRACE_LENGTH = 1 << 22;
+    private static final int KEY_SPACE = 1_000_000;
+
+    @Param({"1000", "100000"})
+    public int maximumSize;
+
+    @Param({"0.8", "0.99"})
+    public double exponent;
+
+    @Param
+    public BoundedCache.EvictionPolicy policy;
+
+    private BoundedCache<Object, Object> cache;
+    private Object[] keys;
+    private int[] trace;
+    private int cursor = 0;
+
+    @Setup(Level.Trial)
+    public void setUpCache() {
+        keys = KeyType.INTEGER.create(0, KEY_SPACE);
+        trace = ZipfianTrace.create(KEY_SPACE, exponent, TRACE_LENGTH, 42);
+        cache = new BoundedCache<>(policy, maximumSize);
+        for (int index : trace) {
+            access(keys[index]);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(AbstractMapBenchmark.BATCH)
+    public void getOrPut(Blackhole blackhole) {
+        for (int i = 0; i < AbstractMapBenchmark.BATCH; i++) {
+            blackhole.consume(access(keys[trace[cursor]]));
+            cursor = (cursor + 1) & (TRACE_LENGTH - 1);
+        }
+    }
+
+    private Object access(Object key) {
+        Object value = cache.get(key);
+        if (value == null) {
+            value = key;
+            cache.put(key, value);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,71 @@
+package druyaned.aston.intensive.t01hashmap.benchmark;
+
+/**
+ * Key whose hash code is the same for every instance, so all keys fall into
+ * one bucket. {@link Comparable} instances can be ordered by a tree bucket,
+ * plain instances can not.
+ *
+ * @author druyaned
+ */
+public class CollidingKey {
+
+    public static final int HASH = 42;
+
+    private final int id;
+
+    public CollidingKey(int id) {
+        this.id = id;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Creates the comparable or the plain key with the given id.
+     *
+     * @param id the id of the key
+     * @param comparable whether the key implements {@link Comparable}
+     * @return the created key
+     */
+    public static CollidingKey of(int id, boolean comparable) {
+        return comparable ? new Ordered(id) : new CollidingKey(id);
+    }
+
+    @Override
+    public int hashCode() {
+        return HASH;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj != null && obj.getClass() == getClass()) {
+            return id == ((CollidingKey) obj).id;
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{" + id + "}";
+    }
+
+    /**
+     * Colliding key which is ordered by id.
+     */
+    public static final class Ordered extends CollidingKey
+            implements Comparable<Ordered> {
+
+        public Ordered(int id) {
+            super(id);
+        }
+
+        @Override
+        public int compareTo(Ordered other) {
+            return Integer.compare(getId(), other.getId());
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package druyaned.aston.intensive.t01hashmap.benchmark;
+
+import druyaned.aston.intensive.t01hashmap.HashMapTask;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Worst case of lookups: all keys of the map have the same hash code. With
+ * comparable keys a treeified bucket keeps the lookup logarithmic in the
+ * number of collisions, plain keys are the fallback when the tree can not
+ * order them.
+ *
+ * @author druyaned
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CollisionBenchmark {
+
+    @Param({"16", "256", "4096"})
+    public int collisions;
+
+    @Param({"true", "false"})
+    public boolean comparable;
+
+    @Param({"HASH_MAP_IMPL", "HASH_MAP_IMPL_POW2", "HASH_MAP"})
+    public MapType mapType;
+
+    private HashMapTask<Object, Object> map;
+    private Object[] present;
+    private Object[] absent;
+    private int cursor = 0;
+
+    @Setup(Level.Trial)
+    public void setUpMap() {
+        present = new Object[collisions];
+        absent = new Object[collisions];
+        for (int i = 0; i < collisions; i++) {
+            present[i] = CollidingKey.of(2 * i, comparable);
+            absent[i] = CollidingKey.of(2 * i + 1, comparable);
+        }
+        map = mapType.create();
+        for (Object key : present) {
+            map.put(key, key);
+        }
+    }
+
+    @Benchmark
+    public Object getHit() {
+        Object key = present[cursor];
+        if (++cursor == collisions) {
+            cursor = 0;
+        }
+        return map.get(key);
+    }
+
+    @Benchmark
+    public Object getMiss() {
+        Object key = absent[cursor];
+        if (++cursor == collisions) {
+            cursor = 0;
+        }
+        return map.get(key);
+    }
+}
@@ -0,0 +1,88 @@
+package druyaned.aston.intensive.t01hashmap.benchmark;
+
+import druyaned.aston.intensive.t01hashmap.HashMapTask;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Threads share one map and make random operations over a pool of
+ * <code>2 * size</code> keys: <code>writePercent</code> of operations are
+ * puts and removes in equal parts, the rest are lookups; about a half of the
+ * pool is present in the map at any time. The number of threads is given by
+ * <code>-t</code>, {@link ScalingRunner} repeats the benchmark for 1 to 64
+ * threads.
+ *
+ * @author druyaned
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConcurrentBenchmark {
+
+    private static final Object VALUE = new Object();
+
+    @Param({"1000000"})
+    public int size;
+
+    @Param({"0", "1", "10", "50"})
+    public int writePercent;
+
+    @Param({
+        "CONCURRENT_HASH_MAP_IMPL",
+        "LOCK_FREE_HASH_MAP",
+        "SYNCHRONIZED_HASH_MAP_IMPL",
+        "CONCURRENT_HASH_MAP"
+    })
+    public MapType mapType;
+
+    private HashMapTask<Object, Object> map;
+    private Object[] keys;
+
+    @State(Scope.Thread)
+    public static class ThreadState {
+
+        SplittableRandom random;
+
+        @Setup(Level.Trial)
+        public void setUpRandom() {
+            random = new SplittableRandom(System.identityHashCode(this));
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUpMap() {
+        keys = KeyType.INTEGER.create(0, 2 * size);
+        map = mapType.create();
+        for (int i = 0; i < keys.length; i += 2) {
+            map.put(keys[i], VALUE);
+        }
+    }
+
+    @Benchmark
+    public Object operation(ThreadState state) {
+        Object key = keys[state.random.nextInt(keys.length)];
+        int dice = state.random.nextInt(200);
+        if (dice < writePercent) {
+            return map.put(key, VALUE);
+        }
+        if (dice < 2 * writePercent) {
+            return map.remove(key);
+        }
+        return map.get(key);
+    }
+}
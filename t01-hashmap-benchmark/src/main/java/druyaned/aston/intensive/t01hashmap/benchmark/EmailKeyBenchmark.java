@@ -0,0 +1,133 @@
+package druyaned.aston.intensive.t01hashmap.benchmark;
+
+import druyaned.aston.intensive.t01hashmap.HashMapImpl;
+import druyaned.aston.intensive.t01hashmap.Utf8StringMap;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Maps keyed by emails: {@link Utf8StringMap} against
+ * <code>HashMapImpl&lt;String, Object&gt;</code>. Emails are looked up in a
+ * shuffled order, by a <code>String</code> and, for {@link Utf8StringMap}
+ * only, by a slice of a buffer with all emails encoded to UTF-8, as they would
+ * come in a request. Present emails are looked up by copies, not by the
+ * instances put into the map, so <code>String.equals</code> compares the
+ * chars as for an email parsed from a request. Memory per entry is reported
+ * by {@link FootprintReport}.
+ *
+ * @author druyaned
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class EmailKeyBenchmark {
+
+    private static final Object VALUE = new Object();
+
+    @Param({"1000", "100000", "10000000"})
+    public int size;
+
+    private HashMapImpl<String, Object> hashMapImpl;
+    private Utf8StringMap<Object> utf8Map;
+    private String[] present;
+    private String[] absent;
+    private byte[] buffer;
+    private int[] offsets;
+    private int cursor = 0;
+
+    @Setup(Level.Trial)
+    public void setUpMaps() {
+        present = emails(0);
+        absent = emails(size);
+        hashMapImpl = new HashMapImpl<>(size);
+        utf8Map = new Utf8StringMap<>(size);
+        for (String email : present) {
+            hashMapImpl.put(email, VALUE);
+            utf8Map.put(email, VALUE);
+        }
+        utf8Map.trimToSize();
+        for (int i = 0; i < size; i++) {
+            present[i] = new String(present[i].toCharArray());
+        }
+
+        offsets = new int[size + 1];
+        for (int i = 0; i < size; i++) {
+            offsets[i + 1] = offsets[i]
+                    + present[i].getBytes(StandardCharsets.UTF_8).length;
+        }
+        buffer = new byte[offsets[size]];
+        for (int i = 0; i < size; i++) {
+            byte[] bytes = present[i].getBytes(StandardCharsets.UTF_8);
+            System.arraycopy(bytes, 0, buffer, offsets[i], bytes.length);
+        }
+    }
+
+    @Benchmark
+    public Object hashMapImplHit() {
+        return hashMapImpl.get(present[next()]);
+    }
+
+    @Benchmark
+    public Object hashMapImplMiss() {
+        return hashMapImpl.get(absent[next()]);
+    }
+
+    @Benchmark
+    public Object utf8Hit() {
+        return utf8Map.get(present[next()]);
+    }
+
+    @Benchmark
+    public Object utf8Miss() {
+        return utf8Map.get(absent[next()]);
+    }
+
+    @Benchmark
+    public Object utf8BytesHit() {
+        int i = next();
+        return utf8Map.get(buffer, offsets[i], offsets[i + 1] - offsets[i]);
+    }
+
+    private int next() {
+        int i = cursor;
+        if (++cursor == size) {
+            cursor = 0;
+        }
+        return i;
+    }
+
+    /**
+     * Creates the emails with indexes <code>[from, from + size)</code> in a
+     * shuffled order.
+     */
+    private String[] emails(int from) {
+        String[] emails = new String[size];
+        for (int i = 0; i < size; i++) {
+            emails[i] = (String) KeyType.EMAIL.create(from + i);
+        }
+        Random random = new Random(from + size);
+        for (int i = size - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            String email = emails[i];
+            emails[i] = emails[j];
+            emails[j] = email;
+        }
+        return emails;
+    }
+}
@@ -0,0 +1,152 @@
+package druyaned.aston.intensive.t01hashmap.benchmark;
+
+import druyaned.aston.intensive.t01hashmap.HashMapImpl;
+import druyaned.aston.intensive.t01hashmap.HashTrieMap;
+import druyaned.aston.intensive.t01hashmap.LongLongMap;
+import druyaned.aston.intensive.t01hashmap.LongObjectMap;
+import druyaned.aston.intensive.t01hashmap.RobinHoodHashMap;
+import druyaned.aston.intensive.t01hashmap.Utf8StringMap;
+import druyaned.aston.intensive.t01hashmap.offheap.Codecs;
+import druyaned.aston.intensive.t01hashmap.offheap.OffHeapHashMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.IntFunction;
+import org.openjdk.jol.info.GraphLayout;
+
+/**
+ * Prints retained memory per entry of the maps keyed by user ids and by
+ * emails ({@link KeyType#EMAIL}). The whole object graph of a filled map is
+ * walked by JOL, so boxed keys, strings and nodes are counted, while a single
+ * shared value is counted once. Direct memory of {@link OffHeapHashMap} is
+ * added to its heap part.
+ *
+ * <pre>
+ * java -cp t01-hashmap-benchmark/target/benchmarks.jar \
+ *     druyaned.aston.intensive.t01hashmap.benchmark.FootprintReport 1000000
+ * </pre>
+ *
+ * @author druyaned
+ */
+public class FootprintReport {
+
+    private static final Object VALUE = new Object();
+
+    public static void main(String[] args) {
+        int[] sizes = args.length == 0
+                ? new int[] {1_000, 100_000, 1_000_000}
+                : new int[args.length];
+        for (int i = 0; i < args.length; i++) {
+            sizes[i] = Integer.parseInt(args[i]);
+        }
+
+        Map<String, IntFunction<Object>> maps = new LinkedHashMap<>();
+        maps.put("LongObjectMap", FootprintReport::longObjectMap);
+        maps.put("LongLongMap", FootprintReport::longLongMap);
+        maps.put("HashMapImpl<Long, Object>", FootprintReport::hashMapImpl);
+        maps.put("FrozenHashMap<Long, Object>", FootprintReport::frozen);
+        maps.put("HashTrieMap<Long, Object>", FootprintReport::hashTrie);
+        maps.put("RobinHoodHashMap<Long, Object>", FootprintReport::robinHood);
+        maps.put("java.util.HashMap<Long, Object>", FootprintReport::hashMap);
+        maps.put("OffHeapHashMap<Long, Long>", FootprintReport::offHeap);
+        maps.put("HashMapImpl<String, Object>", FootprintReport::emails);
+        maps.put("Utf8StringMap<Object>", FootprintReport::utf8Emails);
+
+        System.out.printf("%-32s %12s %16s%n", "map", "size", "bytes/entry");
+        for (int size : sizes) {
+            for (Map.Entry<String, IntFunction<Object>> e : maps.entrySet()) {
+                Object map = e.getValue().apply(size);
+                long bytes = GraphLayout.parseInstance(map, VALUE).totalSize();
+                if (map instanceof OffHeapHashMap<?, ?> offHeapMap) {
+                    bytes += offHeapMap.offHeapBytes();
+                    offHeapMap.close();
+                }
+                System.out.printf("%-32s %12d %16.1f%n",
+                        e.getKey(), size, (double) bytes / size);
+            }
+        }
+    }
+
+    private static Object longObjectMap(int size) {
+        LongObjectMap<Object> map = new LongObjectMap<>();
+        for (long id = 1; id <= size; id++) {
+            map.put(id, VALUE);
+        }
+        return map;
+    }
+
+    private static Object longLongMap(int size) {
+        LongLongMap map = new LongLongMap();
+        for (long id = 1; id <= size; id++) {
+            map.put(id, id);
+        }
+        return map;
+    }
+
+    private static Object hashMapImpl(int size) {
+        HashMapImpl<Long, Object> map = new HashMapImpl<>();
+        for (long id = 1; id <= size; id++) {
+            map.put(id, VALUE);
+        }
+        return map;
+    }
+
+    private static Object frozen(int size) {
+        HashMapImpl<Long, Object> map = new HashMapImpl<>();
+        for (long id = 1; id <= size; id++) {
+            map.put(id, VALUE);
+        }
+        return map.freeze();
+    }
+
+    private static Object hashTrie(int size) {
+        HashTrieMap.Transient<Long, Object> map
+                = HashTrieMap.<Long, Object>empty().asTransient();
+        for (long id = 1; id <= size; id++) {
+            map.put(id, VALUE);
+        }
+        return map.persistent();
+    }
+
+    private static Object robinHood(int size) {
+        RobinHoodHashMap<Long, Object> map = new RobinHoodHashMap<>();
+        for (long id = 1; id <= size; id++) {
+            map.put(id, VALUE);
+        }
+        return map;
+    }
+
+    private static Object hashMap(int size) {
+        Map<Long, Object> map = new HashMap<>();
+        for (long id = 1; id <= size; id++) {
+            map.put(id, VALUE);
+        }
+        return map;
+    }
+
+    private static Object emails(int size) {
+        HashMapImpl<String, Object> map = new HashMapImpl<>();
+        for (int i = 0; i < size; i++) {
+            map.put((String) KeyType.EMAIL.create(i), VALUE);
+        }
+        return map;
+    }
+
+    private static Object utf8Emails(int size) {
+        Utf8StringMap<Object> map = new Utf8StringMap<>();
+        for (int i = 0; i < size; i++) {
+            map.put((String) KeyType.EMAIL.create(i), VALUE);
+        }
+        map.trimToSize();
+        return map;
+    }
+
+    private static Object offHeap(int size) {
+        OffHeapHashMap<Long, Long> map
+                = new OffHeapHashMap<>(Codecs.LONG, Codecs.LONG);
+        for (long id = 1; id <= size; id++) {
+            map.put(id, id);
+        }
+        return map;
+    }
+}
@@ -0,0 +1,81 @@
+package druyaned.aston.intensive.t01hashmap.benchmark;
+
+import druyaned.aston.intensive.t01hashmap.HashMapImpl;
+import druyaned.aston.intensive.t01hashmap.HashMapTask;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Lookups in a {@link HashMapImpl} and in its frozen copy made by
+ * {@link HashMapImpl#freeze()}, for present (hit) and absent (miss) keys.
+ * The footprint of both is printed by {@link FootprintReport}.
+ *
+ * @author druyaned
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class FrozenBenchmark {
+
+    private static final Object VALUE = new Object();
+
+    @Param({"1000", "100000", "1000000"})
+    public int size;
+
+    @Param({"INTEGER", "STRING"})
+    public KeyType keyType;
+
+    @Param({"MODULO", "POWER_OF_TWO"})
+    public HashMapImpl.TableScheme scheme;
+
+    @Param({"false", "true"})
+    public boolean frozen;
+
+    private HashMapTask<Object, Object> map;
+    private Object[] present;
+    private Object[] absent;
+    private int cursor = 0;
+
+    @Setup(Level.Trial)
+    public void setUpMap() {
+        present = keyType.create(0, size);
+        absent = keyType.create(size, size);
+        HashMapImpl<Object, Object> mutable = new HashMapImpl<>(scheme);
+        for (Object key : present) {
+            mutable.put(key, VALUE);
+        }
+        map = frozen ? mutable.freeze() : mutable;
+    }
+
+    @Benchmark
+    public Object getHit() {
+        Object key = present[cursor];
+        if (++cursor == size) {
+            cursor = 0;
+        }
+        return map.get(key);
+    }
+
+    @Benchmark
+    public Object getMiss() {
+        Object key = absent[cursor];
+        if (++cursor == size) {
+            cursor = 0;
+        }
+        return map.get(key);
+    }
+}
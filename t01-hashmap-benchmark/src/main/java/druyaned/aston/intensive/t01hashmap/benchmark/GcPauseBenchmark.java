@@ -0,0 +1,97 @@
+package druyaned.aston.intensive.t01hashmap.benchmark;
+
+import druyaned.aston.intensive.t01hashmap.HashMapImpl;
+import druyaned.aston.intensive.t01hashmap.HashMapTask;
+import druyaned.aston.intensive.t01hashmap.offheap.Codecs;
+import druyaned.aston.intensive.t01hashmap.offheap.OffHeapHashMap;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Garbage collection cost of a large live map: {@link OffHeapHashMap}
+ * against {@link HashMapImpl}, both <code>Long -&gt; Long</code>.
+ *
+ * <p>
+ * <code>update</code> replaces the values of random present keys, so the
+ * on-heap map keeps promoting new values into an old map, while the off-heap
+ * one produces only short-lived boxes. Its <code>gc.time</code> and
+ * <code>gc.count</code> come from the GC profiler added by
+ * {@link BenchmarkRunner}. <code>fullGc</code> times
+ * <code>System.gc()</code>, which has to trace every node of the on-heap map.
+ *
+ * @author druyaned
+ */
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class GcPauseBenchmark {
+
+    public enum Storage {
+        HEAP, OFF_HEAP
+    }
+
+    @Param({"1000000", "10000000"})
+    public int size;
+
+    @Param
+    public Storage storage;
+
+    private HashMapTask<Long, Long> map;
+    private long[] ids;
+    private int cursor = 0;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        map = storage == Storage.HEAP
+                ? new HashMapImpl<>()
+                : new OffHeapHashMap<>(Codecs.LONG, Codecs.LONG);
+        for (long id = 0; id < size; id++) {
+            map.put(id, id);
+        }
+        ids = new long[1 << 16];
+        Random random = new Random(size);
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = random.nextInt(size);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (map instanceof OffHeapHashMap<?, ?> offHeapMap) {
+            offHeapMap.close();
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Long update() {
+        long id = ids[cursor];
+        cursor = (cursor + 1) & (ids.length - 1);
+        return map.put(id, id + cursor);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 2)
+    @Measurement(iterations = 5)
+    public HashMapTask<Long, Long> fullGc() {
+        System.gc();
+        return map;
+    }
+}
@@ -0,0 +1,85 @@
+package druyaned.aston.intensive.t01hashmap.benchmark;
+
+import druyaned.aston.intensive.t01hashmap.HashMapImpl;
+import druyaned.aston.intensive.t01hashmap.HashMapStats;
+import druyaned.aston.intensive.t01hashmap.HashStrategy;
+
+/**
+ * Prints how evenly the {@link HashStrategy hash strategies} spread keys over
+ * the buckets of a {@link HashMapImpl} in both table schemes. For each key
+ * set the map is filled, every key is looked up once with the statistics
+ * enabled, and the report shows the longest bucket, the number of treeified
+ * buckets, the share of empty buckets against <code>e^-load</code> expected
+ * of a uniform hash, and the average probes of a hit against
+ * <code>1 + load / 2</code>. The key sets are emails, sequential integers,
+ * integers with the low 20 bits clear, which the power-of-two scheme spreads
+ * poorly, and strings with one hash code.
+ *
+ * <pre>
+ * java -cp t01-hashmap-benchmark/target/benchmarks.jar \
+ *     druyaned.aston.intensive.t01hashmap.benchmark.HashDistributionReport \
+ *     100000
+ * </pre>
+ *
+ * @author druyaned
+ */
+public class HashDistributionReport {
+
+    private static final Object VALUE = new Object();
+
+    public static void main(String[] args) {
+        int size = args.length == 0 ? 100_000 : Integer.parseInt(args[0]);
+        Object[] sequential = new Object[size];
+        Object[] strided = new Object[size];
+        for (int i = 0; i < size; i++) {
+            sequential[i] = i;
+            strided[i] = i << 20;
+        }
+        Object[][] keySets = {
+            KeyType.EMAIL.create(0, size),
+            sequential,
+            strided,
+            KeyType.COLLIDING_STRING.create(0, size)
+        };
+        String[] names = {"EMAIL", "SEQUENTIAL", "STRIDED", "COLLIDING"};
+
+        System.out.printf("%-11s %-9s %-13s %8s %6s %14s %14s%n",
+                "keys", "strategy", "scheme", "maxChain", "trees",
+                "empty/expected", "probes/expected");
+        for (int k = 0; k < keySets.length; k++) {
+            for (StrategyType type : StrategyType.values()) {
+                if (type == StrategyType.STRINGS
+                        && !(keySets[k][0] instanceof String)) {
+                    continue;
+                }
+                for (HashMapImpl.TableScheme scheme
+                        : HashMapImpl.TableScheme.values()) {
+                    print(names[k], type, scheme, keySets[k]);
+                }
+            }
+        }
+    }
+
+    private static void print(String name, StrategyType type,
+            HashMapImpl.TableScheme scheme, Object[] keys) {
+
+        HashMapImpl<Object, Object> map = new HashMapImpl<>(scheme, 0,
+                HashMapImpl.LOAD_FACTOR, type.create());
+        for (Object key : keys) {
+            map.put(key, VALUE);
+        }
+        map.setStatsEnabled(true);
+        for (Object key : keys) {
+            map.get(key);
+        }
+        HashMapStats stats = map.stats();
+        double load = stats.getLoad();
+        double empty = (double) stats.getChainLengthHistogram()[0]
+                / stats.getCapacity();
+        System.out.printf(
+                "%-11s %-9s %-13s %8d %6d %6.3f/%-7.3f %6.2f/%-7.2f%n",
+                name, type, scheme, stats.getMaxChainLength(),
+                stats.getTreeifiedBuckets(), empty, Math.exp(-load),
+                stats.getAverageProbes(), 1 + load / 2);
+    }
+}
@@ -0,0 +1,83 @@
+package druyaned.aston.intensive.t01hashmap.benchmark;
+
+import druyaned.aston.intensive.t01hashmap.HashMapImpl;
+import druyaned.aston.intensive.t01hashmap.HashStrategy;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Speed of the {@link HashStrategy hash strategies}: the hash alone and a
+ * lookup in a {@link HashMapImpl} created with the strategy. Keys are looked
+ * up by the instances put into the map, so the identity strategy finds them;
+ * <code>String</code> caches its <code>hashCode</code>, which the content
+ * hash of {@link StrategyType#STRINGS} recomputes on every call.
+ * {@link KeyType#COLLIDING_STRING} keys share one hash code, so the natural
+ * and the seeded strategies put all of them into one treeified bucket. The
+ * quality of the hashes is printed by {@link HashDistributionReport}.
+ *
+ * @author druyaned
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class HashStrategyBenchmark {
+
+    private static final Object VALUE = new Object();
+
+    @Param({"1000", "100000"})
+    public int size;
+
+    @Param({"EMAIL", "COLLIDING_STRING"})
+    public KeyType keyType;
+
+    @Param
+    public StrategyType strategyType;
+
+    private HashStrategy<Object> strategy;
+    private HashMapImpl<Object, Object> map;
+    private Object[] keys;
+    private int cursor = 0;
+
+    @Setup(Level.Trial)
+    public void setUpMap() {
+        keys = keyType.create(0, size);
+        strategy = strategyType.create();
+        map = new HashMapImpl<>(HashMapImpl.TableScheme.MODULO, size,
+                HashMapImpl.LOAD_FACTOR, strategy);
+        for (Object key : keys) {
+            map.put(key, VALUE);
+        }
+    }
+
+    @Benchmark
+    public int hash() {
+        return strategy.hash(nextKey());
+    }
+
+    @Benchmark
+    public Object getHit() {
+        return map.get(nextKey());
+    }
+
+    private Object nextKey() {
+        Object key = keys[cursor];
+        if (++cursor == size) {
+            cursor = 0;
+        }
+        return key;
+    }
+}
@@ -0,0 +1,62 @@
+package druyaned.aston.intensive.t01hashmap.benchmark;
+
+import druyaned.aston.intensive.t01hashmap.BoundedCache;
+import druyaned.aston.intensive.t01hashmap.BoundedCache.EvictionPolicy;
+
+/**
+ * Prints hit ratios of the {@link BoundedCache} policies on Zipfian traces of
+ * a million keys, with and without a scan of one-time keys interleaved into
+ * every other access. Each access is a get followed by a put on a miss.
+ *
+ * <pre>
+ * java -cp t01-hashmap-benchmark/target/benchmarks.jar \
+ *     druyaned.aston.intensive.t01hashmap.benchmark.HitRatioReport 1000 10000
+ * </pre>
+ *
+ * @author druyaned
+ */
+public class HitRatioReport {
+
+    private static final int KEY_SPACE = 1_000_000;
+    private static final int TRACE_LENGTH = 4_000_000;
+    private static final double[] EXPONENTS = {0.6, 0.8, 0.99};
+
+    public static void main(String[] args) {
+        int[] sizes = args.length == 0
+                ? new int[] {1_000, 10_000, 100_000}
+                : new int[args.length];
+        for (int i = 0; i < args.length; i++) {
+            sizes[i] = Integer.parseInt(args[i]);
+        }
+
+        System.out.printf("%-10s %10s %10s %10s %12s%n",
+                "policy", "size", "exponent", "zipf", "zipf+scan");
+        for (double exponent : EXPONENTS) {
+            int[] trace = ZipfianTrace.create(
+                    KEY_SPACE, exponent, TRACE_LENGTH, 42);
+            int[] scanned = trace.clone();
+            ZipfianTrace.interleaveScan(scanned, KEY_SPACE, 2);
+            for (int size : sizes) {
+                for (EvictionPolicy policy : EvictionPolicy.values()) {
+                    System.out.printf("%-10s %10d %10.2f %10.3f %12.3f%n",
+                            policy, size, exponent,
+                            hitRatio(policy, size, trace),
+                            hitRatio(policy, size, scanned));
+                }
+            }
+        }
+    }
+
+    private static double hitRatio(EvictionPolicy policy, int size,
+            int[] trace) {
+
+        BoundedCache<Integer, Integer> cache
+                = new BoundedCache<>(policy, size);
+        for (int key : trace) {
+            if (cache.get(key) == null) {
+                cache.put(key, key);
+            }
+        }
+        return cache.hitRate();
+    }
+}
@@ -0,0 +1,38 @@
+package druyaned.aston.intensive.t01hashmap.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Insert-heavy workload: each invocation puts a batch of new keys into the
+ * filled map. The batch is removed outside of the measurement, and the next
+ * invocation takes the next batch of absent keys.
+ *
+ * @author druyaned
+ */
+public class InsertBenchmark extends AbstractMapBenchmark {
+
+    private int offset = 0;
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void insert(Blackhole blackhole) {
+        for (int i = offset; i < offset + BATCH; i++) {
+            blackhole.consume(map.put(absent[i], VALUE));
+        }
+    }
+
+    @TearDown(Level.Invocation)
+    public void removeInserted() {
+        for (int i = offset; i < offset + BATCH; i++) {
+            map.remove(absent[i]);
+        }
+        offset += BATCH;
+        if (offset + BATCH > size) {
+            offset = 0;
+        }
+    }
+}
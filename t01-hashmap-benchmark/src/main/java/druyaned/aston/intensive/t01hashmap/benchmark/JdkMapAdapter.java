@@ -0,0 +1,84 @@
+package druyaned.aston.intensive.t01hashmap.benchmark;
+
+import druyaned.aston.intensive.t01hashmap.HashMapTask;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * Adapts a {@link Map} from the standard library to the {@link HashMapTask}
+ * interface so the benchmarks can drive every map through the same calls.
+ * The remapping methods are delegated, so the map uses its own single-lookup
+ * implementations.
+ *
+ * @param <K> the type of keys maintained by this map
+ * @param <V> the type of mapped values
+ * @author druyaned
+ */
+public class JdkMapAdapter<K, V> implements HashMapTask<K, V> {
+
+    private final Map<K, V> map;
+
+    public JdkMapAdapter(Map<K, V> map) {
+        this.map = map;
+    }
+
+    @Override
+    public V get(K key) {
+        return map.get(key);
+    }
+
+    @Override
+    public V put(K key, V value) {
+        return map.put(key, value);
+    }
+
+    @Override
+    public V remove(K key) {
+        return map.remove(key);
+    }
+
+    @Override
+    public int size() {
+        return map.size();
+    }
+
+    @Override
+    public Iterator<Map.Entry<K, V>> entryIterator() {
+        return map.entrySet().iterator();
+    }
+
+    @Override
+    public V putIfAbsent(K key, V value) {
+        return map.putIfAbsent(key, value);
+    }
+
+    @Override
+    public V computeIfAbsent(K key,
+            Function<? super K, ? extends V> mappingFunction) {
+
+        return map.computeIfAbsent(key, mappingFunction);
+    }
+
+    @Override
+    public V computeIfPresent(K key,
+            BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+
+        return map.computeIfPresent(key, remappingFunction);
+    }
+
+    @Override
+    public V compute(K key,
+            BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+
+        return map.compute(key, remappingFunction);
+    }
+
+    @Override
+    public V merge(K key, V value,
+            BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+
+        return map.merge(key, value, remappingFunction);
+    }
+}
@@ -0,0 +1,88 @@
+package druyaned.aston.intensive.t01hashmap.benchmark;
+
+/**
+ * Types of keys which are used by the benchmarks. Each type creates the i-th
+ * key of a distinct sequence, so keys with indexes <code>[0, size)</code> are
+ * present in a map and keys with indexes <code>[size, 2 * size)</code> are
+ * absent.
+ *
+ * @author druyaned
+ */
+public enum KeyType {
+
+    INTEGER {
+        @Override
+        public Object create(int index) {
+            return mix(index);
+        }
+    },
+    STRING {
+        @Override
+        public Object create(int index) {
+            return "key-" + mix(index);
+        }
+    },
+    EMAIL {
+        @Override
+        public Object create(int index) {
+            String domain = switch (index & 3) {
+                case 0 -> "gmail.com";
+                case 1 -> "yandex.ru";
+                case 2 -> "mail.ru";
+                default -> "example.org";
+            };
+            return "user." + Integer.toHexString(mix(index)) + "@" + domain;
+        }
+    },
+    /**
+     * Strings of 32 blocks "Aa" or "BB" by the bits of the index: all of
+     * them have the same <code>hashCode</code>, as in hash flooding.
+     */
+    COLLIDING_STRING {
+        @Override
+        public Object create(int index) {
+            StringBuilder sb = new StringBuilder(2 * Integer.SIZE);
+            for (int bit = 0; bit < Integer.SIZE; bit++) {
+                sb.append((index >>> bit & 1) == 0 ? "Aa" : "BB");
+            }
+            return sb.toString();
+        }
+    },
+    POOR_HASH {
+        @Override
+        public Object create(int index) {
+            return new PoorHashKey(index);
+        }
+    };
+
+    /**
+     * Creates the key with the given index.
+     *
+     * @param index the index of the key in the sequence
+     * @return the key with the given index
+     */
+    public abstract Object create(int index);
+
+    /**
+     * Creates keys with indexes <code>[from, from + count)</code>.
+     *
+     * @param from the index of the first key
+     * @param count the number of keys
+     * @return the created keys
+     */
+    public Object[] create(int from, int count) {
+        Object[] keys = new Object[count];
+        for (int i = 0; i < count; i++) {
+            keys[i] = create(from + i);
+        }
+        return keys;
+    }
+
+    /**
+     * Multiplication by an odd constant is a bijection on int, so distinct
+     * indexes give distinct, well scattered values.
+     */
+    private static int mix(int index) {
+        return index * 0x9E3779B9;
+    }
+}
@@ -0,0 +1,171 @@
+package druyaned.aston.intensive.t01hashmap.benchmark;
+
+import druyaned.aston.intensive.t01hashmap.HashMapImpl;
+import druyaned.aston.intensive.t01hashmap.LongLongMap;
+import druyaned.aston.intensive.t01hashmap.LongObjectMap;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Maps keyed by user ids: {@link LongObjectMap} and {@link LongLongMap}
+ * against <code>HashMapImpl&lt;Long, Object&gt;</code>. Ids are sequential,
+ * <code>[1, size]</code> are present and <code>(size, 2 * size]</code> are
+ * absent. Ids are looked up in a shuffled order, and the generic map boxes an
+ * id on every call as a caller holding a primitive id would do. Memory per entry is reported by
+ * {@link FootprintReport}.
+ *
+ * @author druyaned
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class LongKeyBenchmark {
+
+    private static final Object VALUE = new Object();
+
+    @State(Scope.Thread)
+    public abstract static class Ids {
+
+        @Param({"1000", "100000", "10000000"})
+        public int size;
+
+        protected long[] ids;
+        protected int cursor = 0;
+
+        @Setup(Level.Trial)
+        public void setUpIds() {
+            ids = new long[size];
+            for (int i = 0; i < size; i++) {
+                ids[i] = i + 1;
+            }
+            Random random = new Random(size);
+            for (int i = size - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                long id = ids[i];
+                ids[i] = ids[j];
+                ids[j] = id;
+            }
+        }
+
+        protected long nextPresent() {
+            long id = ids[cursor];
+            if (++cursor == size) {
+                cursor = 0;
+            }
+            return id;
+        }
+
+        protected long nextAbsent() {
+            return size + nextPresent();
+        }
+    }
+
+    public static class LongObjectState extends Ids {
+
+        LongObjectMap<Object> map;
+
+        @Setup(Level.Trial)
+        public void setUpMap() {
+            map = new LongObjectMap<>();
+            for (long id = 1; id <= size; id++) {
+                map.put(id, VALUE);
+            }
+        }
+    }
+
+    public static class LongLongState extends Ids {
+
+        LongLongMap map;
+
+        @Setup(Level.Trial)
+        public void setUpMap() {
+            map = new LongLongMap();
+            for (long id = 1; id <= size; id++) {
+                map.put(id, id);
+            }
+        }
+    }
+
+    public static class HashMapImplState extends Ids {
+
+        HashMapImpl<Long, Object> map;
+
+        @Setup(Level.Trial)
+        public void setUpMap() {
+            map = new HashMapImpl<>();
+            for (long id = 1; id <= size; id++) {
+                map.put(id, VALUE);
+            }
+        }
+    }
+
+    @Benchmark
+    public Object longObjectGetHit(LongObjectState state) {
+        return state.map.get(state.nextPresent());
+    }
+
+    @Benchmark
+    public Object longObjectGetMiss(LongObjectState state) {
+        return state.map.get(state.nextAbsent());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(2)
+    public void longObjectRemovePut(LongObjectState state, Blackhole bh) {
+        long id = state.nextPresent();
+        bh.consume(state.map.remove(id));
+        bh.consume(state.map.put(id, VALUE));
+    }
+
+    @Benchmark
+    public long longLongGetHit(LongLongState state) {
+        return state.map.get(state.nextPresent());
+    }
+
+    @Benchmark
+    public long longLongGetMiss(LongLongState state) {
+        return state.map.get(state.nextAbsent());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(2)
+    public void longLongRemovePut(LongLongState state, Blackhole bh) {
+        long id = state.nextPresent();
+        bh.consume(state.map.remove(id));
+        bh.consume(state.map.put(id, id));
+    }
+
+    @Benchmark
+    public Object hashMapImplGetHit(HashMapImplState state) {
+        return state.map.get(state.nextPresent());
+    }
+
+    @Benchmark
+    public Object hashMapImplGetMiss(HashMapImplState state) {
+        return state.map.get(state.nextAbsent());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(2)
+    public void hashMapImplRemovePut(HashMapImplState state, Blackhole bh) {
+        long id = state.nextPresent();
+        bh.consume(state.map.remove(id));
+        bh.consume(state.map.put(id, VALUE));
+    }
+}
@@ -0,0 +1,31 @@
+package druyaned.aston.intensive.t01hashmap.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+
+/**
+ * Lookups of present (hit) and absent (miss) keys.
+ *
+ * @author druyaned
+ */
+public class LookupBenchmark extends AbstractMapBenchmark {
+
+    private int cursor = 0;
+
+    @Benchmark
+    public Object getHit() {
+        Object key = present[cursor];
+        if (++cursor == size) {
+            cursor = 0;
+        }
+        return map.get(key);
+    }
+
+    @Benchmark
+    public Object getMiss() {
+        Object key = absent[cursor];
+        if (++cursor == size) {
+            cursor = 0;
+        }
+        return map.get(key);
+    }
+}
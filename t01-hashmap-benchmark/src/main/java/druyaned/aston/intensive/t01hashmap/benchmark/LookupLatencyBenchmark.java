@@ -0,0 +1,90 @@
+package druyaned.aston.intensive.t01hashmap.benchmark;
+
+import druyaned.aston.intensive.t01hashmap.HashMapTask;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Distribution of the latency of single lookups in a random order, for the
+ * tail (<code>p0.99</code>, <code>p0.999</code> of the sample-time mode)
+ * rather than the average: a chained bucket is walked to its end on a miss,
+ * while a cuckoo lookup reads at most two buckets.
+ *
+ * @author druyaned
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class LookupLatencyBenchmark {
+
+    private static final Object VALUE = new Object();
+
+    @Param({"1000000"})
+    public int size;
+
+    @Param({"INTEGER", "POOR_HASH"})
+    public KeyType keyType;
+
+    @Param({"HASH_MAP_IMPL", "HASH_MAP_IMPL_POW2", "ROBIN_HOOD", "CUCKOO"})
+    public MapType mapType;
+
+    private HashMapTask<Object, Object> map;
+    private Object[] present;
+    private Object[] absent;
+    private int cursor = 0;
+
+    @Setup(Level.Trial)
+    public void setUpMap() {
+        present = keyType.create(0, size);
+        absent = keyType.create(size, size);
+        map = mapType.create();
+        for (Object key : present) {
+            map.put(key, VALUE);
+        }
+        shuffle(present);
+        shuffle(absent);
+    }
+
+    @Benchmark
+    public Object getHit() {
+        Object key = present[cursor];
+        if (++cursor == size) {
+            cursor = 0;
+        }
+        return map.get(key);
+    }
+
+    @Benchmark
+    public Object getMiss() {
+        Object key = absent[cursor];
+        if (++cursor == size) {
+            cursor = 0;
+        }
+        return map.get(key);
+    }
+
+    private static void shuffle(Object[] keys) {
+        SplittableRandom random = new SplittableRandom(42);
+        for (int i = keys.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            Object key = keys[i];
+            keys[i] = keys[j];
+            keys[j] = key;
+        }
+    }
+}
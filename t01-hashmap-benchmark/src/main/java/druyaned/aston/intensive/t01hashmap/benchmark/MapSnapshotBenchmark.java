@@ -0,0 +1,133 @@
+package druyaned.aston.intensive.t01hashmap.benchmark;
+
+import druyaned.aston.intensive.t01hashmap.HashMapImpl;
+import druyaned.aston.intensive.t01hashmap.offheap.Codecs;
+import druyaned.aston.intensive.t01hashmap.offheap.MapSnapshot;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Checkpointing a <code>Long -&gt; Long</code> map to a file and loading it
+ * back: a {@link MapSnapshot} of a {@link HashMapImpl} written through a
+ * {@link FileChannel} against Java serialization of a
+ * <code>java.util.HashMap</code> through a buffered
+ * {@link ObjectOutputStream}. Both files are written once per trial for the
+ * reading benchmarks and stay in the page cache, so the storage is hardly
+ * measured.
+ *
+ * @author druyaned
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms6g", "-Xmx6g"})
+public class MapSnapshotBenchmark {
+
+    private static final int STREAM_BUFFER_SIZE = 1 << 16;
+
+    @Param({"1000000", "10000000"})
+    public int size;
+
+    private HashMapImpl<Long, Long> hashMapImpl;
+    private Map<Long, Long> hashMap;
+    private Path directory;
+    private Path snapshotFile;
+    private Path serializedFile;
+    private Path outputFile;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        hashMapImpl = new HashMapImpl<>(size);
+        hashMap = new HashMap<>(size * 2);
+        for (long id = 0; id < size; id++) {
+            hashMapImpl.put(id, id);
+            hashMap.put(id, id);
+        }
+        directory = Files.createTempDirectory("snapshot-benchmark");
+        snapshotFile = directory.resolve("map.snapshot");
+        serializedFile = directory.resolve("map.ser");
+        outputFile = directory.resolve("output");
+        writeSnapshot(snapshotFile);
+        writeSerialized(serializedFile);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(snapshotFile);
+        Files.deleteIfExists(serializedFile);
+        Files.deleteIfExists(outputFile);
+        Files.delete(directory);
+    }
+
+    @Benchmark
+    public long snapshotWrite() throws IOException {
+        return writeSnapshot(outputFile);
+    }
+
+    @Benchmark
+    public HashMapImpl<Long, Long> snapshotRead() throws IOException {
+        try (FileChannel channel = FileChannel.open(snapshotFile)) {
+            return MapSnapshot.read(channel, Codecs.LONG, Codecs.LONG);
+        }
+    }
+
+    @Benchmark
+    public long javaWrite() throws IOException {
+        return writeSerialized(outputFile);
+    }
+
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public Map<Long, Long> javaRead()
+            throws IOException, ClassNotFoundException {
+
+        try (ObjectInputStream input = new ObjectInputStream(
+                new BufferedInputStream(Files.newInputStream(serializedFile),
+                        STREAM_BUFFER_SIZE))) {
+            return (Map<Long, Long>) input.readObject();
+        }
+    }
+
+    private long writeSnapshot(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            return MapSnapshot.write(hashMapImpl, Codecs.LONG, Codecs.LONG,
+                    channel);
+        }
+    }
+
+    private long writeSerialized(Path file) throws IOException {
+        try (ObjectOutputStream output = new ObjectOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(file),
+                        STREAM_BUFFER_SIZE))) {
+            output.writeObject(hashMap);
+        }
+        return Files.size(file);
+    }
+}
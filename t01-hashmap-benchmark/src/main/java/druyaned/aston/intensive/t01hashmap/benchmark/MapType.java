@@ -0,0 +1,96 @@
+package druyaned.aston.intensive.t01hashmap.benchmark;
+
+import druyaned.aston.intensive.t01hashmap.ConcurrentHashMapImpl;
+import druyaned.aston.intensive.t01hashmap.CuckooHashMap;
+import druyaned.aston.intensive.t01hashmap.HashMapImpl;
+import druyaned.aston.intensive.t01hashmap.HashMapTask;
+import druyaned.aston.intensive.t01hashmap.LockFreeHashMap;
+import druyaned.aston.intensive.t01hashmap.RobinHoodHashMap;
+import druyaned.aston.intensive.t01hashmap.SwissHashMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Map implementations which are compared by the benchmarks.
+ *
+ * @author druyaned
+ */
+public enum MapType {
+
+    HASH_MAP_IMPL {
+        @Override
+        public <K, V> HashMapTask<K, V> create() {
+            return new HashMapImpl<>();
+        }
+    },
+    HASH_MAP_IMPL_POW2 {
+        @Override
+        public <K, V> HashMapTask<K, V> create() {
+            return new HashMapImpl<>(HashMapImpl.TableScheme.POWER_OF_TWO);
+        }
+    },
+    ROBIN_HOOD {
+        @Override
+        public <K, V> HashMapTask<K, V> create() {
+            return new RobinHoodHashMap<>();
+        }
+    },
+    SWISS_TABLE {
+        @Override
+        public <K, V> HashMapTask<K, V> create() {
+            return new SwissHashMap<>();
+        }
+    },
+    CUCKOO {
+        @Override
+        public <K, V> HashMapTask<K, V> create() {
+            return new CuckooHashMap<>();
+        }
+    },
+    CONCURRENT_HASH_MAP_IMPL {
+        @Override
+        public <K, V> HashMapTask<K, V> create() {
+            return new ConcurrentHashMapImpl<>();
+        }
+    },
+    LOCK_FREE_HASH_MAP {
+        @Override
+        public <K, V> HashMapTask<K, V> create() {
+            return new LockFreeHashMap<>();
+        }
+    },
+    SYNCHRONIZED_HASH_MAP_IMPL {
+        @Override
+        public <K, V> HashMapTask<K, V> create() {
+            return new SynchronizedAdapter<>(new HashMapImpl<>());
+        }
+    },
+    HASH_MAP {
+        @Override
+        public <K, V> HashMapTask<K, V> create() {
+            return new JdkMapAdapter<>(new HashMap<>());
+        }
+    },
+    LINKED_HASH_MAP {
+        @Override
+        public <K, V> HashMapTask<K, V> create() {
+            return new JdkMapAdapter<>(new LinkedHashMap<>());
+        }
+    },
+    CONCURRENT_HASH_MAP {
+        @Override
+        public <K, V> HashMapTask<K, V> create() {
+            return new JdkMapAdapter<>(new ConcurrentHashMap<>());
+        }
+    };
+
+    /**
+     * Creates a new empty map of this type.
+     *
+     * @param <K> the type of keys maintained by the map
+     * @param <V> the type of mapped values
+     * @return a new empty map
+     */
+    public abstract <K, V> HashMapTask<K, V> create();
+}
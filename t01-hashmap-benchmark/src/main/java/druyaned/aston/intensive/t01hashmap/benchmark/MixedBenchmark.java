@@ -0,0 +1,53 @@
+package druyaned.aston.intensive.t01hashmap.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Mixed workload with 75% of reads: each invocation makes 4 hit lookups, 2
+ * miss lookups, 1 insert and 1 remove.
+ *
+ * <p>
+ * Present and absent keys form a ring of <code>2 * size</code> keys, the map
+ * holds a window of <code>size</code> keys of the ring. The insert puts the
+ * key next to the window and the remove drops the oldest key of the window,
+ * so the size of the map stays the same.
+ *
+ * @author druyaned
+ */
+public class MixedBenchmark extends AbstractMapBenchmark {
+
+    private Object[] ring;
+    private int head = 0;
+    private int cursor = 0;
+
+    @Setup(Level.Trial)
+    public void setUpRing() {
+        ring = new Object[2 * size];
+        System.arraycopy(present, 0, ring, 0, size);
+        System.arraycopy(absent, 0, ring, size, size);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(8)
+    public void mixed(Blackhole blackhole) {
+        for (int i = 0; i < 4; i++) {
+            blackhole.consume(map.get(ring[at(head + cursor)]));
+            cursor = cursor + 7 < size ? cursor + 7 : cursor + 7 - size;
+        }
+        for (int i = 0; i < 2; i++) {
+            blackhole.consume(map.get(ring[at(head + size + cursor)]));
+            cursor = cursor + 7 < size ? cursor + 7 : cursor + 7 - size;
+        }
+        blackhole.consume(map.put(ring[at(head + size)], VALUE));
+        blackhole.consume(map.remove(ring[head]));
+        head = at(head + 1);
+    }
+
+    private int at(int index) {
+        return index < ring.length ? index : index - ring.length;
+    }
+}
@@ -0,0 +1,44 @@
+package druyaned.aston.intensive.t01hashmap.benchmark;
+
+/**
+ * Key with a poor {@link #hashCode()}: the hash is a bijection of the id, so
+ * there are no true collisions, but small ids leave the low bits of the hash
+ * equal to zero. It imitates entities which hash a sequential identifier
+ * shifted to the high bits and hurts tables which take an index from the low
+ * bits without spreading the hash.
+ *
+ * @author druyaned
+ */
+public final class PoorHashKey {
+
+    private final int id;
+
+    public PoorHashKey(int id) {
+        this.id = id;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    @Override
+    public int hashCode() {
+        return Integer.rotateLeft(id, 16);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj instanceof PoorHashKey other) {
+            return id == other.id;
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return "PoorHashKey{" + id + "}";
+    }
+}
@@ -0,0 +1,90 @@
+package druyaned.aston.intensive.t01hashmap.benchmark;
+
+import druyaned.aston.intensive.t01hashmap.HashMapImpl;
+import druyaned.aston.intensive.t01hashmap.HashMapTask;
+import druyaned.aston.intensive.t01hashmap.ReferenceHashMap;
+import java.util.WeakHashMap;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A cache keyed by objects with their own lifecycle, such as sessions, in a
+ * small heap: {@link ReferenceHashMap} with weak and soft keys against
+ * {@link WeakHashMap}.
+ *
+ * <p>
+ * The benchmark holds a ring of <code>live</code> keys. <code>churn</code>
+ * replaces the eldest key of the ring by a new one, which makes the old key
+ * unreachable, puts the new key with a 1 KB value and looks up a live key.
+ * So the heap is filled by entries of dead keys until the maps purge them:
+ * weak keys after every collection, soft keys only when the heap runs
+ * short. Throughput and the sampled latency percentiles show whether a
+ * purge is paid by a single call, <code>gc.count</code> and
+ * <code>gc.time</code> of the GC profiler added by {@link BenchmarkRunner}
+ * show the collector work. {@link HashMapImpl} is left out: it keeps every
+ * key and runs out of the heap.
+ *
+ * @author druyaned
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms512m", "-Xmx512m"})
+public class ReferenceMapBenchmark {
+
+    private static final int VALUE_SIZE = 1024;
+
+    public enum Kind {
+        WEAK, SOFT, JDK_WEAK
+    }
+
+    @Param({"10000", "100000"})
+    public int live;
+
+    @Param
+    public Kind kind;
+
+    private HashMapTask<Object, byte[]> map;
+    private Object[] keys;
+    private int cursor = 0;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        map = switch (kind) {
+            case WEAK -> new ReferenceHashMap<>(
+                    ReferenceHashMap.ReferenceType.WEAK);
+            case SOFT -> new ReferenceHashMap<>(
+                    ReferenceHashMap.ReferenceType.SOFT);
+            case JDK_WEAK -> new JdkMapAdapter<>(new WeakHashMap<>());
+        };
+        keys = new Object[live];
+        for (int i = 0; i < live; i++) {
+            keys[i] = new Object();
+            map.put(keys[i], new byte[VALUE_SIZE]);
+        }
+    }
+
+    @Benchmark
+    public byte[] churn() {
+        Object key = new Object();
+        keys[cursor] = key;
+        map.put(key, new byte[VALUE_SIZE]);
+        if (++cursor == live) {
+            cursor = 0;
+        }
+        return map.get(keys[(cursor + live / 2) % live]);
+    }
+}
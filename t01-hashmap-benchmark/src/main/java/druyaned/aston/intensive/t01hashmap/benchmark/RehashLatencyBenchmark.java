@@ -0,0 +1,105 @@
+package druyaned.aston.intensive.t01hashmap.benchmark;
+
+import druyaned.aston.intensive.t01hashmap.HashMapImpl;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Latency of single puts while a {@link HashMapImpl} grows from empty to
+ * <code>size</code> keys. Every put is timed; besides the time of the whole
+ * fill, the longest put (<code>maxPutNs</code>) and the 99.9th percentile
+ * rounded up to a power of two (<code>p999PutNs</code>) are reported. The
+ * stop-the-world rehash (<code>rehashStep=0</code>) moves all nodes in one
+ * put, the incremental one spreads the move over the following operations.
+ *
+ * @author druyaned
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class RehashLatencyBenchmark {
+
+    private static final Object VALUE = new Object();
+
+    @Param({"1000000", "4000000"})
+    public int size;
+
+    @Param({"MODULO", "POWER_OF_TWO"})
+    public HashMapImpl.TableScheme scheme;
+
+    @Param({"0", "4", "16"})
+    public int rehashStep;
+
+    private Object[] keys;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Latency {
+
+        public long maxPutNs;
+        public long p999PutNs;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            maxPutNs = 0;
+            p999PutNs = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUpKeys() {
+        keys = KeyType.INTEGER.create(0, size);
+    }
+
+    @Benchmark
+    public Object fill(Latency latency) {
+        HashMapImpl<Object, Object> map = new HashMapImpl<>(scheme);
+        map.setIncrementalRehash(rehashStep);
+        long[] histogram = new long[Long.SIZE];
+        long max = 0;
+        for (Object key : keys) {
+            long start = System.nanoTime();
+            map.put(key, VALUE);
+            long elapsed = System.nanoTime() - start;
+            if (elapsed > max) {
+                max = elapsed;
+            }
+            histogram[Long.SIZE - Long.numberOfLeadingZeros(elapsed)]++;
+        }
+        latency.maxPutNs = max;
+        latency.p999PutNs = percentile(histogram, 0.999);
+        return map;
+    }
+
+    /**
+     * Returns the upper bound of the histogram bucket which holds the
+     * percentile; the bucket <code>b</code> holds latencies
+     * <code>[2^(b-1), 2^b)</code>.
+     */
+    private long percentile(long[] histogram, double fraction) {
+        long rank = (long) Math.ceil(fraction * keys.length);
+        long seen = 0;
+        for (int b = 0; b < histogram.length; b++) {
+            seen += histogram[b];
+            if (seen >= rank) {
+                return 1L << b;
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+}
@@ -0,0 +1,42 @@
+package druyaned.aston.intensive.t01hashmap.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Remove-heavy workload: each invocation removes a batch of present keys
+ * from the filled map. The batch is put back outside of the measurement, and
+ * the next invocation takes the next batch of present keys.
+ *
+ * <p>
+ * Note that the GC profiler counts the whole iteration, so allocations of
+ * putting the batch back are included in <code>gc.alloc.rate.norm</code>.
+ *
+ * @author druyaned
+ */
+public class RemoveBenchmark extends AbstractMapBenchmark {
+
+    private int offset = 0;
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void remove(Blackhole blackhole) {
+        for (int i = offset; i < offset + BATCH; i++) {
+            blackhole.consume(map.remove(present[i]));
+        }
+    }
+
+    @TearDown(Level.Invocation)
+    public void restoreRemoved() {
+        for (int i = offset; i < offset + BATCH; i++) {
+            map.put(present[i], VALUE);
+        }
+        offset += BATCH;
+        if (offset + BATCH > size) {
+            offset = 0;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package druyaned.aston.intensive.t01hashmap.benchmark;
+
+import druyaned.aston.intensive.t01hashmap.HashMapImpl;
+import druyaned.aston.intensive.t01hashmap.offheap.Codecs;
+import druyaned.aston.intensive.t01hashmap.offheap.PersistentHashMap;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Startup cost of a <code>Long -&gt; Long</code> lookup map:
+ * <ul>
+ * <li><code>reopen</code> - opening a cleanly closed {@link PersistentHashMap}
+ * and reading a key;</li>
+ * <li><code>recover</code> - opening it after a process which did not close
+ * it, which replays the log;</li>
+ * <li><code>rebuild</code> - filling a {@link HashMapImpl}, which is what a
+ * restart costs now besides loading the rows.</li>
+ * </ul>
+ * The map is written to a temporary directory once per trial.
+ *
+ * @author druyaned
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class ReopenBenchmark {
+
+    @State(Scope.Thread)
+    public static class Store {
+
+        @Param({"1000000", "10000000"})
+        public int size;
+
+        private Path directory;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            directory = Files.createTempDirectory("reopen-benchmark");
+            try (PersistentHashMap<Long, Long> map = open()) {
+                for (long id = 0; id < size; id++) {
+                    map.put(id, id);
+                }
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            try (Stream<Path> paths = Files.walk(directory)) {
+                paths.sorted(Comparator.reverseOrder()).forEach(path -> {
+                    try {
+                        Files.delete(path);
+                    } catch (IOException exc) {
+                        throw new UncheckedIOException(exc);
+                    }
+                });
+            }
+        }
+
+        PersistentHashMap<Long, Long> open() {
+            return new PersistentHashMap<>(directory, Codecs.LONG, Codecs.LONG);
+        }
+    }
+
+    /**
+     * Leaves the index dirty before every call as a killed process does: the
+     * map is updated and dropped without closing.
+     */
+    public static class DirtyStore extends Store {
+
+        @Setup(Level.Invocation)
+        public void crash() {
+            PersistentHashMap<Long, Long> map = open();
+            map.put(0L, 0L);
+        }
+    }
+
+    @Benchmark
+    public Long reopen(Store store) {
+        try (PersistentHashMap<Long, Long> map = store.open()) {
+            return map.get(store.size / 2L);
+        }
+    }
+
+    @Benchmark
+    public Long recover(DirtyStore store) {
+        try (PersistentHashMap<Long, Long> map = store.open()) {
+            return map.get(store.size / 2L);
+        }
+    }
+
+    @Benchmark
+    public Long rebuild(Store store) {
+        HashMapImpl<Long, Long> map = new HashMapImpl<>();
+        for (long id = 0; id < store.size; id++) {
+            map.put(id, id);
+        }
+        return map.get(store.size / 2L);
+    }
+}
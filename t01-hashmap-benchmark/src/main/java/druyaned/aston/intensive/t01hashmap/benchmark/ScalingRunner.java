@@ -0,0 +1,60 @@
+package druyaned.aston.intensive.t01hashmap.benchmark;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs {@link ConcurrentBenchmark} (or the benchmarks given by the usual JMH
+ * command line) for 1, 2, 4, ..., 64 threads and prints the throughput of
+ * every run in one table.
+ *
+ * <pre>
+ * java -cp t01-hashmap-benchmark/target/benchmarks.jar \
+ *     druyaned.aston.intensive.t01hashmap.benchmark.ScalingRunner
+ * </pre>
+ *
+ * @author druyaned
+ */
+public class ScalingRunner {
+
+    private static final int[] THREADS = {1, 2, 4, 8, 16, 32, 64};
+
+    public static void main(String[] args)
+            throws CommandLineOptionException, RunnerException {
+
+        CommandLineOptions cmd = new CommandLineOptions(args);
+        List<String> lines = new ArrayList<>();
+        for (int threads : THREADS) {
+            OptionsBuilder builder = new OptionsBuilder();
+            builder.parent(cmd).threads(threads);
+            if (cmd.getIncludes().isEmpty()) {
+                builder.include(ConcurrentBenchmark.class.getSimpleName());
+            }
+            Options options = builder.build();
+            Collection<RunResult> results = new Runner(options).run();
+            for (RunResult result : results) {
+                BenchmarkParams params = result.getParams();
+                StringBuilder name = new StringBuilder(params.getBenchmark());
+                for (String key : params.getParamsKeys()) {
+                    name.append(' ').append(key).append('=')
+                            .append(params.getParam(key));
+                }
+                lines.add(String.format("%3d  %-90s %12.3f %s",
+                        threads, name,
+                        result.getPrimaryResult().getScore(),
+                        result.getPrimaryResult().getScoreUnit()));
+            }
+        }
+        System.out.println();
+        lines.forEach(System.out::println);
+    }
+}
@@ -0,0 +1,87 @@
+package druyaned.aston.intensive.t01hashmap.benchmark;
+
+import druyaned.aston.intensive.t01hashmap.HashMapImpl;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Workload which grows a {@link HashMapImpl} to <code>size</code> keys and
+ * removes all but <code>size / 64</code> of them, <code>cycles</code> times
+ * in a row. Without shrinking (<code>lowWaterMark=0</code>) the table keeps
+ * the peak capacity between the cycles; with the low-water mark it is halved
+ * on the way down and doubled again on the way up. Besides the time of the
+ * whole workload the capacity left after the last shrink
+ * (<code>retainedBuckets</code>) is reported.
+ *
+ * @author druyaned
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class ShrinkBenchmark {
+
+    private static final Object VALUE = new Object();
+
+    @Param({"1000000"})
+    public int size;
+
+    @Param({"4"})
+    public int cycles;
+
+    @Param({"MODULO", "POWER_OF_TWO"})
+    public HashMapImpl.TableScheme scheme;
+
+    @Param({"0", "0.1875"})
+    public double lowWaterMark;
+
+    private Object[] keys;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Footprint {
+
+        public long retainedBuckets;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            retainedBuckets = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUpKeys() {
+        keys = KeyType.INTEGER.create(0, size);
+    }
+
+    @Benchmark
+    public Object growAndShrink(Footprint footprint) {
+        HashMapImpl<Object, Object> map = new HashMapImpl<>(scheme);
+        map.setShrinkThreshold(lowWaterMark);
+        int retained = size / 64;
+        for (int cycle = 0; cycle < cycles; cycle++) {
+            for (Object key : keys) {
+                map.put(key, VALUE);
+            }
+            for (int i = retained; i < size; i++) {
+                map.remove(keys[i]);
+            }
+        }
+        footprint.retainedBuckets = map.capacity();
+        return map;
+    }
+}
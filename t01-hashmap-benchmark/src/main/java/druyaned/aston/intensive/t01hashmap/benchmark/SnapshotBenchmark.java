@@ -0,0 +1,119 @@
+package druyaned.aston.intensive.t01hashmap.benchmark;
+
+import druyaned.aston.intensive.t01hashmap.HashMapImpl;
+import druyaned.aston.intensive.t01hashmap.HashMapTask;
+import druyaned.aston.intensive.t01hashmap.HashTrieMap;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Copy-on-write publication of snapshots through a volatile field: a writer
+ * makes a new version with one key updated and publishes it, readers look
+ * keys up in the current version without locks. With <code>persistent</code>
+ * the version is made by {@link HashTrieMap#with}, which copies the path to
+ * the key, otherwise by copying the whole {@link HashMapImpl}.
+ *
+ * <p>
+ * The <code>update</code> group measures the cost of a version alone; the
+ * <code>publish</code> group runs one writer and three readers, so it shows
+ * the reader throughput next to the rate of versions and the garbage they
+ * make (run it with <code>-prof gc</code>).
+ *
+ * @author druyaned
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class SnapshotBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    public int size;
+
+    @Param({"INTEGER", "STRING"})
+    public KeyType keyType;
+
+    @Param({"false", "true"})
+    public boolean persistent;
+
+    private volatile HashMapTask<Object, Object> snapshot;
+    private Object[] keys;
+    private int writeCursor = 0;
+    private int version = 0;
+
+    @State(Scope.Thread)
+    public static class ReaderState {
+
+        int cursor = 0;
+    }
+
+    @Setup(Level.Trial)
+    public void setUpMap() {
+        keys = keyType.create(0, size);
+        HashMapImpl<Object, Object> map = new HashMapImpl<>(size);
+        for (int i = 0; i < size; i++) {
+            map.put(keys[i], i);
+        }
+        snapshot = persistent ? HashTrieMap.copyOf(map) : map;
+    }
+
+    @Benchmark
+    @Group("update")
+    @GroupThreads(1)
+    public HashMapTask<Object, Object> update() {
+        return publish();
+    }
+
+    @Benchmark
+    @Group("publish")
+    @GroupThreads(1)
+    public HashMapTask<Object, Object> write() {
+        return publish();
+    }
+
+    @Benchmark
+    @Group("publish")
+    @GroupThreads(3)
+    public Object read(ReaderState state) {
+        Object key = keys[state.cursor];
+        if (++state.cursor == size) {
+            state.cursor = 0;
+        }
+        return snapshot.get(key);
+    }
+
+    private HashMapTask<Object, Object> publish() {
+        Object key = keys[writeCursor];
+        if (++writeCursor == size) {
+            writeCursor = 0;
+        }
+        Object value = ++version;
+        HashMapTask<Object, Object> current = snapshot;
+        HashMapTask<Object, Object> next;
+        if (persistent) {
+            next = ((HashTrieMap<Object, Object>) current).with(key, value);
+        } else {
+            HashMapImpl<Object, Object> copy = new HashMapImpl<>(size);
+            copy.putAll(current);
+            copy.put(key, value);
+            next = copy;
+        }
+        snapshot = next;
+        return next;
+    }
+}
@@ -0,0 +1,77 @@
+package druyaned.aston.intensive.t01hashmap.benchmark;
+
+import druyaned.aston.intensive.t01hashmap.HashMapImpl;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of the statistics of {@link HashMapImpl}: lookups of present keys
+ * and put-remove pairs with the statistics off and on.
+ *
+ * @author druyaned
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class StatsBenchmark {
+
+    private static final Object VALUE = new Object();
+
+    @Param({"100000", "1000000"})
+    public int size;
+
+    @Param({"MODULO", "POWER_OF_TWO"})
+    public HashMapImpl.TableScheme scheme;
+
+    @Param({"false", "true"})
+    public boolean stats;
+
+    private HashMapImpl<Object, Object> map;
+    private Object[] present;
+    private Object[] absent;
+    private int cursor = 0;
+
+    @Setup(Level.Trial)
+    public void setUpMap() {
+        present = KeyType.INTEGER.create(0, size);
+        absent = KeyType.INTEGER.create(size, size);
+        map = new HashMapImpl<>(scheme);
+        map.setStatsEnabled(stats);
+        for (Object key : present) {
+            map.put(key, VALUE);
+        }
+    }
+
+    @Benchmark
+    public Object getHit() {
+        Object key = present[cursor];
+        if (++cursor == size) {
+            cursor = 0;
+        }
+        return map.get(key);
+    }
+
+    @Benchmark
+    public Object putRemove() {
+        Object key = absent[cursor];
+        if (++cursor == size) {
+            cursor = 0;
+        }
+        map.put(key, VALUE);
+        return map.remove(key);
+    }
+}
@@ -0,0 +1,47 @@
+package druyaned.aston.intensive.t01hashmap.benchmark;
+
+import druyaned.aston.intensive.t01hashmap.HashStrategy;
+
+/**
+ * Hash strategies which are compared by {@link HashStrategyBenchmark} and
+ * {@link HashDistributionReport}. {@link #STRINGS} applies to string keys
+ * only.
+ *
+ * @author druyaned
+ */
+public enum StrategyType {
+
+    NATURAL {
+        @Override
+        public HashStrategy<Object> create() {
+            return HashStrategy.natural();
+        }
+    },
+    SEEDED {
+        @Override
+        public HashStrategy<Object> create() {
+            return HashStrategy.seeded();
+        }
+    },
+    IDENTITY {
+        @Override
+        public HashStrategy<Object> create() {
+            return HashStrategy.identity();
+        }
+    },
+    STRINGS {
+        @Override
+        @SuppressWarnings("unchecked")
+        public HashStrategy<Object> create() {
+            HashStrategy<?> strategy = HashStrategy.strings();
+            return (HashStrategy<Object>) strategy;
+        }
+    };
+
+    /**
+     * Creates the strategy, with a new seed if it is seeded.
+     *
+     * @return the new strategy
+     */
+    public abstract HashStrategy<Object> create();
+}
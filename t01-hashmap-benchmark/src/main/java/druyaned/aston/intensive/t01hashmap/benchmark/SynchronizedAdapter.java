@@ -0,0 +1,95 @@
+package druyaned.aston.intensive.t01hashmap.benchmark;
+
+import druyaned.aston.intensive.t01hashmap.HashMapTask;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * Guards every call to a {@link HashMapTask} by one lock, the baseline for
+ * the thread-safe maps.
+ *
+ * @param <K> the type of keys maintained by this map
+ * @param <V> the type of mapped values
+ * @author druyaned
+ */
+public class SynchronizedAdapter<K, V> implements HashMapTask<K, V> {
+
+    private final HashMapTask<K, V> map;
+
+    public SynchronizedAdapter(HashMapTask<K, V> map) {
+        this.map = map;
+    }
+
+    @Override
+    public synchronized V get(K key) {
+        return map.get(key);
+    }
+
+    @Override
+    public synchronized V put(K key, V value) {
+        return map.put(key, value);
+    }
+
+    @Override
+    public synchronized V remove(K key) {
+        return map.remove(key);
+    }
+
+    @Override
+    public synchronized int size() {
+        return map.size();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>
+     * As with {@link java.util.Collections#synchronizedMap}, the caller must
+     * hold the lock of the adapter while iterating.
+     */
+    @Override
+    public Iterator<Map.Entry<K, V>> entryIterator() {
+        return map.entryIterator();
+    }
+
+    @Override
+    public synchronized void forEach(BiConsumer<? super K, ? super V> action) {
+        map.forEach(action);
+    }
+
+    @Override
+    public synchronized V putIfAbsent(K key, V value) {
+        return map.putIfAbsent(key, value);
+    }
+
+    @Override
+    public synchronized V computeIfAbsent(K key,
+            Function<? super K, ? extends V> mappingFunction) {
+
+        return map.computeIfAbsent(key, mappingFunction);
+    }
+
+    @Override
+    public synchronized V computeIfPresent(K key,
+            BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+
+        return map.computeIfPresent(key, remappingFunction);
+    }
+
+    @Override
+    public synchronized V compute(K key,
+            BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+
+        return map.compute(key, remappingFunction);
+    }
+
+    @Override
+    public synchronized V merge(K key, V value,
+            BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+
+        return map.merge(key, value, remappingFunction);
+    }
+}
@@ -0,0 +1,97 @@
+package druyaned.aston.intensive.t01hashmap.benchmark;
+
+import druyaned.aston.intensive.t01hashmap.HashMapTask;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Counting words of a Zipfian text over a vocabulary of string keys: with a
+ * get followed by a put, as code written against the bare task does, and
+ * with the single-lookup {@link HashMapTask#merge merge} and
+ * {@link HashMapTask#compute compute}. Every word is counted in the map
+ * once in the setup, so the measurement runs on the settled table.
+ *
+ * @author druyaned
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class WordCountBenchmark {
+
+    private static final int TEXT_LENGTH = 1 << 20;
+
+    @Param({"10000", "1000000"})
+    public int vocabulary;
+
+    @Param({"HASH_MAP_IMPL", "HASH_MAP_IMPL_POW2", "HASH_MAP"})
+    public MapType mapType;
+
+    private HashMapTask<Object, Integer> counts;
+    private Object[] text;
+    private int cursor = 0;
+
+    @Setup(Level.Trial)
+    public void setUpText() {
+        Object[] words = KeyType.STRING.create(0, vocabulary);
+        int[] trace = ZipfianTrace.create(vocabulary, 0.99, TEXT_LENGTH, 42);
+        text = new Object[TEXT_LENGTH];
+        for (int i = 0; i < TEXT_LENGTH; i++) {
+            text[i] = words[trace[i]];
+        }
+        counts = mapType.create();
+        for (Object word : words) {
+            counts.put(word, 0);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(AbstractMapBenchmark.BATCH)
+    public Object getThenPut() {
+        for (int i = 0; i < AbstractMapBenchmark.BATCH; i++) {
+            Object word = nextWord();
+            Integer count = counts.get(word);
+            counts.put(word, count == null ? 1 : count + 1);
+        }
+        return counts;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(AbstractMapBenchmark.BATCH)
+    public Object merge() {
+        for (int i = 0; i < AbstractMapBenchmark.BATCH; i++) {
+            counts.merge(nextWord(), 1, Integer::sum);
+        }
+        return counts;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(AbstractMapBenchmark.BATCH)
+    public Object compute() {
+        for (int i = 0; i < AbstractMapBenchmark.BATCH; i++) {
+            counts.compute(nextWord(),
+                    (word, count) -> count == null ? 1 : count + 1);
+        }
+        return counts;
+    }
+
+    private Object nextWord() {
+        Object word = text[cursor];
+        cursor = (cursor + 1) & (TEXT_LENGTH - 1);
+        return word;
+    }
+}
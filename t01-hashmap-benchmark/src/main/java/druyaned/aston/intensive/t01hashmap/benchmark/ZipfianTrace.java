@@ -0,0 +1,64 @@
+package druyaned.aston.intensive.t01hashmap.benchmark;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Access traces of the cache benchmarks. Key indexes of a Zipfian trace are
+ * drawn from <code>[0, keySpace)</code> with the probability of the index
+ * <code>i</code> proportional to <code>1 / (i + 1)^exponent</code>, so a few
+ * keys are hot and the long tail is rarely requested.
+ *
+ * @author druyaned
+ */
+public final class ZipfianTrace {
+
+    private ZipfianTrace() {
+    }
+
+    /**
+     * Creates the Zipfian trace by inverting the cumulative distribution with
+     * a binary search.
+     *
+     * @param keySpace the number of distinct keys
+     * @param exponent the skew, zero is uniform
+     * @param length the number of accesses
+     * @param seed the seed of the random generator
+     * @return the key indexes of the accesses
+     */
+    public static int[] create(int keySpace, double exponent, int length,
+            long seed) {
+
+        double[] cdf = new double[keySpace];
+        double sum = 0;
+        for (int i = 0; i < keySpace; i++) {
+            sum += 1 / Math.pow(i + 1, exponent);
+            cdf[i] = sum;
+        }
+        Random random = new Random(seed);
+        int[] trace = new int[length];
+        for (int i = 0; i < length; i++) {
+            int index = Arrays.binarySearch(cdf, random.nextDouble() * sum);
+            trace[i] = index < 0 ? -index - 1 : index;
+        }
+        return trace;
+    }
+
+    /**
+     * Interleaves the trace with a scan: every <code>period</code>-th access
+     * is replaced by a key index from <code>[keySpace, ...)</code> which is
+     * requested only once.
+     *
+     * @param trace the trace, which is modified
+     * @param keySpace the number of distinct keys of the trace
+     * @param period the distance between the scan accesses
+     * @return the number of distinct keys of the modified trace
+     */
+    public static int interleaveScan(int[] trace, int keySpace, int period) {
+        int next = keySpace;
+        for (int i = period - 1; i < trace.length; i += period) {
+            trace[i] = next++;
+        }
+        return next;
+    }
+}
@@ -0,0 +1,76 @@
+package druyaned.aston.intensive.t01hashmap;
+
+/**
+ * Split block Bloom filter of <code>int</code> hashes, as in Parquet and
+ * Impala.
+ *
+ * <p>
+ * The filter is an array of 256-bit blocks of eight words. A hash selects one
+ * block and sets one bit in each of its words, the bits being chosen by
+ * multiplying the hash by eight odd salts; so an add or a query touches a
+ * single 32-byte block, which is half a cache line, and a query of an absent
+ * hash usually stops at the first clear bit. The filter has no false
+ * negatives and can not forget a hash; it is rebuilt instead.
+ *
+ * @author druyaned
+ */
+final class BlockedBloomFilter {
+
+    private static final int BLOCK_WORDS = 8;
+    private static final int BLOCK_BITS = BLOCK_WORDS * Integer.SIZE;
+    private static final int MAX_BLOCKS = 1 << 27;
+    private static final int[] SALTS = {
+        0x47b6137b, 0x44974d91, 0x8824ad5b, 0xa2b7289d,
+        0x705495c7, 0x2df1424b, 0x9efc4947, 0x5c6bfb31
+    };
+
+    private final int[] words;
+    private final int blockCount;
+
+    /**
+     * Creates the filter of the given number of bits per expected hash.
+     */
+    BlockedBloomFilter(int expectedSize, int bitsPerKey) {
+        long bits = Math.max((long) expectedSize * bitsPerKey, BLOCK_BITS);
+        blockCount = (int) Math.min((bits + BLOCK_BITS - 1) / BLOCK_BITS,
+                MAX_BLOCKS);
+        words = new int[blockCount * BLOCK_WORDS];
+    }
+
+    void add(int hash) {
+        long mixed = LongHashing.mix(hash);
+        int base = blockOf(mixed);
+        int key = (int) mixed;
+        for (int i = 0; i < BLOCK_WORDS; i++) {
+            words[base + i] |= 1 << ((key * SALTS[i]) >>> 27);
+        }
+    }
+
+    /**
+     * Returns false if the hash was certainly not added, true if it may
+     * have been.
+     */
+    boolean mightContain(int hash) {
+        long mixed = LongHashing.mix(hash);
+        int base = blockOf(mixed);
+        int key = (int) mixed;
+        for (int i = 0; i < BLOCK_WORDS; i++) {
+            if ((words[base + i] & 1 << ((key * SALTS[i]) >>> 27)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    long sizeInBytes() {
+        return (long) words.length * Integer.BYTES;
+    }
+
+    /**
+     * Returns the index of the first word of the block: the high half of
+     * the mixed hash is reduced to the block count by multiply-shift.
+     */
+    private int blockOf(long mixed) {
+        return (int) (((mixed >>> 32) * blockCount) >>> 32) * BLOCK_WORDS;
+    }
+}
@@ -0,0 +1,586 @@
+package druyaned.aston.intensive.t01hashmap;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.function.ToIntBiFunction;
+
+/**
+ * Bounded cache implementation of the {@link HashMapTask task}: the total
+ * weight of its entries never exceeds the maximum, entries are evicted by the
+ * {@link EvictionPolicy policy} instead.
+ *
+ * <p>
+ * Entries are nodes of a chained power-of-two table, like in
+ * {@link HashMapImpl}, which are also linked into access-order queues through
+ * their <code>before</code>/<code>after</code> fields, so reordering on access
+ * and eviction of the eldest entry are <code>O(1)</code> and allocate
+ * nothing. {@link #get} and {@link #put} count as accesses, {@link #remove}
+ * and iteration do not.
+ *
+ * <p>
+ * The weight of an entry is given by the weigher, one per entry by default,
+ * so the maximum is either a number of entries or, for example, an estimate
+ * of bytes. Entries heavier than the maximum are evicted right away.
+ *
+ * <p>
+ * With {@link EvictionPolicy#LRU} there is one queue and the least recently
+ * used entry is evicted. {@link EvictionPolicy#TINY_LFU} splits the queues as
+ * in W-TinyLFU: new entries come to a small LRU window (1% of the maximum),
+ * entries pushed out of the window become candidates of the main space, which
+ * is a segmented LRU of a probation and a protected (80%) queue. When the
+ * cache is full, a candidate is admitted only if its estimated access
+ * frequency ({@link FrequencySketch}) is higher than the one of the eldest
+ * probation entry, which is then evicted; otherwise the candidate is evicted.
+ * So a scan of one-time keys passes through the window without flushing
+ * frequently used entries.
+ *
+ * <p>
+ * Hits, misses of {@link #get} and evictions are counted. Null keys and null
+ * values are not permitted, so null returned by get always means a miss. The
+ * cache is not thread-safe.
+ *
+ * @param <K> the type of keys maintained by this map
+ * @param <V> the type of mapped values
+ * @author druyaned
+ */
+public class BoundedCache<K, V> implements HashMapTask<K, V> {
+
+    public static final int DEFAULT_CAPACITY = 16;
+    public static final int MAX_CAPACITY = 1 << 30;
+    public static final double LOAD_FACTOR = 0.75;
+
+    /**
+     * Defines which entry is evicted when the cache is full.
+     */
+    public enum EvictionPolicy {
+
+        /**
+         * The least recently used entry is evicted.
+         */
+        LRU,
+        /**
+         * W-TinyLFU: a window LRU in front of a segmented LRU, admission to
+         * which is decided by the estimated access frequency.
+         */
+        TINY_LFU
+    }
+
+    private static final class Node<K, V> implements Map.Entry<K, V> {
+
+        final K key;
+        V value;
+        final int hash;
+        int weight;
+        Node<K, V> next = null;
+        Node<K, V> before = null;
+        Node<K, V> after = null;
+        AccessQueue<K, V> queue = null;
+
+        private Node(K key, V value, int hash, int weight) {
+            this.key = key;
+            this.value = value;
+            this.hash = hash;
+            this.weight = weight;
+        }
+
+        @Override
+        public K getKey() {
+            return key;
+        }
+
+        @Override
+        public V getValue() {
+            return value;
+        }
+
+        /**
+         * Not supported, since the weight of the entry would not be updated.
+         */
+        @Override
+        public V setValue(V newValue) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Map.Entry<?, ?> entry
+                    && key.equals(entry.getKey())
+                    && value.equals(entry.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return key.hashCode() ^ value.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return key + "=" + value;
+        }
+    }
+
+    /**
+     * Doubly-linked list of nodes from the eldest (head) to the most recently
+     * accessed (tail) with the total weight of the nodes.
+     */
+    private static final class AccessQueue<K, V> {
+
+        private Node<K, V> head = null;
+        private Node<K, V> tail = null;
+        private long weight = 0;
+
+        private void linkLast(Node<K, V> node) {
+            node.queue = this;
+            node.before = tail;
+            node.after = null;
+            if (tail == null) {
+                head = node;
+            } else {
+                tail.after = node;
+            }
+            tail = node;
+            weight += node.weight;
+        }
+
+        private void unlink(Node<K, V> node) {
+            if (node.before == null) {
+                head = node.after;
+            } else {
+                node.before.after = node.after;
+            }
+            if (node.after == null) {
+                tail = node.before;
+            } else {
+                node.after.before = node.before;
+            }
+            node.before = null;
+            node.after = null;
+            node.queue = null;
+            weight -= node.weight;
+        }
+
+        private void moveToLast(Node<K, V> node) {
+            if (node != tail) {
+                unlink(node);
+                linkLast(node);
+            }
+        }
+    }
+
+    private final EvictionPolicy policy;
+    private final long maximumWeight;
+    private final long windowMaximum;
+    private final long protectedMaximum;
+    private final ToIntBiFunction<? super K, ? super V> weigher;
+    private final FrequencySketch sketch;
+
+    private final AccessQueue<K, V> window = new AccessQueue<>();
+    private final AccessQueue<K, V> probation = new AccessQueue<>();
+    private final AccessQueue<K, V> protectedQueue = new AccessQueue<>();
+
+    private Node<K, V>[] table = newTable(DEFAULT_CAPACITY);
+    private int size = 0;
+    private long weightedSize = 0;
+
+    private long hitCount = 0;
+    private long missCount = 0;
+    private long evictionCount = 0;
+
+    /**
+     * Creates the cache which holds at most the given number of entries.
+     *
+     * @param policy the eviction policy
+     * @param maximumSize the maximum number of entries
+     * @throws IllegalArgumentException if the maximum size is negative
+     */
+    public BoundedCache(EvictionPolicy policy, long maximumSize) {
+        this(policy, maximumSize, (key, value) -> 1);
+    }
+
+    /**
+     * Creates the cache whose entries weigh at most the given weight in
+     * total.
+     *
+     * @param policy the eviction policy
+     * @param maximumWeight the maximum total weight of the entries
+     * @param weigher the non-negative weight of an entry, which is computed
+     * when the entry is put
+     * @throws IllegalArgumentException if the maximum weight is negative
+     */
+    public BoundedCache(EvictionPolicy policy, long maximumWeight,
+            ToIntBiFunction<? super K, ? super V> weigher) {
+
+        if (maximumWeight < 0) {
+            throw new IllegalArgumentException(
+                    "maximumWeight=" + maximumWeight + " is negative");
+        }
+        this.policy = Objects.requireNonNull(policy);
+        this.maximumWeight = maximumWeight;
+        this.weigher = Objects.requireNonNull(weigher);
+        if (policy == EvictionPolicy.TINY_LFU) {
+            windowMaximum = Math.max(1, maximumWeight / 100);
+            protectedMaximum = (maximumWeight - windowMaximum) * 4 / 5;
+            sketch = new FrequencySketch();
+        } else {
+            windowMaximum = maximumWeight;
+            protectedMaximum = 0;
+            sketch = null;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>
+     * A hit moves the entry to the tail of its queue; a hit of a probation
+     * entry promotes it to the protected queue.
+     *
+     * @throws NullPointerException if the key is null
+     */
+    @Override
+    public V get(K key) {
+        Node<K, V> node = find(key);
+        if (node == null) {
+            missCount++;
+            return null;
+        }
+        hitCount++;
+        onAccess(node);
+        return node.value;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>
+     * A new entry comes to the tail of the window, then entries are evicted
+     * until the total weight fits the maximum, which may evict the new entry
+     * itself.
+     *
+     * @throws NullPointerException if the key or the value is null
+     * @throws IllegalArgumentException if the weigher returns a negative
+     * weight
+     */
+    @Override
+    public V put(K key, V value) {
+        Objects.requireNonNull(value);
+        int hash = hash(key);
+        int weight = weigh(key, value);
+        Node<K, V> node = find(key, hash);
+        if (node != null) {
+            V prevValue = node.value;
+            node.value = value;
+            node.queue.weight += weight - node.weight;
+            weightedSize += weight - node.weight;
+            node.weight = weight;
+            if (weight > maximumWeight) {
+                evictNode(node);
+                return prevValue;
+            }
+            onAccess(node);
+            evict();
+            return prevValue;
+        }
+
+        if (size >= (int) (LOAD_FACTOR * table.length)
+                && table.length < MAX_CAPACITY) {
+            resize();
+        }
+        node = new Node<>(key, value, hash, weight);
+        int index = hash & (table.length - 1);
+        node.next = table[index];
+        table[index] = node;
+        size++;
+        weightedSize += weight;
+        window.linkLast(node);
+        if (weight > maximumWeight) {
+            evictNode(node);
+            return null;
+        }
+        if (sketch != null) {
+            sketch.ensureCapacity(size);
+            sketch.increment(hash);
+        }
+        evict();
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws NullPointerException if the key is null
+     */
+    @Override
+    public V remove(K key) {
+        Node<K, V> node = find(key);
+        if (node == null) {
+            return null;
+        }
+        unlink(node);
+        return node.value;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>
+     * Entries are visited in the table order and the access order is not
+     * changed. {@link Map.Entry#setValue} is not supported.
+     */
+    @Override
+    public Iterator<Map.Entry<K, V>> entryIterator() {
+        return new EntryIterator();
+    }
+
+    private final class EntryIterator implements Iterator<Map.Entry<K, V>> {
+
+        private int index = 0;
+        private Node<K, V> next;
+
+        private EntryIterator() {
+            next = nextBucket();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Map.Entry<K, V> next() {
+            Node<K, V> node = next;
+            if (node == null) {
+                throw new NoSuchElementException();
+            }
+            next = node.next != null ? node.next : nextBucket();
+            return node;
+        }
+
+        private Node<K, V> nextBucket() {
+            while (index < table.length) {
+                Node<K, V> node = table[index++];
+                if (node != null) {
+                    return node;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Returns the eviction policy of the cache.
+     *
+     * @return the eviction policy of the cache
+     */
+    public EvictionPolicy policy() {
+        return policy;
+    }
+
+    /**
+     * Returns the maximum total weight of the entries.
+     *
+     * @return the maximum total weight of the entries
+     */
+    public long maximumWeight() {
+        return maximumWeight;
+    }
+
+    /**
+     * Returns the total weight of the entries.
+     *
+     * @return the total weight of the entries
+     */
+    public long weightedSize() {
+        return weightedSize;
+    }
+
+    /**
+     * Returns the number of {@link #get} calls which found the key.
+     *
+     * @return the number of hits
+     */
+    public long hitCount() {
+        return hitCount;
+    }
+
+    /**
+     * Returns the number of {@link #get} calls which did not find the key.
+     *
+     * @return the number of misses
+     */
+    public long missCount() {
+        return missCount;
+    }
+
+    /**
+     * Returns the number of entries evicted by the policy; removed entries
+     * are not counted.
+     *
+     * @return the number of evicted entries
+     */
+    public long evictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * Returns the ratio of hits to all {@link #get} calls, one if there were
+     * none.
+     *
+     * @return the hit ratio
+     */
+    public double hitRate() {
+        long requestCount = hitCount + missCount;
+        return requestCount == 0 ? 1.0 : (double) hitCount / requestCount;
+    }
+
+    private void onAccess(Node<K, V> node) {
+        if (sketch != null) {
+            sketch.increment(node.hash);
+        }
+        if (node.queue == probation) {
+            probation.unlink(node);
+            protectedQueue.linkLast(node);
+            while (protectedQueue.weight > protectedMaximum) {
+                Node<K, V> demoted = protectedQueue.head;
+                protectedQueue.unlink(demoted);
+                probation.linkLast(demoted);
+            }
+        } else {
+            node.queue.moveToLast(node);
+        }
+    }
+
+    /**
+     * Moves the overflow of the window to the probation queue as candidates,
+     * then evicts until the total weight fits the maximum. In the LRU policy
+     * the window holds all entries and its eldest entries are evicted.
+     */
+    private void evict() {
+        Node<K, V> candidate = null;
+        if (sketch != null) {
+            while (window.weight > windowMaximum) {
+                Node<K, V> node = window.head;
+                window.unlink(node);
+                probation.linkLast(node);
+                if (candidate == null) {
+                    candidate = node;
+                }
+            }
+        }
+
+        while (weightedSize > maximumWeight) {
+            Node<K, V> victim = eldest();
+            if (candidate == null) {
+                evictNode(victim);
+            } else if (candidate == victim) {
+                candidate = candidate.after;
+                evictNode(victim);
+            } else if (admit(candidate, victim)) {
+                evictNode(victim);
+            } else {
+                Node<K, V> rejected = candidate;
+                candidate = candidate.after;
+                evictNode(rejected);
+            }
+        }
+    }
+
+    /**
+     * Returns the eldest node of the main space, or of the window if the main
+     * space is empty.
+     */
+    private Node<K, V> eldest() {
+        if (probation.head != null) {
+            return probation.head;
+        }
+        if (protectedQueue.head != null) {
+            return protectedQueue.head;
+        }
+        return window.head;
+    }
+
+    private boolean admit(Node<K, V> candidate, Node<K, V> victim) {
+        return sketch.frequency(candidate.hash) > sketch.frequency(victim.hash);
+    }
+
+    private void evictNode(Node<K, V> node) {
+        unlink(node);
+        evictionCount++;
+    }
+
+    /**
+     * Removes the node from the table and from its queue.
+     */
+    private void unlink(Node<K, V> node) {
+        int index = node.hash & (table.length - 1);
+        Node<K, V> current = table[index];
+        if (current == node) {
+            table[index] = node.next;
+        } else {
+            while (current.next != node) {
+                current = current.next;
+            }
+            current.next = node.next;
+        }
+        node.next = null;
+        node.queue.unlink(node);
+        size--;
+        weightedSize -= node.weight;
+    }
+
+    private Node<K, V> find(K key) {
+        return find(key, hash(key));
+    }
+
+    private Node<K, V> find(K key, int hash) {
+        Node<K, V> node = table[hash & (table.length - 1)];
+        while (node != null) {
+            if (node.hash == hash && key.equals(node.key)) {
+                return node;
+            }
+            node = node.next;
+        }
+        return null;
+    }
+
+    private void resize() {
+        Node<K, V>[] prevTable = table;
+        table = newTable(prevTable.length << 1);
+        int mask = table.length - 1;
+        for (Node<K, V> node : prevTable) {
+            while (node != null) {
+                Node<K, V> next = node.next;
+                int index = node.hash & mask;
+                node.next = table[index];
+                table[index] = node;
+                node = next;
+            }
+        }
+    }
+
+    private int weigh(K key, V value) {
+        int weight = weigher.applyAsInt(key, value);
+        if (weight < 0) {
+            throw new IllegalArgumentException(
+                    "weight=" + weight + " of " + key + " is negative");
+        }
+        return weight;
+    }
+
+    private static int hash(Object key) {
+        int hash = key.hashCode();
+        return hash ^ (hash >>> 16);
+    }
+
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private static <K, V> Node<K, V>[] newTable(int capacity) {
+        return (Node<K, V>[]) new Node[capacity];
+    }
+}
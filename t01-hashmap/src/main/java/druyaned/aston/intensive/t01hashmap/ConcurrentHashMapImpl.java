@@ -0,0 +1,922 @@
+package druyaned.aston.intensive.t01hashmap;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * Thread-safe implementation of the {@link HashMapTask task} in the manner of
+ * {@link java.util.concurrent.ConcurrentHashMap}.
+ *
+ * <p>
+ * Reads take no locks: the table is a volatile field, its bins are read with
+ * volatile semantics, and nodes are published by CAS or a volatile write
+ * after their final key and hash and volatile value and next are set. A put
+ * into an empty bin is a single CAS; any other update locks only the first
+ * node of its bin, so writers of different bins do not contend. The size is
+ * kept by a {@link LongAdder}.
+ *
+ * <p>
+ * The remapping methods ({@link #putIfAbsent}, {@link #computeIfAbsent},
+ * {@link #computeIfPresent}, {@link #compute} and {@link #merge}) are atomic:
+ * the function is applied once while the bin is locked, and an empty bin is
+ * held by a locked reservation node meanwhile. So the function should be
+ * short and must not update the map.
+ *
+ * <p>
+ * Capacity is a power of two and the hash is spread as in
+ * {@link HashMapImpl.TableScheme#POWER_OF_TWO}. When the size reaches
+ * <code>3/4</code> of capacity, the table is doubled cooperatively: threads
+ * claim strides of bins from the end of the old table, split each bin into
+ * "lo" and "hi" lists of the new table and leave a forwarding node in the old
+ * bin. A reader which meets a forwarding node continues in the new table, a
+ * writer which meets it helps the transfer first. Nodes of the old bins are
+ * never modified during a transfer (concurrent readers may still walk them),
+ * the trailing run of nodes which go to the same new bin is reused and the
+ * rest is copied.
+ *
+ * <p>
+ * Null keys and null values are not permitted, since null is reserved to
+ * mean "no mapping" for lock-free reads.
+ *
+ * @param <K> the type of keys maintained by this map
+ * @param <V> the type of mapped values
+ * @author druyaned
+ */
+public class ConcurrentHashMapImpl<K, V> implements HashMapTask<K, V> {
+
+    public static final int DEFAULT_CAPACITY = 16;
+    public static final int MAX_CAPACITY = 1 << 30;
+
+    /**
+     * Hash of forwarding nodes; hashes of ordinary nodes are non-negative.
+     */
+    private static final int MOVED = -1;
+
+    /**
+     * Hash of reservation nodes.
+     */
+    private static final int RESERVED = -2;
+    private static final int HASH_BITS = 0x7fffffff;
+    private static final int MIN_TRANSFER_STRIDE = 16;
+    private static final int RESIZE_STAMP_BITS = 16;
+    private static final int RESIZE_STAMP_SHIFT = 32 - RESIZE_STAMP_BITS;
+    private static final int MAX_RESIZERS = (1 << RESIZE_STAMP_SHIFT) - 1;
+    private static final int NCPU = Runtime.getRuntime().availableProcessors();
+
+    private static final VarHandle BIN;
+    private static final VarHandle SIZE_CTL;
+    private static final VarHandle TRANSFER_INDEX;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            BIN = MethodHandles.arrayElementVarHandle(Node[].class);
+            SIZE_CTL = lookup.findVarHandle(
+                    ConcurrentHashMapImpl.class, "sizeCtl", int.class);
+            TRANSFER_INDEX = lookup.findVarHandle(
+                    ConcurrentHashMapImpl.class, "transferIndex", int.class);
+        } catch (ReflectiveOperationException exc) {
+            throw new ExceptionInInitializerError(exc);
+        }
+    }
+
+    /**
+     * Node of a bin, which is also the entry returned by the iterator; the
+     * entry does not support {@link Map.Entry#setValue}.
+     */
+    private static class Node<K, V> implements Map.Entry<K, V> {
+
+        final int hash;
+        final K key;
+        volatile V value;
+        volatile Node<K, V> next;
+
+        Node(int hash, K key, V value, Node<K, V> next) {
+            this.hash = hash;
+            this.key = key;
+            this.value = value;
+            this.next = next;
+        }
+
+        Node<K, V> find(int h, Object k) {
+            for (Node<K, V> e = this; e != null; e = e.next) {
+                if (e.hash == h && k.equals(e.key)) {
+                    return e;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public K getKey() {
+            return key;
+        }
+
+        @Override
+        public V getValue() {
+            return value;
+        }
+
+        @Override
+        public V setValue(V newValue) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Map.Entry<?, ?> entry
+                    && Objects.equals(key, entry.getKey())
+                    && Objects.equals(value, entry.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(key) ^ Objects.hashCode(value);
+        }
+
+        @Override
+        public String toString() {
+            return key + "=" + value;
+        }
+    }
+
+    /**
+     * Placed into a transferred bin of the old table, leads to the new one.
+     */
+    private static final class ForwardingNode<K, V> extends Node<K, V> {
+
+        final Node<K, V>[] nextTable;
+
+        ForwardingNode(Node<K, V>[] nextTable) {
+            super(MOVED, null, null, null);
+            this.nextTable = nextTable;
+        }
+
+        @Override
+        Node<K, V> find(int h, Object k) {
+            Node<K, V>[] tab = nextTable;
+            while (true) {
+                Node<K, V> e = binAt(tab, (tab.length - 1) & h);
+                if (e == null) {
+                    return null;
+                }
+                if (e instanceof ForwardingNode<K, V> fwd) {
+                    tab = fwd.nextTable;
+                    continue;
+                }
+                return e.find(h, k);
+            }
+        }
+    }
+
+    /**
+     * Holds an empty bin while a remapping function computes its value.
+     */
+    private static final class ReservationNode<K, V> extends Node<K, V> {
+
+        ReservationNode() {
+            super(RESERVED, null, null, null);
+        }
+
+        @Override
+        Node<K, V> find(int h, Object k) {
+            return null;
+        }
+    }
+
+    private volatile Node<K, V>[] table;
+    private volatile Node<K, V>[] nextTable;
+
+    /**
+     * Table initialization and resizing control: -1 while the table is
+     * initialized; <code>(resizeStamp &lt;&lt; RESIZE_STAMP_SHIFT) + 1 +
+     * resizers</code> while it is resized; otherwise the size at which the
+     * table is resized next (or the initial capacity before initialization).
+     */
+    private volatile int sizeCtl;
+
+    /**
+     * The next bin index (plus one) to claim while resizing.
+     */
+    private volatile int transferIndex;
+
+    private final LongAdder count = new LongAdder();
+
+    public ConcurrentHashMapImpl() {
+        this.sizeCtl = DEFAULT_CAPACITY;
+    }
+
+    /**
+     * Creates the map which holds the expected number of entries without
+     * resizing.
+     *
+     * @param expectedSize the expected number of entries
+     * @throws IllegalArgumentException if the expected size is negative
+     */
+    public ConcurrentHashMapImpl(int expectedSize) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException(
+                    "expectedSize=" + expectedSize + " is negative");
+        }
+        int capacity = DEFAULT_CAPACITY;
+        while (capacity < MAX_CAPACITY
+                && expectedSize >= capacity - (capacity >>> 2)) {
+            capacity <<= 1;
+        }
+        this.sizeCtl = capacity;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>
+     * Takes no locks and never blocks.
+     *
+     * @throws NullPointerException if the key is null
+     */
+    @Override
+    public V get(K key) {
+        int h = spread(key.hashCode());
+        Node<K, V>[] tab = table;
+        if (tab == null) {
+            return null;
+        }
+        Node<K, V> e = binAt(tab, (tab.length - 1) & h);
+        if (e == null) {
+            return null;
+        }
+        if (e.hash == h && key.equals(e.key)) {
+            return e.value;
+        }
+        Node<K, V> found = e.find(h, key);
+        return found == null ? null : found.value;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws NullPointerException if the key or the value is null
+     */
+    @Override
+    public V put(K key, V value) {
+        if (key == null || value == null) {
+            throw new NullPointerException();
+        }
+        int h = spread(key.hashCode());
+        int binCount = 0;
+        Node<K, V>[] tab = table;
+        while (true) {
+            if (tab == null) {
+                tab = initTable();
+                continue;
+            }
+            int i = (tab.length - 1) & h;
+            Node<K, V> f = binAt(tab, i);
+            if (f == null) {
+                if (casBin(tab, i, null, new Node<>(h, key, value, null))) {
+                    break;
+                }
+                continue;
+            }
+            if (f.hash == MOVED) {
+                tab = helpTransfer(tab, f);
+                continue;
+            }
+            V prevValue = null;
+            synchronized (f) {
+                if (binAt(tab, i) == f) {
+                    binCount = 1;
+                    for (Node<K, V> e = f;; binCount++) {
+                        if (e.hash == h && key.equals(e.key)) {
+                            prevValue = e.value;
+                            e.value = value;
+                            break;
+                        }
+                        if (e.next == null) {
+                            e.next = new Node<>(h, key, value, null);
+                            break;
+                        }
+                        e = e.next;
+                    }
+                }
+            }
+            if (binCount != 0) {
+                if (prevValue != null) {
+                    return prevValue;
+                }
+                break;
+            }
+        }
+        addCount(1);
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws NullPointerException if the key is null
+     */
+    @Override
+    public V remove(K key) {
+        int h = spread(key.hashCode());
+        Node<K, V>[] tab = table;
+        while (true) {
+            if (tab == null) {
+                return null;
+            }
+            int i = (tab.length - 1) & h;
+            Node<K, V> f = binAt(tab, i);
+            if (f == null) {
+                return null;
+            }
+            if (f.hash == MOVED) {
+                tab = helpTransfer(tab, f);
+                continue;
+            }
+            boolean validated = false;
+            V prevValue = null;
+            synchronized (f) {
+                if (binAt(tab, i) == f) {
+                    validated = true;
+                    for (Node<K, V> e = f, pred = null; e != null;
+                            pred = e, e = e.next) {
+                        if (e.hash == h && key.equals(e.key)) {
+                            prevValue = e.value;
+                            if (pred == null) {
+                                setBin(tab, i, e.next);
+                            } else {
+                                pred.next = e.next;
+                            }
+                            break;
+                        }
+                    }
+                }
+            }
+            if (validated) {
+                if (prevValue != null) {
+                    count.add(-1);
+                }
+                return prevValue;
+            }
+        }
+    }
+
+    /**
+     * Kinds of the remapping operations, which share one walk of a bin.
+     */
+    private enum Remap {
+        PUT_IF_ABSENT, IF_ABSENT, IF_PRESENT, COMPUTE, MERGE
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws NullPointerException if the key or the value is null
+     */
+    @Override
+    public V putIfAbsent(K key, V value) {
+        Objects.requireNonNull(value);
+        return remap(Remap.PUT_IF_ABSENT, key, value, null);
+    }
+
+    @Override
+    public V computeIfAbsent(K key,
+            Function<? super K, ? extends V> mappingFunction) {
+
+        Objects.requireNonNull(mappingFunction);
+        return remap(Remap.IF_ABSENT, key, null,
+                (k, oldValue) -> mappingFunction.apply(k));
+    }
+
+    @Override
+    public V computeIfPresent(K key,
+            BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+
+        Objects.requireNonNull(remappingFunction);
+        return remap(Remap.IF_PRESENT, key, null, remappingFunction);
+    }
+
+    @Override
+    public V compute(K key,
+            BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+
+        Objects.requireNonNull(remappingFunction);
+        return remap(Remap.COMPUTE, key, null, remappingFunction);
+    }
+
+    @Override
+    public V merge(K key, V value,
+            BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+
+        Objects.requireNonNull(value);
+        Objects.requireNonNull(remappingFunction);
+        return remap(Remap.MERGE, key, value,
+                (k, oldValue) -> remappingFunction.apply(oldValue, value));
+    }
+
+    /**
+     * Performs a remapping operation atomically. A non-empty bin is locked by
+     * its first node for the walk and the function call; an empty bin gets a
+     * locked reservation node by CAS, which is replaced by the new node or
+     * cleared afterwards, so concurrent updates of the bin wait for the
+     * function as well.
+     */
+    private V remap(Remap kind, K key, V value,
+            BiFunction<? super K, ? super V, ? extends V> function) {
+
+        int h = spread(key.hashCode());
+        int delta = 0;
+        V result = null;
+        Node<K, V>[] tab = table;
+        while (true) {
+            if (tab == null) {
+                tab = initTable();
+                continue;
+            }
+            int i = (tab.length - 1) & h;
+            Node<K, V> f = binAt(tab, i);
+            if (f == null) {
+                if (kind == Remap.IF_PRESENT) {
+                    return null;
+                }
+                if (kind == Remap.PUT_IF_ABSENT || kind == Remap.MERGE) {
+                    if (casBin(tab, i, null, new Node<>(h, key, value, null))) {
+                        delta = 1;
+                        result = kind == Remap.MERGE ? value : null;
+                        break;
+                    }
+                    continue;
+                }
+                Node<K, V> r = new ReservationNode<>();
+                boolean reserved = false;
+                synchronized (r) {
+                    if (casBin(tab, i, null, r)) {
+                        reserved = true;
+                        Node<K, V> node = null;
+                        try {
+                            result = function.apply(key, null);
+                            if (result != null) {
+                                node = new Node<>(h, key, result, null);
+                                delta = 1;
+                            }
+                        } finally {
+                            setBin(tab, i, node);
+                        }
+                    }
+                }
+                if (reserved) {
+                    break;
+                }
+                continue;
+            }
+            if (f.hash == MOVED) {
+                tab = helpTransfer(tab, f);
+                continue;
+            }
+            boolean validated = false;
+            synchronized (f) {
+                if (binAt(tab, i) == f) {
+                    if (f.hash == RESERVED) {
+                        throw new IllegalStateException("Recursive update");
+                    }
+                    validated = true;
+                    Node<K, V> e = f;
+                    Node<K, V> pred = null;
+                    while (e != null && !(e.hash == h && key.equals(e.key))) {
+                        pred = e;
+                        e = e.next;
+                    }
+                    if (e != null) {
+                        V oldValue = e.value;
+                        if (kind == Remap.PUT_IF_ABSENT
+                                || kind == Remap.IF_ABSENT) {
+
+                            result = oldValue;
+                        } else {
+                            result = function.apply(key, oldValue);
+                            if (result != null) {
+                                e.value = result;
+                            } else {
+                                if (pred == null) {
+                                    setBin(tab, i, e.next);
+                                } else {
+                                    pred.next = e.next;
+                                }
+                                delta = -1;
+                            }
+                        }
+                    } else if (kind != Remap.IF_PRESENT) {
+                        V newValue = kind == Remap.PUT_IF_ABSENT
+                                || kind == Remap.MERGE
+                                ? value
+                                : function.apply(key, null);
+                        if (newValue != null) {
+                            pred.next = new Node<>(h, key, newValue, null);
+                            delta = 1;
+                        }
+                        result = kind == Remap.PUT_IF_ABSENT ? null : newValue;
+                    }
+                }
+            }
+            if (validated) {
+                break;
+            }
+        }
+        if (delta > 0) {
+            addCount(1);
+        } else if (delta < 0) {
+            count.add(-1);
+        }
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>
+     * The result is an estimate if the map is modified concurrently.
+     */
+    @Override
+    public int size() {
+        long n = count.sum();
+        if (n < 0) {
+            return 0;
+        }
+        return n > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) n;
+    }
+
+    /**
+     * Removes all key-value pairs from the map keeping the capacity. Bins are
+     * cleared one by one, so concurrent updates of other bins may survive.
+     */
+    public void clear() {
+        long delta = 0;
+        int i = 0;
+        Node<K, V>[] tab = table;
+        while (tab != null && i < tab.length) {
+            Node<K, V> f = binAt(tab, i);
+            if (f == null) {
+                i++;
+            } else if (f.hash == MOVED) {
+                tab = helpTransfer(tab, f);
+                i = 0;
+            } else {
+                synchronized (f) {
+                    if (binAt(tab, i) == f) {
+                        for (Node<K, V> e = f; e != null; e = e.next) {
+                            delta--;
+                        }
+                        setBin(tab, i++, null);
+                    }
+                }
+            }
+        }
+        if (delta != 0) {
+            count.add(delta);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>
+     * Unlike the other implementations, the map may be modified while
+     * iterating, also by other threads. The iterator is weakly consistent: it
+     * never throws because of a concurrent update, returns each mapping at
+     * most once and reflects the updates made after its creation or not. When
+     * it meets a transferred bin, it walks the two bins of the next table
+     * which the bin is split into before continuing in the old one.
+     */
+    @Override
+    public Iterator<Map.Entry<K, V>> entryIterator() {
+        return new Traverser();
+    }
+
+    private final class Traverser implements Iterator<Map.Entry<K, V>> {
+
+        private Node<K, V>[] tab = table;
+        private Node<K, V> next = null;
+        private TableStack<K, V> stack = null;
+        private TableStack<K, V> spare = null;
+        private int index = 0;
+        private int baseIndex = 0;
+        private final int baseSize = tab == null ? 0 : tab.length;
+
+        private Traverser() {
+            advance();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Map.Entry<K, V> next() {
+            Node<K, V> node = next;
+            if (node == null) {
+                throw new NoSuchElementException();
+            }
+            advance();
+            return node;
+        }
+
+        private void advance() {
+            Node<K, V> e = next == null ? null : next.next;
+            while (e == null) {
+                Node<K, V>[] t = tab;
+                int i = index;
+                if (baseIndex >= baseSize || t == null || i >= t.length) {
+                    next = null;
+                    return;
+                }
+                int n = t.length;
+                e = binAt(t, i);
+                if (e instanceof ForwardingNode<K, V> fwd) {
+                    tab = fwd.nextTable;
+                    e = null;
+                    pushState(t, i, n);
+                    continue;
+                }
+                if (e != null && e.hash == RESERVED) {
+                    e = null;
+                }
+                if (stack != null) {
+                    recoverState(n);
+                } else if ((index = i + baseSize) >= n) {
+                    index = ++baseIndex;
+                }
+            }
+            next = e;
+        }
+
+        /**
+         * Saves the position in the table before descending into the next
+         * table.
+         */
+        private void pushState(Node<K, V>[] t, int i, int n) {
+            TableStack<K, V> s = spare;
+            if (s == null) {
+                s = new TableStack<>();
+            } else {
+                spare = s.next;
+            }
+            s.tab = t;
+            s.length = n;
+            s.index = i;
+            s.next = stack;
+            stack = s;
+        }
+
+        /**
+         * Moves to the next bin of the next table which the saved bin is
+         * split into, or pops the saved position when both are walked.
+         */
+        private void recoverState(int n) {
+            TableStack<K, V> s;
+            int len;
+            while ((s = stack) != null && (index += (len = s.length)) >= n) {
+                n = len;
+                index = s.index;
+                tab = s.tab;
+                s.tab = null;
+                TableStack<K, V> below = s.next;
+                s.next = spare;
+                stack = below;
+                spare = s;
+            }
+            if (s == null && (index += baseSize) >= n) {
+                index = ++baseIndex;
+            }
+        }
+    }
+
+    private static final class TableStack<K, V> {
+
+        private Node<K, V>[] tab;
+        private int length;
+        private int index;
+        private TableStack<K, V> next;
+    }
+
+    private Node<K, V>[] initTable() {
+        Node<K, V>[] tab;
+        while ((tab = table) == null) {
+            int sc = sizeCtl;
+            if (sc < 0) {
+                Thread.yield();
+            } else if (SIZE_CTL.compareAndSet(this, sc, -1)) {
+                try {
+                    if ((tab = table) == null) {
+                        int n = sc > 0 ? sc : DEFAULT_CAPACITY;
+                        tab = newTable(n);
+                        table = tab;
+                        sc = n - (n >>> 2);
+                    }
+                } finally {
+                    sizeCtl = sc;
+                }
+                break;
+            }
+        }
+        return tab;
+    }
+
+    /**
+     * Adds to the count and starts or helps a resize if the table is
+     * populated enough.
+     */
+    private void addCount(long x) {
+        count.add(x);
+        long s = count.sum();
+        Node<K, V>[] tab;
+        int sc;
+        while (s >= (long) (sc = sizeCtl) && (tab = table) != null
+                && tab.length < MAX_CAPACITY) {
+
+            int rs = resizeStamp(tab.length) << RESIZE_STAMP_SHIFT;
+            if (sc < 0) {
+                Node<K, V>[] nt = nextTable;
+                if (sc == rs + MAX_RESIZERS || sc == rs + 1 || nt == null
+                        || transferIndex <= 0) {
+                    break;
+                }
+                if (SIZE_CTL.compareAndSet(this, sc, sc + 1)) {
+                    transfer(tab, nt);
+                }
+            } else if (SIZE_CTL.compareAndSet(this, sc, rs + 2)) {
+                transfer(tab, null);
+            }
+            s = count.sum();
+        }
+    }
+
+    private Node<K, V>[] helpTransfer(Node<K, V>[] tab, Node<K, V> f) {
+        if (f instanceof ForwardingNode<K, V> fwd) {
+            Node<K, V>[] nextTab = fwd.nextTable;
+            int rs = resizeStamp(tab.length) << RESIZE_STAMP_SHIFT;
+            int sc;
+            while (nextTab == nextTable && table == tab
+                    && (sc = sizeCtl) < 0) {
+
+                if (sc == rs + MAX_RESIZERS || sc == rs + 1
+                        || transferIndex <= 0) {
+                    break;
+                }
+                if (SIZE_CTL.compareAndSet(this, sc, sc + 1)) {
+                    transfer(tab, nextTab);
+                    break;
+                }
+            }
+            return nextTab;
+        }
+        return table;
+    }
+
+    /**
+     * Moves bins of the table into the next table. Each participant claims
+     * strides of bins until none are left; the last one to leave rechecks
+     * all bins and publishes the next table.
+     */
+    private void transfer(Node<K, V>[] tab, Node<K, V>[] nextTab) {
+        int n = tab.length;
+        int stride = NCPU > 1 ? (n >>> 3) / NCPU : n;
+        if (stride < MIN_TRANSFER_STRIDE) {
+            stride = MIN_TRANSFER_STRIDE;
+        }
+        if (nextTab == null) {
+            try {
+                nextTab = newTable(n << 1);
+            } catch (OutOfMemoryError err) {
+                sizeCtl = Integer.MAX_VALUE;
+                return;
+            }
+            nextTable = nextTab;
+            transferIndex = n;
+        }
+        ForwardingNode<K, V> fwd = new ForwardingNode<>(nextTab);
+        boolean advance = true;
+        boolean finishing = false;
+        for (int i = 0, bound = 0;;) {
+            while (advance) {
+                int nextIndex;
+                if (--i >= bound || finishing) {
+                    advance = false;
+                } else if ((nextIndex = transferIndex) <= 0) {
+                    i = -1;
+                    advance = false;
+                } else {
+                    int nextBound = nextIndex > stride
+                            ? nextIndex - stride
+                            : 0;
+                    if (TRANSFER_INDEX.compareAndSet(
+                            this, nextIndex, nextBound)) {
+                        bound = nextBound;
+                        i = nextIndex - 1;
+                        advance = false;
+                    }
+                }
+            }
+            if (i < 0) {
+                if (finishing) {
+                    nextTable = null;
+                    table = nextTab;
+                    sizeCtl = (n << 1) - (n >>> 1);
+                    return;
+                }
+                int sc = sizeCtl;
+                if (SIZE_CTL.compareAndSet(this, sc, sc - 1)) {
+                    if (sc - 2 != resizeStamp(n) << RESIZE_STAMP_SHIFT) {
+                        return;
+                    }
+                    finishing = true;
+                    advance = true;
+                    i = n;
+                }
+                continue;
+            }
+            Node<K, V> f = binAt(tab, i);
+            if (f == null) {
+                advance = casBin(tab, i, null, fwd);
+            } else if (f.hash == MOVED) {
+                advance = true;
+            } else {
+                synchronized (f) {
+                    if (binAt(tab, i) == f) {
+                        splitBin(f, n, nextTab, i);
+                        setBin(tab, i, fwd);
+                        advance = true;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Distributes nodes of the bin between "lo" and "hi" bins of the next
+     * table. The trailing run of nodes which go to the same bin is reused,
+     * preceding nodes are copied.
+     */
+    private static <K, V> void splitBin(Node<K, V> f, int n,
+            Node<K, V>[] nextTab, int i) {
+
+        int runBit = f.hash & n;
+        Node<K, V> lastRun = f;
+        for (Node<K, V> p = f.next; p != null; p = p.next) {
+            int b = p.hash & n;
+            if (b != runBit) {
+                runBit = b;
+                lastRun = p;
+            }
+        }
+        Node<K, V> lo = runBit == 0 ? lastRun : null;
+        Node<K, V> hi = runBit == 0 ? null : lastRun;
+        for (Node<K, V> p = f; p != lastRun; p = p.next) {
+            if ((p.hash & n) == 0) {
+                lo = new Node<>(p.hash, p.key, p.value, lo);
+            } else {
+                hi = new Node<>(p.hash, p.key, p.value, hi);
+            }
+        }
+        setBin(nextTab, i, lo);
+        setBin(nextTab, i + n, hi);
+    }
+
+    private static int resizeStamp(int n) {
+        return Integer.numberOfLeadingZeros(n)
+                | (1 << (RESIZE_STAMP_BITS - 1));
+    }
+
+    private static int spread(int h) {
+        return (h ^ (h >>> 16)) & HASH_BITS;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <K, V> Node<K, V> binAt(Node<K, V>[] tab, int i) {
+        return (Node<K, V>) BIN.getVolatile(tab, i);
+    }
+
+    private static <K, V> boolean casBin(Node<K, V>[] tab, int i,
+            Node<K, V> expected, Node<K, V> bin) {
+
+        return BIN.compareAndSet(tab, i, expected, bin);
+    }
+
+    private static <K, V> void setBin(Node<K, V>[] tab, int i,
+            Node<K, V> bin) {
+
+        BIN.setRelease(tab, i, bin);
+    }
+
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private static <K, V> Node<K, V>[] newTable(int capacity) {
+        return (Node<K, V>[]) new Node[capacity];
+    }
+}
@@ -0,0 +1,488 @@
+package druyaned.aston.intensive.t01hashmap;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Implementation of the {@link HashMapTask task} by bucketized cuckoo
+ * hashing, where a lookup reads a bounded number of slots.
+ *
+ * <p>
+ * The table is split into buckets of {@link #BUCKET_SIZE} slots, and a key
+ * may reside only in one of its two buckets, which are taken from the low
+ * and the high halves of a 64-bit mix of its hash and a seed. A lookup
+ * therefore compares at most eight cached hashes (two cache lines per array)
+ * and, only while the stash is not empty, the hashes of the stash.
+ *
+ * <p>
+ * An insert takes a free slot of either bucket. If both are full, it evicts
+ * a random entry of one of them and moves the evicted entry into its other
+ * bucket, evicting again if that one is full too, at most
+ * {@link #MAX_DISPLACEMENTS} times. The entry left without a slot at the end
+ * of the path goes to a small stash. When the stash exceeds
+ * {@link #STASH_SIZE} entries, the table is rebuilt with new seeds, and
+ * doubled if it is more than half full. The table is doubled as well when
+ * <code>size &gt;= LOAD_FACTOR * capacity</code>; four slots per bucket
+ * keep inserts short up to that load.
+ *
+ * <p>
+ * Keys with equal hash codes share both buckets whatever the seeds are, so
+ * more than <code>2 * BUCKET_SIZE</code> of them can not be placed: they stay
+ * in the stash, which then grows and is searched linearly. Removal frees the
+ * slot without tombstones and moves a stashed entry into it if the slot is
+ * in one of its buckets.
+ *
+ * <p>
+ * The map permits null key and null values. A cached hash of zero marks a
+ * free slot.
+ *
+ * @param <K> the type of keys maintained by this map
+ * @param <V> the type of mapped values
+ * @author druyaned
+ */
+public class CuckooHashMap<K, V> implements HashMapTask<K, V> {
+
+    public static final int BUCKET_SIZE = 4;
+    public static final int DEFAULT_CAPACITY = 16;
+    public static final int MAX_CAPACITY = 1 << 30;
+    public static final double LOAD_FACTOR = 0.9;
+    public static final int MAX_DISPLACEMENTS = 128;
+    public static final int STASH_SIZE = 8;
+
+    private int[] hashes;
+    private Object[] keys;
+    private Object[] values;
+    private int bucketMask;
+    private int threshold;
+    private long seed = 0;
+    private int size = 0;
+
+    private int[] stashHashes = new int[STASH_SIZE];
+    private Object[] stashKeys = new Object[STASH_SIZE];
+    private Object[] stashValues = new Object[STASH_SIZE];
+    private int stashSize = 0;
+    private int stashLimit = STASH_SIZE;
+
+    /**
+     * State of the xorshift generator which chooses the evicted slots.
+     */
+    private int random = 0x2545f491;
+
+    public CuckooHashMap() {
+        allocate(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates the map which holds the expected number of entries without
+     * growing.
+     *
+     * @param expectedSize the expected number of entries
+     * @throws IllegalArgumentException if the expected size is negative
+     */
+    public CuckooHashMap(int expectedSize) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException(
+                    "expectedSize=" + expectedSize + " is negative");
+        }
+        int capacity = DEFAULT_CAPACITY;
+        while (capacity < MAX_CAPACITY
+                && expectedSize >= LOAD_FACTOR * capacity) {
+            capacity <<= 1;
+        }
+        allocate(capacity);
+    }
+
+    @Override
+    public V get(K key) {
+        int hash = hash(key);
+        int index = find(hash, key);
+        if (index >= 0) {
+            return valueAt(index);
+        }
+        if (stashSize > 0) {
+            int stashIndex = findStashed(hash, key);
+            if (stashIndex >= 0) {
+                return stashValueAt(stashIndex);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>
+     * A new entry goes through the displacement path described above, which
+     * may end in the stash or in a rebuild of the table.
+     */
+    @Override
+    public V put(K key, V value) {
+        int hash = hash(key);
+        int index = find(hash, key);
+        if (index >= 0) {
+            V prevValue = valueAt(index);
+            values[index] = value;
+            return prevValue;
+        }
+        if (stashSize > 0) {
+            int stashIndex = findStashed(hash, key);
+            if (stashIndex >= 0) {
+                V prevValue = stashValueAt(stashIndex);
+                stashValues[stashIndex] = value;
+                return prevValue;
+            }
+        }
+
+        if (size >= threshold) {
+            rebuild(grownCapacity());
+        }
+        insert(hash, key, value);
+        size++;
+        if (stashSize > stashLimit) {
+            boolean grow = size > hashes.length / 2;
+            rebuild(grow ? grownCapacity() : hashes.length);
+        }
+        return null;
+    }
+
+    @Override
+    public V remove(K key) {
+        int hash = hash(key);
+        int index = find(hash, key);
+        if (index >= 0) {
+            V prevValue = valueAt(index);
+            set(index, 0, null, null);
+            size--;
+            if (stashSize > 0) {
+                unstashInto(index);
+            }
+            return prevValue;
+        }
+        if (stashSize > 0) {
+            int stashIndex = findStashed(hash, key);
+            if (stashIndex >= 0) {
+                V prevValue = stashValueAt(stashIndex);
+                unstash(stashIndex);
+                size--;
+                return prevValue;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the number of slots of the table, not counting the stash.
+     *
+     * @return the number of slots of the table
+     */
+    public int capacity() {
+        return hashes.length;
+    }
+
+    /**
+     * Returns the number of entries which are kept in the stash.
+     *
+     * @return the number of stashed entries
+     */
+    public int stashSize() {
+        return stashSize;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>
+     * The table is walked first, then the stash. The iterator is itself the
+     * entry of the current slot, so iteration allocates nothing per entry;
+     * {@link Map.Entry#setValue} writes through.
+     */
+    @Override
+    public Iterator<Map.Entry<K, V>> entryIterator() {
+        return new SlotIterator();
+    }
+
+    private final class SlotIterator
+            implements Iterator<Map.Entry<K, V>>, Map.Entry<K, V> {
+
+        /**
+         * Slots of the table come first, the stash continues the numbering.
+         */
+        private int index = -1;
+        private int next = nextSlot(0);
+
+        @Override
+        public boolean hasNext() {
+            return next < hashes.length + stashSize;
+        }
+
+        @Override
+        public Map.Entry<K, V> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            index = next;
+            next = nextSlot(index + 1);
+            return this;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public K getKey() {
+            return (K) (index < hashes.length
+                    ? keys[index]
+                    : stashKeys[index - hashes.length]);
+        }
+
+        @Override
+        public V getValue() {
+            return index < hashes.length
+                    ? valueAt(index)
+                    : stashValueAt(index - hashes.length);
+        }
+
+        @Override
+        public V setValue(V value) {
+            V prevValue = getValue();
+            if (index < hashes.length) {
+                values[index] = value;
+            } else {
+                stashValues[index - hashes.length] = value;
+            }
+            return prevValue;
+        }
+
+        private int nextSlot(int from) {
+            while (from < hashes.length && hashes[from] == 0) {
+                from++;
+            }
+            return from;
+        }
+    }
+
+    /**
+     * Returns the slot of the key in one of its two buckets or -1.
+     */
+    private int find(int hash, Object key) {
+        long mixed = LongHashing.mix(hash ^ seed);
+        int index = firstBucket(mixed) * BUCKET_SIZE;
+        for (int end = index + BUCKET_SIZE; index < end; index++) {
+            if (hashes[index] == hash && areEqual(key, keys[index])) {
+                return index;
+            }
+        }
+        index = secondBucket(mixed) * BUCKET_SIZE;
+        for (int end = index + BUCKET_SIZE; index < end; index++) {
+            if (hashes[index] == hash && areEqual(key, keys[index])) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    private int findStashed(int hash, Object key) {
+        for (int i = 0; i < stashSize; i++) {
+            if (stashHashes[i] == hash && areEqual(key, stashKeys[i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Places an absent key: into a free slot of its buckets, otherwise along
+     * a bounded displacement path; the entry left homeless is stashed.
+     */
+    private void insert(int hash, Object key, Object value) {
+        long mixed = LongHashing.mix(hash ^ seed);
+        int bucket1 = firstBucket(mixed);
+        int bucket2 = secondBucket(mixed);
+        if (placeInto(bucket1, hash, key, value)
+                || placeInto(bucket2, hash, key, value)) {
+            return;
+        }
+
+        int bucket = (nextRandom() & 1) == 0 ? bucket1 : bucket2;
+        for (int i = 0; i < MAX_DISPLACEMENTS; i++) {
+            int index = bucket * BUCKET_SIZE
+                    + (nextRandom() & (BUCKET_SIZE - 1));
+            int evictedHash = hashes[index];
+            Object evictedKey = keys[index];
+            Object evictedValue = values[index];
+            set(index, hash, key, value);
+            hash = evictedHash;
+            key = evictedKey;
+            value = evictedValue;
+            bucket = otherBucket(hash, bucket);
+            if (placeInto(bucket, hash, key, value)) {
+                return;
+            }
+        }
+        stash(hash, key, value);
+    }
+
+    private boolean placeInto(int bucket, int hash, Object key,
+            Object value) {
+
+        int index = bucket * BUCKET_SIZE;
+        for (int end = index + BUCKET_SIZE; index < end; index++) {
+            if (hashes[index] == 0) {
+                set(index, hash, key, value);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void stash(int hash, Object key, Object value) {
+        if (stashSize == stashHashes.length) {
+            int length = stashSize << 1;
+            stashHashes = Arrays.copyOf(stashHashes, length);
+            stashKeys = Arrays.copyOf(stashKeys, length);
+            stashValues = Arrays.copyOf(stashValues, length);
+        }
+        stashHashes[stashSize] = hash;
+        stashKeys[stashSize] = key;
+        stashValues[stashSize] = value;
+        stashSize++;
+    }
+
+    /**
+     * Removes the stashed entry moving the last one into its place.
+     */
+    private void unstash(int stashIndex) {
+        int last = --stashSize;
+        stashHashes[stashIndex] = stashHashes[last];
+        stashKeys[stashIndex] = stashKeys[last];
+        stashValues[stashIndex] = stashValues[last];
+        stashHashes[last] = 0;
+        stashKeys[last] = null;
+        stashValues[last] = null;
+    }
+
+    /**
+     * Moves a stashed entry into the freed slot if the slot is in one of its
+     * buckets.
+     */
+    private void unstashInto(int index) {
+        int bucket = index / BUCKET_SIZE;
+        for (int i = 0; i < stashSize; i++) {
+            long mixed = LongHashing.mix(stashHashes[i] ^ seed);
+            if (firstBucket(mixed) == bucket
+                    || secondBucket(mixed) == bucket) {
+                set(index, stashHashes[i], stashKeys[i], stashValues[i]);
+                unstash(i);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Reinserts all entries into a new table of the given capacity with new
+     * seeds. Entries which are still homeless stay in the stash, and the
+     * stash limit is raised above them, so keys with equal hash codes do not
+     * make every put rebuild the table.
+     */
+    private void rebuild(int capacity) {
+        int[] prevHashes = hashes;
+        Object[] prevKeys = keys;
+        Object[] prevValues = values;
+        int[] prevStashHashes = stashHashes;
+        Object[] prevStashKeys = stashKeys;
+        Object[] prevStashValues = stashValues;
+        int prevStashSize = stashSize;
+
+        allocate(capacity);
+        seed = LongHashing.mix(seed + 0x9e3779b97f4a7c15L);
+        stashHashes = new int[STASH_SIZE];
+        stashKeys = new Object[STASH_SIZE];
+        stashValues = new Object[STASH_SIZE];
+        stashSize = 0;
+        for (int i = 0; i < prevHashes.length; i++) {
+            if (prevHashes[i] != 0) {
+                insert(prevHashes[i], prevKeys[i], prevValues[i]);
+            }
+        }
+        for (int i = 0; i < prevStashSize; i++) {
+            insert(prevStashHashes[i], prevStashKeys[i], prevStashValues[i]);
+        }
+        stashLimit = Math.max(STASH_SIZE, stashSize << 1);
+    }
+
+    private int grownCapacity() {
+        if (hashes.length == MAX_CAPACITY) {
+            throw new IllegalStateException("Max capacity is reached");
+        }
+        return hashes.length << 1;
+    }
+
+    private void allocate(int capacity) {
+        hashes = new int[capacity];
+        keys = new Object[capacity];
+        values = new Object[capacity];
+        bucketMask = capacity / BUCKET_SIZE - 1;
+        threshold = (int) (LOAD_FACTOR * capacity);
+    }
+
+    private int firstBucket(long mixed) {
+        return (int) mixed & bucketMask;
+    }
+
+    private int secondBucket(long mixed) {
+        return (int) (mixed >>> 32) & bucketMask;
+    }
+
+    private int otherBucket(int hash, int bucket) {
+        long mixed = LongHashing.mix(hash ^ seed);
+        int bucket1 = firstBucket(mixed);
+        return bucket1 == bucket ? secondBucket(mixed) : bucket1;
+    }
+
+    private int nextRandom() {
+        random ^= random << 13;
+        random ^= random >>> 17;
+        random ^= random << 5;
+        return random;
+    }
+
+    private void set(int index, int hash, Object key, Object value) {
+        hashes[index] = hash;
+        keys[index] = key;
+        values[index] = value;
+    }
+
+    @SuppressWarnings("unchecked")
+    private V valueAt(int index) {
+        return (V) values[index];
+    }
+
+    @SuppressWarnings("unchecked")
+    private V stashValueAt(int stashIndex) {
+        return (V) stashValues[stashIndex];
+    }
+
+    /**
+     * Spreads the hash code and maps zero, which marks a free slot, to one.
+     */
+    private static int hash(Object key) {
+        int h = key == null ? 0 : key.hashCode();
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        return h == 0 ? 1 : h;
+    }
+
+    private static boolean areEqual(Object key1, Object key2) {
+        if (key1 == null) {
+            return key2 == null;
+        } else {
+            return key1.equals(key2);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package druyaned.aston.intensive.t01hashmap;
+
+/**
+ * Approximate access frequency of keys, used by {@link BoundedCache} to
+ * decide whether a new entry is worth evicting an old one.
+ *
+ * <p>
+ * It is a count-min sketch of 4-bit counters: each <code>long</code> of the
+ * table packs 16 counters, a key increments one counter in each of four
+ * longs chosen by seeded hashes and its frequency is the minimum of them, so
+ * collisions can only overestimate. When the number of increments reaches
+ * ten times the table length, all counters are halved, which lets the sketch
+ * forget keys that were popular long ago.
+ *
+ * @author druyaned
+ */
+final class FrequencySketch {
+
+    private static final long[] SEEDS = {
+        0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L,
+        0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+    };
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final long ONE_MASK = 0x1111111111111111L;
+    private static final int MAX_TABLE_LENGTH = 1 << 24;
+
+    private long[] table = new long[0];
+    private int tableMask;
+    private int sampleSize;
+    private int additions;
+
+    /**
+     * Grows the table to be able to tell apart the frequencies of the given
+     * number of keys; the counters are lost when the table grows.
+     */
+    void ensureCapacity(long expectedKeys) {
+        long keys = Math.max(expectedKeys, 8);
+        int length = keys >= MAX_TABLE_LENGTH
+                ? MAX_TABLE_LENGTH
+                : Integer.highestOneBit((int) keys - 1) << 1;
+        if (table.length >= length) {
+            return;
+        }
+        table = new long[length];
+        tableMask = length - 1;
+        sampleSize = (int) Math.min(10L * length, Integer.MAX_VALUE);
+        additions = 0;
+    }
+
+    /**
+     * Returns the estimated number of occurrences of the hash, at most 15.
+     */
+    int frequency(int hash) {
+        hash = LongHashing.hash(hash);
+        int start = (hash & 3) << 2;
+        int frequency = 15;
+        for (int i = 0; i < 4; i++) {
+            int shift = (start + i) << 2;
+            int count = (int) ((table[indexOf(hash, i)] >>> shift) & 0xfL);
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+
+    /**
+     * Increments the counters of the hash unless they are saturated, and
+     * halves all counters once the sample size is reached.
+     */
+    void increment(int hash) {
+        hash = LongHashing.hash(hash);
+        int start = (hash & 3) << 2;
+        boolean added = false;
+        for (int i = 0; i < 4; i++) {
+            added |= incrementAt(indexOf(hash, i), start + i);
+        }
+        if (added && ++additions == sampleSize) {
+            reset();
+        }
+    }
+
+    private boolean incrementAt(int index, int counter) {
+        int shift = counter << 2;
+        long mask = 0xfL << shift;
+        if ((table[index] & mask) == mask) {
+            return false;
+        }
+        table[index] += 1L << shift;
+        return true;
+    }
+
+    private void reset() {
+        int odd = 0;
+        for (int i = 0; i < table.length; i++) {
+            odd += Long.bitCount(table[i] & ONE_MASK);
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        additions = (additions - (odd >>> 2)) >>> 1;
+    }
+
+    private int indexOf(int hash, int i) {
+        long h = (hash + SEEDS[i]) * SEEDS[i];
+        h += h >>> 32;
+        return (int) h & tableMask;
+    }
+}
@@ -0,0 +1,421 @@
+package druyaned.aston.intensive.t01hashmap;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+/**
+ * Immutable implementation of the {@link HashMapTask task} for data which is
+ * built once and then only read, usually by {@link HashMapImpl#freeze()}.
+ *
+ * <p>
+ * The keys are placed by a minimal perfect hash function in the manner of
+ * CHD (hash, displace and compress): every key has its own slot among
+ * exactly <code>size</code> slots, so keys and values lie side by side in a
+ * dense array without free slots, and a lookup reads one slot without
+ * probing. The keys are split by the hash into buckets of
+ * {@link #BUCKET_LOAD} keys on average; the buckets are placed from the
+ * largest one, and for each of them the smallest displacement
+ * <code>d</code> is searched which sends all its keys to free slots
+ * <code>f1 + d * f2</code>, where <code>f1</code> and <code>f2</code> are
+ * taken from the hash of a key. A bucket of a single key is placed last,
+ * directly into any free slot, whose index is stored instead of the
+ * displacement, so the search never runs on an almost full table. A lookup
+ * finds the slot from the hash and one <code>int</code> of its bucket: less
+ * than two bytes per key on top of the dense array. The hash of the key of
+ * each slot is cached in a parallel array, so most misses are rejected
+ * without reading the key.
+ *
+ * <p>
+ * The function is built over the hashes of the keys (hash codes, or the
+ * hashes of a {@link HashStrategy}), so keys with equal hashes can not be
+ * told apart: all but one of each such group are kept in a small overflow
+ * array, which is searched only by the lookups whose slot does not match.
+ *
+ * <p>
+ * The map permits null key and null values. {@link #put} and
+ * {@link #remove} throw {@link UnsupportedOperationException}.
+ *
+ * @param <K> the type of keys maintained by this map
+ * @param <V> the type of mapped values
+ * @author druyaned
+ */
+public final class FrozenHashMap<K, V> implements HashMapTask<K, V> {
+
+    /**
+     * Average number of keys per bucket: more keys per bucket make the
+     * displacement table smaller and the build slower.
+     */
+    public static final int BUCKET_LOAD = 3;
+
+    /**
+     * Displacements tried for a bucket before the whole build is restarted
+     * with another seed.
+     */
+    private static final int MAX_DISPLACEMENT = 1 << 24;
+    private static final int MAX_ATTEMPTS = 16;
+    private static final long GOLDEN = 0x9e3779b97f4a7c15L;
+
+    /**
+     * Marks the displacement which is the slot of a single-key bucket.
+     */
+    private static final int DIRECT = 0x80000000;
+
+    /**
+     * Strategy of the keys, null for the natural one.
+     */
+    private final HashStrategy<? super K> strategy;
+    private final long seed;
+    private final int[] displacements;
+    private final int slotCount;
+    private final int[] hashes;
+    private final Object[] slots;
+    private final int[] overflowHashes;
+    private final Object[] overflowKeys;
+    private final Object[] overflowValues;
+
+    /**
+     * Builds the frozen copy of the map in <code>O(size)</code> expected
+     * time.
+     *
+     * @param map the mappings to be copied
+     * @throws IllegalStateException if no perfect hash function is found,
+     * which is not expected for keys with distinct hash codes
+     */
+    public FrozenHashMap(HashMapTask<? extends K, ? extends V> map) {
+        this(map, HashStrategy.natural());
+    }
+
+    /**
+     * Builds the frozen copy of the map whose keys are hashed and compared
+     * by the strategy in <code>O(size)</code> expected time.
+     *
+     * @param map the mappings to be copied
+     * @param strategy the hash strategy
+     * @throws IllegalStateException if no perfect hash function is found,
+     * which is not expected for keys with distinct hashes
+     */
+    public FrozenHashMap(HashMapTask<? extends K, ? extends V> map,
+            HashStrategy<? super K> strategy) {
+
+        this.strategy = Objects.requireNonNull(strategy)
+                == HashStrategy.natural() ? null : strategy;
+        int count = map.size();
+        int[] allHashes = new int[count];
+        Object[] allKeys = new Object[count];
+        Object[] allValues = new Object[count];
+        int[] filled = new int[1];
+        map.forEach((key, value) -> {
+            int i = filled[0]++;
+            allHashes[i] = hash(key);
+            allKeys[i] = key;
+            allValues[i] = value;
+        });
+
+        // sorting by hash makes keys with equal hashes adjacent
+        long[] byHash = new long[count];
+        for (int i = 0; i < count; i++) {
+            byHash[i] = (long) allHashes[i] << 32 | i;
+        }
+        Arrays.sort(byHash);
+        int[] unique = new int[count];
+        int[] duplicates = new int[count];
+        int uniqueCount = 0;
+        int duplicateCount = 0;
+        for (int j = 0; j < count; j++) {
+            int i = (int) byHash[j];
+            if (j > 0 && (int) (byHash[j] >>> 32)
+                    == (int) (byHash[j - 1] >>> 32)) {
+                duplicates[duplicateCount++] = i;
+            } else {
+                unique[uniqueCount++] = i;
+            }
+        }
+
+        overflowHashes = new int[duplicateCount];
+        overflowKeys = new Object[duplicateCount];
+        overflowValues = new Object[duplicateCount];
+        for (int j = 0; j < duplicateCount; j++) {
+            int i = duplicates[j];
+            overflowHashes[j] = allHashes[i];
+            overflowKeys[j] = allKeys[i];
+            overflowValues[j] = allValues[i];
+        }
+
+        slotCount = uniqueCount;
+        hashes = new int[uniqueCount];
+        slots = new Object[uniqueCount << 1];
+        displacements = new int[Math.max(1,
+                (uniqueCount + BUCKET_LOAD - 1) / BUCKET_LOAD)];
+        long attemptSeed = 0;
+        int[] slotOfKey = null;
+        for (int attempt = 0; slotOfKey == null; attempt++) {
+            if (attempt == MAX_ATTEMPTS) {
+                throw new IllegalStateException(
+                        "No perfect hash function is found");
+            }
+            attemptSeed = LongHashing.mix(attemptSeed + GOLDEN);
+            slotOfKey = place(allHashes, unique, uniqueCount, attemptSeed);
+        }
+        seed = attemptSeed;
+        for (int j = 0; j < uniqueCount; j++) {
+            int i = unique[j];
+            hashes[slotOfKey[j]] = allHashes[i];
+            slots[slotOfKey[j] << 1] = allKeys[i];
+            slots[(slotOfKey[j] << 1) + 1] = allValues[i];
+        }
+    }
+
+    /**
+     * Searches the displacements of all buckets for the seed and returns the
+     * slot of every key, or null if some bucket can not be placed.
+     */
+    private int[] place(int[] allHashes, int[] unique, int n, long seed) {
+        int bucketCount = displacements.length;
+        long[] mixed = new long[n];
+        int[] bucketStart = new int[bucketCount + 1];
+        for (int j = 0; j < n; j++) {
+            mixed[j] = LongHashing.mix(allHashes[unique[j]] ^ seed);
+            bucketStart[bucketOf(mixed[j], bucketCount) + 1]++;
+        }
+        int maxBucketSize = 0;
+        for (int b = 0; b < bucketCount; b++) {
+            maxBucketSize = Math.max(maxBucketSize, bucketStart[b + 1]);
+            bucketStart[b + 1] += bucketStart[b];
+        }
+        // keys grouped by bucket
+        int[] members = new int[n];
+        int[] fill = Arrays.copyOf(bucketStart, bucketCount);
+        for (int j = 0; j < n; j++) {
+            members[fill[bucketOf(mixed[j], bucketCount)]++] = j;
+        }
+        // buckets from the largest to the smallest, by counting sort
+        int[] sizeStart = new int[maxBucketSize + 2];
+        for (int b = 0; b < bucketCount; b++) {
+            sizeStart[maxBucketSize - bucketSize(bucketStart, b) + 1]++;
+        }
+        for (int s = 0; s <= maxBucketSize; s++) {
+            sizeStart[s + 1] += sizeStart[s];
+        }
+        int[] order = new int[bucketCount];
+        for (int b = 0; b < bucketCount; b++) {
+            order[sizeStart[maxBucketSize - bucketSize(bucketStart, b)]++]
+                    = b;
+        }
+
+        int[] slotOfKey = new int[n];
+        boolean[] taken = new boolean[n];
+        int[] candidate = new int[maxBucketSize];
+        int freeSlot = 0;
+        Arrays.fill(displacements, 0);
+        for (int b : order) {
+            int from = bucketStart[b];
+            int size = bucketStart[b + 1] - from;
+            if (size == 0) {
+                break;
+            }
+            if (size == 1) {
+                while (taken[freeSlot]) {
+                    freeSlot++;
+                }
+                taken[freeSlot] = true;
+                displacements[b] = DIRECT | freeSlot;
+                slotOfKey[members[from]] = freeSlot;
+                continue;
+            }
+            int d = 0;
+            while (!fits(mixed, members, from, size, d, n, taken,
+                    candidate)) {
+                if (++d == MAX_DISPLACEMENT) {
+                    return null;
+                }
+            }
+            displacements[b] = d;
+            for (int k = 0; k < size; k++) {
+                taken[candidate[k]] = true;
+                slotOfKey[members[from + k]] = candidate[k];
+            }
+        }
+        return slotOfKey;
+    }
+
+    /**
+     * Checks that the displacement sends all keys of the bucket to distinct
+     * free slots, which are left in the candidate array.
+     */
+    private static boolean fits(long[] mixed, int[] members, int from,
+            int size, int d, int n, boolean[] taken, int[] candidate) {
+
+        for (int k = 0; k < size; k++) {
+            int slot = slotOf(mixed[members[from + k]], d, n);
+            if (taken[slot]) {
+                return false;
+            }
+            for (int l = 0; l < k; l++) {
+                if (candidate[l] == slot) {
+                    return false;
+                }
+            }
+            candidate[k] = slot;
+        }
+        return true;
+    }
+
+    private static int bucketSize(int[] bucketStart, int b) {
+        return bucketStart[b + 1] - bucketStart[b];
+    }
+
+    @Override
+    public V get(K key) {
+        int hash = hash(key);
+        if (slotCount > 0) {
+            long mixed = LongHashing.mix(hash ^ seed);
+            int d = displacements[bucketOf(mixed, displacements.length)];
+            int slot = d < 0 ? d & ~DIRECT : slotOf(mixed, d, slotCount);
+            if (hashes[slot] == hash && areEqual(key, slots[slot << 1])) {
+                return valueAt(slot);
+            }
+        }
+        for (int i = 0; i < overflowHashes.length; i++) {
+            if (overflowHashes[i] == hash && areEqual(key, overflowKeys[i])) {
+                @SuppressWarnings("unchecked")
+                V value = (V) overflowValues[i];
+                return value;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Not supported, the map is immutable.
+     *
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public V put(K key, V value) {
+        throw new UnsupportedOperationException("The map is frozen");
+    }
+
+    /**
+     * Not supported, the map is immutable.
+     *
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public V remove(K key) {
+        throw new UnsupportedOperationException("The map is frozen");
+    }
+
+    @Override
+    public int size() {
+        return slotCount + overflowHashes.length;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>
+     * The iterator is itself the entry of the current slot, so iteration
+     * allocates nothing per entry; {@link Map.Entry#setValue} is not
+     * supported.
+     */
+    @Override
+    public Iterator<Map.Entry<K, V>> entryIterator() {
+        return new SlotIterator();
+    }
+
+    private final class SlotIterator
+            implements Iterator<Map.Entry<K, V>>, Map.Entry<K, V> {
+
+        /**
+         * Slots come first, the overflow continues the numbering.
+         */
+        private int index = -1;
+
+        @Override
+        public boolean hasNext() {
+            return index + 1 < size();
+        }
+
+        @Override
+        public Map.Entry<K, V> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            index++;
+            return this;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public K getKey() {
+            return (K) (index < slotCount
+                    ? slots[index << 1]
+                    : overflowKeys[index - slotCount]);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public V getValue() {
+            return (V) (index < slotCount
+                    ? slots[(index << 1) + 1]
+                    : overflowValues[index - slotCount]);
+        }
+
+        @Override
+        public V setValue(V value) {
+            throw new UnsupportedOperationException("The map is frozen");
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private V valueAt(int slot) {
+        return (V) slots[(slot << 1) + 1];
+    }
+
+    private static int bucketOf(long mixed, int bucketCount) {
+        return reduce((int) (mixed >>> 32), bucketCount);
+    }
+
+    /**
+     * Returns <code>f1 + d * f2</code> mapped onto the slots: the low half
+     * of the mixed hash is <code>f1</code>, its product by a constant gives
+     * an odd <code>f2</code>; the high half is left to choose the bucket.
+     */
+    private static int slotOf(long mixed, int d, int n) {
+        int f2 = (int) ((mixed * GOLDEN) >>> 32) | 1;
+        return reduce((int) mixed + d * f2, n);
+    }
+
+    /**
+     * Maps the hash uniformly onto <code>[0, n)</code> by a multiplication
+     * instead of the modulo.
+     */
+    private static int reduce(int hash, int n) {
+        return (int) (((hash & 0xffffffffL) * n) >>> 32);
+    }
+
+    /**
+     * Returns the hash by the strategy or the hash code as is, it is mixed
+     * with the seed before use.
+     */
+    @SuppressWarnings("unchecked")
+    private int hash(Object key) {
+        if (key == null) {
+            return 0;
+        }
+        return strategy == null ? key.hashCode() : strategy.hash((K) key);
+    }
+
+    @SuppressWarnings("unchecked")
+    private boolean areEqual(Object key1, Object key2) {
+        if (key1 == null || key2 == null) {
+            return key1 == key2;
+        }
+        return strategy == null
+                ? key1.equals(key2)
+                : strategy.equals((K) key1, (K) key2);
+    }
+}
@@ -1,5 +1,21 @@
 package druyaned.aston.intensive.t01hashmap;
 
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
 /**
  * Implementation of the HashMap as specified in the {@link HashMapTask task}.
  *
@@ -7,10 +23,7 @@ package druyaned.aston.intensive.t01hashmap;
  * I decided to use a basic approach:
  * <code>(hash & 0x7fffffff) % capacity</code> is for seeking a table index for
  * a key in the table and <code>linked list</code> (Node) is for dealing with
- * collisions. Shifting bits and applying XOR can be used instead of a simple
- * modulo operation. TreeNode can be defined (which represents self-balanced
- * binary tree) instead of a simple Node (linked list). But these enhancements
- * are useless in this task that should be concise and clear.
+ * collisions.
  *
  * <p>
  * The map permits null key and null values. Rehashing occurs when
@@ -18,9 +31,97 @@ package druyaned.aston.intensive.t01hashmap;
  * <code>2^k - 1</code> which can be up to <code>Integer.MAX_VALUE</code>.
  *
  * <p>
+ * Shifting bits and applying XOR can be used instead of the modulo operation,
+ * it is enabled by {@link TableScheme#POWER_OF_TWO}: capacity is
+ * <code>2^k</code> (up to {@link #MAX_CAPACITY}), the hash is spread as
+ * <code>hash ^ (hash &gt;&gt;&gt; 16)</code> and the index is taken by the
+ * mask <code>capacity - 1</code>. In this scheme rehashing splits each bucket
+ * into "lo" and "hi" lists in one pass keeping the order of nodes, since a node
+ * either stays at its index or moves by the previous capacity.
+ *
+ * <p>
+ * Many keys with colliding hashes (weak <code>hashCode</code> or deliberate
+ * hash flooding) would degrade a bucket to <code>O(n)</code>. Therefore a
+ * bucket longer than {@link #TREEIFY_THRESHOLD} is converted into a balanced
+ * (AVL) tree ordered by hash, then by class name and {@link Comparable} order
+ * when keys are comparable, then by insertion sequence. Lookups in such a
+ * bucket are <code>O(log n)</code> for comparable keys; keys which can not be
+ * ordered make the lookup visit both subtrees as a last resort. The tree is
+ * converted back into a list when it shrinks to
+ * {@link #UNTREEIFY_THRESHOLD}.
+ *
+ * <p>
  * Amortized complexity of get/put/remove is <code>O(1)</code>, complexity of
  * rehashing is - O(n).
  *
+ * <p>
+ * A put which triggers rehashing of a large map pauses for the whole O(n).
+ * {@link #setIncrementalRehash(int)} spreads that work: the old table is kept
+ * next to the new one, and each following get/put/remove moves a fixed number
+ * of old buckets. Until the migration finishes, a key is looked up in the old
+ * table if its old bucket is not moved yet and in the new table otherwise.
+ *
+ * <p>
+ * A map which is loaded with a known number of entries can be created with
+ * the expected size and a load factor, so the table is allocated once instead
+ * of doubling from {@link #DEFAULT_CAPACITY}; {@link #putAll} grows the table
+ * once for all mappings of the other map.
+ *
+ * <p>
+ * Removals shrink the table as well: when the size falls below the low-water
+ * mark ({@link #setShrinkThreshold(double)}, a quarter of the load factor by
+ * default) the capacity is halved, but never below the capacity the map was
+ * created with. {@link #trimToSize()} shrinks the table to the smallest
+ * capacity which holds the current entries and {@link #clear()} replaces the
+ * table by a new one of the default capacity. Shrinking always moves the
+ * whole table at once.
+ *
+ * <p>
+ * Entries, keys and values can be streamed: the spliterator splits the table
+ * into halves of index ranges, so a parallel stream works on disjoint
+ * buckets. The parallel {@link #forEach(long, BiConsumer) forEach},
+ * {@link #reduce reduce} and {@link #search search} fork such ranges
+ * directly in the common fork-join pool, and run sequentially in the calling
+ * thread when the map has fewer entries than the given parallelism
+ * threshold. Like the iterator, all of them require that the map is not
+ * modified meanwhile.
+ *
+ * <p>
+ * {@link #setStatsEnabled(boolean)} turns on counting of probes per get,
+ * rehashes with their duration and periodic load samples;
+ * {@link #stats()} takes a snapshot of them together with the chain-length
+ * histogram, and {@link #statsMXBean()} exposes the same through JMX.
+ *
+ * <p>
+ * {@link #compute}, {@link #merge} and the other remapping methods walk the
+ * bucket once and replace, unlink or append the node in place, so counting
+ * by <code>merge(key, 1, Integer::sum)</code> costs a single lookup. Their
+ * functions must not modify the map, which is detected on a best-effort
+ * basis by {@link ConcurrentModificationException}.
+ *
+ * <p>
+ * Keys are hashed and compared by <code>hashCode</code> and
+ * <code>equals</code> unless the map is created with a {@link HashStrategy}:
+ * a seeded one against crafted collisions, identity for entities whose
+ * <code>equals</code> looks only at the id, or a content hash of strings and
+ * byte arrays. Keys with equal hashes in a treeified bucket are ordered by
+ * Comparable order only if the strategy compares them by
+ * <code>equals</code> ({@link HashStrategy#usesEquals()}), otherwise a
+ * lookup among them is linear.
+ *
+ * <p>
+ * A map which is mostly asked for absent keys can be fronted by a blocked
+ * Bloom filter of the hashes ({@link #setBloomFilter(int)}): a miss is then
+ * usually rejected by one cache line of the filter without touching the
+ * table. The filter is updated by insertions and rebuilt on a resize and
+ * after as many removals as half of the entries it was sized for. During an
+ * incremental rehash the filter for the new table is filled bucket by bucket
+ * along with the migration and replaces the old one when it finishes.
+ *
+ * <p>
+ * Data which is built once and then only read can be copied by
+ * {@link #freeze()} into a compact immutable {@link FrozenHashMap}.
+ *
  * @param <K> the type of keys maintained by this map
  * @param <V> the type of mapped values
  * @author druyaned
@@ -28,26 +129,541 @@ package druyaned.aston.intensive.t01hashmap;
 public class HashMapImpl<K, V> implements HashMapTask<K, V> {
 
     public static final int DEFAULT_CAPACITY = 16 - 1;
+    public static final int MAX_CAPACITY = 1 << 30;
     public static final double LOAD_FACTOR = 0.75;
+    public static final int TREEIFY_THRESHOLD = 8;
+    public static final int UNTREEIFY_THRESHOLD = 6;
+
+    /**
+     * Defines how capacity grows and how a table index is computed.
+     */
+    public enum TableScheme {
+
+        /**
+         * Capacity is <code>2^k - 1</code>, the index is
+         * <code>(hash & 0x7fffffff) % capacity</code>.
+         */
+        MODULO,
+        /**
+         * Capacity is <code>2^k</code>, the index is
+         * <code>spread(hash) & (capacity - 1)</code>.
+         */
+        POWER_OF_TWO
+    }
 
-    private static class Node<K, V> {
+    /**
+     * Node of a bucket, which is also the entry returned by the iterator, so
+     * iteration allocates nothing per entry.
+     */
+    private static class Node<K, V> implements Map.Entry<K, V> {
 
-        private final K key;
-        private V value;
-        private final int hash;
-        private Node<K, V> next = null;
+        final K key;
+        V value;
+        final int hash;
+        Node<K, V> next = null;
 
-        private Node(K key, V value) {
+        private Node(K key, V value, int hash) {
             this.key = key;
             this.value = value;
-            this.hash = getHash(key);
+            this.hash = hash;
+        }
+
+        @Override
+        public K getKey() {
+            return key;
+        }
+
+        @Override
+        public V getValue() {
+            return value;
+        }
+
+        @Override
+        public V setValue(V newValue) {
+            V prevValue = value;
+            value = newValue;
+            return prevValue;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Map.Entry<?, ?> entry
+                    && Objects.equals(key, entry.getKey())
+                    && Objects.equals(value, entry.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(key) ^ Objects.hashCode(value);
+        }
+
+        @Override
+        public String toString() {
+            return key + "=" + value;
+        }
+    }
+
+    private static final class TreeNode<K, V> extends Node<K, V> {
+
+        private TreeNode<K, V> left = null;
+        private TreeNode<K, V> right = null;
+        private TreeNode<K, V> prev = null;
+        private int height = 1;
+        private int seq = 0;
+
+        private TreeNode(K key, V value, int hash) {
+            super(key, value, hash);
+        }
+
+        private void reset() {
+            left = null;
+            right = null;
+            prev = null;
+            next = null;
+            height = 1;
+        }
+    }
+
+    /**
+     * Head of a treeified bucket. Holds the root of the AVL tree and also
+     * links tree nodes through <code>next</code> in insertion order, so the
+     * bucket can be walked as a list. The key, value and hash of the head
+     * itself are never used.
+     */
+    private static final class TreeBin<K, V> extends Node<K, V> {
+
+        /**
+         * Strategy of the map, null for the natural one.
+         */
+        private final HashStrategy<? super K> strategy;
+
+        /**
+         * Whether keys with equal hashes are ordered by Comparable order.
+         */
+        private final boolean comparable;
+        private TreeNode<K, V> root = null;
+        private TreeNode<K, V> first = null;
+        private TreeNode<K, V> last = null;
+        private int count = 0;
+        private int nextSeq = 0;
+
+        private TreeBin(HashStrategy<? super K> strategy) {
+            super(null, null, 0);
+            this.strategy = strategy;
+            this.comparable = strategy == null || strategy.usesEquals();
+        }
+
+        private static <K, V> TreeBin<K, V> treeify(Node<K, V> head,
+                HashStrategy<? super K> strategy) {
+
+            TreeBin<K, V> bin = new TreeBin<>(strategy);
+            for (Node<K, V> node = head; node != null; node = node.next) {
+                bin.add(new TreeNode<>(node.key, node.value, node.hash));
+            }
+            return bin;
+        }
+
+        private Node<K, V> untreeify() {
+            Node<K, V> head = null;
+            Node<K, V> tail = null;
+            for (Node<K, V> node = first; node != null; node = node.next) {
+                Node<K, V> plain = new Node<>(node.key, node.value, node.hash);
+                if (tail == null) {
+                    head = plain;
+                } else {
+                    tail.next = plain;
+                }
+                tail = plain;
+            }
+            return head;
+        }
+
+        private TreeNode<K, V> find(int hash, K key) {
+            return find(root, hash, key);
+        }
+
+        private TreeNode<K, V> find(TreeNode<K, V> node, int hash, K key) {
+
+            while (node != null) {
+                if (hash < node.hash) {
+                    node = node.left;
+                    continue;
+                }
+                if (hash > node.hash) {
+                    node = node.right;
+                    continue;
+                }
+                if (areEqual(strategy, key, node.key)) {
+                    return node;
+                }
+                int c = compare(key, node.key);
+                if (c < 0) {
+                    node = node.left;
+                } else if (c > 0) {
+                    node = node.right;
+                } else {
+                    TreeNode<K, V> found = find(node.right, hash, key);
+                    if (found != null) {
+                        return found;
+                    }
+                    node = node.left;
+                }
+            }
+            return null;
+        }
+
+        private void add(TreeNode<K, V> node) {
+            if (nextSeq == Integer.MAX_VALUE) {
+                renumber();
+            }
+            node.seq = nextSeq++;
+            node.prev = last;
+            if (last == null) {
+                first = node;
+            } else {
+                last.next = node;
+            }
+            last = node;
+            root = insert(root, node);
+            count++;
+        }
+
+        private void delete(TreeNode<K, V> node) {
+            TreeNode<K, V> next = (TreeNode<K, V>) node.next;
+            if (node.prev == null) {
+                first = next;
+            } else {
+                node.prev.next = next;
+            }
+            if (next == null) {
+                last = node.prev;
+            } else {
+                next.prev = node.prev;
+            }
+            root = delete(root, node);
+            count--;
+        }
+
+        /**
+         * Rebuilds the tree assigning sequence numbers from zero in
+         * insertion order.
+         */
+        private void renumber() {
+            TreeNode<K, V> node = first;
+            root = null;
+            first = null;
+            last = null;
+            count = 0;
+            nextSeq = 0;
+            while (node != null) {
+                TreeNode<K, V> next = (TreeNode<K, V>) node.next;
+                node.reset();
+                add(node);
+                node = next;
+            }
+        }
+
+        private TreeNode<K, V> insert(TreeNode<K, V> node,
+                TreeNode<K, V> inserted) {
+
+            if (node == null) {
+                return inserted;
+            }
+            if (order(inserted, node) < 0) {
+                node.left = insert(node.left, inserted);
+            } else {
+                node.right = insert(node.right, inserted);
+            }
+            return balance(node);
+        }
+
+        private TreeNode<K, V> delete(TreeNode<K, V> node,
+                TreeNode<K, V> deleted) {
+
+            if (node == deleted) {
+                if (node.left == null) {
+                    return node.right;
+                }
+                if (node.right == null) {
+                    return node.left;
+                }
+                TreeNode<K, V> successor = node.right;
+                while (successor.left != null) {
+                    successor = successor.left;
+                }
+                successor.right = deleteMin(node.right);
+                successor.left = node.left;
+                node.left = null;
+                node.right = null;
+                return balance(successor);
+            }
+            if (order(deleted, node) < 0) {
+                node.left = delete(node.left, deleted);
+            } else {
+                node.right = delete(node.right, deleted);
+            }
+            return balance(node);
+        }
+
+        private static <K, V> TreeNode<K, V> deleteMin(TreeNode<K, V> node) {
+            if (node.left == null) {
+                return node.right;
+            }
+            node.left = deleteMin(node.left);
+            return balance(node);
+        }
+
+        private static <K, V> TreeNode<K, V> balance(TreeNode<K, V> node) {
+            int diff = height(node.left) - height(node.right);
+            if (diff > 1) {
+                if (height(node.left.left) < height(node.left.right)) {
+                    node.left = rotateLeft(node.left);
+                }
+                return rotateRight(node);
+            }
+            if (diff < -1) {
+                if (height(node.right.right) < height(node.right.left)) {
+                    node.right = rotateRight(node.right);
+                }
+                return rotateLeft(node);
+            }
+            updateHeight(node);
+            return node;
+        }
+
+        private static <K, V> TreeNode<K, V> rotateLeft(TreeNode<K, V> node) {
+            TreeNode<K, V> pivot = node.right;
+            node.right = pivot.left;
+            pivot.left = node;
+            updateHeight(node);
+            updateHeight(pivot);
+            return pivot;
+        }
+
+        private static <K, V> TreeNode<K, V> rotateRight(TreeNode<K, V> node) {
+            TreeNode<K, V> pivot = node.left;
+            node.left = pivot.right;
+            pivot.right = node;
+            updateHeight(node);
+            updateHeight(pivot);
+            return pivot;
+        }
+
+        private static void updateHeight(TreeNode<?, ?> node) {
+            node.height = 1 + Math.max(height(node.left), height(node.right));
+        }
+
+        private static int height(TreeNode<?, ?> node) {
+            return node == null ? 0 : node.height;
+        }
+
+        /**
+         * Total order of tree nodes: hash, then class name and Comparable
+         * order of keys, then insertion sequence.
+         */
+        private int order(TreeNode<K, V> node1, TreeNode<K, V> node2) {
+            if (node1.hash != node2.hash) {
+                return node1.hash < node2.hash ? -1 : 1;
+            }
+            int c = compare(node1.key, node2.key);
+            if (c != 0) {
+                return c;
+            }
+            return Integer.compare(node1.seq, node2.seq);
+        }
+
+        /**
+         * Orders keys with equal hashes by {@link #compareKeys} if the
+         * strategy compares keys by <code>equals</code>: another equality
+         * does not have to agree with the Comparable order, so such keys are
+         * ordered by insertion sequence alone.
+         */
+        private int compare(K key1, K key2) {
+            return comparable ? compareKeys(key1, key2) : 0;
+        }
+
+        /**
+         * Compares keys by class name, then by Comparable order if the keys
+         * are of the same comparable class; returns zero if the keys can not
+         * be ordered.
+         */
+        @SuppressWarnings({"rawtypes", "unchecked"})
+        private static int compareKeys(Object key1, Object key2) {
+            Class<?> class1 = key1 == null ? null : key1.getClass();
+            Class<?> class2 = key2 == null ? null : key2.getClass();
+            if (class1 != class2) {
+                String name1 = class1 == null ? "" : class1.getName();
+                String name2 = class2 == null ? "" : class2.getName();
+                return name1.compareTo(name2);
+            }
+            if (key1 instanceof Comparable comparable) {
+                return comparable.compareTo(key2);
+            }
+            return 0;
         }
     }
 
-    private int capacity = DEFAULT_CAPACITY;
-    private Node<K, V>[] table = newTable(DEFAULT_CAPACITY);
+    private final TableScheme scheme;
+    private final double loadFactor;
+
+    /**
+     * Hashing and equality of keys, null for the natural one, which is
+     * inlined into the lookups.
+     */
+    private final HashStrategy<? super K> strategy;
+    private int capacity;
+    private Node<K, V>[] table;
     private int size = 0;
 
+    /**
+     * Capacity the map was created with, the table is not shrunk below it
+     * on removal.
+     */
+    private final int minCapacity;
+    private double shrinkThreshold;
+
+    /**
+     * Buckets of the old table moved per operation, zero for the
+     * stop-the-world rehashing.
+     */
+    private int rehashStep = 0;
+    private Node<K, V>[] oldTable = null;
+    private int oldCapacity = 0;
+    private int migrated = 0;
+
+    /**
+     * Counters of the statistics, null while they are disabled.
+     */
+    private StatsRecorder stats = null;
+
+    /**
+     * Filter of the hashes of the keys, null while it is disabled.
+     */
+    private BlockedBloomFilter bloom = null;
+    private BlockedBloomFilter nextBloom = null;
+    private int bloomBitsPerKey = 0;
+    private int bloomExpectedSize = 0;
+    private int bloomRemovals = 0;
+
+    public HashMapImpl() {
+        this(TableScheme.MODULO);
+    }
+
+    public HashMapImpl(TableScheme scheme) {
+        this(scheme, 0, LOAD_FACTOR);
+    }
+
+    public HashMapImpl(int expectedSize) {
+        this(TableScheme.MODULO, expectedSize, LOAD_FACTOR);
+    }
+
+    public HashMapImpl(int expectedSize, double loadFactor) {
+        this(TableScheme.MODULO, expectedSize, loadFactor);
+    }
+
+    /**
+     * Creates the map which holds the expected number of entries without
+     * rehashing.
+     *
+     * @param scheme the table scheme
+     * @param expectedSize the expected number of entries
+     * @param loadFactor the table is rehashed when
+     * <code>size &gt;= loadFactor * capacity</code>
+     * @throws IllegalArgumentException if the expected size is negative or
+     * the load factor is not positive
+     */
+    public HashMapImpl(TableScheme scheme, int expectedSize,
+            double loadFactor) {
+
+        this(scheme, expectedSize, loadFactor, HashStrategy.natural());
+    }
+
+    /**
+     * Creates the map which hashes and compares keys by the strategy.
+     *
+     * @param strategy the hash strategy
+     */
+    public HashMapImpl(HashStrategy<? super K> strategy) {
+        this(TableScheme.MODULO, 0, LOAD_FACTOR, strategy);
+    }
+
+    /**
+     * Creates the map which holds the expected number of entries without
+     * rehashing and which hashes and compares keys by the strategy.
+     *
+     * @param scheme the table scheme
+     * @param expectedSize the expected number of entries
+     * @param loadFactor the table is rehashed when
+     * <code>size &gt;= loadFactor * capacity</code>
+     * @param strategy the hash strategy
+     * @throws IllegalArgumentException if the expected size is negative or
+     * the load factor is not positive
+     */
+    public HashMapImpl(TableScheme scheme, int expectedSize,
+            double loadFactor, HashStrategy<? super K> strategy) {
+
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException(
+                    "expectedSize=" + expectedSize + " is negative");
+        }
+        if (!(loadFactor > 0)) {
+            throw new IllegalArgumentException(
+                    "loadFactor=" + loadFactor + " is not positive");
+        }
+        this.scheme = Objects.requireNonNull(scheme);
+        this.loadFactor = loadFactor;
+        this.strategy = Objects.requireNonNull(strategy)
+                == HashStrategy.natural() ? null : strategy;
+        this.capacity = capacityFor(expectedSize);
+        this.table = newTable(capacity);
+        this.minCapacity = capacity;
+        this.shrinkThreshold = loadFactor / 4;
+    }
+
+    /**
+     * Sets the low-water mark: after a removal the capacity is halved when
+     * <code>size &lt; lowWaterMark * capacity</code>, unless the table is
+     * already at the capacity the map was created with. The mark must be
+     * less than a half of the load factor, otherwise the halved table would
+     * be rehashed again by the next put.
+     *
+     * @param lowWaterMark fraction of the capacity, zero to never shrink on
+     * removal
+     * @throws IllegalArgumentException if the mark is negative or not less
+     * than a half of the load factor
+     */
+    public void setShrinkThreshold(double lowWaterMark) {
+        if (!(lowWaterMark >= 0 && lowWaterMark < loadFactor / 2)) {
+            throw new IllegalArgumentException("lowWaterMark=" + lowWaterMark
+                    + " is not in [0, loadFactor / 2)");
+        }
+        shrinkThreshold = lowWaterMark;
+    }
+
+    /**
+     * Switches between the stop-the-world and the incremental rehashing. In
+     * the incremental mode a rehash only allocates the new table, then every
+     * get/put/remove moves <code>bucketsPerOperation</code> buckets of the old
+     * table, so no single operation pays for the whole rehash. If the next
+     * rehash is due before the migration finishes, the rest of the old table
+     * is moved at once; a step of at least 2 avoids that.
+     *
+     * <p>
+     * A migration in progress is finished when the mode is switched.
+     *
+     * @param bucketsPerOperation buckets moved per operation, zero to rehash
+     * the whole table at once
+     * @throws IllegalArgumentException if bucketsPerOperation is negative
+     */
+    public void setIncrementalRehash(int bucketsPerOperation) {
+        if (bucketsPerOperation < 0) {
+            throw new IllegalArgumentException("bucketsPerOperation="
+                    + bucketsPerOperation + " is negative");
+        }
+        finishMigration();
+        rehashStep = bucketsPerOperation;
+    }
+
     /**
      * {@inheritDoc}
      *
@@ -64,16 +680,33 @@ public class HashMapImpl<K, V> implements HashMapTask<K, V> {
      * <li>Else if the end of the linked list is reached, null is returned</li>
      * <li>Else the iteration is continued for the next node</li>
      * </ol>
+     *
+     * <p>
+     * If the index is occupied by a treeified bucket, the tree is searched.
      */
     @Override
     public V get(K key) {
-        Node<K, V> node = table[getTableIndex(key, capacity)];
+        if (stats != null) {
+            return getRecorded(key);
+        }
+        if (oldTable != null) {
+            migrate();
+        }
+        int hash = getHash(key);
+        if (bloom != null && !bloom.mightContain(hash)) {
+            return null;
+        }
+        Node<K, V>[] tab = tableOf(hash);
+        Node<K, V> node = tab[indexOf(tab, hash)];
         if (node == null) {
             return null;
         }
-        int hash = getHash(key);
+        if (node instanceof TreeBin<K, V> bin) {
+            TreeNode<K, V> found = bin.find(hash, key);
+            return found == null ? null : found.value;
+        }
         while (true) {
-            if (hash == node.hash && areEqual(key, node.key)) {
+            if (hash == node.hash && areEqual(strategy, key, node.key)) {
                 return node.value;
             }
             if (node.next == null) {
@@ -88,34 +721,61 @@ public class HashMapImpl<K, V> implements HashMapTask<K, V> {
      *
      * <p>
      * Execution corresponds to {@link HashMapImpl#get}, but if the size is not
-     * less than a product of LOAD_FACTOR and capacity, the table is rehashed.
+     * less than a product of the load factor and capacity, the table is
+     * rehashed.
+     * A bucket which becomes longer than TREEIFY_THRESHOLD is treeified.
      *
      * @see HashMapImpl
      */
     @Override
     public V put(K key, V value) {
-        int index = getTableIndex(key, capacity);
-        Node<K, V> node = table[index];
+        if (oldTable != null) {
+            migrate();
+        }
+        int hash = getHash(key);
+        if (bloom != null) {
+            addToBloom(hash);
+        }
+        Node<K, V>[] tab = tableOf(hash);
+        int index = indexOf(tab, hash);
+        Node<K, V> node = tab[index];
         if (node == null) {
-            table[index] = new Node<>(key, value);
+            tab[index] = new Node<>(key, value, hash);
             size++;
             rehashOnDemand();
 
             return null;
         }
 
-        int hash = getHash(key);
+        if (node instanceof TreeBin<K, V> bin) {
+            TreeNode<K, V> found = bin.find(hash, key);
+            if (found != null) {
+                V prevValue = found.value;
+                found.value = value;
+                return prevValue;
+            }
+            bin.add(new TreeNode<>(key, value, hash));
+            size++;
+            rehashOnDemand();
+            return null;
+        }
+
+        int binCount = 0;
         while (true) {
 
-            if (hash == node.hash && areEqual(key, node.key)) {
+            if (hash == node.hash && areEqual(strategy, key, node.key)) {
                 V prevValue = node.value;
                 node.value = value;
                 return prevValue;
             }
 
+            binCount++;
             if (node.next == null) {
-                node.next = new Node<>(key, value);
+                node.next = new Node<>(key, value, hash);
                 size++;
+                if (binCount >= TREEIFY_THRESHOLD) {
+                    tab[index] = TreeBin.treeify(tab[index], strategy);
+                }
                 rehashOnDemand();
                 return null;
             }
@@ -124,67 +784,305 @@ public class HashMapImpl<K, V> implements HashMapTask<K, V> {
         }
     }
 
+    /**
+     * Does the same as {@link #get} counting the compared nodes.
+     */
+    private V getRecorded(K key) {
+        if (oldTable != null) {
+            migrate();
+        }
+        int hash = getHash(key);
+        if (bloom != null && !bloom.mightContain(hash)) {
+            stats.recordGet(0);
+            return null;
+        }
+        Node<K, V>[] tab = tableOf(hash);
+        Node<K, V> node = tab[indexOf(tab, hash)];
+        V value = null;
+        int probes = 0;
+        if (node instanceof TreeBin<K, V> bin) {
+            probes = TreeBin.height(bin.root);
+            TreeNode<K, V> found = bin.find(hash, key);
+            value = found == null ? null : found.value;
+        } else {
+            for (; node != null; node = node.next) {
+                probes++;
+                if (hash == node.hash && areEqual(strategy, key, node.key)) {
+                    value = node.value;
+                    break;
+                }
+            }
+        }
+        stats.recordGet(probes);
+        return value;
+    }
+
     private void rehashOnDemand() {
-        if (size < (int) (LOAD_FACTOR * capacity)) {
+        if (stats != null) {
+            stats.recordModification(size, capacity);
+        }
+
+        if (size < (int) (loadFactor * capacity)) {
+            return;
+        }
+
+        if (scheme == TableScheme.POWER_OF_TWO && capacity >= MAX_CAPACITY) {
             return;
         }
 
+        if (stats == null) {
+            rehash();
+            return;
+        }
+        long start = System.nanoTime();
+        rehash();
+        stats.recordRehash(System.nanoTime() - start);
+    }
+
+    private void rehash() {
+        finishMigration();
+
         Node<K, V>[] prevTable = table;
-        capacity += 1 + capacity;
+        int prevCapacity = capacity;
+        capacity = nextCapacity(prevCapacity);
         table = newTable(capacity);
 
-        for (int i = 0; i < prevTable.length; i++) {
-            Node<K, V> appended = prevTable[i];
-
-            while (appended != null) {
-                reappend(appended);
-                Node<K, V> prevAppended = appended;
-                appended = appended.next;
-                prevAppended.next = null;
+        if (rehashStep > 0) {
+            oldTable = prevTable;
+            oldCapacity = prevCapacity;
+            migrated = 0;
+            if (bloom != null) {
+                nextBloom = new BlockedBloomFilter(bloomSizeFor(capacity),
+                        bloomBitsPerKey);
             }
+            return;
+        }
 
-            prevTable[i] = null;
+        for (int i = 0; i < prevCapacity; i++) {
+            transfer(prevTable, i, prevCapacity);
         }
+        rebuildBloom();
     }
 
-    private void reappend(Node<K, V> appended) {
-        int index = getTableIndex(appended.key, capacity);
-        Node<K, V> node = table[index];
-
-        if (node == null) {
-            table[index] = appended;
+    /**
+     * Moves the next <code>rehashStep</code> buckets of the old table.
+     */
+    private void migrate() {
+        int end = Math.min(migrated + rehashStep, oldCapacity);
+        while (migrated < end) {
+            moveNextBucket();
+        }
+        if (migrated == oldCapacity) {
+            endMigration();
+        }
+    }
 
-            return;
+    private void finishMigration() {
+        if (oldTable != null) {
+            while (migrated < oldCapacity) {
+                moveNextBucket();
+            }
+            endMigration();
         }
+    }
 
-        while (node.next != null) {
-            node = node.next;
+    /**
+     * Moves the next bucket of the old table; its hashes are added to the
+     * filter for the new table.
+     */
+    private void moveNextBucket() {
+        if (nextBloom != null) {
+            addHashes(nextBloom, oldTable, migrated, migrated + 1);
         }
+        transfer(oldTable, migrated++, oldCapacity);
+    }
 
-        node.next = appended;
+    /**
+     * Drops the old table and puts the filter for the new table, which holds
+     * all hashes by now, in front of it.
+     */
+    private void endMigration() {
+        oldTable = null;
+        if (nextBloom != null) {
+            bloom = nextBloom;
+            bloomExpectedSize = bloomSizeFor(capacity);
+            nextBloom = null;
+        }
     }
 
     /**
-     * {@inheritDoc}
+     * Moves the bucket of the previous table into the current one.
      *
      * <p>
-     * Execution corresponds to {@link HashMapImpl#get}, but with a special case
-     * for the first node in a bucket.
+     * In the power-of-two scheme nodes of the bucket <code>i</code> are
+     * distributed between the buckets <code>i</code> ("lo") and
+     * <code>i + prevCapacity</code> ("hi") by the bit
+     * <code>hash & prevCapacity</code>, the order of nodes is kept. No other
+     * bucket moves into these two, so they are simply assigned. In the modulo
+     * scheme each node is reappended to its new bucket.
      */
-    @Override
-    public V remove(K key) {
-        int index = getTableIndex(key, capacity);
-        Node<K, V> node = table[index];
-        if (node == null) {
-            return null;
+    private void transfer(Node<K, V>[] prevTable, int i, int prevCapacity) {
+        Node<K, V> node = prevTable[i];
+        prevTable[i] = null;
+
+        if (scheme != TableScheme.POWER_OF_TWO) {
+            reappendBucket(node);
+            return;
         }
 
-        int hash = getHash(key);
+        if (node instanceof TreeBin<K, V> bin) {
+            splitTree(bin, i, prevCapacity);
+            return;
+        }
+
+        Node<K, V> loHead = null;
+        Node<K, V> loTail = null;
+        Node<K, V> hiHead = null;
+        Node<K, V> hiTail = null;
 
-        if (hash == node.hash && areEqual(key, node.key)) {
-            table[index] = node.next;
+        while (node != null) {
+            Node<K, V> next = node.next;
             node.next = null;
+
+            if ((node.hash & prevCapacity) == 0) {
+                if (loTail == null) {
+                    loHead = node;
+                } else {
+                    loTail.next = node;
+                }
+                loTail = node;
+            } else {
+                if (hiTail == null) {
+                    hiHead = node;
+                } else {
+                    hiTail.next = node;
+                }
+                hiTail = node;
+            }
+
+            node = next;
+        }
+
+        table[i] = loHead;
+        table[i + prevCapacity] = hiHead;
+    }
+
+    private void reappendBucket(Node<K, V> node) {
+        if (node instanceof TreeBin<K, V> bin) {
+            for (Node<K, V> t = bin.first; t != null; t = t.next) {
+                reappend(new Node<>(t.key, t.value, t.hash));
+            }
+            return;
+        }
+
+        while (node != null) {
+            Node<K, V> next = node.next;
+            node.next = null;
+            reappend(node);
+            node = next;
+        }
+    }
+
+    private void splitTree(TreeBin<K, V> bin, int index, int prevCapacity) {
+        TreeBin<K, V> lo = new TreeBin<>(strategy);
+        TreeBin<K, V> hi = new TreeBin<>(strategy);
+        TreeNode<K, V> node = bin.first;
+
+        while (node != null) {
+            TreeNode<K, V> next = (TreeNode<K, V>) node.next;
+            node.reset();
+            if ((node.hash & prevCapacity) == 0) {
+                lo.add(node);
+            } else {
+                hi.add(node);
+            }
+            node = next;
+        }
+
+        table[index] = shrunk(lo);
+        table[index + prevCapacity] = shrunk(hi);
+    }
+
+    private static <K, V> Node<K, V> shrunk(TreeBin<K, V> bin) {
+        if (bin.count == 0) {
+            return null;
+        }
+        return bin.count <= UNTREEIFY_THRESHOLD ? bin.untreeify() : bin;
+    }
+
+    private void reappend(Node<K, V> appended) {
+        int index = getTableIndex(appended.hash, capacity);
+        Node<K, V> node = table[index];
+
+        if (node == null) {
+            table[index] = appended;
+
+            return;
+        }
+
+        if (node instanceof TreeBin<K, V> bin) {
+            bin.add(new TreeNode<>(appended.key, appended.value,
+                    appended.hash));
+
+            return;
+        }
+
+        int binCount = 1;
+        while (node.next != null) {
+            node = node.next;
+            binCount++;
+        }
+
+        node.next = appended;
+
+        if (binCount >= TREEIFY_THRESHOLD) {
+            table[index] = TreeBin.treeify(table[index], strategy);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>
+     * Execution corresponds to {@link HashMapImpl#get}, but with a special case
+     * for the first node in a bucket. A treeified bucket which shrinks to
+     * UNTREEIFY_THRESHOLD is converted back into a list.
+     */
+    @Override
+    public V remove(K key) {
+        if (oldTable != null) {
+            migrate();
+        }
+        int hash = getHash(key);
+        if (bloom != null && !bloom.mightContain(hash)) {
+            return null;
+        }
+        Node<K, V>[] tab = tableOf(hash);
+        int index = indexOf(tab, hash);
+        Node<K, V> node = tab[index];
+        if (node == null) {
+            return null;
+        }
+
+        if (node instanceof TreeBin<K, V> bin) {
+            TreeNode<K, V> found = bin.find(hash, key);
+            if (found == null) {
+                return null;
+            }
+            bin.delete(found);
             size--;
+            if (bin.count <= UNTREEIFY_THRESHOLD) {
+                tab[index] = bin.untreeify();
+            }
+            shrinkOnDemand();
+            return found.value;
+        }
+
+        if (hash == node.hash && areEqual(strategy, key, node.key)) {
+            tab[index] = node.next;
+            node.next = null;
+            size--;
+            shrinkOnDemand();
             return node.value;
         }
 
@@ -195,10 +1093,11 @@ public class HashMapImpl<K, V> implements HashMapTask<K, V> {
         Node<K, V> prev = node;
         node = node.next;
         while (true) {
-            if (hash == node.hash && areEqual(key, node.key)) {
+            if (hash == node.hash && areEqual(strategy, key, node.key)) {
                 prev.next = node.next;
                 node.next = null;
                 size--;
+                shrinkOnDemand();
 
                 return node.value;
             }
@@ -212,29 +1111,908 @@ public class HashMapImpl<K, V> implements HashMapTask<K, V> {
         }
     }
 
+    /**
+     * Kinds of the remapping operations, which share one walk of a bucket.
+     */
+    private enum Remap {
+        PUT_IF_ABSENT, IF_ABSENT, IF_PRESENT, COMPUTE, MERGE
+    }
+
+    @Override
+    public V putIfAbsent(K key, V value) {
+        return remap(Remap.PUT_IF_ABSENT, key, value, null);
+    }
+
+    @Override
+    public V computeIfAbsent(K key,
+            Function<? super K, ? extends V> mappingFunction) {
+
+        Objects.requireNonNull(mappingFunction);
+        return remap(Remap.IF_ABSENT, key, null,
+                (k, oldValue) -> mappingFunction.apply(k));
+    }
+
+    @Override
+    public V computeIfPresent(K key,
+            BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+
+        Objects.requireNonNull(remappingFunction);
+        return remap(Remap.IF_PRESENT, key, null, remappingFunction);
+    }
+
+    @Override
+    public V compute(K key,
+            BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+
+        Objects.requireNonNull(remappingFunction);
+        return remap(Remap.COMPUTE, key, null, remappingFunction);
+    }
+
+    @Override
+    public V merge(K key, V value,
+            BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+
+        Objects.requireNonNull(value);
+        Objects.requireNonNull(remappingFunction);
+        return remap(Remap.MERGE, key, value,
+                (k, oldValue) -> remappingFunction.apply(oldValue, value));
+    }
+
+    /**
+     * Performs a remapping operation with a single walk of the bucket: the
+     * walk finds the node of the key together with its predecessor, or the
+     * tail of the bucket if the key is absent, so the node is then replaced,
+     * unlinked or appended in place. The function is applied to the old
+     * value (for a merge only if it is not null).
+     *
+     * @return the old value for putIfAbsent, otherwise the current value
+     * @throws ConcurrentModificationException if the function has modified
+     * the map or, during an incremental migration, has accessed it
+     */
+    private V remap(Remap remap, K key, V value,
+            BiFunction<? super K, ? super V, ? extends V> function) {
+
+        if (oldTable != null) {
+            migrate();
+        }
+        int hash = getHash(key);
+        Node<K, V>[] tab = tableOf(hash);
+        int index = indexOf(tab, hash);
+        Node<K, V> first = tab[index];
+        TreeBin<K, V> bin = null;
+        Node<K, V> found = null;
+        Node<K, V> prev = null;
+        int binCount = 0;
+        if (first instanceof TreeBin<K, V> treeBin) {
+            bin = treeBin;
+            found = bin.find(hash, key);
+        } else {
+            for (Node<K, V> node = first; node != null; node = node.next) {
+                if (hash == node.hash && areEqual(strategy, key, node.key)) {
+                    found = node;
+                    break;
+                }
+                prev = node;
+                binCount++;
+            }
+        }
+
+        V oldValue = found == null ? null : found.value;
+        if (oldValue != null && (remap == Remap.PUT_IF_ABSENT
+                || remap == Remap.IF_ABSENT)) {
+            return oldValue;
+        }
+        if (oldValue == null && remap == Remap.IF_PRESENT) {
+            return null;
+        }
+        V newValue;
+        if (remap == Remap.PUT_IF_ABSENT
+                || remap == Remap.MERGE && oldValue == null) {
+            newValue = value;
+        } else {
+            Node<K, V>[] expectedTable = table;
+            int expectedSize = size;
+            int expectedMigrated = migrated;
+            newValue = function.apply(key, oldValue);
+            if (table != expectedTable || size != expectedSize
+                    || migrated != expectedMigrated) {
+                throw new ConcurrentModificationException();
+            }
+        }
+
+        if (found != null) {
+            if (newValue != null || remap == Remap.PUT_IF_ABSENT) {
+                found.value = newValue;
+            } else if (remap != Remap.IF_ABSENT) {
+                unlink(tab, index, bin, found, prev);
+            }
+        } else if (newValue != null || remap == Remap.PUT_IF_ABSENT) {
+            if (bloom != null) {
+                addToBloom(hash);
+            }
+            if (bin != null) {
+                bin.add(new TreeNode<>(key, newValue, hash));
+            } else {
+                Node<K, V> node = new Node<>(key, newValue, hash);
+                if (prev == null) {
+                    tab[index] = node;
+                } else {
+                    prev.next = node;
+                }
+                if (binCount >= TREEIFY_THRESHOLD) {
+                    tab[index] = TreeBin.treeify(tab[index], strategy);
+                }
+            }
+            size++;
+            rehashOnDemand();
+        }
+        return remap == Remap.PUT_IF_ABSENT ? oldValue : newValue;
+    }
+
+    /**
+     * Removes the found node from its bucket as {@link #remove} does.
+     */
+    private void unlink(Node<K, V>[] tab, int index, TreeBin<K, V> bin,
+            Node<K, V> node, Node<K, V> prev) {
+
+        if (bin != null) {
+            bin.delete((TreeNode<K, V>) node);
+            if (bin.count <= UNTREEIFY_THRESHOLD) {
+                tab[index] = bin.untreeify();
+            }
+        } else if (prev == null) {
+            tab[index] = node.next;
+            node.next = null;
+        } else {
+            prev.next = node.next;
+            node.next = null;
+        }
+        size--;
+        shrinkOnDemand();
+    }
+
+    private void shrinkOnDemand() {
+        if (stats != null) {
+            stats.recordModification(size, capacity);
+        }
+        if (bloom != null && ++bloomRemovals > bloomExpectedSize / 2) {
+            rebuildBloom();
+        }
+
+        if (capacity <= minCapacity || size >= shrinkThreshold * capacity) {
+            return;
+        }
+
+        // 2^k becomes 2^(k-1), 2^k - 1 becomes 2^(k-1) - 1
+        int newCapacity = capacity >>> 1;
+        if (newCapacity < minCapacity
+                || size >= (int) (loadFactor * newCapacity)) {
+            return;
+        }
+
+        resize(newCapacity);
+    }
+
+    /**
+     * Shrinks the table to the smallest capacity which holds the current
+     * entries without rehashing; the capacity the map was created with is
+     * not kept.
+     */
+    public void trimToSize() {
+        int newCapacity = capacityFor(size);
+        if (newCapacity < capacity) {
+            resize(newCapacity);
+        }
+    }
+
     @Override
     public int size() {
         return size;
     }
 
     /**
-     * Removes all key-value pairs from the map also refreshes the capacity.
+     * Returns the number of buckets of the table.
+     *
+     * @return the number of buckets of the table
      */
-    public void clear() {
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Turns the statistics on or off. While they are off, the map does not
+     * count anything, a get pays for a single null check. Turning them on
+     * starts the counters from zero, turning them off drops the counters.
+     *
+     * @param enabled true to collect the statistics
+     * @see #stats()
+     */
+    public void setStatsEnabled(boolean enabled) {
+        if (!enabled) {
+            stats = null;
+        } else if (stats == null) {
+            stats = new StatsRecorder();
+        }
+    }
+
+    public boolean isStatsEnabled() {
+        return stats != null;
+    }
+
+    /**
+     * Takes a snapshot of the statistics. The chain-length histogram is
+     * computed by walking the table, which is O(capacity); the counters are
+     * zero if the statistics are disabled.
+     *
+     * @return a new snapshot of the statistics
+     * @see #setStatsEnabled(boolean)
+     */
+    public HashMapStats stats() {
+        long[] histogram = new long[TREEIFY_THRESHOLD + 2];
+        int[] shape = new int[2]; // maxChainLength, treeifiedBuckets
+        countChains(table, 0, capacity, histogram, shape);
+        Node<K, V>[] old = oldTable;
+        if (old != null) {
+            countChains(old, migrated, oldCapacity, histogram, shape);
+        }
+        StatsRecorder recorder = stats;
+        if (recorder == null) {
+            recorder = new StatsRecorder();
+        }
+        return recorder.snapshot(size, capacity, histogram, shape[0],
+                shape[1]);
+    }
+
+    private static void countChains(Node<?, ?>[] tab, int from, int to,
+            long[] histogram, int[] shape) {
+
+        for (int i = from; i < to && i < tab.length; i++) {
+            Node<?, ?> node = tab[i];
+            int length = 0;
+            if (node instanceof TreeBin<?, ?> bin) {
+                length = bin.count;
+                shape[1]++;
+            } else {
+                for (; node != null; node = node.next) {
+                    length++;
+                }
+            }
+            histogram[Math.min(length, histogram.length - 1)]++;
+            shape[0] = Math.max(shape[0], length);
+        }
+    }
+
+    /**
+     * Puts a blocked Bloom filter of the key hashes in front of the table or
+     * removes it. The filter is sized for the entries the table holds before
+     * it grows, so it takes <code>bitsPerKey / 8</code> bytes per entry of a
+     * full table. When the table is about to grow, 8 bits give about 3%
+     * false positives, 12 bits 0.4% and 16 bits 0.1%; a table which has just
+     * grown gives several times fewer. A get or remove of a key which the
+     * filter rejects returns without reading the table; every other
+     * operation pays for one more probe of the filter.
+     *
+     * <p>
+     * The filter can not forget a key, so it is rebuilt from all entries by
+     * the removal which exceeds half of the entries it was sized for; that
+     * single removal pays <code>O(n)</code>, also in the incremental rehash
+     * mode.
+     *
+     * @param bitsPerKey bits of the filter per entry, 0 to remove it
+     * @throws IllegalArgumentException if bitsPerKey is negative or greater
+     *      than 64
+     */
+    public void setBloomFilter(int bitsPerKey) {
+        if (bitsPerKey < 0 || bitsPerKey > 64) {
+            throw new IllegalArgumentException(
+                    "bitsPerKey=" + bitsPerKey + " is out of [0, 64]");
+        }
+        bloomBitsPerKey = bitsPerKey;
+        rebuildBloom();
+    }
+
+    /**
+     * Returns the memory taken by the Bloom filter.
+     *
+     * @return the size of the filter in bytes, 0 if there is no filter
+     * @see #setBloomFilter(int)
+     */
+    public long bloomFilterBytes() {
+        return bloom == null ? 0 : bloom.sizeInBytes();
+    }
+
+    /**
+     * Asks only the Bloom filter whether the key may be in the map, which
+     * shows its false positive rate on absent keys.
+     *
+     * @param key the key to check
+     * @return false if the key is certainly absent; true if it may be present
+     *      or if there is no filter
+     * @see #setBloomFilter(int)
+     */
+    public boolean mightContainKey(K key) {
+        return bloom == null || bloom.mightContain(getHash(key));
+    }
+
+    /**
+     * Builds the filter anew from the hashes of the nodes, so the removed
+     * keys are forgotten and the filter fits the current capacity.
+     */
+    private void rebuildBloom() {
+        bloomRemovals = 0;
+        nextBloom = null;
+        if (bloomBitsPerKey == 0) {
+            bloom = null;
+            bloomExpectedSize = 0;
+            return;
+        }
+        bloomExpectedSize = bloomSizeFor(capacity);
+        bloom = new BlockedBloomFilter(bloomExpectedSize, bloomBitsPerKey);
+        addHashes(bloom, table, 0, capacity);
+        Node<K, V>[] old = oldTable;
+        if (old != null) {
+            addHashes(bloom, old, migrated, oldCapacity);
+        }
+    }
+
+    private int bloomSizeFor(int tableCapacity) {
+        return Math.max(size, (int) (loadFactor * tableCapacity));
+    }
+
+    private void addToBloom(int hash) {
+        bloom.add(hash);
+        if (nextBloom != null) {
+            nextBloom.add(hash);
+        }
+    }
+
+    private static <K, V> void addHashes(BlockedBloomFilter filter,
+            Node<K, V>[] tab, int from, int to) {
+
+        for (int i = from; i < to && i < tab.length; i++) {
+            Node<K, V> node = tab[i];
+            if (node instanceof TreeBin<K, V> bin) {
+                node = bin.first;
+            }
+            for (; node != null; node = node.next) {
+                filter.add(node.hash);
+            }
+        }
+    }
+
+    /**
+     * Returns the management interface of the statistics of this map, which
+     * can be registered in an MBean server.
+     *
+     * @return a view of the statistics of this map
+     */
+    public HashMapStatsMXBean statsMXBean() {
+        return new HashMapStatsMXBean() {
+            @Override
+            public boolean isEnabled() {
+                return isStatsEnabled();
+            }
+
+            @Override
+            public void setEnabled(boolean enabled) {
+                setStatsEnabled(enabled);
+            }
+
+            @Override
+            public HashMapStats getStats() {
+                return stats();
+            }
+        };
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>
+     * The table is rehashed at most once beforehand, to the capacity which
+     * holds <code>size() + map.size()</code> entries.
+     */
+    @Override
+    public void putAll(HashMapTask<? extends K, ? extends V> map) {
+        long expectedSize = (long) size + map.size();
+        int newCapacity = capacityFor((int) Math.min(expectedSize,
+                Integer.MAX_VALUE));
+        if (newCapacity > capacity) {
+            resize(newCapacity);
+        }
+        map.forEach(this::put);
+    }
+
+    /**
+     * Moves all entries into a new table of the given capacity at once.
+     */
+    private void resize(int newCapacity) {
+        if (stats == null) {
+            reappendAll(newCapacity);
+            return;
+        }
+        long start = System.nanoTime();
+        reappendAll(newCapacity);
+        stats.recordRehash(System.nanoTime() - start);
+    }
+
+    private void reappendAll(int newCapacity) {
+        finishMigration();
+        Node<K, V>[] prevTable = table;
+        int prevCapacity = capacity;
+        capacity = newCapacity;
+        table = newTable(capacity);
+        for (int i = 0; i < prevCapacity; i++) {
+            Node<K, V> node = prevTable[i];
+            prevTable[i] = null;
+            reappendBucket(node);
+        }
+        rebuildBloom();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>
+     * Buckets are walked directly, without an iterator.
+     */
+    @Override
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        Objects.requireNonNull(action);
+        finishMigration();
         for (int i = 0; i < capacity; i++) {
-            Node<K, V> node = table[i];
+            for (Node<K, V> node = bucketAt(i); node != null;
+                    node = node.next) {
 
-            while (node != null) {
-                Node<K, V> prev = node;
-                node = node.next;
-                prev.next = null;
+                action.accept(node.key, node.value);
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>
+     * The entries are the nodes of the map, so
+     * {@link Map.Entry#setValue} writes through. A pending incremental rehash
+     * is finished first.
+     */
+    @Override
+    public Iterator<Map.Entry<K, V>> entryIterator() {
+        finishMigration();
+        return new EntryIterator();
+    }
+
+    private final class EntryIterator implements Iterator<Map.Entry<K, V>> {
+
+        private int index = 0;
+        private Node<K, V> next;
+
+        private EntryIterator() {
+            next = nextBucket();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Map.Entry<K, V> next() {
+            Node<K, V> node = next;
+            if (node == null) {
+                throw new NoSuchElementException();
+            }
+            next = node.next != null ? node.next : nextBucket();
+            return node;
+        }
+
+        private Node<K, V> nextBucket() {
+            while (index < capacity) {
+                Node<K, V> node = bucketAt(index++);
+                if (node != null) {
+                    return node;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Returns a sequential stream of the entries; the entries are the nodes of
+     * the map as in {@link #entryIterator()}.
+     *
+     * @return a sequential stream of the entries
+     */
+    public Stream<Map.Entry<K, V>> stream() {
+        return StreamSupport.stream(entrySpliterator(), false);
+    }
+
+    /**
+     * Returns a parallel stream of the entries; the entries are the nodes of
+     * the map as in {@link #entryIterator()}.
+     *
+     * @return a parallel stream of the entries
+     */
+    public Stream<Map.Entry<K, V>> parallelStream() {
+        return StreamSupport.stream(entrySpliterator(), true);
+    }
+
+    /**
+     * Returns a stream of the keys.
+     *
+     * @param parallel whether the stream is parallel
+     * @return a stream of the keys
+     */
+    public Stream<K> keyStream(boolean parallel) {
+        return StreamSupport.stream(keySpliterator(), parallel);
+    }
+
+    /**
+     * Returns a stream of the values.
+     *
+     * @param parallel whether the stream is parallel
+     * @return a stream of the values
+     */
+    public Stream<V> valueStream(boolean parallel) {
+        return StreamSupport.stream(valueSpliterator(), parallel);
+    }
+
+    /**
+     * Returns a spliterator of the entries which reports
+     * {@link Spliterator#SIZED} until it is split and
+     * {@link Spliterator#DISTINCT}. A pending incremental rehash is finished
+     * first.
+     *
+     * @return a spliterator of the entries
+     */
+    public Spliterator<Map.Entry<K, V>> entrySpliterator() {
+        finishMigration();
+        return new TableSpliterator<>(node -> node, 0, capacity, size,
+                Spliterator.DISTINCT | Spliterator.SIZED);
+    }
+
+    /**
+     * Returns a spliterator of the keys, as {@link #entrySpliterator()}.
+     *
+     * @return a spliterator of the keys
+     */
+    public Spliterator<K> keySpliterator() {
+        finishMigration();
+        return new TableSpliterator<>(node -> node.key, 0, capacity, size,
+                Spliterator.DISTINCT | Spliterator.SIZED);
+    }
+
+    /**
+     * Returns a spliterator of the values which reports
+     * {@link Spliterator#SIZED} until it is split.
+     *
+     * @return a spliterator of the values
+     */
+    public Spliterator<V> valueSpliterator() {
+        finishMigration();
+        return new TableSpliterator<>(node -> node.value, 0, capacity, size,
+                Spliterator.SIZED);
+    }
+
+    /**
+     * Covers the buckets <code>[index, fence)</code> of the table. A split
+     * gives away the lower half of the remaining buckets and halves the
+     * estimate, so only the root spliterator is sized.
+     */
+    private final class TableSpliterator<T> implements Spliterator<T> {
+
+        private final Function<Node<K, V>, T> mapper;
+        private int index;
+        private final int fence;
+        private long estimate;
+        private int characteristics;
+        private Node<K, V> current = null;
+
+        private TableSpliterator(Function<Node<K, V>, T> mapper, int index,
+                int fence, long estimate, int characteristics) {
+
+            this.mapper = mapper;
+            this.index = index;
+            this.fence = fence;
+            this.estimate = estimate;
+            this.characteristics = characteristics;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+            Objects.requireNonNull(action);
+            while (current != null || index < fence) {
+                if (current == null) {
+                    current = bucketAt(index++);
+                    continue;
+                }
+                Node<K, V> node = current;
+                current = node.next;
+                action.accept(mapper.apply(node));
+                return true;
             }
+            return false;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super T> action) {
+            Objects.requireNonNull(action);
+            Node<K, V> node = current;
+            current = null;
+            while (true) {
+                for (; node != null; node = node.next) {
+                    action.accept(mapper.apply(node));
+                }
+                if (index >= fence) {
+                    return;
+                }
+                node = bucketAt(index++);
+            }
+        }
+
+        @Override
+        public Spliterator<T> trySplit() {
+            int lo = index;
+            int mid = (lo + fence) >>> 1;
+            if (lo >= mid || current != null) {
+                return null;
+            }
+            index = mid;
+            estimate >>>= 1;
+            characteristics &= ~Spliterator.SIZED;
+            return new TableSpliterator<>(mapper, lo, mid, estimate,
+                    characteristics);
+        }
 
-            table[i] = null;
+        @Override
+        public long estimateSize() {
+            return estimate;
         }
 
+        @Override
+        public int characteristics() {
+            return characteristics;
+        }
+    }
+
+    /**
+     * Performs the action for each key-value pair, in parallel if the map has
+     * at least <code>parallelismThreshold</code> entries. The action may be
+     * invoked from several threads at once.
+     *
+     * @param parallelismThreshold the number of entries from which the work
+     * is forked, {@link Long#MAX_VALUE} to run sequentially
+     * @param action the action for each key-value pair
+     */
+    public void forEach(long parallelismThreshold,
+            BiConsumer<? super K, ? super V> action) {
+
+        Objects.requireNonNull(action);
+        reduce(parallelismThreshold, (key, value) -> {
+            action.accept(key, value);
+            return null;
+        }, (result1, result2) -> null);
+    }
+
+    /**
+     * Returns the result of accumulating the transformation of all key-value
+     * pairs using the reducer, in parallel if the map has at least
+     * <code>parallelismThreshold</code> entries. Pairs transformed to null
+     * are skipped.
+     *
+     * @param <U> the type of results
+     * @param parallelismThreshold the number of entries from which the work
+     * is forked, {@link Long#MAX_VALUE} to run sequentially
+     * @param transformer the transformation of a key-value pair, or null if
+     * the pair is skipped
+     * @param reducer the associative combination of two results
+     * @return the result, or null if all pairs are skipped
+     */
+    public <U> U reduce(long parallelismThreshold,
+            BiFunction<? super K, ? super V, ? extends U> transformer,
+            BiFunction<? super U, ? super U, ? extends U> reducer) {
+
+        Objects.requireNonNull(transformer);
+        Objects.requireNonNull(reducer);
+        finishMigration();
+        return new ReduceTask<>(0, capacity, batchRange(parallelismThreshold),
+                transformer, reducer).invoke();
+    }
+
+    /**
+     * Returns a non-null result of the search function applied to a key-value
+     * pair, in parallel if the map has at least
+     * <code>parallelismThreshold</code> entries. Once a result is found, the
+     * other pairs are skipped; in parallel any of the matching pairs may win.
+     *
+     * @param <U> the type of results
+     * @param parallelismThreshold the number of entries from which the work
+     * is forked, {@link Long#MAX_VALUE} to run sequentially
+     * @param searchFunction the function which returns null for a key-value
+     * pair which does not match
+     * @return a non-null result of the search function, or null if no pair
+     * matches
+     */
+    public <U> U search(long parallelismThreshold,
+            BiFunction<? super K, ? super V, ? extends U> searchFunction) {
+
+        Objects.requireNonNull(searchFunction);
+        finishMigration();
+        AtomicReference<U> result = new AtomicReference<>();
+        new SearchTask<>(0, capacity, batchRange(parallelismThreshold),
+                searchFunction, result).invoke();
+        return result.get();
+    }
+
+    /**
+     * Reduces the buckets <code>[lo, hi)</code>, forking the halves while
+     * the range is longer than <code>batch</code>. Results are combined in
+     * the table order.
+     */
+    private final class ReduceTask<U> extends RecursiveTask<U> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int lo;
+        private final int hi;
+        private final int batch;
+        private final BiFunction<? super K, ? super V, ? extends U> transformer;
+        private final BiFunction<? super U, ? super U, ? extends U> reducer;
+
+        private ReduceTask(int lo, int hi, int batch,
+                BiFunction<? super K, ? super V, ? extends U> transformer,
+                BiFunction<? super U, ? super U, ? extends U> reducer) {
+
+            this.lo = lo;
+            this.hi = hi;
+            this.batch = batch;
+            this.transformer = transformer;
+            this.reducer = reducer;
+        }
+
+        @Override
+        protected U compute() {
+            if (hi - lo > batch) {
+                int mid = (lo + hi) >>> 1;
+                ReduceTask<U> left = new ReduceTask<>(lo, mid, batch,
+                        transformer, reducer);
+                left.fork();
+                U rightResult = new ReduceTask<>(mid, hi, batch, transformer,
+                        reducer).compute();
+                return combine(left.join(), rightResult);
+            }
+            U result = null;
+            for (int i = lo; i < hi; i++) {
+                for (Node<K, V> node = bucketAt(i); node != null;
+                        node = node.next) {
+
+                    result = combine(result,
+                            transformer.apply(node.key, node.value));
+                }
+            }
+            return result;
+        }
+
+        private U combine(U result1, U result2) {
+            if (result1 == null) {
+                return result2;
+            }
+            return result2 == null ? result1 : reducer.apply(result1, result2);
+        }
+    }
+
+    /**
+     * Searches the buckets <code>[lo, hi)</code>, forking the halves while
+     * the range is longer than <code>batch</code>, until any task finds a
+     * result.
+     */
+    private final class SearchTask<U> extends RecursiveTask<Void> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int lo;
+        private final int hi;
+        private final int batch;
+        private final BiFunction<? super K, ? super V, ? extends U> function;
+        private final AtomicReference<U> result;
+
+        private SearchTask(int lo, int hi, int batch,
+                BiFunction<? super K, ? super V, ? extends U> function,
+                AtomicReference<U> result) {
+
+            this.lo = lo;
+            this.hi = hi;
+            this.batch = batch;
+            this.function = function;
+            this.result = result;
+        }
+
+        @Override
+        protected Void compute() {
+            if (hi - lo > batch) {
+                int mid = (lo + hi) >>> 1;
+                SearchTask<U> left = new SearchTask<>(lo, mid, batch,
+                        function, result);
+                left.fork();
+                new SearchTask<>(mid, hi, batch, function, result).compute();
+                left.join();
+                return null;
+            }
+            for (int i = lo; i < hi && result.get() == null; i++) {
+                for (Node<K, V> node = bucketAt(i); node != null;
+                        node = node.next) {
+
+                    U found = function.apply(node.key, node.value);
+                    if (found != null) {
+                        result.compareAndSet(null, found);
+                        return null;
+                    }
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Returns the number of buckets handled by one task: the whole table if
+     * the map is smaller than the threshold, otherwise the table divided
+     * into <code>size / threshold</code> parts, but not more than four parts
+     * per thread of the common pool.
+     */
+    private int batchRange(long parallelismThreshold) {
+        if (size < parallelismThreshold) {
+            return capacity;
+        }
+        long parts = Math.min(size / Math.max(parallelismThreshold, 1),
+                ForkJoinPool.getCommonPoolParallelism() << 2);
+        return Math.max(1, (int) (capacity / Math.max(parts, 1)));
+    }
+
+    /**
+     * Returns the first node of the bucket, which is the first tree node for
+     * a treeified bucket.
+     */
+    private Node<K, V> bucketAt(int index) {
+        Node<K, V> node = table[index];
+        if (node instanceof TreeBin<K, V> bin) {
+            return bin.first;
+        }
+        return node;
+    }
+
+    /**
+     * Returns an immutable copy of this map which is laid out by a minimal
+     * perfect hash function: a lookup in it reads a single slot. The copy is
+     * independent of this map.
+     *
+     * @return a new frozen copy of this map
+     * @see FrozenHashMap
+     */
+    public FrozenHashMap<K, V> freeze() {
+        return new FrozenHashMap<>(this, strategy());
+    }
+
+    /**
+     * Returns the strategy which hashes and compares the keys.
+     *
+     * @return the hash strategy, {@link HashStrategy#natural()} by default
+     */
+    public HashStrategy<? super K> strategy() {
+        return strategy == null ? HashStrategy.natural() : strategy;
+    }
+
+    /**
+     * Removes all key-value pairs from the map and replaces the table by a
+     * new one of the default capacity, so the memory of a large table is
+     * released.
+     */
+    public void clear() {
+        oldTable = null;
         size = 0;
-        capacity = DEFAULT_CAPACITY;
+        capacity = initialCapacity(scheme);
+        table = newTable(capacity);
+        rebuildBloom();
     }
 
     @SuppressWarnings({"rawtypes", "unchecked"})
@@ -242,19 +2020,85 @@ public class HashMapImpl<K, V> implements HashMapTask<K, V> {
         return (Node<K, V>[]) new Node[capacity];
     }
 
-    private static <K> int getHash(K key) {
-        return key == null ? 0 : key.hashCode();
+    /**
+     * Returns the smallest capacity of the scheme which holds the expected
+     * number of entries without rehashing.
+     */
+    private int capacityFor(int expectedSize) {
+        int newCapacity = initialCapacity(scheme);
+        while (newCapacity < MAX_CAPACITY
+                && expectedSize >= (int) (loadFactor * newCapacity)) {
+            newCapacity = nextCapacity(newCapacity);
+        }
+        return newCapacity;
+    }
+
+    private int nextCapacity(int prevCapacity) {
+        if (scheme == TableScheme.POWER_OF_TWO) {
+            return prevCapacity << 1;
+        }
+        return prevCapacity + 1 + prevCapacity;
     }
 
-    private static <K> int getTableIndex(K key, int capacity) {
-        return (getHash(key) & 0x7fffffff) % capacity;
+    private static int initialCapacity(TableScheme scheme) {
+        return scheme == TableScheme.POWER_OF_TWO
+                ? DEFAULT_CAPACITY + 1
+                : DEFAULT_CAPACITY;
     }
 
-    private static <K> boolean areEqual(K key1, K key2) {
-        if (key1 == null) {
-            return key2 == null;
+    /**
+     * Returns the hash stored in a node: the hash of the key by the strategy
+     * or its hash code, which is spread in the power-of-two scheme so that
+     * the high bits affect the index.
+     */
+    private int getHash(K key) {
+        int hash;
+        if (key == null) {
+            hash = 0;
         } else {
-            return key1.equals(key2);
+            hash = strategy == null ? key.hashCode() : strategy.hash(key);
+        }
+        if (scheme == TableScheme.POWER_OF_TWO) {
+            return hash ^ (hash >>> 16);
+        }
+        return hash;
+    }
+
+    /**
+     * Returns the old table if the bucket of the hash is not migrated yet,
+     * otherwise the current table.
+     */
+    private Node<K, V>[] tableOf(int hash) {
+        if (oldTable != null
+                && getTableIndex(hash, oldCapacity) >= migrated) {
+            return oldTable;
+        }
+        return table;
+    }
+
+    private int indexOf(Node<K, V>[] tab, int hash) {
+        return getTableIndex(hash, tab == table ? capacity : oldCapacity);
+    }
+
+    private int getTableIndex(int hash, int capacity) {
+        if (scheme == TableScheme.POWER_OF_TWO) {
+            return hash & (capacity - 1);
+        }
+        return (hash & 0x7fffffff) % capacity;
+    }
+
+    /**
+     * Compares keys by the strategy, or by <code>equals</code> if it is null;
+     * null key is equal only to itself.
+     */
+    private static <K> boolean areEqual(HashStrategy<? super K> strategy,
+            K key1, K key2) {
+
+        if (key1 == null || key2 == null) {
+            return key1 == key2;
         }
+        return strategy == null
+                ? key1.equals(key2)
+                : strategy.equals(key1, key2);
     }
 }
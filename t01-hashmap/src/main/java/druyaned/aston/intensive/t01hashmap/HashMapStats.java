@@ -0,0 +1,173 @@
+package druyaned.aston.intensive.t01hashmap;
+
+import java.util.Arrays;
+
+/**
+ * Snapshot of the statistics of a {@link HashMapImpl}, which is taken by
+ * {@link HashMapImpl#stats()}.
+ *
+ * <p>
+ * The shape of the table (size, capacity, chain lengths) is computed from the
+ * table when the snapshot is taken. The counters of lookups and rehashes and
+ * the load samples are accumulated only while the statistics are enabled,
+ * they are zero otherwise.
+ *
+ * <p>
+ * A long tail of the chain-length histogram together with a high average
+ * probe count points at a poor <code>hashCode</code> of the keys.
+ *
+ * @author druyaned
+ */
+public final class HashMapStats {
+
+    private final int size;
+    private final int capacity;
+    private final long[] chainLengthHistogram;
+    private final int maxChainLength;
+    private final int treeifiedBuckets;
+    private final long getCount;
+    private final long probeCount;
+    private final int maxProbes;
+    private final long rehashCount;
+    private final long rehashNanos;
+    private final long maxRehashNanos;
+    private final long[] loadSampleTimes;
+    private final double[] loadSamples;
+
+    HashMapStats(int size, int capacity, long[] chainLengthHistogram,
+            int maxChainLength, int treeifiedBuckets, long getCount,
+            long probeCount, int maxProbes, long rehashCount,
+            long rehashNanos, long maxRehashNanos, long[] loadSampleTimes,
+            double[] loadSamples) {
+
+        this.size = size;
+        this.capacity = capacity;
+        this.chainLengthHistogram = chainLengthHistogram;
+        this.maxChainLength = maxChainLength;
+        this.treeifiedBuckets = treeifiedBuckets;
+        this.getCount = getCount;
+        this.probeCount = probeCount;
+        this.maxProbes = maxProbes;
+        this.rehashCount = rehashCount;
+        this.rehashNanos = rehashNanos;
+        this.maxRehashNanos = maxRehashNanos;
+        this.loadSampleTimes = loadSampleTimes;
+        this.loadSamples = loadSamples;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the current ratio of the size to the capacity.
+     *
+     * @return the current ratio of the size to the capacity
+     */
+    public double getLoad() {
+        return (double) size / capacity;
+    }
+
+    /**
+     * Returns the number of buckets by the number of entries: the element
+     * <code>i</code> counts buckets of exactly <code>i</code> entries, the
+     * last element counts all longer buckets.
+     *
+     * @return a copy of the histogram
+     */
+    public long[] getChainLengthHistogram() {
+        return chainLengthHistogram.clone();
+    }
+
+    public int getMaxChainLength() {
+        return maxChainLength;
+    }
+
+    public int getTreeifiedBuckets() {
+        return treeifiedBuckets;
+    }
+
+    public long getGetCount() {
+        return getCount;
+    }
+
+    /**
+     * Returns the average number of nodes compared by a get; a lookup in a
+     * treeified bucket is counted as the height of the tree.
+     *
+     * @return the average number of probes, zero if there were no gets
+     */
+    public double getAverageProbes() {
+        return getCount == 0 ? 0 : (double) probeCount / getCount;
+    }
+
+    public int getMaxProbes() {
+        return maxProbes;
+    }
+
+    /**
+     * Returns the number of times the table was replaced: grown by a put,
+     * shrunk by a remove or {@link HashMapImpl#trimToSize()}, or presized by
+     * {@link HashMapImpl#putAll}.
+     *
+     * @return the number of times the table was replaced
+     */
+    public long getRehashCount() {
+        return rehashCount;
+    }
+
+    /**
+     * Returns the total time spent in rehashes. In the incremental mode a
+     * rehash only allocates the new table, the time of moving buckets is
+     * spread over the following operations and is not counted.
+     *
+     * @return the total time of rehashes in nanoseconds
+     */
+    public long getRehashNanos() {
+        return rehashNanos;
+    }
+
+    public long getMaxRehashNanos() {
+        return maxRehashNanos;
+    }
+
+    /**
+     * Returns the times of the load samples in milliseconds since the epoch,
+     * oldest first.
+     *
+     * @return a copy of the sample times
+     */
+    public long[] getLoadSampleTimes() {
+        return loadSampleTimes.clone();
+    }
+
+    /**
+     * Returns the ratios of the size to the capacity which were sampled
+     * periodically by modifications of the map, oldest first.
+     *
+     * @return a copy of the load samples
+     */
+    public double[] getLoadSamples() {
+        return loadSamples.clone();
+    }
+
+    @Override
+    public String toString() {
+        return "HashMapStats{size=" + size + ", capacity=" + capacity
+                + ", load=" + getLoad()
+                + ", chainLengthHistogram="
+                + Arrays.toString(chainLengthHistogram)
+                + ", maxChainLength=" + maxChainLength
+                + ", treeifiedBuckets=" + treeifiedBuckets
+                + ", getCount=" + getCount
+                + ", averageProbes=" + getAverageProbes()
+                + ", maxProbes=" + maxProbes
+                + ", rehashCount=" + rehashCount
+                + ", rehashNanos=" + rehashNanos
+                + ", maxRehashNanos=" + maxRehashNanos + "}";
+    }
+}
@@ -0,0 +1,30 @@
+package druyaned.aston.intensive.t01hashmap;
+
+/**
+ * Management interface of the statistics of a {@link HashMapImpl}, which can
+ * be registered in the platform MBean server:
+ * <pre>
+ * ManagementFactory.getPlatformMBeanServer().registerMBean(
+ *         map.statsMXBean(), new ObjectName("app:type=HashMapImpl,name=ids"));
+ * </pre>
+ *
+ * <p>
+ * The map is not thread-safe, so the values read by a JMX client while the
+ * owner thread modifies the map are approximate.
+ *
+ * @author druyaned
+ * @see HashMapImpl#setStatsEnabled(boolean)
+ */
+public interface HashMapStatsMXBean {
+
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    /**
+     * Returns a new snapshot of the statistics.
+     *
+     * @return a new snapshot of the statistics
+     */
+    HashMapStats getStats();
+}
@@ -1,9 +1,25 @@
 package druyaned.aston.intensive.t01hashmap;
 
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
 /**
  * Task#01: "You need to write your own HashMap implementation; compulsory
  * methods: get, put, remove".
  *
+ * <p>
+ * The remapping methods ({@link #putIfAbsent}, {@link #computeIfAbsent},
+ * {@link #computeIfPresent}, {@link #compute}, {@link #merge}) follow the
+ * contracts of {@link Map}: a null value is treated as absent, and a null
+ * result of a function removes the mapping. Their default implementations
+ * are built on {@link #get}, {@link #put} and {@link #remove}, so they look
+ * the key up twice and are not atomic; implementations override them to
+ * walk the bucket once.
+ *
  * @param <K> the type of keys maintained by this map
  * @param <V> the type of mapped values
  * @author druyaned
@@ -48,4 +64,169 @@ public interface HashMapTask<K, V> {
      * @return the number of key-value mappings in this map
      */
     int size();
+
+    /**
+     * Returns an iterator over the mappings of this map in no particular
+     * order. The map must not be modified while iterating unless the
+     * implementation states otherwise, and {@link Iterator#remove} is not
+     * supported.
+     *
+     * <p>
+     * An implementation may return the same entry object from every call of
+     * {@link Iterator#next} to avoid an allocation per entry, so an entry is
+     * valid only until the next call.
+     *
+     * @return an iterator over the mappings of this map
+     */
+    Iterator<Map.Entry<K, V>> entryIterator();
+
+    /**
+     * Performs the action for each mapping of this map in the order of
+     * {@link #entryIterator}.
+     *
+     * @param action the action to be performed for each mapping
+     * @throws NullPointerException if the action is null
+     */
+    default void forEach(BiConsumer<? super K, ? super V> action) {
+        Objects.requireNonNull(action);
+        Iterator<Map.Entry<K, V>> iterator = entryIterator();
+        while (iterator.hasNext()) {
+            Map.Entry<K, V> entry = iterator.next();
+            action.accept(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Copies all mappings of the specified map to this map as
+     * {@link #put} does for each of them.
+     *
+     * @param map the mappings to be stored in this map
+     * @throws NullPointerException if the map is null
+     */
+    default void putAll(HashMapTask<? extends K, ? extends V> map) {
+        map.forEach(this::put);
+    }
+
+    /**
+     * Associates the key with the value unless the key is mapped to a
+     * non-null value.
+     *
+     * @param key key with which the specified value is to be associated
+     * @param value value to be associated with the specified key
+     * @return the current value of the key, or null if the value was stored
+     * @see Map#putIfAbsent
+     */
+    default V putIfAbsent(K key, V value) {
+        V current = get(key);
+        if (current == null) {
+            current = put(key, value);
+        }
+        return current;
+    }
+
+    /**
+     * If the key is absent or mapped to null, computes its value by the
+     * function and stores it unless it is null.
+     *
+     * @param key key with which the computed value is to be associated
+     * @param mappingFunction the function to compute a value
+     * @return the current (existing or computed) value of the key, or null
+     * if the computed value is null
+     * @throws NullPointerException if the function is null
+     * @see Map#computeIfAbsent
+     */
+    default V computeIfAbsent(K key,
+            Function<? super K, ? extends V> mappingFunction) {
+
+        Objects.requireNonNull(mappingFunction);
+        V current = get(key);
+        if (current == null) {
+            current = mappingFunction.apply(key);
+            if (current != null) {
+                put(key, current);
+            }
+        }
+        return current;
+    }
+
+    /**
+     * If the key is mapped to a non-null value, computes a new value from
+     * the key and the old value; a null result removes the mapping.
+     *
+     * @param key key with which the computed value is to be associated
+     * @param remappingFunction the function to compute a value
+     * @return the new value of the key, or null if there is none
+     * @throws NullPointerException if the function is null
+     * @see Map#computeIfPresent
+     */
+    default V computeIfPresent(K key,
+            BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+
+        Objects.requireNonNull(remappingFunction);
+        V oldValue = get(key);
+        if (oldValue == null) {
+            return null;
+        }
+        V newValue = remappingFunction.apply(key, oldValue);
+        if (newValue == null) {
+            remove(key);
+        } else {
+            put(key, newValue);
+        }
+        return newValue;
+    }
+
+    /**
+     * Computes a new value from the key and its current value (null if
+     * absent); a null result removes the mapping.
+     *
+     * @param key key with which the computed value is to be associated
+     * @param remappingFunction the function to compute a value
+     * @return the new value of the key, or null if there is none
+     * @throws NullPointerException if the function is null
+     * @see Map#compute
+     */
+    default V compute(K key,
+            BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+
+        Objects.requireNonNull(remappingFunction);
+        V oldValue = get(key);
+        V newValue = remappingFunction.apply(key, oldValue);
+        if (newValue == null) {
+            remove(key);
+        } else {
+            put(key, newValue);
+        }
+        return newValue;
+    }
+
+    /**
+     * Associates the key with the value if it is absent or mapped to null,
+     * otherwise replaces its value by the result of the function applied to
+     * the old value and the given one; a null result removes the mapping.
+     * Counting is <code>map.merge(word, 1, Integer::sum)</code>.
+     *
+     * @param key key with which the resulting value is to be associated
+     * @param value the value to be merged with the existing value
+     * @param remappingFunction the function to merge the values
+     * @return the new value of the key, or null if there is none
+     * @throws NullPointerException if the value or the function is null
+     * @see Map#merge
+     */
+    default V merge(K key, V value,
+            BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+
+        Objects.requireNonNull(value);
+        Objects.requireNonNull(remappingFunction);
+        V oldValue = get(key);
+        V newValue = oldValue == null
+                ? value
+                : remappingFunction.apply(oldValue, value);
+        if (newValue == null) {
+            remove(key);
+        } else {
+            put(key, newValue);
+        }
+        return newValue;
+    }
 }
@@ -0,0 +1,180 @@
+package druyaned.aston.intensive.t01hashmap;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Built-in implementations of {@link HashStrategy}.
+ *
+ * <p>
+ * The content hashes take the input by 64-bit words: each word is added to
+ * the state by a multiplication and a rotation, and the state is mixed with
+ * the length by the finalizer of MurmurHash3 at the end. The seed is the
+ * initial state, so keys which collide under one seed are unlikely to
+ * collide under another one.
+ *
+ * @author druyaned
+ */
+final class HashStrategies {
+
+    private static final long MULTIPLIER = 0xc6a4a7935bd1e995L;
+    private static final VarHandle LONGS = MethodHandles
+            .byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private HashStrategies() {
+    }
+
+    enum Natural implements HashStrategy<Object> {
+
+        INSTANCE;
+
+        @Override
+        public boolean usesEquals() {
+            return true;
+        }
+
+        @Override
+        public int hash(Object key) {
+            return key.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object key1, Object key2) {
+            return key1.equals(key2);
+        }
+    }
+
+    enum Identity implements HashStrategy<Object> {
+
+        INSTANCE;
+
+        @Override
+        public int hash(Object key) {
+            return System.identityHashCode(key);
+        }
+
+        @Override
+        public boolean equals(Object key1, Object key2) {
+            return key1 == key2;
+        }
+    }
+
+    static final class Seeded<K> implements HashStrategy<K> {
+
+        private final long seed;
+
+        Seeded(long seed) {
+            this.seed = seed;
+        }
+
+        @Override
+        public boolean usesEquals() {
+            return true;
+        }
+
+        @Override
+        public int hash(K key) {
+            return LongHashing.hash(key.hashCode() ^ seed);
+        }
+
+        @Override
+        public boolean equals(K key1, K key2) {
+            return key1.equals(key2);
+        }
+    }
+
+    /**
+     * Takes four chars per word.
+     */
+    static final class Strings implements HashStrategy<String> {
+
+        private final long seed;
+
+        Strings(long seed) {
+            this.seed = seed;
+        }
+
+        @Override
+        public boolean usesEquals() {
+            return true;
+        }
+
+        @Override
+        public int hash(String key) {
+            long h = seed;
+            int length = key.length();
+            int i = 0;
+            for (; i + 4 <= length; i += 4) {
+                long word = key.charAt(i)
+                        | (long) key.charAt(i + 1) << 16
+                        | (long) key.charAt(i + 2) << 32
+                        | (long) key.charAt(i + 3) << 48;
+                h = step(h, word);
+            }
+            if (i < length) {
+                long word = 0;
+                for (int shift = 0; i < length; i++, shift += 16) {
+                    word |= (long) key.charAt(i) << shift;
+                }
+                h = step(h, word);
+            }
+            return finish(h, length);
+        }
+
+        @Override
+        public boolean equals(String key1, String key2) {
+            return key1.equals(key2);
+        }
+    }
+
+    /**
+     * Takes eight bytes per word.
+     */
+    static final class ByteArrays implements HashStrategy<byte[]> {
+
+        private final long seed;
+
+        ByteArrays(long seed) {
+            this.seed = seed;
+        }
+
+        @Override
+        public int hash(byte[] key) {
+            long h = seed;
+            int length = key.length;
+            int i = 0;
+            for (; i + Long.BYTES <= length; i += Long.BYTES) {
+                h = step(h, (long) LONGS.get(key, i));
+            }
+            if (i < length) {
+                long word = 0;
+                for (int shift = 0; i < length; i++, shift += 8) {
+                    word |= (key[i] & 0xffL) << shift;
+                }
+                h = step(h, word);
+            }
+            return finish(h, length);
+        }
+
+        @Override
+        public boolean equals(byte[] key1, byte[] key2) {
+            return Arrays.equals(key1, key2);
+        }
+    }
+
+    /**
+     * Adds the next word of the input to the state.
+     */
+    static long step(long h, long word) {
+        return Long.rotateLeft((h ^ word) * MULTIPLIER, 29);
+    }
+
+    /**
+     * Mixes the state with the length of the input into the hash.
+     */
+    static int finish(long h, int length) {
+        return LongHashing.hash(h ^ length);
+    }
+}
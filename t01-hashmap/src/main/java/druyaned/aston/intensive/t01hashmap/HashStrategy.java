@@ -0,0 +1,158 @@
+package druyaned.aston.intensive.t01hashmap;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Hashing and equality of keys which a map uses instead of
+ * <code>hashCode</code> and <code>equals</code> of the keys themselves.
+ *
+ * <p>
+ * A strategy must be consistent: keys which are equal by
+ * {@link #equals(Object, Object)} have equal {@link #hash(Object)}, and both
+ * stay the same while a key is in a map. Maps handle null key themselves, so
+ * the methods are given only non-null keys.
+ *
+ * <p>
+ * The built-in strategies:
+ * <ul>
+ * <li>{@link #natural()}: <code>hashCode</code> and <code>equals</code>.</li>
+ * <li>{@link #seeded()}: the hash code mixed with a random seed. It scatters
+ * keys whose hash codes are chosen to fall into one bucket, but keys with
+ * equal hash codes still collide.</li>
+ * <li>{@link #identity()}: identity hash code and reference equality, as in
+ * {@link java.util.IdentityHashMap}. Entities whose <code>equals</code>
+ * compares only the id can be told apart.</li>
+ * <li>{@link #strings()} and {@link #byteArrays()}: a fast
+ * non-cryptographic hash of the whole content with a random seed, so
+ * strings crafted to have equal <code>hashCode</code> get different
+ * hashes. It is not a keyed cryptographic function like SipHash.</li>
+ * </ul>
+ *
+ * <p>
+ * The random seed of a strategy is chosen when the strategy is created, so
+ * each map should get its own one; the factories with an explicit seed make
+ * the hashes reproducible.
+ *
+ * @param <K> the type of keys
+ * @author druyaned
+ */
+public interface HashStrategy<K> {
+
+    /**
+     * Returns the hash of the key.
+     *
+     * @param key the non-null key
+     * @return the hash of the key
+     */
+    int hash(K key);
+
+    /**
+     * Returns true if the keys are equal.
+     *
+     * @param key1 the non-null key
+     * @param key2 the non-null key
+     * @return true if the keys are equal
+     */
+    boolean equals(K key1, K key2);
+
+    /**
+     * Returns true if {@link #equals(Object, Object)} is
+     * <code>key1.equals(key2)</code>. Then a map may order keys with equal
+     * hashes by their Comparable order, which is expected to be consistent
+     * with <code>equals</code>; otherwise such keys can be told apart only
+     * by comparing them one by one.
+     *
+     * @return true if the equality is the one of <code>equals</code>
+     */
+    default boolean usesEquals() {
+        return false;
+    }
+
+    /**
+     * Returns the strategy of <code>hashCode</code> and <code>equals</code>.
+     *
+     * @param <K> the type of keys
+     * @return the natural strategy
+     */
+    @SuppressWarnings("unchecked")
+    static <K> HashStrategy<K> natural() {
+        return (HashStrategy<K>) HashStrategies.Natural.INSTANCE;
+    }
+
+    /**
+     * Returns the strategy of hash codes mixed with a new random seed.
+     *
+     * @param <K> the type of keys
+     * @return the seeded strategy
+     */
+    static <K> HashStrategy<K> seeded() {
+        return seeded(randomSeed());
+    }
+
+    /**
+     * Returns the strategy of hash codes mixed with the seed.
+     *
+     * @param <K> the type of keys
+     * @param seed the seed
+     * @return the seeded strategy
+     */
+    static <K> HashStrategy<K> seeded(long seed) {
+        return new HashStrategies.Seeded<>(seed);
+    }
+
+    /**
+     * Returns the strategy of identity hash codes and reference equality.
+     *
+     * @param <K> the type of keys
+     * @return the identity strategy
+     */
+    @SuppressWarnings("unchecked")
+    static <K> HashStrategy<K> identity() {
+        return (HashStrategy<K>) HashStrategies.Identity.INSTANCE;
+    }
+
+    /**
+     * Returns the strategy which hashes the chars of strings with a new
+     * random seed.
+     *
+     * @return the string strategy
+     */
+    static HashStrategy<String> strings() {
+        return strings(randomSeed());
+    }
+
+    /**
+     * Returns the strategy which hashes the chars of strings with the seed.
+     *
+     * @param seed the seed
+     * @return the string strategy
+     */
+    static HashStrategy<String> strings(long seed) {
+        return new HashStrategies.Strings(seed);
+    }
+
+    /**
+     * Returns the strategy which compares byte arrays by content and hashes
+     * it with a new random seed.
+     *
+     * @return the byte array strategy
+     */
+    static HashStrategy<byte[]> byteArrays() {
+        return byteArrays(randomSeed());
+    }
+
+    /**
+     * Returns the strategy which compares byte arrays by content and hashes
+     * it with the seed.
+     *
+     * @param seed the seed
+     * @return the byte array strategy
+     */
+    static HashStrategy<byte[]> byteArrays(long seed) {
+        return new HashStrategies.ByteArrays(seed);
+    }
+
+    private static long randomSeed() {
+        return ThreadLocalRandom.current().nextLong();
+    }
+}
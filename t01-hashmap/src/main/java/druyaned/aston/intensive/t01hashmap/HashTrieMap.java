@@ -0,0 +1,755 @@
+package druyaned.aston.intensive.t01hashmap;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.function.BiConsumer;
+
+/**
+ * Persistent (immutable) implementation of the {@link HashMapTask task} by a
+ * hash array mapped trie, whose versions share structure.
+ *
+ * <p>
+ * Each level of the trie takes 5 bits of the hash: a node keeps a 32-bit
+ * bitmap of the occupied branches and a dense array of only those branches,
+ * where a branch is either a key with its value or a child node. Keys with
+ * equal hashes are kept in a collision node. {@link #with} and
+ * {@link #without} copy only the nodes on the path to the key, which is
+ * <code>O(log32 n)</code> nodes of at most 32 branches, and return a new
+ * version; the old one stays valid and unchanged. A child left with a single
+ * key after a removal is inlined into its parent, so the trie stays as
+ * shallow as the keys require.
+ *
+ * <p>
+ * Bulk loads go through a {@link Transient}: a mutable map which edits in
+ * place the nodes it has created itself and copies the shared ones, and
+ * which is turned into a version by {@link Transient#persistent()}.
+ *
+ * <p>
+ * A version can be published to reader threads by a single volatile write
+ * (copy-on-write): its fields are final and its nodes are never modified
+ * after it is created. {@link #put} and {@link #remove} throw
+ * {@link UnsupportedOperationException}. The map permits null key and null
+ * values.
+ *
+ * @param <K> the type of keys maintained by this map
+ * @param <V> the type of mapped values
+ * @author druyaned
+ */
+public final class HashTrieMap<K, V> implements HashMapTask<K, V> {
+
+    private static final int BITS = 5;
+    private static final int MAX_DEPTH = 32 / BITS + 2;
+    private static final Object NOT_FOUND = new Object();
+    private static final HashTrieMap<?, ?> EMPTY
+            = new HashTrieMap<>(BitmapNode.EMPTY, 0, false, null);
+
+    private final Node root;
+    private final int size;
+    private final boolean hasNullKey;
+    private final Object nullValue;
+
+    private HashTrieMap(Node root, int size, boolean hasNullKey,
+            Object nullValue) {
+
+        this.root = root;
+        this.size = size;
+        this.hasNullKey = hasNullKey;
+        this.nullValue = nullValue;
+    }
+
+    /**
+     * Returns the empty map.
+     *
+     * @param <K> the type of keys maintained by the map
+     * @param <V> the type of mapped values
+     * @return the empty map
+     */
+    @SuppressWarnings("unchecked")
+    public static <K, V> HashTrieMap<K, V> empty() {
+        return (HashTrieMap<K, V>) EMPTY;
+    }
+
+    /**
+     * Returns the map with all mappings of the given map, which is loaded
+     * through a transient.
+     *
+     * @param <K> the type of keys maintained by the map
+     * @param <V> the type of mapped values
+     * @param map the mappings to be copied
+     * @return the map with the mappings of the given map
+     */
+    public static <K, V> HashTrieMap<K, V> copyOf(
+            HashMapTask<? extends K, ? extends V> map) {
+
+        Transient<K, V> builder = HashTrieMap.<K, V>empty().asTransient();
+        builder.putAll(map);
+        return builder.persistent();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(K key) {
+        if (key == null) {
+            return (V) nullValue;
+        }
+        Object value = root.find(0, hash(key), key);
+        return value == NOT_FOUND ? null : (V) value;
+    }
+
+    /**
+     * Returns the version with the key mapped to the value, which shares all
+     * nodes but the path to the key with this version.
+     *
+     * @param key key with which the specified value is to be associated
+     * @param value value to be associated with the specified key
+     * @return the new version, or this one if the key is already mapped to
+     * the same value
+     */
+    public HashTrieMap<K, V> with(K key, V value) {
+        if (key == null) {
+            if (hasNullKey && nullValue == value) {
+                return this;
+            }
+            return new HashTrieMap<>(root, hasNullKey ? size : size + 1,
+                    true, value);
+        }
+        Change change = new Change();
+        Node newRoot = root.with(null, 0, hash(key), key, value, change);
+        if (newRoot == root) {
+            return this;
+        }
+        return new HashTrieMap<>(newRoot, change.added ? size + 1 : size,
+                hasNullKey, nullValue);
+    }
+
+    /**
+     * Returns the version without the key, which shares all nodes but the
+     * path to the key with this version.
+     *
+     * @param key the key whose mapping is to be removed
+     * @return the new version, or this one if the key is absent
+     */
+    public HashTrieMap<K, V> without(K key) {
+        if (key == null) {
+            return hasNullKey
+                    ? new HashTrieMap<>(root, size - 1, false, null)
+                    : this;
+        }
+        Change change = new Change();
+        Node newRoot = root.without(null, 0, hash(key), key, change);
+        if (newRoot == root) {
+            return this;
+        }
+        return new HashTrieMap<>(newRoot == null ? BitmapNode.EMPTY : newRoot,
+                size - 1, hasNullKey, nullValue);
+    }
+
+    /**
+     * Returns a mutable copy of this version which shares its nodes; it is
+     * created in <code>O(1)</code>.
+     *
+     * @return a new transient starting from this version
+     */
+    public Transient<K, V> asTransient() {
+        return new Transient<>(root, size, hasNullKey, nullValue);
+    }
+
+    /**
+     * Not supported, the map is persistent; use {@link #with}.
+     *
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public V put(K key, V value) {
+        throw new UnsupportedOperationException("The map is persistent");
+    }
+
+    /**
+     * Not supported, the map is persistent; use {@link #without}.
+     *
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public V remove(K key) {
+        throw new UnsupportedOperationException("The map is persistent");
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>
+     * The iterator is itself the entry of the current mapping, so iteration
+     * allocates nothing per entry; {@link Map.Entry#setValue} is not
+     * supported. A version is immutable, so it can be iterated while new
+     * versions are made.
+     */
+    @Override
+    public Iterator<Map.Entry<K, V>> entryIterator() {
+        return new TrieIterator<>(root, hasNullKey, nullValue);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>
+     * The trie is walked recursively, without an iterator.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        Objects.requireNonNull(action);
+        if (hasNullKey) {
+            action.accept(null, (V) nullValue);
+        }
+        root.forEach((BiConsumer<Object, Object>) action);
+    }
+
+    /**
+     * Mutable map for bulk loads and batches of changes: it edits in place
+     * the nodes which it has created, so a load of <code>n</code> keys
+     * allocates about as many nodes as the resulting trie has, instead of a
+     * path per key. The nodes it shares with persistent versions are copied
+     * on the first change.
+     *
+     * <p>
+     * The transient must not be used after {@link #persistent()}, and it is
+     * not thread-safe.
+     *
+     * @param <K> the type of keys maintained by this map
+     * @param <V> the type of mapped values
+     */
+    public static final class Transient<K, V> implements HashMapTask<K, V> {
+
+        /**
+         * Token which marks the nodes that this transient may edit in place,
+         * null after {@link #persistent()}.
+         */
+        private Object owner = new Object();
+        private Node root;
+        private int size;
+        private boolean hasNullKey;
+        private Object nullValue;
+
+        private Transient(Node root, int size, boolean hasNullKey,
+                Object nullValue) {
+
+            this.root = root;
+            this.size = size;
+            this.hasNullKey = hasNullKey;
+            this.nullValue = nullValue;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public V get(K key) {
+            ensureEditable();
+            if (key == null) {
+                return (V) nullValue;
+            }
+            Object value = root.find(0, hash(key), key);
+            return value == NOT_FOUND ? null : (V) value;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public V put(K key, V value) {
+            ensureEditable();
+            if (key == null) {
+                Object prevValue = nullValue;
+                if (!hasNullKey) {
+                    hasNullKey = true;
+                    size++;
+                }
+                nullValue = value;
+                return (V) prevValue;
+            }
+            Change change = new Change();
+            root = root.with(owner, 0, hash(key), key, value, change);
+            if (change.added) {
+                size++;
+            }
+            return (V) change.oldValue;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public V remove(K key) {
+            ensureEditable();
+            if (key == null) {
+                Object prevValue = nullValue;
+                if (hasNullKey) {
+                    hasNullKey = false;
+                    nullValue = null;
+                    size--;
+                }
+                return (V) prevValue;
+            }
+            Change change = new Change();
+            Node newRoot = root.without(owner, 0, hash(key), key, change);
+            root = newRoot == null ? BitmapNode.EMPTY : newRoot;
+            if (change.removed) {
+                size--;
+            }
+            return (V) change.oldValue;
+        }
+
+        @Override
+        public int size() {
+            ensureEditable();
+            return size;
+        }
+
+        @Override
+        public Iterator<Map.Entry<K, V>> entryIterator() {
+            ensureEditable();
+            return new TrieIterator<>(root, hasNullKey, nullValue);
+        }
+
+        /**
+         * Returns the version with the current mappings and ends this
+         * transient; the nodes are not copied.
+         *
+         * @return the new version
+         * @throws IllegalStateException if the transient is already ended
+         */
+        public HashTrieMap<K, V> persistent() {
+            ensureEditable();
+            owner = null;
+            return new HashTrieMap<>(root, size, hasNullKey, nullValue);
+        }
+
+        private void ensureEditable() {
+            if (owner == null) {
+                throw new IllegalStateException(
+                        "The transient is used after persistent()");
+            }
+        }
+    }
+
+    /**
+     * Result of an update: whether a mapping was added or removed, and the
+     * previous value.
+     */
+    private static final class Change {
+
+        private boolean added = false;
+        private boolean removed = false;
+        private Object oldValue = null;
+    }
+
+    /**
+     * Node of the trie. The array holds pairs of a key and its value; in a
+     * bitmap node a null key marks a child node in place of the value.
+     * Updates return this node if nothing changed, this node edited in place
+     * if it belongs to the given owner, or a new node.
+     */
+    private abstract static class Node {
+
+        protected final Object owner;
+        protected Object[] array;
+
+        Node(Object owner, Object[] array) {
+            this.owner = owner;
+            this.array = array;
+        }
+
+        abstract Object find(int shift, int hash, Object key);
+
+        abstract Node with(Object owner, int shift, int hash, Object key,
+                Object value, Change change);
+
+        /**
+         * Returns the node without the key, or null if it becomes empty.
+         */
+        abstract Node without(Object owner, int shift, int hash, Object key,
+                Change change);
+
+        /**
+         * Returns true if the node holds a single key and no children, so
+         * it can be inlined into its parent.
+         */
+        boolean isSingleKey() {
+            return array.length == 2 && array[0] != null;
+        }
+
+        boolean isEditableBy(Object owner) {
+            return owner != null && owner == this.owner;
+        }
+
+        void forEach(BiConsumer<Object, Object> action) {
+            for (int i = 0; i < array.length; i += 2) {
+                if (array[i] == null) {
+                    ((Node) array[i + 1]).forEach(action);
+                } else {
+                    action.accept(array[i], array[i + 1]);
+                }
+            }
+        }
+    }
+
+    private static final class BitmapNode extends Node {
+
+        private static final BitmapNode EMPTY
+                = new BitmapNode(null, 0, new Object[0]);
+
+        private int bitmap;
+
+        private BitmapNode(Object owner, int bitmap, Object[] array) {
+            super(owner, array);
+            this.bitmap = bitmap;
+        }
+
+        @Override
+        Object find(int shift, int hash, Object key) {
+            int bit = bitOf(hash, shift);
+            if ((bitmap & bit) == 0) {
+                return NOT_FOUND;
+            }
+            int i = indexOf(bit);
+            Object k = array[i];
+            if (k == null) {
+                return ((Node) array[i + 1]).find(shift + BITS, hash, key);
+            }
+            return key.equals(k) ? array[i + 1] : NOT_FOUND;
+        }
+
+        @Override
+        Node with(Object owner, int shift, int hash, Object key,
+                Object value, Change change) {
+
+            int bit = bitOf(hash, shift);
+            int i = indexOf(bit);
+            if ((bitmap & bit) == 0) {
+                change.added = true;
+                Object[] newArray = new Object[array.length + 2];
+                System.arraycopy(array, 0, newArray, 0, i);
+                newArray[i] = key;
+                newArray[i + 1] = value;
+                System.arraycopy(array, i, newArray, i + 2, array.length - i);
+                return edit(owner, bitmap | bit, newArray);
+            }
+            Object k = array[i];
+            Object v = array[i + 1];
+            if (k == null) {
+                Node child = (Node) v;
+                Node newChild = child.with(owner, shift + BITS, hash, key,
+                        value, change);
+                return newChild == child ? this : set(owner, i, null, newChild);
+            }
+            if (key.equals(k)) {
+                change.oldValue = v;
+                return v == value ? this : set(owner, i, k, value);
+            }
+            change.added = true;
+            Node child = pair(owner, shift + BITS, k, v, hash(k),
+                    key, value, hash);
+            return set(owner, i, null, child);
+        }
+
+        @Override
+        Node without(Object owner, int shift, int hash, Object key,
+                Change change) {
+
+            int bit = bitOf(hash, shift);
+            if ((bitmap & bit) == 0) {
+                return this;
+            }
+            int i = indexOf(bit);
+            Object k = array[i];
+            Object v = array[i + 1];
+            if (k == null) {
+                Node child = (Node) v;
+                Node newChild = child.without(owner, shift + BITS, hash, key,
+                        change);
+                if (newChild == child) {
+                    return this;
+                }
+                if (newChild == null) {
+                    return removeAt(owner, bit, i);
+                }
+                if (newChild.isSingleKey()) {
+                    return set(owner, i, newChild.array[0],
+                            newChild.array[1]);
+                }
+                return set(owner, i, null, newChild);
+            }
+            if (!key.equals(k)) {
+                return this;
+            }
+            change.removed = true;
+            change.oldValue = v;
+            return removeAt(owner, bit, i);
+        }
+
+        private Node removeAt(Object owner, int bit, int i) {
+            if (bitmap == bit) {
+                return null;
+            }
+            Object[] newArray = new Object[array.length - 2];
+            System.arraycopy(array, 0, newArray, 0, i);
+            System.arraycopy(array, i + 2, newArray, i, newArray.length - i);
+            return edit(owner, bitmap ^ bit, newArray);
+        }
+
+        /**
+         * Sets the branch at the array index to the pair.
+         */
+        private Node set(Object owner, int i, Object key, Object value) {
+            if (isEditableBy(owner)) {
+                array[i] = key;
+                array[i + 1] = value;
+                return this;
+            }
+            Object[] newArray = array.clone();
+            newArray[i] = key;
+            newArray[i + 1] = value;
+            return new BitmapNode(owner, bitmap, newArray);
+        }
+
+        private Node edit(Object owner, int newBitmap, Object[] newArray) {
+            if (isEditableBy(owner)) {
+                bitmap = newBitmap;
+                array = newArray;
+                return this;
+            }
+            return new BitmapNode(owner, newBitmap, newArray);
+        }
+
+        /**
+         * Returns the array index of the branch: twice the number of the
+         * occupied branches below it.
+         */
+        private int indexOf(int bit) {
+            return Integer.bitCount(bitmap & (bit - 1)) << 1;
+        }
+
+        /**
+         * Creates the node of two keys which share the hash bits above the
+         * shift.
+         */
+        private static Node pair(Object owner, int shift, Object key1,
+                Object value1, int hash1, Object key2, Object value2,
+                int hash2) {
+
+            if (hash1 == hash2) {
+                return new CollisionNode(owner, hash1,
+                        new Object[] {key1, value1, key2, value2});
+            }
+            int bit1 = bitOf(hash1, shift);
+            int bit2 = bitOf(hash2, shift);
+            if (bit1 == bit2) {
+                Node child = pair(owner, shift + BITS, key1, value1, hash1,
+                        key2, value2, hash2);
+                return new BitmapNode(owner, bit1, new Object[] {null, child});
+            }
+            Object[] array = Integer.compareUnsigned(bit1, bit2) < 0
+                    ? new Object[] {key1, value1, key2, value2}
+                    : new Object[] {key2, value2, key1, value1};
+            return new BitmapNode(owner, bit1 | bit2, array);
+        }
+    }
+
+    /**
+     * Node of keys whose hashes are equal in all bits.
+     */
+    private static final class CollisionNode extends Node {
+
+        private final int hash;
+
+        private CollisionNode(Object owner, int hash, Object[] array) {
+            super(owner, array);
+            this.hash = hash;
+        }
+
+        @Override
+        Object find(int shift, int hash, Object key) {
+            if (hash == this.hash) {
+                for (int i = 0; i < array.length; i += 2) {
+                    if (key.equals(array[i])) {
+                        return array[i + 1];
+                    }
+                }
+            }
+            return NOT_FOUND;
+        }
+
+        @Override
+        Node with(Object owner, int shift, int hash, Object key,
+                Object value, Change change) {
+
+            if (hash != this.hash) {
+                Node parent = new BitmapNode(owner, bitOf(this.hash, shift),
+                        new Object[] {null, this});
+                return parent.with(owner, shift, hash, key, value, change);
+            }
+            int i = indexOf(key);
+            if (i >= 0) {
+                change.oldValue = array[i + 1];
+                if (array[i + 1] == value) {
+                    return this;
+                }
+                if (isEditableBy(owner)) {
+                    array[i + 1] = value;
+                    return this;
+                }
+                Object[] newArray = array.clone();
+                newArray[i + 1] = value;
+                return new CollisionNode(owner, hash, newArray);
+            }
+            change.added = true;
+            Object[] newArray = new Object[array.length + 2];
+            System.arraycopy(array, 0, newArray, 0, array.length);
+            newArray[array.length] = key;
+            newArray[array.length + 1] = value;
+            if (isEditableBy(owner)) {
+                array = newArray;
+                return this;
+            }
+            return new CollisionNode(owner, hash, newArray);
+        }
+
+        @Override
+        Node without(Object owner, int shift, int hash, Object key,
+                Change change) {
+
+            int i = hash == this.hash ? indexOf(key) : -1;
+            if (i < 0) {
+                return this;
+            }
+            change.removed = true;
+            change.oldValue = array[i + 1];
+            if (array.length == 2) {
+                return null;
+            }
+            Object[] newArray = new Object[array.length - 2];
+            System.arraycopy(array, 0, newArray, 0, i);
+            System.arraycopy(array, i + 2, newArray, i, newArray.length - i);
+            if (isEditableBy(owner)) {
+                array = newArray;
+                return this;
+            }
+            return new CollisionNode(owner, hash, newArray);
+        }
+
+        private int indexOf(Object key) {
+            for (int i = 0; i < array.length; i += 2) {
+                if (key.equals(array[i])) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * Walks the trie depth-first with a stack of node arrays.
+     */
+    private static final class TrieIterator<K, V>
+            implements Iterator<Map.Entry<K, V>>, Map.Entry<K, V> {
+
+        private final Object[][] arrays = new Object[MAX_DEPTH][];
+        private final int[] indexes = new int[MAX_DEPTH];
+        private int depth = 0;
+        private boolean nullPending;
+        private final Object nullValue;
+        private Object key;
+        private Object value;
+        private boolean ready = false;
+
+        private TrieIterator(Node root, boolean hasNullKey,
+                Object nullValue) {
+
+            arrays[0] = root.array;
+            this.nullPending = hasNullKey;
+            this.nullValue = nullValue;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (!ready) {
+                ready = advance();
+            }
+            return ready;
+        }
+
+        @Override
+        public Map.Entry<K, V> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            ready = false;
+            return this;
+        }
+
+        private boolean advance() {
+            if (nullPending) {
+                nullPending = false;
+                key = null;
+                value = nullValue;
+                return true;
+            }
+            while (depth >= 0) {
+                Object[] array = arrays[depth];
+                int i = indexes[depth];
+                if (i == array.length) {
+                    depth--;
+                    continue;
+                }
+                indexes[depth] = i + 2;
+                if (array[i] == null) {
+                    depth++;
+                    arrays[depth] = ((Node) array[i + 1]).array;
+                    indexes[depth] = 0;
+                    continue;
+                }
+                key = array[i];
+                value = array[i + 1];
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public K getKey() {
+            return (K) key;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public V getValue() {
+            return (V) value;
+        }
+
+        @Override
+        public V setValue(V value) {
+            throw new UnsupportedOperationException("The map is persistent");
+        }
+    }
+
+    private static int bitOf(int hash, int shift) {
+        return 1 << ((hash >>> shift) & 31);
+    }
+
+    /**
+     * Mixes the hash code (finalizer of MurmurHash3), so the 5-bit chunks
+     * of the trie levels depend on all of its bits; it is a bijection, so
+     * only equal hash codes collide.
+     */
+    private static int hash(Object key) {
+        int h = key.hashCode();
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
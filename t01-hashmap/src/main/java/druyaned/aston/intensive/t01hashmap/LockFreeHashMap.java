@@ -0,0 +1,688 @@
+package druyaned.aston.intensive.t01hashmap;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.AbstractMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * Lock-free open-addressing implementation of the {@link HashMapTask task}
+ * after Cliff Click's non-blocking hash map, for read-dominated workloads.
+ *
+ * <p>
+ * Keys and values are stored side by side in one array which is accessed
+ * through a {@link VarHandle} with volatile semantics; there are no nodes and
+ * no locks. A key slot is claimed once by CAS from null and never changes
+ * afterwards, so a reader probes linearly until it meets the key or a null
+ * key slot. Every update of a value is a single CAS; a removal replaces the
+ * value by a tombstone, which keeps the key slot claimed. A get is a probe of
+ * volatile reads only.
+ *
+ * <p>
+ * When claimed key slots reach <code>3/4</code> of capacity or a probe is too
+ * long, a new table is attached to the old one and the entries are copied
+ * cooperatively: every thread which meets the resize claims chunks of old
+ * slots and copies them. A slot is copied in three steps, each one a CAS: the
+ * value is boxed into a "prime" (a forwarding marker which freezes the old
+ * slot), the unboxed value is put into the new table unless the new table
+ * already has a newer value for the key, and the old value becomes a dead
+ * prime. An empty old key slot is killed by a tombstone key, so a probe which
+ * meets it continues in the new table. Readers and writers which meet a prime
+ * help to copy that slot and continue in the new table. Dead keys are not
+ * copied, so a resize also cleans tombstones; the new capacity depends on
+ * the number of live entries.
+ *
+ * <p>
+ * The remapping methods ({@link #putIfAbsent}, {@link #computeIfAbsent},
+ * {@link #computeIfPresent}, {@link #compute} and {@link #merge}) are atomic
+ * without locks: the value is read, the function is applied and the result
+ * is set by a CAS which expects the value read, or the whole step is retried.
+ * So the function may be applied more than once under contention and should
+ * be free of side effects.
+ *
+ * <p>
+ * Null keys and null values are not permitted, since null is reserved to
+ * mean "no mapping". The size is kept by a {@link LongAdder}.
+ *
+ * @param <K> the type of keys maintained by this map
+ * @param <V> the type of mapped values
+ * @author druyaned
+ */
+public class LockFreeHashMap<K, V> implements HashMapTask<K, V> {
+
+    public static final int DEFAULT_CAPACITY = 16;
+    public static final int MAX_CAPACITY = 1 << 29;
+    public static final int REPROBE_LIMIT = 10;
+
+    /**
+     * Number of old slots which a thread copies at once.
+     */
+    private static final int COPY_CHUNK = 1024;
+
+    private static final VarHandle SLOT
+            = MethodHandles.arrayElementVarHandle(Object[].class);
+    private static final VarHandle TOP;
+
+    static {
+        try {
+            TOP = MethodHandles.lookup().findVarHandle(
+                    LockFreeHashMap.class, "top", Table.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * Value of a removed entry, and key of a slot killed during a copy.
+     */
+    private static final Object TOMBSTONE = new Object();
+
+    /**
+     * Value of an old slot which is copied (or had nothing to copy).
+     */
+    private static final Prime TOMBPRIME = new Prime(TOMBSTONE);
+
+    /**
+     * Expected value of an unconditional update.
+     */
+    private static final Object MATCH_ANY = new Object();
+
+    /**
+     * Boxed value of an old slot which is being copied into the new table.
+     */
+    private static final class Prime {
+
+        final Object value;
+
+        private Prime(Object value) {
+            this.value = value;
+        }
+    }
+
+    private static final class Table {
+
+        /**
+         * The key of the slot <code>i</code> is at <code>2 * i</code>, the
+         * value at <code>2 * i + 1</code>.
+         */
+        final Object[] slots;
+        final int mask;
+        final AtomicInteger claimed = new AtomicInteger();
+        final AtomicReference<Table> next = new AtomicReference<>();
+        final AtomicInteger copyIndex = new AtomicInteger();
+        final AtomicInteger copyDone = new AtomicInteger();
+
+        private Table(int capacity) {
+            slots = new Object[capacity << 1];
+            mask = capacity - 1;
+        }
+
+        private int capacity() {
+            return mask + 1;
+        }
+
+        private Object key(int index) {
+            return SLOT.getVolatile(slots, index << 1);
+        }
+
+        private Object value(int index) {
+            return SLOT.getVolatile(slots, (index << 1) + 1);
+        }
+
+        private boolean casKey(int index, Object expected, Object key) {
+            return SLOT.compareAndSet(slots, index << 1, expected, key);
+        }
+
+        private boolean casValue(int index, Object expected, Object value) {
+            return SLOT.compareAndSet(slots, (index << 1) + 1, expected, value);
+        }
+    }
+
+    private volatile Table top;
+    private final LongAdder count = new LongAdder();
+
+    public LockFreeHashMap() {
+        top = new Table(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates the map which holds the expected number of entries without
+     * resizing.
+     *
+     * @param expectedSize the expected number of entries
+     * @throws IllegalArgumentException if the expected size is negative
+     */
+    public LockFreeHashMap(int expectedSize) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException(
+                    "expectedSize=" + expectedSize + " is negative");
+        }
+        int capacity = DEFAULT_CAPACITY;
+        while (capacity < MAX_CAPACITY
+                && expectedSize >= maxClaimed(capacity)) {
+
+            capacity <<= 1;
+        }
+        top = new Table(capacity);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws NullPointerException if the key is null
+     */
+    @Override
+    public V get(K key) {
+        Object value = get(top, key, hash(key));
+        return value == TOMBSTONE ? null : castValue(value);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws NullPointerException if the key or the value is null
+     */
+    @Override
+    public V put(K key, V value) {
+        Objects.requireNonNull(value);
+        Object prevValue = putIfMatch(top, key, hash(key), value, MATCH_ANY,
+                false);
+        return prevValue == TOMBSTONE ? null : castValue(prevValue);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws NullPointerException if the key is null
+     */
+    @Override
+    public V remove(K key) {
+        Object prevValue = putIfMatch(top, key, hash(key), TOMBSTONE,
+                MATCH_ANY, false);
+        return prevValue == TOMBSTONE ? null : castValue(prevValue);
+    }
+
+    /**
+     * Kinds of the remapping operations, which share one retry loop.
+     */
+    private enum Remap {
+        PUT_IF_ABSENT, IF_ABSENT, IF_PRESENT, COMPUTE, MERGE
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws NullPointerException if the key or the value is null
+     */
+    @Override
+    public V putIfAbsent(K key, V value) {
+        Objects.requireNonNull(value);
+        return remap(Remap.PUT_IF_ABSENT, key, value, null);
+    }
+
+    @Override
+    public V computeIfAbsent(K key,
+            Function<? super K, ? extends V> mappingFunction) {
+
+        Objects.requireNonNull(mappingFunction);
+        return remap(Remap.IF_ABSENT, key, null,
+                (k, oldValue) -> mappingFunction.apply(k));
+    }
+
+    @Override
+    public V computeIfPresent(K key,
+            BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+
+        Objects.requireNonNull(remappingFunction);
+        return remap(Remap.IF_PRESENT, key, null, remappingFunction);
+    }
+
+    @Override
+    public V compute(K key,
+            BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+
+        Objects.requireNonNull(remappingFunction);
+        return remap(Remap.COMPUTE, key, null, remappingFunction);
+    }
+
+    @Override
+    public V merge(K key, V value,
+            BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+
+        Objects.requireNonNull(value);
+        Objects.requireNonNull(remappingFunction);
+        return remap(Remap.MERGE, key, value,
+                (k, oldValue) -> remappingFunction.apply(oldValue, value));
+    }
+
+    /**
+     * Performs a remapping operation as a CAS retry loop: reads the value of
+     * the key, computes the new one and sets it only if the key still has the
+     * value read (the same instance, or still no mapping).
+     */
+    private V remap(Remap kind, K key, V value,
+            BiFunction<? super K, ? super V, ? extends V> function) {
+
+        int hash = hash(key);
+        while (true) {
+            Object raw = get(top, key, hash);
+            V oldValue = raw == TOMBSTONE ? null : castValue(raw);
+            V newValue;
+            if (oldValue == null) {
+                if (kind == Remap.IF_PRESENT) {
+                    return null;
+                }
+                newValue = kind == Remap.PUT_IF_ABSENT || kind == Remap.MERGE
+                        ? value
+                        : function.apply(key, null);
+                if (newValue == null) {
+                    return null;
+                }
+            } else {
+                if (kind == Remap.PUT_IF_ABSENT || kind == Remap.IF_ABSENT) {
+                    return oldValue;
+                }
+                newValue = function.apply(key, oldValue);
+            }
+            Object witness = putIfMatch(top, key, hash,
+                    newValue == null ? TOMBSTONE : newValue, oldValue, false);
+            if (matches(witness, oldValue)) {
+                return kind == Remap.PUT_IF_ABSENT ? null : newValue;
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        return (int) Math.min(Math.max(count.sum(), 0), Integer.MAX_VALUE);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>
+     * The iterator is weakly consistent: a resize in progress is finished
+     * first, then the slots of the table are walked and the value of a slot
+     * which is copied meanwhile is looked up in the newer table. Each entry
+     * present during the whole iteration is returned once, updates made during
+     * the iteration may be reflected or not. Entries are snapshots, so
+     * {@link Map.Entry#setValue} is not supported.
+     */
+    @Override
+    public Iterator<Map.Entry<K, V>> entryIterator() {
+        Table table = top;
+        while (table.next.get() != null) {
+            helpCopy(table, true);
+            table = top;
+        }
+        return new SlotIterator(table);
+    }
+
+    private final class SlotIterator implements Iterator<Map.Entry<K, V>> {
+
+        private final Table table;
+        private int index = 0;
+        private Map.Entry<K, V> next;
+
+        private SlotIterator(Table table) {
+            this.table = table;
+            next = advance();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Map.Entry<K, V> next() {
+            Map.Entry<K, V> entry = next;
+            if (entry == null) {
+                throw new NoSuchElementException();
+            }
+            next = advance();
+            return entry;
+        }
+
+        @SuppressWarnings("unchecked")
+        private Map.Entry<K, V> advance() {
+            while (index < table.capacity()) {
+                int i = index++;
+                Object key = table.key(i);
+                if (key == null || key == TOMBSTONE) {
+                    continue;
+                }
+                Object value = table.value(i);
+                if (value instanceof Prime) {
+                    value = get(top, key, hash(key));
+                }
+                if (value != null && value != TOMBSTONE) {
+                    return new AbstractMap.SimpleImmutableEntry<>(
+                            (K) key, (V) value);
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Returns the raw value of the key: null or a tombstone if it is absent.
+     */
+    private Object get(Table table, Object key, int hash) {
+        Objects.requireNonNull(key);
+        retry:
+        while (true) {
+            int index = hash & table.mask;
+            int limit = reprobeLimit(table.capacity());
+            for (int reprobes = 0; ; reprobes++) {
+                Object slotKey = table.key(index);
+                if (slotKey == null) {
+                    return null;
+                }
+                Object value = table.value(index);
+                if (areEqual(key, slotKey)) {
+                    if (!(value instanceof Prime)) {
+                        return value;
+                    }
+                    table = copySlotAndCheck(table, index, true);
+                    continue retry;
+                }
+                if (reprobes >= limit || slotKey == TOMBSTONE) {
+                    Table next = table.next.get();
+                    if (next == null) {
+                        return null;
+                    }
+                    helpCopy();
+                    table = next;
+                    continue retry;
+                }
+                index = (index + 1) & table.mask;
+            }
+        }
+    }
+
+    /**
+     * Sets the raw value of the key and returns the previous one. A tombstone
+     * removes the key. Unless the expected value is {@link #MATCH_ANY}, the
+     * value is set only if the current one {@link #matches matches} it, and
+     * the current value is returned otherwise. A copy puts the value only if
+     * the slot of the key has never had a value in this table, and does not
+     * change the size.
+     */
+    private Object putIfMatch(Table table, Object key, int hash,
+            Object newValue, Object expected, boolean copy) {
+
+        Objects.requireNonNull(key);
+        retry:
+        while (true) {
+            int index = hash & table.mask;
+            int limit = reprobeLimit(table.capacity());
+            int reprobes = 0;
+            while (true) {
+                Object slotKey = table.key(index);
+                if (slotKey == null) {
+                    if (newValue == TOMBSTONE
+                            || expected != MATCH_ANY && expected != null) {
+
+                        return null;
+                    }
+                    if (table.casKey(index, null, key)) {
+                        table.claimed.incrementAndGet();
+                        break;
+                    }
+                    slotKey = table.key(index);
+                }
+                if (areEqual(key, slotKey)) {
+                    break;
+                }
+                if (++reprobes >= limit || slotKey == TOMBSTONE) {
+                    Table next = resize(table);
+                    if (!copy) {
+                        helpCopy();
+                    }
+                    table = next;
+                    continue retry;
+                }
+                index = (index + 1) & table.mask;
+            }
+
+            Object value = table.value(index);
+            if (value == newValue) {
+                return value;
+            }
+            Table next = table.next.get();
+            if (next == null && (value == null && isFull(table)
+                    || value instanceof Prime)) {
+
+                next = resize(table);
+            }
+            if (next != null) {
+                table = copySlotAndCheck(table, index, !copy);
+                continue;
+            }
+
+            while (true) {
+                if (copy && value != null) {
+                    return value;
+                }
+                if (expected != MATCH_ANY && !matches(value, expected)) {
+                    return value;
+                }
+                if (table.casValue(index, value, newValue)) {
+                    if (!copy) {
+                        updateCount(value, newValue);
+                    }
+                    return value;
+                }
+                value = table.value(index);
+                if (value instanceof Prime) {
+                    table = copySlotAndCheck(table, index, !copy);
+                    continue retry;
+                }
+            }
+        }
+    }
+
+    private void updateCount(Object prevValue, Object newValue) {
+        boolean wasPresent = prevValue != null && prevValue != TOMBSTONE;
+        boolean isPresent = newValue != TOMBSTONE;
+        if (!wasPresent && isPresent) {
+            count.increment();
+        } else if (wasPresent && !isPresent) {
+            count.decrement();
+        }
+    }
+
+    /**
+     * Attaches a new table to the given one unless it is attached already;
+     * the capacity is doubled or quadrupled depending on the number of live
+     * entries, or kept if most claimed keys are dead.
+     */
+    private Table resize(Table table) {
+        Table next = table.next.get();
+        if (next != null) {
+            return next;
+        }
+        int capacity = table.capacity();
+        long live = count.sum();
+        int newCapacity = capacity;
+        if (live >= capacity >> 2 && newCapacity < MAX_CAPACITY) {
+            newCapacity <<= 1;
+        }
+        if (live >= capacity >> 1 && newCapacity < MAX_CAPACITY) {
+            newCapacity <<= 1;
+        }
+        Table created = new Table(newCapacity);
+        if (table.next.compareAndSet(null, created)) {
+            return created;
+        }
+        return table.next.get();
+    }
+
+    /**
+     * Helps to copy the top table if it is being resized.
+     */
+    private void helpCopy() {
+        Table table = top;
+        if (table.next.get() != null) {
+            helpCopy(table, false);
+        }
+    }
+
+    /**
+     * Claims chunks of the old table and copies them; one chunk unless
+     * <code>copyAll</code> is set or every slot has been claimed already, in
+     * which case the rest of the copy is done by this thread.
+     */
+    private void helpCopy(Table old, boolean copyAll) {
+        Table next = old.next.get();
+        int capacity = old.capacity();
+        int chunk = Math.min(capacity, COPY_CHUNK);
+        boolean panic = false;
+        int copyIndex = 0;
+        while (old.copyDone.get() < capacity) {
+            if (!panic) {
+                copyIndex = old.copyIndex.get();
+                while (copyIndex < capacity << 1 && !old.copyIndex
+                        .compareAndSet(copyIndex, copyIndex + chunk)) {
+
+                    copyIndex = old.copyIndex.get();
+                }
+                panic = copyIndex >= capacity << 1;
+            }
+            int workDone = 0;
+            for (int i = 0; i < chunk; i++) {
+                if (copySlot(old, (copyIndex + i) & old.mask, next)) {
+                    workDone++;
+                }
+            }
+            if (workDone > 0) {
+                copyCheckAndPromote(old, workDone);
+            }
+            copyIndex += chunk;
+            if (!copyAll && !panic) {
+                return;
+            }
+        }
+        copyCheckAndPromote(old, 0);
+    }
+
+    /**
+     * Copies the old slot and returns the new table.
+     */
+    private Table copySlotAndCheck(Table old, int index, boolean help) {
+        Table next = old.next.get();
+        if (copySlot(old, index, next)) {
+            copyCheckAndPromote(old, 1);
+        }
+        if (help) {
+            helpCopy();
+        }
+        return next;
+    }
+
+    /**
+     * Adds the copied slots and makes the new table the top one when the old
+     * top table is copied completely.
+     */
+    private void copyCheckAndPromote(Table old, int workDone) {
+        int done = workDone > 0
+                ? old.copyDone.addAndGet(workDone)
+                : old.copyDone.get();
+        if (done == old.capacity() && top == old) {
+            TOP.compareAndSet(this, old, old.next.get());
+        }
+    }
+
+    /**
+     * Copies the old slot into the new table; returns true if this thread
+     * finished the copy of the slot.
+     */
+    private boolean copySlot(Table old, int index, Table next) {
+        Object key;
+        while ((key = old.key(index)) == null) {
+            old.casKey(index, null, TOMBSTONE);
+        }
+
+        Object value = old.value(index);
+        while (!(value instanceof Prime)) {
+            Prime box = value == null || value == TOMBSTONE
+                    ? TOMBPRIME
+                    : new Prime(value);
+            if (old.casValue(index, value, box)) {
+                if (box == TOMBPRIME) {
+                    return true;
+                }
+                value = box;
+                break;
+            }
+            value = old.value(index);
+        }
+        if (value == TOMBPRIME) {
+            return false;
+        }
+
+        Object unboxed = ((Prime) value).value;
+        boolean copied = putIfMatch(next, key, hash(key), unboxed, MATCH_ANY,
+                true) == null;
+        while (value != TOMBPRIME && !old.casValue(index, value, TOMBPRIME)) {
+            value = old.value(index);
+        }
+        return copied;
+    }
+
+    /**
+     * Returns whether a new key should go to a new table: claimed slots,
+     * dead ones included, reach <code>3/4</code> of capacity.
+     */
+    private static boolean isFull(Table table) {
+        return table.claimed.get() >= maxClaimed(table.capacity());
+    }
+
+    private static int maxClaimed(int capacity) {
+        return capacity - (capacity >> 2);
+    }
+
+    private static int reprobeLimit(int capacity) {
+        return REPROBE_LIMIT + (capacity >> 2);
+    }
+
+    /**
+     * Spreads the hash code, so that the low bits used for the index depend on
+     * all of its bits.
+     */
+    private static int hash(Object key) {
+        int h = key.hashCode();
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        return h;
+    }
+
+    /**
+     * Returns whether the raw value is the expected one; null is expected for
+     * no mapping, which is null or a tombstone.
+     */
+    private static boolean matches(Object value, Object expected) {
+        return expected == null
+                ? value == null || value == TOMBSTONE
+                : value == expected;
+    }
+
+    private static boolean areEqual(Object key, Object slotKey) {
+        return key == slotKey || slotKey != TOMBSTONE && key.equals(slotKey);
+    }
+
+    @SuppressWarnings("unchecked")
+    private V castValue(Object value) {
+        return (V) value;
+    }
+}
@@ -0,0 +1,53 @@
+package druyaned.aston.intensive.t01hashmap;
+
+/**
+ * Hashing and sizing shared by the maps with primitive <code>long</code>
+ * keys.
+ *
+ * @author druyaned
+ */
+final class LongHashing {
+
+    private LongHashing() {
+    }
+
+    /**
+     * Mixes all bits of the key (finalizer of MurmurHash3), so sequential ids
+     * are scattered over the table.
+     */
+    static int hash(long key) {
+        return (int) mix(key);
+    }
+
+    /**
+     * Returns all 64 mixed bits, so the low and the high halves can serve as
+     * two independent hashes.
+     */
+    static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+
+    /**
+     * Returns the smallest power-of-two capacity which holds the expected
+     * number of entries without resizing.
+     */
+    static int capacityFor(int expectedSize, double loadFactor,
+            int minCapacity, int maxCapacity) {
+
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException(
+                    "expectedSize=" + expectedSize + " is negative");
+        }
+        int capacity = minCapacity;
+        while (capacity < maxCapacity
+                && expectedSize >= loadFactor * capacity) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+}
@@ -0,0 +1,239 @@
+package druyaned.aston.intensive.t01hashmap;
+
+/**
+ * Map from primitive <code>long</code> keys to primitive <code>long</code>
+ * values.
+ *
+ * <p>
+ * It is organized as {@link LongObjectMap}, but values are stored in a
+ * <code>long[]</code> too, so neither keys nor values are boxed. Since there
+ * is no null, an absent key is reported by the missing value given at
+ * construction (<code>0</code> by default); {@link #containsKey}
+ * distinguishes an absent key from a key mapped to the missing value.
+ *
+ * @author druyaned
+ */
+public class LongLongMap {
+
+    public static final int DEFAULT_CAPACITY = 16;
+    public static final int MAX_CAPACITY = 1 << 30;
+    public static final double LOAD_FACTOR = 0.75;
+
+    private long[] keys;
+    private long[] values;
+    private int mask;
+    private int threshold;
+    private int size = 0;
+    private boolean hasZeroKey = false;
+    private long zeroValue;
+    private final long missingValue;
+
+    public LongLongMap() {
+        this(0, 0);
+    }
+
+    /**
+     * Creates the map which holds the expected number of entries without
+     * resizing and reports absent keys by <code>0</code>.
+     *
+     * @param expectedSize the expected number of entries
+     * @throws IllegalArgumentException if the expected size is negative
+     */
+    public LongLongMap(int expectedSize) {
+        this(expectedSize, 0);
+    }
+
+    /**
+     * Creates the map which holds the expected number of entries without
+     * resizing and reports absent keys by the given value.
+     *
+     * @param expectedSize the expected number of entries
+     * @param missingValue the value returned for absent keys
+     * @throws IllegalArgumentException if the expected size is negative
+     */
+    public LongLongMap(int expectedSize, long missingValue) {
+        this.missingValue = missingValue;
+        this.zeroValue = missingValue;
+        allocate(LongHashing.capacityFor(expectedSize, LOAD_FACTOR,
+                DEFAULT_CAPACITY, MAX_CAPACITY));
+    }
+
+    /**
+     * Returns the value to which the specified key is mapped, or the missing
+     * value if this map contains no mapping for the key.
+     *
+     * @param key the key whose associated value is to be returned
+     * @return the value to which the specified key is mapped, or the missing
+     * value if this map contains no mapping for the key
+     */
+    public long get(long key) {
+        if (key == 0) {
+            return zeroValue;
+        }
+        int index = find(key);
+        return index < 0 ? missingValue : values[index];
+    }
+
+    /**
+     * Returns true if this map contains a mapping for the specified key.
+     *
+     * @param key the key whose presence is to be tested
+     * @return true if this map contains a mapping for the specified key
+     */
+    public boolean containsKey(long key) {
+        return key == 0 ? hasZeroKey : find(key) >= 0;
+    }
+
+    /**
+     * Associates the specified value with the specified key in this map. If the
+     * map previously contained a mapping for the key, the old value is
+     * replaced.
+     *
+     * @param key key with which the specified value is to be associated
+     * @param value value to be associated with the specified key
+     * @return the previous value associated with key, or the missing value if
+     * there was no mapping for key
+     */
+    public long put(long key, long value) {
+        if (key == 0) {
+            long prevValue = zeroValue;
+            if (!hasZeroKey) {
+                hasZeroKey = true;
+                size++;
+            }
+            zeroValue = value;
+            return prevValue;
+        }
+        int index = LongHashing.hash(key) & mask;
+        while (true) {
+            long slotKey = keys[index];
+            if (slotKey == 0) {
+                if (size >= threshold) {
+                    resize();
+                    return put(key, value);
+                }
+                keys[index] = key;
+                values[index] = value;
+                size++;
+                return missingValue;
+            }
+            if (slotKey == key) {
+                long prevValue = values[index];
+                values[index] = value;
+                return prevValue;
+            }
+            index = (index + 1) & mask;
+        }
+    }
+
+    /**
+     * Removes the mapping for the specified key from this map if present.
+     *
+     * @param key the key whose mapping is to be removed from the map
+     * @return the previous value associated with key, or the missing value if
+     * there was no mapping for key
+     */
+    public long remove(long key) {
+        if (key == 0) {
+            long prevValue = zeroValue;
+            if (hasZeroKey) {
+                hasZeroKey = false;
+                zeroValue = missingValue;
+                size--;
+            }
+            return prevValue;
+        }
+        int index = find(key);
+        if (index < 0) {
+            return missingValue;
+        }
+        long prevValue = values[index];
+        int free = index;
+        int next = (index + 1) & mask;
+        while (keys[next] != 0) {
+            int home = LongHashing.hash(keys[next]) & mask;
+            if (((next - home) & mask) >= ((next - free) & mask)) {
+                keys[free] = keys[next];
+                values[free] = values[next];
+                free = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys[free] = 0;
+        values[free] = 0;
+        size--;
+        return prevValue;
+    }
+
+    /**
+     * Returns the value which is reported for absent keys.
+     *
+     * @return the value which is reported for absent keys
+     */
+    public long getMissingValue() {
+        return missingValue;
+    }
+
+    /**
+     * Returns the number of key-value mappings in this map.
+     *
+     * @return the number of key-value mappings in this map
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Removes all key-value pairs from the map keeping the capacity.
+     */
+    public void clear() {
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = 0;
+            values[i] = 0;
+        }
+        hasZeroKey = false;
+        zeroValue = missingValue;
+        size = 0;
+    }
+
+    private int find(long key) {
+        int index = LongHashing.hash(key) & mask;
+        while (true) {
+            long slotKey = keys[index];
+            if (slotKey == key) {
+                return index;
+            }
+            if (slotKey == 0) {
+                return -1;
+            }
+            index = (index + 1) & mask;
+        }
+    }
+
+    private void resize() {
+        if (keys.length == MAX_CAPACITY) {
+            throw new IllegalStateException("Max capacity is reached");
+        }
+        long[] prevKeys = keys;
+        long[] prevValues = values;
+        allocate(prevKeys.length << 1);
+        for (int i = 0; i < prevKeys.length; i++) {
+            long key = prevKeys[i];
+            if (key != 0) {
+                int index = LongHashing.hash(key) & mask;
+                while (keys[index] != 0) {
+                    index = (index + 1) & mask;
+                }
+                keys[index] = key;
+                values[index] = prevValues[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new long[capacity];
+        mask = capacity - 1;
+        threshold = (int) (LOAD_FACTOR * capacity);
+    }
+}
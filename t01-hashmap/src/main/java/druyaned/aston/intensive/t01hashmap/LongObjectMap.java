@@ -0,0 +1,226 @@
+package druyaned.aston.intensive.t01hashmap;
+
+/**
+ * Map from primitive <code>long</code> keys to objects.
+ *
+ * <p>
+ * Unlike <code>HashMapImpl&lt;Long, V&gt;</code> keys are neither boxed nor
+ * wrapped into nodes: they are stored in a flat <code>long[]</code> next to a
+ * parallel array of values, collisions are resolved by linear probing and
+ * removal shifts the following entries back instead of leaving tombstones.
+ * The key <code>0</code> marks a free slot, so a mapping for the key
+ * <code>0</code> is kept aside in a separate field.
+ *
+ * <p>
+ * The map permits null values, so {@link #containsKey} distinguishes an
+ * absent key from a key mapped to null. Capacity is a power of two and the
+ * table is doubled when <code>size &gt;= LOAD_FACTOR * capacity</code>.
+ *
+ * @param <V> the type of mapped values
+ * @author druyaned
+ */
+public class LongObjectMap<V> {
+
+    public static final int DEFAULT_CAPACITY = 16;
+    public static final int MAX_CAPACITY = 1 << 30;
+    public static final double LOAD_FACTOR = 0.75;
+
+    private long[] keys;
+    private Object[] values;
+    private int mask;
+    private int threshold;
+    private int size = 0;
+    private boolean hasZeroKey = false;
+    private V zeroValue = null;
+
+    public LongObjectMap() {
+        allocate(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates the map which holds the expected number of entries without
+     * resizing.
+     *
+     * @param expectedSize the expected number of entries
+     * @throws IllegalArgumentException if the expected size is negative
+     */
+    public LongObjectMap(int expectedSize) {
+        allocate(LongHashing.capacityFor(expectedSize, LOAD_FACTOR,
+                DEFAULT_CAPACITY, MAX_CAPACITY));
+    }
+
+    /**
+     * Returns the value to which the specified key is mapped, or null if this
+     * map contains no mapping for the key.
+     *
+     * @param key the key whose associated value is to be returned
+     * @return the value to which the specified key is mapped, or null if this
+     * map contains no mapping for the key
+     */
+    public V get(long key) {
+        if (key == 0) {
+            return zeroValue;
+        }
+        int index = find(key);
+        return index < 0 ? null : valueAt(index);
+    }
+
+    /**
+     * Returns true if this map contains a mapping for the specified key.
+     *
+     * @param key the key whose presence is to be tested
+     * @return true if this map contains a mapping for the specified key
+     */
+    public boolean containsKey(long key) {
+        return key == 0 ? hasZeroKey : find(key) >= 0;
+    }
+
+    /**
+     * Associates the specified value with the specified key in this map. If the
+     * map previously contained a mapping for the key, the old value is
+     * replaced.
+     *
+     * @param key key with which the specified value is to be associated
+     * @param value value to be associated with the specified key
+     * @return the previous value associated with key, or null if there was no
+     * mapping for key
+     */
+    public V put(long key, V value) {
+        if (key == 0) {
+            V prevValue = zeroValue;
+            if (!hasZeroKey) {
+                hasZeroKey = true;
+                size++;
+            }
+            zeroValue = value;
+            return prevValue;
+        }
+        int index = LongHashing.hash(key) & mask;
+        while (true) {
+            long slotKey = keys[index];
+            if (slotKey == 0) {
+                if (size >= threshold) {
+                    resize();
+                    return put(key, value);
+                }
+                keys[index] = key;
+                values[index] = value;
+                size++;
+                return null;
+            }
+            if (slotKey == key) {
+                V prevValue = valueAt(index);
+                values[index] = value;
+                return prevValue;
+            }
+            index = (index + 1) & mask;
+        }
+    }
+
+    /**
+     * Removes the mapping for the specified key from this map if present.
+     *
+     * @param key the key whose mapping is to be removed from the map
+     * @return the previous value associated with key, or null if there was no
+     * mapping for key
+     */
+    public V remove(long key) {
+        if (key == 0) {
+            V prevValue = zeroValue;
+            if (hasZeroKey) {
+                hasZeroKey = false;
+                zeroValue = null;
+                size--;
+            }
+            return prevValue;
+        }
+        int index = find(key);
+        if (index < 0) {
+            return null;
+        }
+        V prevValue = valueAt(index);
+        int free = index;
+        int next = (index + 1) & mask;
+        while (keys[next] != 0) {
+            int home = LongHashing.hash(keys[next]) & mask;
+            if (((next - home) & mask) >= ((next - free) & mask)) {
+                keys[free] = keys[next];
+                values[free] = values[next];
+                free = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys[free] = 0;
+        values[free] = null;
+        size--;
+        return prevValue;
+    }
+
+    /**
+     * Returns the number of key-value mappings in this map.
+     *
+     * @return the number of key-value mappings in this map
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Removes all key-value pairs from the map keeping the capacity.
+     */
+    public void clear() {
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = 0;
+            values[i] = null;
+        }
+        hasZeroKey = false;
+        zeroValue = null;
+        size = 0;
+    }
+
+    private int find(long key) {
+        int index = LongHashing.hash(key) & mask;
+        while (true) {
+            long slotKey = keys[index];
+            if (slotKey == key) {
+                return index;
+            }
+            if (slotKey == 0) {
+                return -1;
+            }
+            index = (index + 1) & mask;
+        }
+    }
+
+    private void resize() {
+        if (keys.length == MAX_CAPACITY) {
+            throw new IllegalStateException("Max capacity is reached");
+        }
+        long[] prevKeys = keys;
+        Object[] prevValues = values;
+        allocate(prevKeys.length << 1);
+        for (int i = 0; i < prevKeys.length; i++) {
+            long key = prevKeys[i];
+            if (key != 0) {
+                int index = LongHashing.hash(key) & mask;
+                while (keys[index] != 0) {
+                    index = (index + 1) & mask;
+                }
+                keys[index] = key;
+                values[index] = prevValues[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+        threshold = (int) (LOAD_FACTOR * capacity);
+    }
+
+    @SuppressWarnings("unchecked")
+    private V valueAt(int index) {
+        return (V) values[index];
+    }
+}
@@ -0,0 +1,525 @@
+package druyaned.aston.intensive.t01hashmap;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+/**
+ * Implementation of the {@link HashMapTask task} which refers to its keys by
+ * weak or soft references, so an entry does not keep its key reachable and
+ * is purged after the collector clears the key, as in
+ * {@link java.util.WeakHashMap}.
+ *
+ * <p>
+ * Nodes of the chained power-of-two table are the references themselves,
+ * so an entry costs one object besides the key and the value. Cleared
+ * references are enqueued by the collector to the queue of the map, which
+ * is drained during normal operations: every {@link #get}, {@link #put} and
+ * {@link #remove} unlinks at most {@link #DRAIN_LIMIT} stale nodes, while
+ * a put adds at most one, so the stale nodes do not accumulate while the map
+ * is updated and no single call pays for purging a large collected part of
+ * the map. A resize, which walks all nodes anyway, drops every cleared node
+ * it meets. {@link #purge()} drains the whole queue at once.
+ *
+ * <p>
+ * With {@link ReferenceType#WEAK} an entry is purged after the first
+ * collection which finds its key unreachable; with
+ * {@link ReferenceType#SOFT} the collector keeps softly reachable keys until
+ * the heap runs short, so the map serves as a cache which is shrunk by
+ * memory pressure.
+ *
+ * <p>
+ * Keys are compared by <code>equals</code>, so a key can be found by an
+ * equal instance, but its entry lives only as long as the instance which
+ * was put. Values are held strongly and must not refer to their keys,
+ * otherwise the keys are never collected. {@link #size()} may count entries
+ * whose keys are already cleared but not yet purged. Null keys are not
+ * permitted; null values are. The map is not thread-safe.
+ *
+ * @param <K> the type of keys maintained by this map
+ * @param <V> the type of mapped values
+ * @author druyaned
+ */
+public class ReferenceHashMap<K, V> implements HashMapTask<K, V> {
+
+    public static final int DEFAULT_CAPACITY = 16;
+    public static final int MAX_CAPACITY = 1 << 30;
+    public static final double LOAD_FACTOR = 0.75;
+
+    /**
+     * The maximum number of stale nodes unlinked by a single operation.
+     */
+    public static final int DRAIN_LIMIT = 16;
+
+    /**
+     * Defines how the keys are referenced.
+     */
+    public enum ReferenceType {
+
+        /**
+         * Keys are weakly referenced and purged as soon as they are
+         * collected.
+         */
+        WEAK,
+        /**
+         * Keys are softly referenced and collected under memory pressure.
+         */
+        SOFT
+    }
+
+    /**
+     * Node of a bucket, implemented by a weak and by a soft reference to the
+     * key; it is also the entry returned by the iterator.
+     */
+    private interface Node<K, V> extends Map.Entry<K, V> {
+
+        int hash();
+
+        Node<K, V> next();
+
+        void setNext(Node<K, V> next);
+
+        /**
+         * Returns the key or null if it is cleared.
+         */
+        K get();
+    }
+
+    private static final class WeakNode<K, V> extends WeakReference<K>
+            implements Node<K, V> {
+
+        private final int hash;
+        private V value;
+        private Node<K, V> next;
+
+        private WeakNode(K key, V value, int hash, Node<K, V> next,
+                ReferenceQueue<? super K> queue) {
+
+            super(key, queue);
+            this.value = value;
+            this.hash = hash;
+            this.next = next;
+        }
+
+        @Override
+        public int hash() {
+            return hash;
+        }
+
+        @Override
+        public Node<K, V> next() {
+            return next;
+        }
+
+        @Override
+        public void setNext(Node<K, V> next) {
+            this.next = next;
+        }
+
+        @Override
+        public K getKey() {
+            return get();
+        }
+
+        @Override
+        public V getValue() {
+            return value;
+        }
+
+        @Override
+        public V setValue(V newValue) {
+            V prevValue = value;
+            value = newValue;
+            return prevValue;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return entryEquals(this, obj);
+        }
+
+        @Override
+        public int hashCode() {
+            return entryHashCode(this);
+        }
+
+        @Override
+        public String toString() {
+            return get() + "=" + value;
+        }
+    }
+
+    private static final class SoftNode<K, V> extends SoftReference<K>
+            implements Node<K, V> {
+
+        private final int hash;
+        private V value;
+        private Node<K, V> next;
+
+        private SoftNode(K key, V value, int hash, Node<K, V> next,
+                ReferenceQueue<? super K> queue) {
+
+            super(key, queue);
+            this.value = value;
+            this.hash = hash;
+            this.next = next;
+        }
+
+        @Override
+        public int hash() {
+            return hash;
+        }
+
+        @Override
+        public Node<K, V> next() {
+            return next;
+        }
+
+        @Override
+        public void setNext(Node<K, V> next) {
+            this.next = next;
+        }
+
+        @Override
+        public K getKey() {
+            return get();
+        }
+
+        @Override
+        public V getValue() {
+            return value;
+        }
+
+        @Override
+        public V setValue(V newValue) {
+            V prevValue = value;
+            value = newValue;
+            return prevValue;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return entryEquals(this, obj);
+        }
+
+        @Override
+        public int hashCode() {
+            return entryHashCode(this);
+        }
+
+        @Override
+        public String toString() {
+            return get() + "=" + value;
+        }
+    }
+
+    private final ReferenceType referenceType;
+    private final ReferenceQueue<K> queue = new ReferenceQueue<>();
+    private Node<K, V>[] table;
+    private int size = 0;
+    private long purgedCount = 0;
+
+    /**
+     * Creates the map which refers to its keys weakly.
+     */
+    public ReferenceHashMap() {
+        this(ReferenceType.WEAK);
+    }
+
+    public ReferenceHashMap(ReferenceType referenceType) {
+        this(referenceType, 0);
+    }
+
+    /**
+     * Creates the map whose table holds the expected number of entries
+     * without resizing.
+     *
+     * @param referenceType how the keys are referenced
+     * @param expectedSize the expected number of entries
+     * @throws IllegalArgumentException if the expected size is negative
+     */
+    public ReferenceHashMap(ReferenceType referenceType, int expectedSize) {
+        this.referenceType = Objects.requireNonNull(referenceType);
+        this.table = newTable(LongHashing.capacityFor(expectedSize,
+                LOAD_FACTOR, DEFAULT_CAPACITY, MAX_CAPACITY));
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws NullPointerException if the key is null
+     */
+    @Override
+    public V get(K key) {
+        drain(DRAIN_LIMIT);
+        int hash = hash(key);
+        for (Node<K, V> node = table[hash & (table.length - 1)]; node != null;
+                node = node.next()) {
+            if (node.hash() == hash && matches(key, node.get())) {
+                return node.getValue();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>
+     * The map refers to the given instance of the key only if it is new; a
+     * present entry keeps the instance it was created with.
+     *
+     * @throws NullPointerException if the key is null
+     */
+    @Override
+    public V put(K key, V value) {
+        drain(DRAIN_LIMIT);
+        int hash = hash(key);
+        int index = hash & (table.length - 1);
+        for (Node<K, V> node = table[index]; node != null;
+                node = node.next()) {
+            if (node.hash() == hash && matches(key, node.get())) {
+                return node.setValue(value);
+            }
+        }
+
+        if (size >= (int) (LOAD_FACTOR * table.length)
+                && table.length < MAX_CAPACITY) {
+            resize();
+            index = hash & (table.length - 1);
+        }
+        table[index] = referenceType == ReferenceType.WEAK
+                ? new WeakNode<>(key, value, hash, table[index], queue)
+                : new SoftNode<>(key, value, hash, table[index], queue);
+        size++;
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws NullPointerException if the key is null
+     */
+    @Override
+    public V remove(K key) {
+        drain(DRAIN_LIMIT);
+        int hash = hash(key);
+        int index = hash & (table.length - 1);
+        Node<K, V> prev = null;
+        for (Node<K, V> node = table[index]; node != null;
+                node = node.next()) {
+            if (node.hash() == hash && matches(key, node.get())) {
+                unlink(index, prev, node);
+                // the collector does not enqueue a cleared reference
+                ((Reference<?>) node).clear();
+                return node.getValue();
+            }
+            prev = node;
+        }
+        return null;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>
+     * Entries whose keys are cleared are skipped, and the key of the
+     * returned entry is held strongly until the next call, so
+     * {@link Map.Entry#getKey} does not return null meanwhile.
+     */
+    @Override
+    public Iterator<Map.Entry<K, V>> entryIterator() {
+        return new EntryIterator();
+    }
+
+    private final class EntryIterator implements Iterator<Map.Entry<K, V>> {
+
+        private int index = 0;
+        private Node<K, V> next = null;
+        private K nextKey = null;
+
+        /**
+         * Keeps the key of the returned entry reachable.
+         */
+        private K currentKey = null;
+
+        private EntryIterator() {
+            advance(null);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Map.Entry<K, V> next() {
+            Node<K, V> node = next;
+            if (node == null) {
+                throw new NoSuchElementException();
+            }
+            currentKey = nextKey;
+            advance(node.next());
+            return node;
+        }
+
+        /**
+         * Finds the next node with an uncleared key starting from the given
+         * node and then from the following buckets.
+         */
+        private void advance(Node<K, V> node) {
+            while (true) {
+                for (; node != null; node = node.next()) {
+                    K key = node.get();
+                    if (key != null) {
+                        next = node;
+                        nextKey = key;
+                        return;
+                    }
+                }
+                if (index == table.length) {
+                    next = null;
+                    nextKey = null;
+                    return;
+                }
+                node = table[index++];
+            }
+        }
+    }
+
+    /**
+     * Returns how the keys are referenced.
+     *
+     * @return the reference type of the keys
+     */
+    public ReferenceType referenceType() {
+        return referenceType;
+    }
+
+    /**
+     * Returns the number of buckets of the table.
+     *
+     * @return the number of buckets of the table
+     */
+    public int capacity() {
+        return table.length;
+    }
+
+    /**
+     * Returns the number of entries purged since the creation of the map
+     * because their keys were collected.
+     *
+     * @return the number of purged entries
+     */
+    public long purgedCount() {
+        return purgedCount;
+    }
+
+    /**
+     * Unlinks all nodes whose keys are cleared and enqueued by now, which
+     * is <code>O(stale nodes)</code>.
+     */
+    public void purge() {
+        drain(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Unlinks at most the given number of nodes polled from the queue. A
+     * node which is not found was already dropped by a resize or removed.
+     */
+    @SuppressWarnings("unchecked")
+    private void drain(int limit) {
+        for (int i = 0; i < limit; i++) {
+            Reference<? extends K> ref = queue.poll();
+            if (ref == null) {
+                return;
+            }
+            Node<K, V> stale = (Node<K, V>) ref;
+            int index = stale.hash() & (table.length - 1);
+            Node<K, V> prev = null;
+            for (Node<K, V> node = table[index]; node != null;
+                    node = node.next()) {
+                if (node == stale) {
+                    unlink(index, prev, node);
+                    node.setValue(null);
+                    purgedCount++;
+                    break;
+                }
+                prev = node;
+            }
+        }
+    }
+
+    private void unlink(int index, Node<K, V> prev, Node<K, V> node) {
+        if (prev == null) {
+            table[index] = node.next();
+        } else {
+            prev.setNext(node.next());
+        }
+        size--;
+    }
+
+    /**
+     * Doubles the table; nodes with cleared keys are dropped rather than
+     * moved, and their values are released.
+     */
+    private void resize() {
+        Node<K, V>[] prevTable = table;
+        table = newTable(prevTable.length << 1);
+        int mask = table.length - 1;
+        for (Node<K, V> node : prevTable) {
+            while (node != null) {
+                Node<K, V> next = node.next();
+                if (node.get() == null) {
+                    node.setValue(null);
+                    size--;
+                    purgedCount++;
+                } else {
+                    int index = node.hash() & mask;
+                    node.setNext(table[index]);
+                    table[index] = node;
+                }
+                node = next;
+            }
+        }
+    }
+
+    /**
+     * Compares the entries by key and value as {@link Map.Entry#equals}
+     * specifies, instead of the identity of the reference.
+     */
+    private static boolean entryEquals(Node<?, ?> node, Object obj) {
+        return obj instanceof Map.Entry<?, ?> entry
+                && Objects.equals(node.get(), entry.getKey())
+                && Objects.equals(node.getValue(), entry.getValue());
+    }
+
+    private static int entryHashCode(Node<?, ?> node) {
+        return Objects.hashCode(node.get())
+                ^ Objects.hashCode(node.getValue());
+    }
+
+    private static boolean matches(Object key, Object nodeKey) {
+        return key == nodeKey || nodeKey != null && key.equals(nodeKey);
+    }
+
+    private static int hash(Object key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private static <K, V> Node<K, V>[] newTable(int capacity) {
+        return (Node<K, V>[]) new Node[capacity];
+    }
+}
@@ -0,0 +1,321 @@
+package druyaned.aston.intensive.t01hashmap;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Open-addressing implementation of the {@link HashMapTask task}.
+ *
+ * <p>
+ * Keys, values and cached hashes are stored in flat parallel arrays, so there
+ * is no node per entry and a probe reads neighbouring slots instead of
+ * following pointers. Collisions are resolved by linear probing with the
+ * Robin Hood rule: an entry being inserted takes the slot of an entry which is
+ * closer to its home slot, so probe distances stay short and even. A lookup of
+ * an absent key stops as soon as it meets an entry which is closer to its home
+ * than the probe. Removal shifts the following entries one slot back instead
+ * of leaving tombstones.
+ *
+ * <p>
+ * The map permits null key and null values. Capacity is a power of two and the
+ * hash is spread before masking. A cached hash of zero marks a free slot. The
+ * table is doubled when <code>size &gt;= LOAD_FACTOR * capacity</code>, so a
+ * map created with an expected size does not allocate on put until the size
+ * is exceeded.
+ *
+ * @param <K> the type of keys maintained by this map
+ * @param <V> the type of mapped values
+ * @author druyaned
+ */
+public class RobinHoodHashMap<K, V> implements HashMapTask<K, V> {
+
+    public static final int DEFAULT_CAPACITY = 16;
+    public static final int MAX_CAPACITY = 1 << 30;
+    public static final double LOAD_FACTOR = 0.75;
+
+    private int[] hashes;
+    private Object[] keys;
+    private Object[] values;
+    private int mask;
+    private int threshold;
+    private int size = 0;
+
+    public RobinHoodHashMap() {
+        allocate(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates the map which holds the expected number of entries without
+     * resizing.
+     *
+     * @param expectedSize the expected number of entries
+     * @throws IllegalArgumentException if the expected size is negative
+     */
+    public RobinHoodHashMap(int expectedSize) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException(
+                    "expectedSize=" + expectedSize + " is negative");
+        }
+        allocate(capacityFor(expectedSize));
+    }
+
+    @Override
+    public V get(K key) {
+        int index = find(key);
+        return index < 0 ? null : valueAt(index);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>
+     * The probe goes from the home slot of the key. If the key is met, the
+     * value is replaced. If a free slot or an entry closer to its home is met,
+     * the key is absent and the new entry is placed there; a displaced entry
+     * continues the probe in the same way.
+     */
+    @Override
+    public V put(K key, V value) {
+        int hash = hash(key);
+        int index = hash & mask;
+        int distance = 0;
+        while (true) {
+            int slotHash = hashes[index];
+            if (slotHash == 0) {
+                if (size >= threshold) {
+                    resize();
+                    return put(key, value);
+                }
+                set(index, hash, key, value);
+                size++;
+                return null;
+            }
+            if (slotHash == hash && areEqual(key, keys[index])) {
+                V prevValue = valueAt(index);
+                values[index] = value;
+                return prevValue;
+            }
+            int slotDistance = (index - slotHash) & mask;
+            if (slotDistance < distance) {
+                if (size >= threshold) {
+                    resize();
+                    return put(key, value);
+                }
+                displace(index, distance, hash, key, value);
+                size++;
+                return null;
+            }
+            index = (index + 1) & mask;
+            distance++;
+        }
+    }
+
+    /**
+     * Places the entry at the index and carries the displaced entries forward
+     * until a free slot is met.
+     */
+    private void displace(int index, int distance,
+            int hash, Object key, Object value) {
+
+        while (true) {
+            int slotHash = hashes[index];
+            if (slotHash == 0) {
+                set(index, hash, key, value);
+                return;
+            }
+            int slotDistance = (index - slotHash) & mask;
+            if (slotDistance < distance) {
+                Object slotKey = keys[index];
+                Object slotValue = values[index];
+                set(index, hash, key, value);
+                hash = slotHash;
+                key = slotKey;
+                value = slotValue;
+                distance = slotDistance;
+            }
+            index = (index + 1) & mask;
+            distance++;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>
+     * After the entry is removed, the following entries are shifted one slot
+     * back until a free slot or an entry at its home slot is met.
+     */
+    @Override
+    public V remove(K key) {
+        int index = find(key);
+        if (index < 0) {
+            return null;
+        }
+        V prevValue = valueAt(index);
+        int next = (index + 1) & mask;
+        while (hashes[next] != 0 && ((next - hashes[next]) & mask) != 0) {
+            set(index, hashes[next], keys[next], values[next]);
+            index = next;
+            next = (next + 1) & mask;
+        }
+        set(index, 0, null, null);
+        size--;
+        return prevValue;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Removes all key-value pairs from the map keeping the capacity.
+     */
+    public void clear() {
+        for (int i = 0; i < hashes.length; i++) {
+            set(i, 0, null, null);
+        }
+        size = 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>
+     * The iterator is itself the entry of the current slot, so iteration
+     * allocates nothing per entry; {@link Map.Entry#setValue} writes through.
+     */
+    @Override
+    public Iterator<Map.Entry<K, V>> entryIterator() {
+        return new SlotIterator();
+    }
+
+    private final class SlotIterator
+            implements Iterator<Map.Entry<K, V>>, Map.Entry<K, V> {
+
+        private int index = -1;
+        private int next = nextSlot(0);
+
+        @Override
+        public boolean hasNext() {
+            return next < hashes.length;
+        }
+
+        @Override
+        public Map.Entry<K, V> next() {
+            if (next >= hashes.length) {
+                throw new NoSuchElementException();
+            }
+            index = next;
+            next = nextSlot(index + 1);
+            return this;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public K getKey() {
+            return (K) keys[index];
+        }
+
+        @Override
+        public V getValue() {
+            return valueAt(index);
+        }
+
+        @Override
+        public V setValue(V value) {
+            V prevValue = valueAt(index);
+            values[index] = value;
+            return prevValue;
+        }
+
+        private int nextSlot(int from) {
+            while (from < hashes.length && hashes[from] == 0) {
+                from++;
+            }
+            return from;
+        }
+    }
+
+    private int find(K key) {
+        int hash = hash(key);
+        int index = hash & mask;
+        int distance = 0;
+        while (true) {
+            int slotHash = hashes[index];
+            if (slotHash == 0 || ((index - slotHash) & mask) < distance) {
+                return -1;
+            }
+            if (slotHash == hash && areEqual(key, keys[index])) {
+                return index;
+            }
+            index = (index + 1) & mask;
+            distance++;
+        }
+    }
+
+    private void resize() {
+        if (hashes.length == MAX_CAPACITY) {
+            throw new IllegalStateException("Max capacity is reached");
+        }
+        int[] prevHashes = hashes;
+        Object[] prevKeys = keys;
+        Object[] prevValues = values;
+        allocate(prevHashes.length << 1);
+        for (int i = 0; i < prevHashes.length; i++) {
+            if (prevHashes[i] != 0) {
+                displace(prevHashes[i] & mask, 0,
+                        prevHashes[i], prevKeys[i], prevValues[i]);
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        hashes = new int[capacity];
+        keys = new Object[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+        threshold = (int) (LOAD_FACTOR * capacity);
+    }
+
+    private void set(int index, int hash, Object key, Object value) {
+        hashes[index] = hash;
+        keys[index] = key;
+        values[index] = value;
+    }
+
+    @SuppressWarnings("unchecked")
+    private V valueAt(int index) {
+        return (V) values[index];
+    }
+
+    private static int capacityFor(int expectedSize) {
+        int capacity = DEFAULT_CAPACITY;
+        while (capacity < MAX_CAPACITY
+                && expectedSize >= LOAD_FACTOR * capacity) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    /**
+     * Spreads the hash code, so that the low bits used for the index depend on
+     * all of its bits, and maps zero, which marks a free slot, to one.
+     */
+    private static int hash(Object key) {
+        int h = key == null ? 0 : key.hashCode();
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        return h == 0 ? 1 : h;
+    }
+
+    private static boolean areEqual(Object key1, Object key2) {
+        if (key1 == null) {
+            return key2 == null;
+        } else {
+            return key1.equals(key2);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package druyaned.aston.intensive.t01hashmap;
+
+/**
+ * Counters of a {@link HashMapImpl} which exist only while its statistics
+ * are enabled.
+ *
+ * <p>
+ * The load is sampled on every {@link #SAMPLE_PERIOD}-th modification into a
+ * ring of the last {@link #MAX_SAMPLES} samples.
+ *
+ * @author druyaned
+ */
+final class StatsRecorder {
+
+    static final int SAMPLE_PERIOD = 1024;
+    static final int MAX_SAMPLES = 256;
+
+    private long getCount = 0;
+    private long probeCount = 0;
+    private int maxProbes = 0;
+    private long rehashCount = 0;
+    private long rehashNanos = 0;
+    private long maxRehashNanos = 0;
+    private int modifications = 0;
+    private final long[] sampleTimes = new long[MAX_SAMPLES];
+    private final double[] samples = new double[MAX_SAMPLES];
+    private long sampleCount = 0;
+
+    void recordGet(int probes) {
+        getCount++;
+        probeCount += probes;
+        if (probes > maxProbes) {
+            maxProbes = probes;
+        }
+    }
+
+    void recordRehash(long nanos) {
+        rehashCount++;
+        rehashNanos += nanos;
+        if (nanos > maxRehashNanos) {
+            maxRehashNanos = nanos;
+        }
+    }
+
+    void recordModification(int size, int capacity) {
+        if (++modifications == SAMPLE_PERIOD) {
+            modifications = 0;
+            int i = (int) (sampleCount++ % MAX_SAMPLES);
+            sampleTimes[i] = System.currentTimeMillis();
+            samples[i] = (double) size / capacity;
+        }
+    }
+
+    HashMapStats snapshot(int size, int capacity, long[] histogram,
+            int maxChainLength, int treeifiedBuckets) {
+
+        int count = (int) Math.min(sampleCount, MAX_SAMPLES);
+        int oldest = (int) ((sampleCount - count) % MAX_SAMPLES);
+        long[] times = new long[count];
+        double[] loads = new double[count];
+        for (int j = 0; j < count; j++) {
+            int i = (oldest + j) % MAX_SAMPLES;
+            times[j] = sampleTimes[i];
+            loads[j] = samples[i];
+        }
+        return new HashMapStats(size, capacity, histogram, maxChainLength,
+                treeifiedBuckets, getCount, probeCount, maxProbes,
+                rehashCount, rehashNanos, maxRehashNanos, times, loads);
+    }
+}
@@ -0,0 +1,367 @@
+package druyaned.aston.intensive.t01hashmap;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Open-addressing implementation of the {@link HashMapTask task} in the style
+ * of SwissTable.
+ *
+ * <p>
+ * Keys and values are stored side by side in one array, so a hit reads both
+ * from the same cache line. Next to it there is a metadata array of control
+ * bytes, one per slot: {@link #EMPTY}, {@link #DELETED} or, for a full slot,
+ * the low 7 bits of the hash (<code>h2</code>). Slots are split into groups of
+ * eight, whose control bytes are packed into a single <code>long</code>. A
+ * probe goes over groups (quadratically, starting from the group chosen by the
+ * high bits of the hash, <code>h1</code>) and matches all eight bytes of a
+ * group against <code>h2</code> at once with SWAR bit tricks, so keys are
+ * compared only for slots whose 7-bit fragment matches, which is about one
+ * slot in 128 for a miss. A probe stops at the first group with an empty
+ * slot, therefore most misses are decided by reading one <code>long</code>.
+ *
+ * <p>
+ * Removal marks the slot empty if its group has an empty slot, since then no
+ * probe has passed the group, and deleted (a tombstone) otherwise. The table
+ * is rehashed when no empty slots are left for the load factor of 7/8: to the
+ * same capacity if tombstones take much of the table, to the doubled one
+ * otherwise.
+ *
+ * <p>
+ * SwissTable scans groups of 16 with SSE2 instructions; a <code>long</code>
+ * holds 8 control bytes, which is the group size here.
+ *
+ * <p>
+ * The map permits null key and null values. Capacity is a power of two, at
+ * least one group.
+ *
+ * @param <K> the type of keys maintained by this map
+ * @param <V> the type of mapped values
+ * @author druyaned
+ */
+public class SwissHashMap<K, V> implements HashMapTask<K, V> {
+
+    public static final int DEFAULT_CAPACITY = 16;
+
+    /**
+     * The largest number of slots; keys and values are interleaved in one
+     * array of twice the capacity, which must not exceed the length of an
+     * array.
+     */
+    public static final int MAX_CAPACITY = 1 << 29;
+    public static final int GROUP_SIZE = Long.BYTES;
+
+    /**
+     * Control byte of a slot which has never been full since the last
+     * rehash.
+     */
+    public static final byte EMPTY = (byte) 0x80;
+
+    /**
+     * Control byte of a slot whose entry was removed.
+     */
+    public static final byte DELETED = (byte) 0xfe;
+
+    private static final long LSB = 0x0101010101010101L;
+    private static final long MSB = 0x8080808080808080L;
+    private static final long EMPTY_GROUP = LSB * (EMPTY & 0xff);
+    private static final Object NULL_KEY = new Object();
+
+    private long[] control;
+    private Object[] slots;
+    private int capacity;
+    private int groupMask;
+    private int size = 0;
+    private int growthLeft;
+
+    public SwissHashMap() {
+        allocate(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates the map which holds the expected number of entries without
+     * rehashing.
+     *
+     * @param expectedSize the expected number of entries
+     * @throws IllegalArgumentException if the expected size is negative
+     */
+    public SwissHashMap(int expectedSize) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException(
+                    "expectedSize=" + expectedSize + " is negative");
+        }
+        int capacity = DEFAULT_CAPACITY;
+        while (capacity < MAX_CAPACITY && expectedSize > maxLoad(capacity)) {
+            capacity <<= 1;
+        }
+        allocate(capacity);
+    }
+
+    @Override
+    public V get(K key) {
+        int index = find(maskNull(key));
+        return index < 0 ? null : valueAt(index);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>
+     * If the key is absent, it is placed into the first empty or deleted slot
+     * of its probe sequence.
+     */
+    @Override
+    public V put(K key, V value) {
+        Object masked = maskNull(key);
+        int hash = hash(masked);
+        int index = find(masked, hash);
+        if (index >= 0) {
+            V prevValue = valueAt(index);
+            slots[(index << 1) + 1] = value;
+            return prevValue;
+        }
+
+        index = findFree(hash);
+        if (growthLeft == 0 && controlAt(index) == EMPTY) {
+            rehash();
+            index = findFree(hash);
+        }
+        if (controlAt(index) == EMPTY) {
+            growthLeft--;
+        }
+        setControl(index, h2(hash));
+        slots[index << 1] = masked;
+        slots[(index << 1) + 1] = value;
+        size++;
+        return null;
+    }
+
+    @Override
+    public V remove(K key) {
+        int index = find(maskNull(key));
+        if (index < 0) {
+            return null;
+        }
+        V prevValue = valueAt(index);
+        slots[index << 1] = null;
+        slots[(index << 1) + 1] = null;
+        if (matchEmpty(control[index / GROUP_SIZE]) != 0) {
+            setControl(index, EMPTY);
+            growthLeft++;
+        } else {
+            setControl(index, DELETED);
+        }
+        size--;
+        return prevValue;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>
+     * The iterator is itself the entry of the current slot, so iteration
+     * allocates nothing per entry; {@link Map.Entry#setValue} writes through.
+     */
+    @Override
+    public Iterator<Map.Entry<K, V>> entryIterator() {
+        return new SlotIterator();
+    }
+
+    private final class SlotIterator
+            implements Iterator<Map.Entry<K, V>>, Map.Entry<K, V> {
+
+        private int index = -1;
+        private int next = nextSlot(0);
+
+        @Override
+        public boolean hasNext() {
+            return next < capacity;
+        }
+
+        @Override
+        public Map.Entry<K, V> next() {
+            if (next >= capacity) {
+                throw new NoSuchElementException();
+            }
+            index = next;
+            next = nextSlot(index + 1);
+            return this;
+        }
+
+        @Override
+        public K getKey() {
+            return unmaskNull(slots[index << 1]);
+        }
+
+        @Override
+        public V getValue() {
+            return valueAt(index);
+        }
+
+        @Override
+        public V setValue(V value) {
+            V prevValue = valueAt(index);
+            slots[(index << 1) + 1] = value;
+            return prevValue;
+        }
+
+        private int nextSlot(int from) {
+            while (from < capacity && slots[from << 1] == null) {
+                from++;
+            }
+            return from;
+        }
+    }
+
+    private int find(Object key) {
+        return find(key, hash(key));
+    }
+
+    /**
+     * Returns the slot of the key or -1. Only slots whose control byte
+     * matches <code>h2</code> are compared; the probe ends at a group which
+     * has an empty slot.
+     */
+    private int find(Object key, int hash) {
+        long pattern = LSB * h2(hash);
+        int group = h1(hash) & groupMask;
+        for (int step = 1; ; step++) {
+            long bytes = control[group];
+            for (long m = match(bytes, pattern); m != 0; m &= m - 1) {
+                int index = group * GROUP_SIZE
+                        + (Long.numberOfTrailingZeros(m) >>> 3);
+                if (key.equals(slots[index << 1])) {
+                    return index;
+                }
+            }
+            if (matchEmpty(bytes) != 0) {
+                return -1;
+            }
+            group = (group + step) & groupMask;
+        }
+    }
+
+    /**
+     * Returns the first empty or deleted slot of the probe sequence.
+     */
+    private int findFree(int hash) {
+        int group = h1(hash) & groupMask;
+        for (int step = 1; ; step++) {
+            long free = control[group] & MSB;
+            if (free != 0) {
+                return group * GROUP_SIZE
+                        + (Long.numberOfTrailingZeros(free) >>> 3);
+            }
+            group = (group + step) & groupMask;
+        }
+    }
+
+    /**
+     * Rehashes in place if at most a half of the maximum load is taken by
+     * live entries, otherwise doubles the capacity; either way tombstones
+     * are dropped.
+     */
+    private void rehash() {
+        int newCapacity = capacity;
+        if (size > maxLoad(capacity) / 2) {
+            if (capacity == MAX_CAPACITY) {
+                throw new IllegalStateException("Max capacity is reached");
+            }
+            newCapacity <<= 1;
+        }
+        Object[] prevSlots = slots;
+        allocate(newCapacity);
+        for (int i = 0; i < prevSlots.length; i += 2) {
+            Object key = prevSlots[i];
+            if (key != null) {
+                int hash = hash(key);
+                int index = findFree(hash);
+                setControl(index, h2(hash));
+                slots[index << 1] = key;
+                slots[(index << 1) + 1] = prevSlots[i + 1];
+            }
+        }
+        growthLeft -= size;
+    }
+
+    private void allocate(int capacity) {
+        control = new long[capacity / GROUP_SIZE];
+        Arrays.fill(control, EMPTY_GROUP);
+        slots = new Object[capacity << 1];
+        this.capacity = capacity;
+        groupMask = control.length - 1;
+        growthLeft = maxLoad(capacity);
+    }
+
+    /**
+     * Returns the bytes of the group which are equal to the byte repeated in
+     * the pattern: their high bit is set in the result. A byte next to a
+     * matching one may be reported falsely, which costs only a key
+     * comparison.
+     */
+    private static long match(long bytes, long pattern) {
+        long x = bytes ^ pattern;
+        return (x - LSB) & ~x & MSB;
+    }
+
+    /**
+     * Returns the empty bytes of the group: only {@link #EMPTY} has the high
+     * bit set and bit 1 clear.
+     */
+    private static long matchEmpty(long bytes) {
+        return bytes & ~(bytes << 6) & MSB;
+    }
+
+    private byte controlAt(int index) {
+        return (byte) (control[index / GROUP_SIZE]
+                >>> ((index % GROUP_SIZE) << 3));
+    }
+
+    private void setControl(int index, byte b) {
+        int shift = (index % GROUP_SIZE) << 3;
+        int group = index / GROUP_SIZE;
+        control[group] = control[group] & ~(0xffL << shift)
+                | (b & 0xffL) << shift;
+    }
+
+    @SuppressWarnings("unchecked")
+    private V valueAt(int index) {
+        return (V) slots[(index << 1) + 1];
+    }
+
+    private static int maxLoad(int capacity) {
+        return capacity - capacity / 8;
+    }
+
+    private static int h1(int hash) {
+        return hash >>> 7;
+    }
+
+    private static byte h2(int hash) {
+        return (byte) (hash & 0x7f);
+    }
+
+    /**
+     * Mixes all bits of the hash code, since both the 7 low bits and the high
+     * bits are used.
+     */
+    private static int hash(Object key) {
+        return LongHashing.hash(key.hashCode());
+    }
+
+    private static Object maskNull(Object key) {
+        return key == null ? NULL_KEY : key;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <K> K unmaskNull(Object key) {
+        return key == NULL_KEY ? null : (K) key;
+    }
+}
@@ -0,0 +1,581 @@
+package druyaned.aston.intensive.t01hashmap;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Map from strings to objects which keeps keys as UTF-8 bytes, for large maps
+ * of short keys such as emails.
+ *
+ * <p>
+ * Unlike <code>HashMapImpl&lt;String, V&gt;</code> there is neither a
+ * <code>String</code> with its backing array nor a node per entry: keys are
+ * appended to a shared byte arena, each prefixed by its length as a varint,
+ * and a slot of the table is a single <code>long</code> with the hash of the
+ * key in the high half and the arena offset of the key in the low half. Slots
+ * are probed linearly next to a parallel array of values, and a key is
+ * compared only if its hash matches. Removal shifts the following entries back
+ * as in {@link LongObjectMap}; the bytes of removed keys stay in the arena
+ * until it is compacted, which happens on resize or once they take a half of
+ * it.
+ *
+ * <p>
+ * The hash is computed over the UTF-8 bytes eight at a time, so a key is
+ * looked up either by a <code>CharSequence</code>, which is encoded on the fly
+ * while hashing and comparing, or by a slice of a <code>byte[]</code>, for
+ * example of a request buffer; neither creates a <code>String</code>. Unpaired
+ * surrogates are encoded as <code>'?'</code>, as by
+ * {@link String#getBytes(java.nio.charset.Charset)}.
+ *
+ * <p>
+ * The map does not permit null key, but permits null values, so
+ * {@link #containsKey} distinguishes an absent key from a key mapped to null.
+ * Capacity is a power of two and the table is doubled when
+ * <code>size &gt;= LOAD_FACTOR * capacity</code>.
+ *
+ * @param <V> the type of mapped values
+ * @author druyaned
+ */
+public class Utf8StringMap<V> {
+
+    public static final int DEFAULT_CAPACITY = 16;
+    public static final int MAX_CAPACITY = 1 << 30;
+    public static final double LOAD_FACTOR = 0.75;
+
+    /**
+     * Arena bytes reserved per expected entry, enough for a typical email.
+     */
+    public static final int EXPECTED_KEY_BYTES = 24;
+
+    private static final int MAX_ARENA = Integer.MAX_VALUE - 8;
+    private static final long SEED = 0x9E3779B97F4A7C15L;
+    private static final VarHandle LONGS = MethodHandles
+            .byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private long[] slots;
+    private Object[] values;
+    private int mask;
+    private int threshold;
+    private int size = 0;
+
+    /**
+     * Keys with their length prefixes; offset 0 is never used, so a slot
+     * equal to 0 is free.
+     */
+    private byte[] arena;
+    private int arenaSize = 1;
+    private int deadBytes = 0;
+
+    public Utf8StringMap() {
+        allocate(DEFAULT_CAPACITY);
+        arena = new byte[DEFAULT_CAPACITY * EXPECTED_KEY_BYTES];
+    }
+
+    /**
+     * Creates the map which holds the expected number of entries without
+     * resizing the table.
+     *
+     * @param expectedSize the expected number of entries
+     * @throws IllegalArgumentException if the expected size is negative
+     */
+    public Utf8StringMap(int expectedSize) {
+        allocate(LongHashing.capacityFor(expectedSize, LOAD_FACTOR,
+                DEFAULT_CAPACITY, MAX_CAPACITY));
+        long arenaLength = 1 + (long) expectedSize * EXPECTED_KEY_BYTES;
+        arena = new byte[(int) Math.min(arenaLength, MAX_ARENA)];
+    }
+
+    /**
+     * Returns the value to which the specified key is mapped, or null if this
+     * map contains no mapping for the key.
+     *
+     * @param key the key whose associated value is to be returned
+     * @return the value to which the specified key is mapped, or null if this
+     * map contains no mapping for the key
+     */
+    public V get(CharSequence key) {
+        int index = find(key);
+        return index < 0 ? null : valueAt(index);
+    }
+
+    /**
+     * Returns the value to which the key given by its UTF-8 bytes is mapped,
+     * or null if this map contains no mapping for the key.
+     *
+     * @param bytes the array with the UTF-8 bytes of the key
+     * @param offset the index of the first byte of the key
+     * @param length the number of bytes of the key
+     * @return the value to which the key is mapped, or null if this map
+     * contains no mapping for the key
+     * @throws IndexOutOfBoundsException if the slice is out of the array
+     */
+    public V get(byte[] bytes, int offset, int length) {
+        int index = find(bytes, offset, length);
+        return index < 0 ? null : valueAt(index);
+    }
+
+    /**
+     * Returns true if this map contains a mapping for the specified key.
+     *
+     * @param key the key whose presence is to be tested
+     * @return true if this map contains a mapping for the specified key
+     */
+    public boolean containsKey(CharSequence key) {
+        return find(key) >= 0;
+    }
+
+    /**
+     * Returns true if this map contains a mapping for the key given by its
+     * UTF-8 bytes.
+     *
+     * @param bytes the array with the UTF-8 bytes of the key
+     * @param offset the index of the first byte of the key
+     * @param length the number of bytes of the key
+     * @return true if this map contains a mapping for the key
+     * @throws IndexOutOfBoundsException if the slice is out of the array
+     */
+    public boolean containsKey(byte[] bytes, int offset, int length) {
+        return find(bytes, offset, length) >= 0;
+    }
+
+    /**
+     * Associates the specified value with the specified key in this map. If the
+     * map previously contained a mapping for the key, the old value is
+     * replaced.
+     *
+     * @param key key with which the specified value is to be associated
+     * @param value value to be associated with the specified key
+     * @return the previous value associated with key, or null if there was no
+     * mapping for key
+     */
+    public V put(CharSequence key, V value) {
+        long hashAndLength = hash(key);
+        int hash = (int) hashAndLength;
+        int length = (int) (hashAndLength >>> 32);
+        int index = find(key, hash, length);
+        if (index >= 0) {
+            V prevValue = valueAt(index);
+            values[index] = value;
+            return prevValue;
+        }
+        if (size >= threshold) {
+            if (slots.length == MAX_CAPACITY) {
+                throw new IllegalStateException("Max capacity is reached");
+            }
+            rebuild(slots.length << 1);
+        }
+        int offset = reserve(length);
+        arenaSize = encode(key, putLength(offset, length));
+        insert(slotOf(hash, offset), value);
+        return null;
+    }
+
+    /**
+     * Removes the mapping for the specified key from this map if present.
+     *
+     * @param key the key whose mapping is to be removed from the map
+     * @return the previous value associated with key, or null if there was no
+     * mapping for key
+     */
+    public V remove(CharSequence key) {
+        int index = find(key);
+        if (index < 0) {
+            return null;
+        }
+        V prevValue = valueAt(index);
+        int offset = offsetOf(slots[index]);
+        deadBytes += lengthAt(offset) + varintSize(lengthAt(offset));
+        int free = index;
+        int next = (index + 1) & mask;
+        while (slots[next] != 0) {
+            int home = hashOf(slots[next]) & mask;
+            if (((next - home) & mask) >= ((next - free) & mask)) {
+                slots[free] = slots[next];
+                values[free] = values[next];
+                free = next;
+            }
+            next = (next + 1) & mask;
+        }
+        slots[free] = 0;
+        values[free] = null;
+        size--;
+        return prevValue;
+    }
+
+    /**
+     * Returns the number of key-value mappings in this map.
+     *
+     * @return the number of key-value mappings in this map
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Removes all key-value pairs from the map keeping the capacity and the
+     * arena.
+     */
+    public void clear() {
+        Arrays.fill(slots, 0);
+        Arrays.fill(values, null);
+        size = 0;
+        arenaSize = 1;
+        deadBytes = 0;
+    }
+
+    /**
+     * Compacts the arena and shrinks it to the bytes of the present keys, for
+     * a map which is filled once and then only read.
+     */
+    public void trimToSize() {
+        rebuild(slots.length);
+        arena = Arrays.copyOf(arena, arenaSize);
+    }
+
+    /**
+     * Returns the number of arena bytes taken by keys, including the removed
+     * ones which are not compacted yet.
+     *
+     * @return the number of used arena bytes
+     */
+    public int arenaSize() {
+        return arenaSize;
+    }
+
+    private int find(CharSequence key) {
+        long hashAndLength = hash(key);
+        return find(key, (int) hashAndLength, (int) (hashAndLength >>> 32));
+    }
+
+    private int find(CharSequence key, int hash, int length) {
+        int index = hash & mask;
+        while (true) {
+            long slot = slots[index];
+            if (slot == 0) {
+                return -1;
+            }
+            if (hashOf(slot) == hash && equalsAt(offsetOf(slot), key, length)) {
+                return index;
+            }
+            index = (index + 1) & mask;
+        }
+    }
+
+    private int find(byte[] bytes, int offset, int length) {
+        Objects.checkFromIndexSize(offset, length, bytes.length);
+        int hash = hash(bytes, offset, length);
+        int index = hash & mask;
+        while (true) {
+            long slot = slots[index];
+            if (slot == 0) {
+                return -1;
+            }
+            if (hashOf(slot) == hash
+                    && equalsAt(offsetOf(slot), bytes, offset, length)) {
+                return index;
+            }
+            index = (index + 1) & mask;
+        }
+    }
+
+    private void insert(long slot, Object value) {
+        int index = hashOf(slot) & mask;
+        while (slots[index] != 0) {
+            index = (index + 1) & mask;
+        }
+        slots[index] = slot;
+        values[index] = value;
+        size++;
+    }
+
+    /**
+     * Returns the arena offset for a new key of the given length, after
+     * compacting or growing the arena if the key does not fit.
+     */
+    private int reserve(int length) {
+        long needed = (long) arenaSize + varintSize(length) + length;
+        if (needed > arena.length) {
+            if (deadBytes > arenaSize / 2) {
+                rebuild(slots.length);
+                needed = (long) arenaSize + varintSize(length) + length;
+            }
+            if (needed > MAX_ARENA) {
+                throw new IllegalStateException("Max arena size is reached");
+            }
+            if (needed > arena.length) {
+                long grown = arena.length + (arena.length >> 1);
+                grown = Math.min(Math.max(needed, grown), MAX_ARENA);
+                arena = Arrays.copyOf(arena, (int) grown);
+            }
+        }
+        return arenaSize;
+    }
+
+    /**
+     * Reinserts the present keys into a table of the given capacity and copies
+     * them into a new arena of the same length without removed keys.
+     */
+    private void rebuild(int capacity) {
+        long[] prevSlots = slots;
+        Object[] prevValues = values;
+        byte[] prevArena = arena;
+        allocate(capacity);
+        arena = new byte[prevArena.length];
+        arenaSize = 1;
+        deadBytes = 0;
+        for (int i = 0; i < prevSlots.length; i++) {
+            long slot = prevSlots[i];
+            if (slot != 0) {
+                int from = offsetOf(slot);
+                int length = lengthAt(prevArena, from);
+                int keySize = varintSize(length) + length;
+                System.arraycopy(prevArena, from, arena, arenaSize, keySize);
+                insert(slotOf(hashOf(slot), arenaSize), prevValues[i]);
+                arenaSize += keySize;
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        slots = new long[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+        threshold = (int) (LOAD_FACTOR * capacity);
+        size = 0;
+    }
+
+    /**
+     * Compares the stored key at the arena offset with the chars encoded to
+     * UTF-8.
+     */
+    private boolean equalsAt(int offset, CharSequence key, int length) {
+        if (lengthAt(offset) != length) {
+            return false;
+        }
+        int at = offset + varintSize(length);
+        int n = key.length();
+        for (int i = 0; i < n; ) {
+            char c = key.charAt(i);
+            if (c < 0x80) {
+                if (arena[at++] != c) {
+                    return false;
+                }
+                i++;
+                continue;
+            }
+            int codePoint = codePointAt(key, i, n);
+            i += Character.charCount(codePoint);
+            int encoded = utf8(codePoint);
+            for (int count = utf8Size(codePoint); count > 0; count--) {
+                if (arena[at++] != (byte) encoded) {
+                    return false;
+                }
+                encoded >>>= 8;
+            }
+        }
+        return true;
+    }
+
+    private boolean equalsAt(int offset, byte[] bytes, int from, int length) {
+        if (lengthAt(offset) != length) {
+            return false;
+        }
+        int at = offset + varintSize(length);
+        return Arrays.equals(arena, at, at + length,
+                bytes, from, from + length);
+    }
+
+    /**
+     * Encodes the chars to UTF-8 into the arena from the offset and returns
+     * the offset after them.
+     */
+    private int encode(CharSequence key, int at) {
+        int n = key.length();
+        for (int i = 0; i < n; ) {
+            char c = key.charAt(i);
+            if (c < 0x80) {
+                arena[at++] = (byte) c;
+                i++;
+                continue;
+            }
+            int codePoint = codePointAt(key, i, n);
+            i += Character.charCount(codePoint);
+            int encoded = utf8(codePoint);
+            for (int count = utf8Size(codePoint); count > 0; count--) {
+                arena[at++] = (byte) encoded;
+                encoded >>>= 8;
+            }
+        }
+        return at;
+    }
+
+    /**
+     * Writes the length as a varint at the offset and returns the offset
+     * after it.
+     */
+    private int putLength(int at, int length) {
+        while (length >= 0x80) {
+            arena[at++] = (byte) (length | 0x80);
+            length >>>= 7;
+        }
+        arena[at++] = (byte) length;
+        return at;
+    }
+
+    private int lengthAt(int offset) {
+        return lengthAt(arena, offset);
+    }
+
+    private static int lengthAt(byte[] arena, int offset) {
+        int length = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = arena[offset++];
+            length |= (b & 0x7f) << shift;
+            if (b >= 0) {
+                return length;
+            }
+        }
+    }
+
+    private static int varintSize(int length) {
+        return length < 0x80
+                ? 1
+                : (38 - Integer.numberOfLeadingZeros(length)) / 7;
+    }
+
+    /**
+     * Returns the hash of the UTF-8 bytes of the chars in the low half and
+     * the number of the bytes in the high half. The bytes are gathered into
+     * little-endian words, so the hash is equal to the one of
+     * {@link #hash(byte[], int, int)}.
+     */
+    private static long hash(CharSequence key) {
+        long h = SEED;
+        long word = 0;
+        int shift = 0;
+        int length = 0;
+        int n = key.length();
+        for (int i = 0; i < n; ) {
+            char c = key.charAt(i);
+            if (c < 0x80) {
+                word |= (long) c << shift;
+                shift += 8;
+                if (shift == 64) {
+                    h = HashStrategies.step(h, word);
+                    word = 0;
+                    shift = 0;
+                }
+                length++;
+                i++;
+                continue;
+            }
+            int codePoint = codePointAt(key, i, n);
+            i += Character.charCount(codePoint);
+            int encoded = utf8(codePoint);
+            for (int count = utf8Size(codePoint); count > 0; count--) {
+                word |= (encoded & 0xffL) << shift;
+                encoded >>>= 8;
+                shift += 8;
+                if (shift == 64) {
+                    h = HashStrategies.step(h, word);
+                    word = 0;
+                    shift = 0;
+                }
+                length++;
+            }
+        }
+        if (shift > 0) {
+            h = HashStrategies.step(h, word);
+        }
+        int hash = HashStrategies.finish(h, length);
+        return (long) length << 32 | (hash & 0xffffffffL);
+    }
+
+    private static int hash(byte[] bytes, int offset, int length) {
+        long h = SEED;
+        int end = offset + length;
+        int i = offset;
+        for (; i + Long.BYTES <= end; i += Long.BYTES) {
+            h = HashStrategies.step(h, (long) LONGS.get(bytes, i));
+        }
+        if (i < end) {
+            long word = 0;
+            for (int shift = 0; i < end; i++, shift += 8) {
+                word |= (bytes[i] & 0xffL) << shift;
+            }
+            h = HashStrategies.step(h, word);
+        }
+        return HashStrategies.finish(h, length);
+    }
+
+    /**
+     * Returns the code point at the index, or <code>'?'</code> for an
+     * unpaired surrogate.
+     */
+    private static int codePointAt(CharSequence key, int i, int n) {
+        char c = key.charAt(i);
+        if (!Character.isSurrogate(c)) {
+            return c;
+        }
+        if (Character.isHighSurrogate(c) && i + 1 < n) {
+            char low = key.charAt(i + 1);
+            if (Character.isLowSurrogate(low)) {
+                return Character.toCodePoint(c, low);
+            }
+        }
+        return '?';
+    }
+
+    private static int utf8Size(int codePoint) {
+        if (codePoint < 0x80) {
+            return 1;
+        }
+        if (codePoint < 0x800) {
+            return 2;
+        }
+        return codePoint < 0x10000 ? 3 : 4;
+    }
+
+    /**
+     * Returns the UTF-8 bytes of the code point, the first one in the lowest
+     * byte.
+     */
+    private static int utf8(int codePoint) {
+        if (codePoint < 0x80) {
+            return codePoint;
+        }
+        if (codePoint < 0x800) {
+            return (0xc0 | codePoint >>> 6)
+                    | (0x80 | codePoint & 0x3f) << 8;
+        }
+        if (codePoint < 0x10000) {
+            return (0xe0 | codePoint >>> 12)
+                    | (0x80 | codePoint >>> 6 & 0x3f) << 8
+                    | (0x80 | codePoint & 0x3f) << 16;
+        }
+        return (0xf0 | codePoint >>> 18)
+                | (0x80 | codePoint >>> 12 & 0x3f) << 8
+                | (0x80 | codePoint >>> 6 & 0x3f) << 16
+                | (0x80 | codePoint & 0x3f) << 24;
+    }
+
+    private static long slotOf(int hash, int offset) {
+        return (long) hash << 32 | offset;
+    }
+
+    private static int hashOf(long slot) {
+        return (int) (slot >>> 32);
+    }
+
+    private static int offsetOf(long slot) {
+        return (int) slot;
+    }
+
+    @SuppressWarnings("unchecked")
+    private V valueAt(int index) {
+        return (V) values[index];
+    }
+}
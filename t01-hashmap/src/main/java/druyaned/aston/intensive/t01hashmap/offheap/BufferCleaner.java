@@ -0,0 +1,68 @@
+package druyaned.aston.intensive.t01hashmap.offheap;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+
+/**
+ * Releases the memory of direct and mapped buffers at once.
+ *
+ * <p>
+ * Java 17 has no supported way to free a buffer: the foreign memory API,
+ * which could, is still incubating. So the cleaner of a buffer is run by
+ * <code>sun.misc.Unsafe.invokeCleaner</code> from the
+ * <code>jdk.unsupported</code> module. Unsafe is looked up by reflection
+ * rather than imported, so the build does not depend on the internal API
+ * and gives no warnings about it. If it is missing, buffers are left to the
+ * garbage collector, which frees them once they are unreachable, and a
+ * mapped file stays mapped until then.
+ *
+ * @author druyaned
+ */
+final class BufferCleaner {
+
+    /**
+     * <code>invokeCleaner</code> bound to the Unsafe instance, of type
+     * <code>(ByteBuffer)void</code>; null if it is not available.
+     */
+    private static final MethodHandle INVOKE_CLEANER = findInvokeCleaner();
+
+    private BufferCleaner() {
+    }
+
+    /**
+     * Frees the memory of the direct or mapped buffer, which must not be
+     * used afterwards. Heap buffers are ignored.
+     *
+     * @throws IllegalArgumentException if the buffer is a slice or a
+     *      duplicate
+     */
+    static void clean(ByteBuffer buffer) {
+        if (INVOKE_CLEANER == null || !buffer.isDirect()) {
+            return;
+        }
+        try {
+            INVOKE_CLEANER.invokeExact(buffer);
+        } catch (RuntimeException | Error exc) {
+            throw exc;
+        } catch (Throwable exc) {
+            throw new IllegalStateException(exc);
+        }
+    }
+
+    private static MethodHandle findInvokeCleaner() {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            return MethodHandles.lookup().findVirtual(unsafeClass,
+                    "invokeCleaner",
+                    MethodType.methodType(void.class, ByteBuffer.class))
+                    .bindTo(field.get(null));
+        } catch (ReflectiveOperationException | RuntimeException exc) {
+            return null;
+        }
+    }
+}
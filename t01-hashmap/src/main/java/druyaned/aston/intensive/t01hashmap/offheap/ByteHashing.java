@@ -0,0 +1,56 @@
+package druyaned.aston.intensive.t01hashmap.offheap;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Hashing and comparison of encoded keys shared by the off-heap maps.
+ *
+ * @author druyaned
+ */
+final class ByteHashing {
+
+    private ByteHashing() {
+    }
+
+    /**
+     * Hashes the bytes by words and finishes by the finalizer of MurmurHash3.
+     */
+    static int hash(ByteBuffer buffer, int offset, int length) {
+        long h = length;
+        int i = 0;
+        for (; i + Long.BYTES <= length; i += Long.BYTES) {
+            h = Long.rotateLeft(
+                    (h ^ buffer.getLong(offset + i)) * 0x9e3779b97f4a7c15L, 31);
+        }
+        for (; i < length; i++) {
+            h = Long.rotateLeft(
+                    (h ^ buffer.get(offset + i)) * 0x9e3779b97f4a7c15L, 31);
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+
+    /**
+     * Returns true if the ranges of the same length are equal byte by byte.
+     */
+    static boolean rangeEquals(ByteBuffer buffer1, int offset1,
+            ByteBuffer buffer2, int offset2, int length) {
+
+        int i = 0;
+        for (; i + Long.BYTES <= length; i += Long.BYTES) {
+            if (buffer1.getLong(offset1 + i) != buffer2.getLong(offset2 + i)) {
+                return false;
+            }
+        }
+        for (; i < length; i++) {
+            if (buffer1.get(offset1 + i) != buffer2.get(offset2 + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,44 @@
+package druyaned.aston.intensive.t01hashmap.offheap;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Converts keys or values to bytes stored outside of the heap and back.
+ *
+ * <p>
+ * Encoded keys are compared and hashed byte by byte, so a codec of keys must
+ * encode equal keys to equal bytes.
+ *
+ * @param <T> the type of encoded objects
+ * @author druyaned
+ * @see Codecs
+ */
+public interface Codec<T> {
+
+    /**
+     * Writes the object at the position of the buffer advancing the position.
+     *
+     * @param object the object to encode, not null
+     * @param buffer the buffer to write to
+     * @throws java.nio.BufferOverflowException if the buffer has not enough
+     * space remaining; the caller retries with a larger buffer
+     */
+    void encode(T object, ByteBuffer buffer);
+
+    /**
+     * Reads the object from the remaining bytes of the buffer, which are
+     * exactly the bytes written by {@link #encode}.
+     *
+     * <p>
+     * The buffer is a view of memory owned by the map, often off-heap memory
+     * which is freed by {@link OffHeapHashMap#close} or by a compaction, and
+     * it is valid only during the call. The codec must copy what it needs
+     * into the returned object and must not retain the buffer or a
+     * {@link ByteBuffer#slice slice} or {@link ByteBuffer#duplicate duplicate}
+     * of it, which would read freed memory later.
+     *
+     * @param buffer the buffer to read from, valid only during the call
+     * @return the decoded object
+     */
+    T decode(ByteBuffer buffer);
+}
@@ -0,0 +1,77 @@
+package druyaned.aston.intensive.t01hashmap.offheap;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Codecs of common types.
+ *
+ * @author druyaned
+ */
+public final class Codecs {
+
+    public static final Codec<Integer> INTEGER = new Codec<>() {
+
+        @Override
+        public void encode(Integer object, ByteBuffer buffer) {
+            buffer.putInt(object);
+        }
+
+        @Override
+        public Integer decode(ByteBuffer buffer) {
+            return buffer.getInt();
+        }
+    };
+
+    public static final Codec<Long> LONG = new Codec<>() {
+
+        @Override
+        public void encode(Long object, ByteBuffer buffer) {
+            buffer.putLong(object);
+        }
+
+        @Override
+        public Long decode(ByteBuffer buffer) {
+            return buffer.getLong();
+        }
+    };
+
+    /**
+     * Strings in UTF-8.
+     */
+    public static final Codec<String> STRING = new Codec<>() {
+
+        @Override
+        public void encode(String object, ByteBuffer buffer) {
+            buffer.put(object.getBytes(StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public String decode(ByteBuffer buffer) {
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    };
+
+    /**
+     * Byte arrays as is; as keys they are compared by content.
+     */
+    public static final Codec<byte[]> BYTES = new Codec<>() {
+
+        @Override
+        public void encode(byte[] object, ByteBuffer buffer) {
+            buffer.put(object);
+        }
+
+        @Override
+        public byte[] decode(ByteBuffer buffer) {
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.get(bytes);
+            return bytes;
+        }
+    };
+
+    private Codecs() {
+    }
+}
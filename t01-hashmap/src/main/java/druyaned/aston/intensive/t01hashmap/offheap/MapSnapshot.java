@@ -0,0 +1,295 @@
+package druyaned.aston.intensive.t01hashmap.offheap;
+
+import druyaned.aston.intensive.t01hashmap.HashMapImpl;
+import druyaned.aston.intensive.t01hashmap.HashMapTask;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+/**
+ * Streaming binary snapshots of the {@link HashMapTask maps}, which are
+ * written to and read from NIO channels: files, sockets or pipes.
+ *
+ * <p>
+ * A snapshot is a header <code>[int magic][int size][int capacity]</code>
+ * followed by <code>size</code> records <code>[int keyLength][key]
+ * [int valueLength][value]</code>, where keys and values are encoded by the
+ * given {@link Codec codecs} and a length of <code>-1</code> stands for null.
+ * The capacity is the number of buckets of a {@link HashMapImpl}, 0 for other
+ * maps; together with the size it lets the reader create a table which is
+ * filled without rehashing, up to {@link #MAX_PRESIZE} entries. Records go
+ * through a direct buffer of {@link #BUFFER_SIZE} bytes, which is doubled for
+ * a key or value that does not fit, so the channel gets large writes and the
+ * writer allocates nothing per entry, unlike Java serialization, which walks
+ * the object graph and writes class descriptors and back references.
+ *
+ * <p>
+ * I/O errors, including a truncated snapshot, are thrown as
+ * {@link UncheckedIOException}; a stream which is not a snapshot throws
+ * {@link IllegalStateException}.
+ *
+ * @author druyaned
+ */
+public final class MapSnapshot {
+
+    /**
+     * The first 4 bytes of a snapshot, "HMS1".
+     */
+    public static final int MAGIC = 0x484d5331;
+    public static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * The largest number of entries which a map is presized for; a larger
+     * map grows while it is read, so a corrupted header can not make the
+     * reader allocate a huge table before any record is read.
+     */
+    public static final int MAX_PRESIZE = 1 << 20;
+
+    private static final int NULL_LENGTH = -1;
+
+    private MapSnapshot() {
+    }
+
+    /**
+     * Writes a snapshot of the map to the channel. The map must not be
+     * modified while it is written.
+     *
+     * @param <K> the type of keys
+     * @param <V> the type of values
+     * @param map the map to write
+     * @param keyCodec the codec of the keys
+     * @param valueCodec the codec of the values
+     * @param channel the channel to write to, which is left open
+     * @return the number of bytes written
+     * @throws ConcurrentModificationException if the map has more or fewer
+     *      entries than its size
+     */
+    public static <K, V> long write(HashMapTask<K, V> map,
+            Codec<? super K> keyCodec, Codec<? super V> valueCodec,
+            WritableByteChannel channel) {
+
+        Output output = new Output(channel);
+        int size = map.size();
+        output.putInt(MAGIC);
+        output.putInt(size);
+        output.putInt(map instanceof HashMapImpl<?, ?> impl
+                ? impl.capacity()
+                : 0);
+        int count = 0;
+        for (Iterator<Map.Entry<K, V>> it = map.entryIterator();
+                it.hasNext();) {
+            Map.Entry<K, V> entry = it.next();
+            output.putRecord(keyCodec, entry.getKey());
+            output.putRecord(valueCodec, entry.getValue());
+            count++;
+        }
+        if (count != size) {
+            throw new ConcurrentModificationException();
+        }
+        output.flush();
+        return output.written;
+    }
+
+    /**
+     * Reads a snapshot from the channel into a new {@link HashMapImpl}
+     * presized for the entries and the capacity of the written map, but for
+     * at most {@link #MAX_PRESIZE} entries.
+     *
+     * @param <K> the type of keys
+     * @param <V> the type of values
+     * @param channel the channel to read from, which is left open
+     * @param keyCodec the codec of the keys
+     * @param valueCodec the codec of the values
+     * @return the read map
+     */
+    public static <K, V> HashMapImpl<K, V> read(ReadableByteChannel channel,
+            Codec<? extends K> keyCodec, Codec<? extends V> valueCodec) {
+
+        return read(channel, keyCodec, valueCodec, HashMapImpl::new);
+    }
+
+    /**
+     * Reads a snapshot from the channel into a map created by the factory.
+     * The buffer may read past the end of the snapshot, so bytes which follow
+     * it in the channel are lost.
+     *
+     * @param <K> the type of keys
+     * @param <V> the type of values
+     * @param <M> the type of the map
+     * @param channel the channel to read from, which is left open
+     * @param keyCodec the codec of the keys
+     * @param valueCodec the codec of the values
+     * @param newMap creates an empty map for the expected number of entries,
+     *      which is at most {@link #MAX_PRESIZE}
+     * @return the read map
+     */
+    public static <K, V, M extends HashMapTask<K, V>> M read(
+            ReadableByteChannel channel, Codec<? extends K> keyCodec,
+            Codec<? extends V> valueCodec, IntFunction<M> newMap) {
+
+        Input input = new Input(channel);
+        if (input.getInt() != MAGIC) {
+            throw new IllegalStateException("Not a map snapshot");
+        }
+        int size = input.getInt();
+        int capacity = input.getInt();
+        if (size < 0 || capacity < 0) {
+            throw new IllegalStateException("Corrupted snapshot header: size="
+                    + size + ", capacity=" + capacity);
+        }
+        // the largest size which a table of this capacity holds, if the
+        // table holds the size at all
+        int capacitySize = (int) (HashMapImpl.LOAD_FACTOR * capacity) - 1;
+        int expectedSize = size <= capacitySize ? capacitySize : size;
+        M map = newMap.apply(Math.min(expectedSize, MAX_PRESIZE));
+        for (int i = 0; i < size; i++) {
+            K key = input.getRecord(keyCodec);
+            V value = input.getRecord(valueCodec);
+            map.put(key, value);
+        }
+        return map;
+    }
+
+    /**
+     * Buffer of the written bytes, which is flushed to the channel when the
+     * next record does not fit.
+     */
+    private static final class Output {
+
+        private final WritableByteChannel channel;
+        private ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        private long written = 0;
+
+        private Output(WritableByteChannel channel) {
+            this.channel = channel;
+        }
+
+        private void putInt(int value) {
+            if (buffer.remaining() < Integer.BYTES) {
+                flush();
+            }
+            buffer.putInt(value);
+        }
+
+        /**
+         * Encodes the object after a gap for its length, flushing the buffer
+         * or, if it is empty, growing it until the object fits.
+         */
+        private <T> void putRecord(Codec<? super T> codec, T object) {
+            if (object == null) {
+                putInt(NULL_LENGTH);
+                return;
+            }
+            while (true) {
+                if (buffer.remaining() < Integer.BYTES) {
+                    flush();
+                }
+                int start = buffer.position();
+                buffer.position(start + Integer.BYTES);
+                try {
+                    codec.encode(object, buffer);
+                    buffer.putInt(start,
+                            buffer.position() - start - Integer.BYTES);
+                    return;
+                } catch (BufferOverflowException exc) {
+                    buffer.position(start);
+                    if (start > 0) {
+                        flush();
+                    } else {
+                        buffer = ByteBuffer.allocateDirect(
+                                buffer.capacity() << 1);
+                    }
+                }
+            }
+        }
+
+        private void flush() {
+            buffer.flip();
+            try {
+                while (buffer.hasRemaining()) {
+                    written += channel.write(buffer);
+                }
+            } catch (IOException exc) {
+                throw new UncheckedIOException(exc);
+            }
+            buffer.clear();
+        }
+    }
+
+    /**
+     * Buffer of the read bytes, which is refilled from the channel when the
+     * next value is not in it.
+     */
+    private static final class Input {
+
+        private final ReadableByteChannel channel;
+        private ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE)
+                .limit(0);
+
+        private Input(ReadableByteChannel channel) {
+            this.channel = channel;
+        }
+
+        private int getInt() {
+            require(Integer.BYTES);
+            return buffer.getInt();
+        }
+
+        /**
+         * Decodes the object from a limited view of its bytes, so the codec
+         * sees exactly the bytes it wrote.
+         */
+        private <T> T getRecord(Codec<T> codec) {
+            int length = getInt();
+            if (length == NULL_LENGTH) {
+                return null;
+            }
+            if (length < 0) {
+                throw new IllegalStateException(
+                        "Corrupted snapshot record: length=" + length);
+            }
+            require(length);
+            int limit = buffer.limit();
+            int end = buffer.position() + length;
+            T object = codec.decode(buffer.limit(end));
+            buffer.limit(limit).position(end);
+            return object;
+        }
+
+        /**
+         * Reads from the channel until the buffer has the given number of
+         * bytes remaining, growing it if they do not fit.
+         */
+        private void require(int count) {
+            if (buffer.remaining() >= count) {
+                return;
+            }
+            if (buffer.capacity() < count) {
+                ByteBuffer larger = ByteBuffer.allocateDirect(
+                        Math.max(buffer.capacity() << 1, count));
+                larger.put(buffer);
+                buffer = larger;
+            } else {
+                buffer.compact();
+            }
+            try {
+                while (buffer.position() < count) {
+                    if (channel.read(buffer) < 0) {
+                        throw new EOFException("Snapshot is truncated");
+                    }
+                }
+            } catch (IOException exc) {
+                throw new UncheckedIOException(exc);
+            }
+            buffer.flip();
+        }
+    }
+}
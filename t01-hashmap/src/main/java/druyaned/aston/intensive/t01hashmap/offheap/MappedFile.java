@@ -0,0 +1,173 @@
+package druyaned.aston.intensive.t01hashmap.offheap;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * File mapped into memory by chunks of {@link #CHUNK_SIZE} bytes, since a
+ * single mapping is limited by 2 GB. Chunk <code>i</code> maps the bytes
+ * <code>[i * CHUNK_SIZE, (i + 1) * CHUNK_SIZE)</code>, so a position is split
+ * into the index of the chunk and the offset inside it. I/O errors are
+ * rethrown as {@link UncheckedIOException}.
+ *
+ * @author druyaned
+ */
+final class MappedFile {
+
+    static final int CHUNK_SHIFT = 26;
+    static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+
+    private final Path path;
+    private final FileChannel channel;
+    private MappedByteBuffer[] chunks = new MappedByteBuffer[4];
+    private int chunkCount = 0;
+    private long mappedLength = 0;
+
+    /**
+     * Opens the file creating it if it does not exist; nothing is mapped yet.
+     */
+    MappedFile(Path path) {
+        this.path = path;
+        try {
+            channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } catch (IOException exc) {
+            throw new UncheckedIOException(exc);
+        }
+    }
+
+    Path path() {
+        return path;
+    }
+
+    long fileSize() {
+        try {
+            return channel.size();
+        } catch (IOException exc) {
+            throw new UncheckedIOException(exc);
+        }
+    }
+
+    long mappedLength() {
+        return mappedLength;
+    }
+
+    /**
+     * Maps the file up to the length, which extends the file if it is
+     * shorter. A partially mapped last chunk is mapped again.
+     */
+    void map(long length) {
+        if (length <= mappedLength) {
+            return;
+        }
+        if ((mappedLength & (CHUNK_SIZE - 1)) != 0) {
+            BufferCleaner.clean(chunks[--chunkCount]);
+            mappedLength = (long) chunkCount << CHUNK_SHIFT;
+        }
+        try {
+            while (mappedLength < length) {
+                int size = (int) Math.min(CHUNK_SIZE, length - mappedLength);
+                if (chunkCount == chunks.length) {
+                    MappedByteBuffer[] prevChunks = chunks;
+                    chunks = new MappedByteBuffer[prevChunks.length << 1];
+                    System.arraycopy(prevChunks, 0, chunks, 0, chunkCount);
+                }
+                chunks[chunkCount++] = channel.map(
+                        FileChannel.MapMode.READ_WRITE, mappedLength, size);
+                mappedLength += size;
+            }
+        } catch (IOException exc) {
+            throw new UncheckedIOException(exc);
+        }
+    }
+
+    ByteBuffer chunk(long position) {
+        return chunks[(int) (position >>> CHUNK_SHIFT)];
+    }
+
+    static int offset(long position) {
+        return (int) position & (CHUNK_SIZE - 1);
+    }
+
+    /**
+     * Fills the mapped part from the position with zeros. Only bytes which
+     * are not zero are written, so holes of a sparse file are read but not
+     * allocated.
+     */
+    void zero(long from) {
+        long position = from;
+        while (position < mappedLength && (position & 7) != 0) {
+            zeroByte(position++);
+        }
+        while (position + Long.BYTES <= mappedLength) {
+            ByteBuffer chunk = chunk(position);
+            int offset = offset(position);
+            if (chunk.getLong(offset) != 0) {
+                chunk.putLong(offset, 0);
+            }
+            position += Long.BYTES;
+        }
+        while (position < mappedLength) {
+            zeroByte(position++);
+        }
+    }
+
+    private void zeroByte(long position) {
+        ByteBuffer chunk = chunk(position);
+        int offset = offset(position);
+        if (chunk.get(offset) != 0) {
+            chunk.put(offset, (byte) 0);
+        }
+    }
+
+    /**
+     * Writes the changes of the first bytes of the file to the storage.
+     */
+    void force(int length) {
+        chunks[0].force(0, length);
+    }
+
+    /**
+     * Writes all changes of the mapped part to the storage.
+     */
+    void force() {
+        for (int i = 0; i < chunkCount; i++) {
+            chunks[i].force();
+        }
+    }
+
+    /**
+     * Unmaps and closes the file; it must not be used afterwards.
+     */
+    void close() {
+        for (int i = 0; i < chunkCount; i++) {
+            BufferCleaner.clean(chunks[i]);
+            chunks[i] = null;
+        }
+        chunkCount = 0;
+        mappedLength = 0;
+        try {
+            channel.close();
+        } catch (IOException exc) {
+            throw new UncheckedIOException(exc);
+        }
+    }
+
+    /**
+     * Closes and deletes the file.
+     */
+    void delete() {
+        close();
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException exc) {
+            throw new UncheckedIOException(exc);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package druyaned.aston.intensive.t01hashmap.offheap;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Memory outside of the heap made of direct buffers (pages).
+ *
+ * <p>
+ * An address is a <code>long</code> which holds the index of the page in the
+ * high 32 bits and the offset inside the page in the low ones, so pages may
+ * have different sizes and a single buffer is not limited by 2 GB. Memory is
+ * allocated by a bump pointer from the last page; a block never crosses a
+ * page. Pages keep the default big-endian order, so the layout does not
+ * depend on the platform. The address <code>0</code> is never returned by
+ * {@link #allocate}, so it may mark a free slot.
+ *
+ * <p>
+ * {@link #free} releases the pages at once by {@link BufferCleaner} instead
+ * of waiting for the garbage collector to find the unreachable buffers.
+ *
+ * @author druyaned
+ */
+final class MemoryRegion {
+
+    static final int MAX_PAGE_SIZE = 1 << 26;
+    static final int MIN_PAGE_SIZE = 1 << 16;
+
+    private ByteBuffer[] pages = new ByteBuffer[4];
+    private int pageCount = 0;
+    private int top = 0;
+    private long reservedBytes = 0;
+    private long usedBytes = 0;
+
+    /**
+     * Adds the zeroed page of the size and returns its index.
+     */
+    int addPage(int size) {
+        if (pageCount == pages.length) {
+            ByteBuffer[] prevPages = pages;
+            pages = new ByteBuffer[prevPages.length << 1];
+            System.arraycopy(prevPages, 0, pages, 0, pageCount);
+        }
+        pages[pageCount] = ByteBuffer.allocateDirect(size);
+        reservedBytes += size;
+        top = 0;
+        return pageCount++;
+    }
+
+    /**
+     * Returns the address of a new block of the length. Pages grow twice up
+     * to {@link #MAX_PAGE_SIZE}; the rest of a page which the block does not
+     * fit in is left unused.
+     *
+     * @throws IllegalArgumentException if the block is larger than a page
+     */
+    long allocate(int length) {
+        if (length > MAX_PAGE_SIZE - Long.BYTES) {
+            throw new IllegalArgumentException(
+                    "length=" + length + " exceeds the page size");
+        }
+        if (pageCount == 0) {
+            addPage(Math.max(MIN_PAGE_SIZE, Long.BYTES + length));
+            top = Long.BYTES; // address 0 is reserved
+        } else if (pages[pageCount - 1].capacity() - top < length) {
+            int size = pages[pageCount - 1].capacity() << 1;
+            addPage(Math.min(MAX_PAGE_SIZE, Math.max(size, length)));
+        }
+        long address = address(pageCount - 1, top);
+        top += length;
+        usedBytes += length;
+        return address;
+    }
+
+    ByteBuffer page(long address) {
+        return pages[(int) (address >>> 32)];
+    }
+
+    static int offset(long address) {
+        return (int) address;
+    }
+
+    static long address(int page, int offset) {
+        return ((long) page << 32) | offset;
+    }
+
+    /**
+     * Returns the number of bytes of all pages.
+     */
+    long reservedBytes() {
+        return reservedBytes;
+    }
+
+    /**
+     * Returns the number of bytes given by {@link #allocate}.
+     */
+    long usedBytes() {
+        return usedBytes;
+    }
+
+    /**
+     * Releases all pages; the region must not be used afterwards.
+     */
+    void free() {
+        for (int i = 0; i < pageCount; i++) {
+            BufferCleaner.clean(pages[i]);
+            pages[i] = null;
+        }
+        pageCount = 0;
+        reservedBytes = 0;
+        usedBytes = 0;
+    }
+}
@@ -0,0 +1,515 @@
+package druyaned.aston.intensive.t01hashmap.offheap;
+
+import druyaned.aston.intensive.t01hashmap.HashMapTask;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+/**
+ * Implementation of the {@link HashMapTask task} which keeps its entries
+ * outside of the heap.
+ *
+ * <p>
+ * Keys and values are encoded by the given {@link Codec codecs} into records
+ * <code>[int keyLength][int valueLength][key][value]</code> appended to a
+ * data region of direct memory. The hash table is an index region of slots
+ * <code>[long recordAddress][int hash][int unused]</code> with linear probing
+ * and backward-shift removal, as in
+ * {@link druyaned.aston.intensive.t01hashmap.LongObjectMap}. Keys are hashed
+ * and compared by their encoded bytes. So the heap holds only a few objects
+ * regardless of the size, and the garbage collector has nothing to trace or
+ * copy; <code>get</code> allocates only the decoded value and a
+ * {@link ByteBuffer} view of its bytes, which is passed to the codec.
+ *
+ * <p>
+ * A record whose value is replaced by one of the same length is overwritten
+ * in place; otherwise the new record is appended and the old one becomes
+ * garbage, as does a removed record. Once garbage exceeds
+ * {@link #MAX_GARBAGE_RATIO} of the data, live records are copied to a new
+ * region. The index is doubled when <code>size &gt;= LOAD_FACTOR *
+ * capacity</code>.
+ *
+ * <p>
+ * The memory is released by {@link #close}, after which the map must not be
+ * used. Null keys and null values are not permitted. The map is not
+ * thread-safe: even <code>get</code> encodes the key into a shared buffer.
+ *
+ * @param <K> the type of keys maintained by this map
+ * @param <V> the type of mapped values
+ * @author druyaned
+ */
+public class OffHeapHashMap<K, V> implements HashMapTask<K, V>, AutoCloseable {
+
+    public static final int DEFAULT_CAPACITY = 16;
+    public static final int MAX_CAPACITY = 1 << 30;
+    public static final double LOAD_FACTOR = 0.75;
+    public static final double MAX_GARBAGE_RATIO = 0.5;
+
+    /**
+     * Garbage below this is not compacted, so small maps do not copy records
+     * after every few updates.
+     */
+    private static final int MIN_COMPACTION_BYTES = 1 << 20;
+    private static final int SLOT_SHIFT = 4;
+    private static final int HASH_OFFSET = Long.BYTES;
+    private static final int HEADER_SIZE = 2 * Integer.BYTES;
+    private static final int INITIAL_SCRATCH_SIZE = 256;
+
+    private final Codec<K> keyCodec;
+    private final Codec<V> valueCodec;
+    private MemoryRegion index;
+    private MemoryRegion data;
+    private int capacity;
+    private int mask;
+    private int threshold;
+    private int slotsPerPageShift;
+    private int size = 0;
+    private long garbageBytes = 0;
+    private boolean closed = false;
+
+    /**
+     * Heap buffer with the encoded key at <code>[0, keyLength)</code>, which
+     * may be followed by the encoded value.
+     */
+    private ByteBuffer scratch = ByteBuffer.allocate(INITIAL_SCRATCH_SIZE);
+    private int keyLength;
+
+    public OffHeapHashMap(Codec<K> keyCodec, Codec<V> valueCodec) {
+        this(keyCodec, valueCodec, 0);
+    }
+
+    /**
+     * Creates the map which holds the expected number of entries without
+     * resizing the index.
+     *
+     * @param keyCodec the codec of keys
+     * @param valueCodec the codec of values
+     * @param expectedSize the expected number of entries
+     * @throws IllegalArgumentException if the expected size is negative
+     */
+    public OffHeapHashMap(Codec<K> keyCodec, Codec<V> valueCodec,
+            int expectedSize) {
+
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException(
+                    "expectedSize=" + expectedSize + " is negative");
+        }
+        this.keyCodec = Objects.requireNonNull(keyCodec);
+        this.valueCodec = Objects.requireNonNull(valueCodec);
+        allocateIndex(capacityFor(expectedSize));
+        data = new MemoryRegion();
+    }
+
+    @Override
+    public V get(K key) {
+        ensureOpen();
+        encodeKey(key);
+        int slot = find(hash());
+        return slot < 0 ? null : decodeValue(recordAt(slot));
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws NullPointerException if the key or the value is null
+     * @throws IllegalArgumentException if the record is larger than a page of
+     * direct memory (64 MB)
+     */
+    @Override
+    public V put(K key, V value) {
+        ensureOpen();
+        encodeKey(key);
+        encode(valueCodec, Objects.requireNonNull(value), keyLength);
+        int valueLength = scratch.position() - keyLength;
+        int hash = hash();
+        int slot = hash & mask;
+        while (true) {
+            long record = recordAt(slot);
+            if (record == 0) {
+                if (size >= threshold) {
+                    resize();
+                    slot = hash & mask;
+                    continue;
+                }
+                setSlot(slot, writeRecord(valueLength), hash);
+                size++;
+                return null;
+            }
+            if (hashAt(slot) == hash && keyEquals(record)) {
+                V prevValue = decodeValue(record);
+                ByteBuffer page = data.page(record);
+                int offset = MemoryRegion.offset(record);
+                if (page.getInt(offset + Integer.BYTES) == valueLength) {
+                    page.put(offset + HEADER_SIZE + keyLength,
+                            scratch, keyLength, valueLength);
+                } else {
+                    garbageBytes += recordLength(record);
+                    setSlot(slot, writeRecord(valueLength), hash);
+                    compactIfNeeded();
+                }
+                return prevValue;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>
+     * The record becomes garbage; the following slots are shifted back as in
+     * {@link druyaned.aston.intensive.t01hashmap.LongObjectMap#remove}.
+     */
+    @Override
+    public V remove(K key) {
+        ensureOpen();
+        encodeKey(key);
+        int slot = find(hash());
+        if (slot < 0) {
+            return null;
+        }
+        long record = recordAt(slot);
+        V prevValue = decodeValue(record);
+        garbageBytes += recordLength(record);
+        int free = slot;
+        int next = (slot + 1) & mask;
+        while (recordAt(next) != 0) {
+            int home = hashAt(next) & mask;
+            if (((next - home) & mask) >= ((next - free) & mask)) {
+                setSlot(free, recordAt(next), hashAt(next));
+                free = next;
+            }
+            next = (next + 1) & mask;
+        }
+        setSlot(free, 0, 0);
+        size--;
+        compactIfNeeded();
+        return prevValue;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>
+     * The iterator is itself the entry of the current slot with the key and
+     * the value decoded by {@link Iterator#next}; the entry does not support
+     * {@link Map.Entry#setValue}.
+     */
+    @Override
+    public Iterator<Map.Entry<K, V>> entryIterator() {
+        ensureOpen();
+        return new SlotIterator();
+    }
+
+    private final class SlotIterator
+            implements Iterator<Map.Entry<K, V>>, Map.Entry<K, V> {
+
+        private int next = nextSlot(0);
+        private K key;
+        private V value;
+
+        @Override
+        public boolean hasNext() {
+            return next < capacity;
+        }
+
+        @Override
+        public Map.Entry<K, V> next() {
+            if (next >= capacity) {
+                throw new NoSuchElementException();
+            }
+            ensureOpen();
+            long record = recordAt(next);
+            key = decodeKey(record);
+            value = decodeValue(record);
+            next = nextSlot(next + 1);
+            return this;
+        }
+
+        @Override
+        public K getKey() {
+            return key;
+        }
+
+        @Override
+        public V getValue() {
+            return value;
+        }
+
+        @Override
+        public V setValue(V newValue) {
+            throw new UnsupportedOperationException();
+        }
+
+        private int nextSlot(int from) {
+            while (from < capacity && recordAt(from) == 0) {
+                from++;
+            }
+            return from;
+        }
+    }
+
+    /**
+     * Removes all key-value pairs from the map releasing the data and
+     * shrinking the index to the default capacity.
+     */
+    public void clear() {
+        ensureOpen();
+        index.free();
+        data.free();
+        allocateIndex(DEFAULT_CAPACITY);
+        data = new MemoryRegion();
+        size = 0;
+        garbageBytes = 0;
+    }
+
+    /**
+     * Releases the direct memory of the map. Repeated calls have no effect.
+     */
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            index.free();
+            data.free();
+        }
+    }
+
+    /**
+     * Returns the number of bytes of direct memory held by the map: the whole
+     * index and the data pages including their unused tails.
+     *
+     * @return the number of bytes of direct memory held by the map
+     */
+    public long offHeapBytes() {
+        return index.reservedBytes() + data.reservedBytes();
+    }
+
+    /**
+     * Returns the number of bytes of live records.
+     *
+     * @return the number of bytes of live records
+     */
+    public long dataBytes() {
+        return data.usedBytes() - garbageBytes;
+    }
+
+    /**
+     * Returns the number of bytes of replaced and removed records which are
+     * not compacted yet.
+     *
+     * @return the number of bytes of garbage records
+     */
+    public long garbageBytes() {
+        return garbageBytes;
+    }
+
+    /**
+     * Returns the number of slots of the index.
+     *
+     * @return the number of slots of the index
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("Map is closed");
+        }
+    }
+
+    private void encodeKey(K key) {
+        encode(keyCodec, Objects.requireNonNull(key), 0);
+        keyLength = scratch.position();
+    }
+
+    /**
+     * Encodes the object into the scratch from the position, growing the
+     * scratch until the object fits.
+     */
+    private <T> void encode(Codec<T> codec, T object, int from) {
+        while (true) {
+            scratch.clear().position(from);
+            try {
+                codec.encode(object, scratch);
+                return;
+            } catch (BufferOverflowException exc) {
+                ByteBuffer larger
+                        = ByteBuffer.allocate(scratch.capacity() << 1);
+                larger.put(0, scratch, 0, from);
+                scratch = larger;
+            }
+        }
+    }
+
+    private int hash() {
+        return ByteHashing.hash(scratch, 0, keyLength);
+    }
+
+    private int find(int hash) {
+        int slot = hash & mask;
+        while (true) {
+            long record = recordAt(slot);
+            if (record == 0) {
+                return -1;
+            }
+            if (hashAt(slot) == hash && keyEquals(record)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private boolean keyEquals(long record) {
+        ByteBuffer page = data.page(record);
+        int offset = MemoryRegion.offset(record);
+        if (page.getInt(offset) != keyLength) {
+            return false;
+        }
+        return ByteHashing.rangeEquals(
+                page, offset + HEADER_SIZE, scratch, 0, keyLength);
+    }
+
+    /**
+     * Appends the record of the key and the value from the scratch.
+     */
+    private long writeRecord(int valueLength) {
+        int length = keyLength + valueLength;
+        long record = data.allocate(HEADER_SIZE + length);
+        ByteBuffer page = data.page(record);
+        int offset = MemoryRegion.offset(record);
+        page.putInt(offset, keyLength);
+        page.putInt(offset + Integer.BYTES, valueLength);
+        page.put(offset + HEADER_SIZE, scratch, 0, length);
+        return record;
+    }
+
+    private K decodeKey(long record) {
+        ByteBuffer page = data.page(record);
+        int offset = MemoryRegion.offset(record);
+        return keyCodec.decode(
+                page.slice(offset + HEADER_SIZE, page.getInt(offset)));
+    }
+
+    private V decodeValue(long record) {
+        ByteBuffer page = data.page(record);
+        int offset = MemoryRegion.offset(record);
+        int valueOffset = offset + HEADER_SIZE + page.getInt(offset);
+        int valueLength = page.getInt(offset + Integer.BYTES);
+        return valueCodec.decode(page.slice(valueOffset, valueLength));
+    }
+
+    private int recordLength(long record) {
+        ByteBuffer page = data.page(record);
+        int offset = MemoryRegion.offset(record);
+        return HEADER_SIZE + page.getInt(offset)
+                + page.getInt(offset + Integer.BYTES);
+    }
+
+    private long slotAddress(int slot) {
+        int page = slot >>> slotsPerPageShift;
+        int offset = (slot & ((1 << slotsPerPageShift) - 1)) << SLOT_SHIFT;
+        return MemoryRegion.address(page, offset);
+    }
+
+    private long recordAt(int slot) {
+        long address = slotAddress(slot);
+        return index.page(address).getLong(MemoryRegion.offset(address));
+    }
+
+    private int hashAt(int slot) {
+        long address = slotAddress(slot);
+        return index.page(address)
+                .getInt(MemoryRegion.offset(address) + HASH_OFFSET);
+    }
+
+    private void setSlot(int slot, long record, int hash) {
+        long address = slotAddress(slot);
+        ByteBuffer page = index.page(address);
+        int offset = MemoryRegion.offset(address);
+        page.putLong(offset, record);
+        page.putInt(offset + HASH_OFFSET, hash);
+    }
+
+    private void allocateIndex(int newCapacity) {
+        index = new MemoryRegion();
+        long bytes = (long) newCapacity << SLOT_SHIFT;
+        int pageSize = (int) Math.min(bytes, MemoryRegion.MAX_PAGE_SIZE);
+        for (long allocated = 0; allocated < bytes; allocated += pageSize) {
+            index.addPage(pageSize);
+        }
+        capacity = newCapacity;
+        mask = newCapacity - 1;
+        threshold = (int) (LOAD_FACTOR * newCapacity);
+        slotsPerPageShift
+                = Integer.numberOfTrailingZeros(pageSize) - SLOT_SHIFT;
+    }
+
+    private void resize() {
+        if (capacity == MAX_CAPACITY) {
+            throw new IllegalStateException("Max capacity is reached");
+        }
+        MemoryRegion prevIndex = index;
+        int prevCapacity = capacity;
+        int prevShift = slotsPerPageShift;
+        allocateIndex(capacity << 1);
+        for (int i = 0; i < prevCapacity; i++) {
+            long address = MemoryRegion.address(i >>> prevShift,
+                    (i & ((1 << prevShift) - 1)) << SLOT_SHIFT);
+            ByteBuffer page = prevIndex.page(address);
+            int offset = MemoryRegion.offset(address);
+            long record = page.getLong(offset);
+            if (record != 0) {
+                int hash = page.getInt(offset + HASH_OFFSET);
+                int slot = hash & mask;
+                while (recordAt(slot) != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                setSlot(slot, record, hash);
+            }
+        }
+        prevIndex.free();
+    }
+
+    /**
+     * Copies live records to a new data region if there is too much garbage.
+     */
+    private void compactIfNeeded() {
+        if (garbageBytes < MIN_COMPACTION_BYTES
+                || garbageBytes < MAX_GARBAGE_RATIO * data.usedBytes()) {
+            return;
+        }
+        MemoryRegion compacted = new MemoryRegion();
+        for (int slot = 0; slot < capacity; slot++) {
+            long record = recordAt(slot);
+            if (record != 0) {
+                int length = recordLength(record);
+                long copy = compacted.allocate(length);
+                compacted.page(copy).put(MemoryRegion.offset(copy),
+                        data.page(record), MemoryRegion.offset(record), length);
+                setSlot(slot, copy, hashAt(slot));
+            }
+        }
+        data.free();
+        data = compacted;
+        garbageBytes = 0;
+    }
+
+    private static int capacityFor(int expectedSize) {
+        int capacity = DEFAULT_CAPACITY;
+        while (capacity < MAX_CAPACITY
+                && expectedSize >= LOAD_FACTOR * capacity) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+}
@@ -0,0 +1,1049 @@
+package druyaned.aston.intensive.t01hashmap.offheap;
+
+import druyaned.aston.intensive.t01hashmap.HashMapTask;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.zip.CRC32C;
+
+/**
+ * Implementation of the {@link HashMapTask task} stored in files of a
+ * directory, which is reopened without rebuilding the map.
+ *
+ * <p>
+ * Entries are appended to a data file (a log) as records
+ * <code>[int crc][int keyLength][int valueLength][key][value]</code> encoded
+ * by the given {@link Codec codecs}; the CRC32C covers the rest of the record,
+ * and a removal appends a tombstone with <code>valueLength = -1</code>. The
+ * hash table is an index file of slots <code>[long recordLocation][int hash]
+ * [int unused]</code> with linear probing, as in {@link OffHeapHashMap}. Both
+ * files are mapped into memory by {@link FileChannel#map}, so the map lives
+ * in the page cache rather than in the heap.
+ *
+ * <p>
+ * {@link #flush} and {@link #close} write the files to the storage and mark
+ * the index clean; the first update after that marks it dirty again. A clean
+ * index is reopened as is, which costs only the mapping of the files. A dirty
+ * one, left by a crash, is rebuilt from the log: records are replayed in
+ * order until the first one whose checksum does not match, which is a torn
+ * write, and the log is cut there: the rest of it is filled with zeros, so
+ * records after the cut are never replayed by a later recovery.
+ *
+ * <p>
+ * Replaced and removed records are garbage. Once it exceeds
+ * {@link #MAX_GARBAGE_RATIO} of the log, a background thread copies live
+ * records to a new log of the next generation, taking the monitor of the map
+ * for every {@link #COMPACTION_BATCH} records, so the map stays available.
+ * Records appended meanwhile go to the old log and are copied when the
+ * compaction catches up with its end; then the index is switched to the new
+ * log and the old one is deleted. A crash during compaction leaves a dirty
+ * index, and the old log, which is complete, is replayed.
+ *
+ * <p>
+ * Operations are serialized by the monitor of the map. Null keys and null
+ * values are not permitted. A directory must be opened by one map at a time.
+ * I/O errors are thrown as {@link UncheckedIOException}.
+ *
+ * @param <K> the type of keys maintained by this map
+ * @param <V> the type of mapped values
+ * @author druyaned
+ */
+public class PersistentHashMap<K, V>
+        implements HashMapTask<K, V>, AutoCloseable {
+
+    public static final int DEFAULT_CAPACITY = 16;
+    public static final int MAX_CAPACITY = 1 << 30;
+    public static final double LOAD_FACTOR = 0.75;
+    public static final double MAX_GARBAGE_RATIO = 0.5;
+    public static final int COMPACTION_BATCH = 1024;
+
+    private static final int MIN_COMPACTION_BYTES = 1 << 20;
+    private static final int INITIAL_SCRATCH_SIZE = 256;
+
+    private static final String INDEX_FILE = "index";
+    private static final String INDEX_TMP_FILE = "index.tmp";
+    private static final String DATA_FILE_PREFIX = "data.";
+
+    // index: header and slots [long location][int hash][int unused]
+    private static final long INDEX_MAGIC = 0x50484d2d494e4458L;
+    private static final int VERSION = 1;
+    private static final int DIRTY = 0;
+    private static final int CLEAN = 1;
+    private static final int VERSION_OFFSET = 8;
+    private static final int STATE_OFFSET = 12;
+    private static final int CAPACITY_OFFSET = 16;
+    private static final int SIZE_OFFSET = 20;
+    private static final int GENERATION_OFFSET = 24;
+    private static final int DATA_END_OFFSET = 32;
+    private static final int GARBAGE_OFFSET = 40;
+    private static final int INDEX_HEADER_SIZE = 64;
+    private static final int SLOT_SHIFT = 4;
+    private static final int HASH_OFFSET = Long.BYTES;
+
+    // data: header [long magic][long generation] and records
+    private static final long DATA_MAGIC = 0x50484d2d44415441L;
+    private static final int DATA_HEADER_SIZE = 2 * Long.BYTES;
+    private static final int KEY_LENGTH_OFFSET = Integer.BYTES;
+    private static final int VALUE_LENGTH_OFFSET = 2 * Integer.BYTES;
+    private static final int RECORD_HEADER_SIZE = 3 * Integer.BYTES;
+    private static final int MAX_RECORD_SIZE
+            = MappedFile.CHUNK_SIZE - DATA_HEADER_SIZE;
+
+    /**
+     * Value length of a tombstone.
+     */
+    private static final int TOMBSTONE = -1;
+
+    /**
+     * Key length of a record which fills the tail of a chunk, since a record
+     * never crosses chunks.
+     */
+    private static final int PADDING = -1;
+
+    /**
+     * A location is the position of a record in the log with the parity of
+     * its generation in the high bits, since two logs exist while compacting.
+     */
+    private static final int PARITY_SHIFT = 62;
+    private static final long POSITION_MASK = (1L << PARITY_SHIFT) - 1;
+
+    private final Path directory;
+    private final Codec<K> keyCodec;
+    private final Codec<V> valueCodec;
+    private final CRC32C crc = new CRC32C();
+    private final MappedFile[] logs = new MappedFile[2];
+    private final long[] garbageBytes = new long[2];
+    private MappedFile index;
+    private int capacity;
+    private int mask;
+    private int threshold;
+    private int size = 0;
+    private long generation;
+    private long dataEnd;
+    private boolean dirty = false;
+    private boolean closed = false;
+    private boolean compactionFailed = false;
+    private Compaction compaction = null;
+    private Thread compactor = null;
+
+    private ByteBuffer scratch = ByteBuffer.allocate(INITIAL_SCRATCH_SIZE);
+    private int keyLength;
+
+    /**
+     * Opens the map stored in the directory or creates an empty one.
+     *
+     * @param directory the directory of the files, created if it is absent
+     * @param keyCodec the codec of keys
+     * @param valueCodec the codec of values
+     * @throws IllegalStateException if the files are not of this map
+     * @throws UncheckedIOException if an I/O error occurs
+     */
+    public PersistentHashMap(Path directory, Codec<K> keyCodec,
+            Codec<V> valueCodec) {
+
+        this.directory = Objects.requireNonNull(directory);
+        this.keyCodec = Objects.requireNonNull(keyCodec);
+        this.valueCodec = Objects.requireNonNull(valueCodec);
+        try {
+            Files.createDirectories(directory);
+            Files.deleteIfExists(directory.resolve(INDEX_TMP_FILE));
+            Path indexPath = directory.resolve(INDEX_FILE);
+            if (Files.exists(indexPath)
+                    && Files.size(indexPath) >= INDEX_HEADER_SIZE) {
+                open(indexPath);
+            } else {
+                long lastGeneration = Math.max(
+                        readGeneration(logPath(0)), readGeneration(logPath(1)));
+                if (lastGeneration < 0) {
+                    create();
+                } else {
+                    recover(lastGeneration, 0);
+                }
+            }
+        } catch (IOException exc) {
+            throw new UncheckedIOException(exc);
+        }
+    }
+
+    @Override
+    public synchronized V get(K key) {
+        ensureOpen();
+        encodeKey(key);
+        int slot = find(hash(), scratch, 0, keyLength);
+        return slot < 0 ? null : decodeValue(locationAt(slot));
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws NullPointerException if the key or the value is null
+     * @throws IllegalArgumentException if the record is larger than a chunk
+     * of the log (64 MB)
+     */
+    @Override
+    public synchronized V put(K key, V value) {
+        ensureOpen();
+        encodeKey(key);
+        encode(valueCodec, Objects.requireNonNull(value), keyLength);
+        int valueLength = scratch.position() - keyLength;
+        markDirty();
+        int hash = hash();
+        int slot = find(hash, scratch, 0, keyLength);
+        long location = append(valueLength);
+        V prevValue = null;
+        if (slot >= 0) {
+            long prevLocation = locationAt(slot);
+            prevValue = decodeValue(prevLocation);
+            addGarbage(prevLocation);
+            setSlot(slot, location, hash);
+        } else {
+            insert(location, hash);
+        }
+        compactIfNeeded();
+        return prevValue;
+    }
+
+    @Override
+    public synchronized V remove(K key) {
+        ensureOpen();
+        encodeKey(key);
+        int slot = find(hash(), scratch, 0, keyLength);
+        if (slot < 0) {
+            return null;
+        }
+        markDirty();
+        long location = locationAt(slot);
+        V prevValue = decodeValue(location);
+        addGarbage(location);
+        addGarbage(append(TOMBSTONE));
+        delete(slot);
+        compactIfNeeded();
+        return prevValue;
+    }
+
+    @Override
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>
+     * The iterator is itself the entry of the current slot with the key and
+     * the value decoded by {@link Iterator#next} under the monitor of the
+     * map, so a background compaction may run meanwhile; the entry does not
+     * support {@link Map.Entry#setValue}.
+     */
+    @Override
+    public synchronized Iterator<Map.Entry<K, V>> entryIterator() {
+        ensureOpen();
+        return new SlotIterator();
+    }
+
+    private final class SlotIterator
+            implements Iterator<Map.Entry<K, V>>, Map.Entry<K, V> {
+
+        private int next = nextSlot(0);
+        private K key;
+        private V value;
+
+        @Override
+        public boolean hasNext() {
+            synchronized (PersistentHashMap.this) {
+                return next < capacity;
+            }
+        }
+
+        @Override
+        public Map.Entry<K, V> next() {
+            synchronized (PersistentHashMap.this) {
+                if (next >= capacity) {
+                    throw new NoSuchElementException();
+                }
+                ensureOpen();
+                long location = locationAt(next);
+                key = decodeKey(location);
+                value = decodeValue(location);
+                next = nextSlot(next + 1);
+                return this;
+            }
+        }
+
+        @Override
+        public K getKey() {
+            return key;
+        }
+
+        @Override
+        public V getValue() {
+            return value;
+        }
+
+        @Override
+        public V setValue(V newValue) {
+            throw new UnsupportedOperationException();
+        }
+
+        private int nextSlot(int from) {
+            while (from < capacity && locationAt(from) == 0) {
+                from++;
+            }
+            return from;
+        }
+    }
+
+    /**
+     * Writes the files to the storage. Unless a compaction is running, the
+     * index is marked clean, so the map is reopened without replaying the
+     * log even if the process is killed before {@link #close}.
+     */
+    public synchronized void flush() {
+        ensureOpen();
+        logs[parity(generation)].force();
+        if (compaction != null) {
+            compaction.target.force();
+        }
+        index.force();
+        boolean clean = compaction == null && !compactionFailed;
+        writeHeader(index, clean ? CLEAN : DIRTY);
+        index.force(INDEX_HEADER_SIZE);
+        dirty = !clean;
+    }
+
+    /**
+     * Copies live records to a new log in the calling thread, or waits for
+     * the background compaction if it is running.
+     */
+    public void compact() {
+        Compaction started;
+        Thread running;
+        synchronized (this) {
+            ensureOpen();
+            running = compactor;
+            started = running == null && compaction == null
+                    ? new Compaction()
+                    : null;
+        }
+        if (started != null) {
+            runCompaction(started);
+        } else if (running != null) {
+            join(running);
+        }
+    }
+
+    /**
+     * Waits for the background compaction, flushes and closes the files.
+     * Repeated calls have no effect.
+     */
+    @Override
+    public void close() {
+        Thread running;
+        synchronized (this) {
+            running = compactor;
+        }
+        if (running != null) {
+            join(running);
+        }
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            flush();
+            closed = true;
+            index.close();
+            for (int parity = 0; parity < logs.length; parity++) {
+                if (logs[parity] != null) {
+                    logs[parity].close();
+                    logs[parity] = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the number of bytes of the log including garbage.
+     *
+     * @return the number of bytes of the log
+     */
+    public synchronized long dataBytes() {
+        return dataEnd;
+    }
+
+    /**
+     * Returns the number of bytes of replaced and removed records and
+     * tombstones in the log.
+     *
+     * @return the number of bytes of garbage records
+     */
+    public synchronized long garbageBytes() {
+        return garbageBytes[parity(generation)];
+    }
+
+    /**
+     * Returns the number of slots of the index.
+     *
+     * @return the number of slots of the index
+     */
+    public synchronized int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns true if a compaction is running.
+     *
+     * @return true if a compaction is running
+     */
+    public synchronized boolean isCompacting() {
+        return compaction != null;
+    }
+
+    // open, create, recover
+
+    private void open(Path indexPath) throws IOException {
+        index = new MappedFile(indexPath);
+        index.map(index.fileSize());
+        ByteBuffer header = index.chunk(0);
+        if (header.getLong(0) != INDEX_MAGIC
+                || header.getInt(VERSION_OFFSET) != VERSION) {
+            index.close();
+            throw new IllegalStateException("Not an index of the map: "
+                    + indexPath);
+        }
+        long indexGeneration = header.getLong(GENERATION_OFFSET);
+        int prevSize = header.getInt(SIZE_OFFSET);
+        Path logPath = logPath(parity(indexGeneration));
+        long end = header.getLong(DATA_END_OFFSET);
+        if (header.getInt(STATE_OFFSET) != CLEAN
+                || readGeneration(logPath) != indexGeneration
+                || Files.size(logPath) < end) {
+            index.close();
+            recover(indexGeneration, prevSize);
+            return;
+        }
+        setCapacity(header.getInt(CAPACITY_OFFSET));
+        size = prevSize;
+        generation = indexGeneration;
+        dataEnd = end;
+        garbageBytes[parity(generation)] = header.getLong(GARBAGE_OFFSET);
+        MappedFile log = new MappedFile(logPath);
+        log.map(chunkEnd(dataEnd));
+        logs[parity(generation)] = log;
+        Files.deleteIfExists(logPath(parity(generation + 1)));
+    }
+
+    private void create() {
+        generation = 0;
+        logs[0] = createLog(generation);
+        dataEnd = DATA_HEADER_SIZE;
+        index = createIndex(directory.resolve(INDEX_FILE), DEFAULT_CAPACITY);
+        flush();
+    }
+
+    /**
+     * Rebuilds the index by replaying the log of the generation up to the
+     * first torn record, zeroes the log from there and deletes the log of a
+     * broken compaction.
+     */
+    private void recover(long logGeneration, int expectedSize)
+            throws IOException {
+
+        generation = logGeneration;
+        Files.deleteIfExists(logPath(parity(generation + 1)));
+        Path logPath = logPath(parity(generation));
+        if (readGeneration(logPath) != generation) {
+            throw new IllegalStateException("Not a log of the map: " + logPath);
+        }
+        MappedFile log = new MappedFile(logPath);
+        log.map(chunkEnd(log.fileSize()));
+        logs[parity(generation)] = log;
+        Files.deleteIfExists(directory.resolve(INDEX_FILE));
+        index = createIndex(directory.resolve(INDEX_FILE),
+                capacityFor(expectedSize));
+        dirty = true;
+        long end = log.mappedLength();
+        long position = DATA_HEADER_SIZE;
+        while (true) {
+            long record = seekRecord(log, position, end);
+            if (record < 0) {
+                break;
+            }
+            position = record + replay(record);
+        }
+        dataEnd = position;
+        log.zero(position);
+        flush();
+    }
+
+    /**
+     * Applies the record of the current log to the index as the original
+     * update did.
+     */
+    private int replay(long record) {
+        MappedFile log = logs[parity(generation)];
+        ByteBuffer chunk = log.chunk(record);
+        int offset = MappedFile.offset(record);
+        int length = chunk.getInt(offset + KEY_LENGTH_OFFSET);
+        int keyOffset = offset + RECORD_HEADER_SIZE;
+        int hash = ByteHashing.hash(chunk, keyOffset, length);
+        int slot = find(hash, chunk, keyOffset, length);
+        long location = location(parity(generation), record);
+        if (chunk.getInt(offset + VALUE_LENGTH_OFFSET) == TOMBSTONE) {
+            addGarbage(location);
+            if (slot >= 0) {
+                addGarbage(locationAt(slot));
+                delete(slot);
+            }
+        } else if (slot >= 0) {
+            addGarbage(locationAt(slot));
+            setSlot(slot, location, hash);
+        } else {
+            insert(location, hash);
+        }
+        return recordLength(location);
+    }
+
+    /**
+     * Returns the generation from the header of the log, or -1 if there is
+     * no valid log at the path.
+     */
+    private static long readGeneration(Path logPath) throws IOException {
+        if (!Files.exists(logPath)) {
+            return -1;
+        }
+        try (FileChannel channel = FileChannel.open(logPath)) {
+            ByteBuffer header = ByteBuffer.allocate(DATA_HEADER_SIZE);
+            channel.read(header, 0);
+            if (header.hasRemaining() || header.getLong(0) != DATA_MAGIC) {
+                return -1;
+            }
+            return header.getLong(Long.BYTES);
+        }
+    }
+
+    // log
+
+    private MappedFile createLog(long logGeneration) {
+        Path logPath = logPath(parity(logGeneration));
+        try {
+            Files.deleteIfExists(logPath);
+        } catch (IOException exc) {
+            throw new UncheckedIOException(exc);
+        }
+        MappedFile log = new MappedFile(logPath);
+        log.map(MappedFile.CHUNK_SIZE);
+        ByteBuffer header = log.chunk(0);
+        header.putLong(0, DATA_MAGIC);
+        header.putLong(Long.BYTES, logGeneration);
+        return log;
+    }
+
+    /**
+     * Appends the record of the key and the value from the scratch to the
+     * current log and returns its location.
+     */
+    private long append(int valueLength) {
+        MappedFile log = logs[parity(generation)];
+        int length = RECORD_HEADER_SIZE + keyLength + Math.max(valueLength, 0);
+        long record = reserve(log, dataEnd, length);
+        ByteBuffer chunk = log.chunk(record);
+        int offset = MappedFile.offset(record);
+        chunk.putInt(offset + KEY_LENGTH_OFFSET, keyLength);
+        chunk.putInt(offset + VALUE_LENGTH_OFFSET, valueLength);
+        chunk.put(offset + RECORD_HEADER_SIZE, scratch, 0,
+                length - RECORD_HEADER_SIZE);
+        chunk.putInt(offset, checksum(chunk, offset, length));
+        dataEnd = record + length;
+        return location(parity(generation), record);
+    }
+
+    /**
+     * Returns the position of a record of the length in the log which ends
+     * at the end. If the rest of the chunk is too short, it is filled by
+     * padding and the record goes to the next chunk.
+     */
+    private long reserve(MappedFile log, long end, int length) {
+        if (length > MAX_RECORD_SIZE) {
+            throw new IllegalArgumentException(
+                    "length=" + length + " exceeds the chunk size");
+        }
+        int rest = MappedFile.CHUNK_SIZE - MappedFile.offset(end);
+        if (rest < length) {
+            if (rest >= RECORD_HEADER_SIZE) {
+                ByteBuffer chunk = log.chunk(end);
+                int offset = MappedFile.offset(end);
+                chunk.putInt(offset + KEY_LENGTH_OFFSET, PADDING);
+                chunk.putInt(offset + VALUE_LENGTH_OFFSET, 0);
+                chunk.putInt(offset,
+                        checksum(chunk, offset, RECORD_HEADER_SIZE));
+            }
+            end += rest;
+        }
+        log.map(chunkEnd(end + length));
+        return end;
+    }
+
+    /**
+     * Returns the position of the first record at or after the position
+     * skipping padding, or -1 if the end is reached or the record there is
+     * torn: its lengths are invalid or its checksum does not match.
+     */
+    private long seekRecord(MappedFile log, long position, long end) {
+        while (true) {
+            int offset = MappedFile.offset(position);
+            int rest = MappedFile.CHUNK_SIZE - offset;
+            if (rest < RECORD_HEADER_SIZE) {
+                position += rest;
+                continue;
+            }
+            if (position + RECORD_HEADER_SIZE > end) {
+                return -1;
+            }
+            ByteBuffer chunk = log.chunk(position);
+            int length = chunk.getInt(offset + KEY_LENGTH_OFFSET);
+            int valueLength = chunk.getInt(offset + VALUE_LENGTH_OFFSET);
+            long recordLength;
+            if (length == PADDING && valueLength == 0) {
+                recordLength = RECORD_HEADER_SIZE;
+            } else if (length >= 0 && valueLength >= TOMBSTONE) {
+                recordLength = (long) RECORD_HEADER_SIZE + length
+                        + Math.max(valueLength, 0);
+            } else {
+                return -1;
+            }
+            if (recordLength > rest || position + recordLength > end
+                    || chunk.getInt(offset)
+                    != checksum(chunk, offset, (int) recordLength)) {
+                return -1;
+            }
+            if (length != PADDING) {
+                return position;
+            }
+            position += rest;
+        }
+    }
+
+    /**
+     * Returns CRC32C of the record without its first field.
+     */
+    private int checksum(ByteBuffer chunk, int offset, int length) {
+        crc.reset();
+        crc.update(chunk.slice(offset + Integer.BYTES,
+                length - Integer.BYTES));
+        return (int) crc.getValue();
+    }
+
+    private K decodeKey(long location) {
+        ByteBuffer chunk = chunkOf(location);
+        int offset = MappedFile.offset(location & POSITION_MASK);
+        return keyCodec.decode(chunk.slice(offset + RECORD_HEADER_SIZE,
+                chunk.getInt(offset + KEY_LENGTH_OFFSET)));
+    }
+
+    private V decodeValue(long location) {
+        ByteBuffer chunk = chunkOf(location);
+        int offset = MappedFile.offset(location & POSITION_MASK);
+        int valueOffset = offset + RECORD_HEADER_SIZE
+                + chunk.getInt(offset + KEY_LENGTH_OFFSET);
+        int valueLength = chunk.getInt(offset + VALUE_LENGTH_OFFSET);
+        return valueCodec.decode(chunk.slice(valueOffset, valueLength));
+    }
+
+    private int recordLength(long location) {
+        ByteBuffer chunk = chunkOf(location);
+        int offset = MappedFile.offset(location & POSITION_MASK);
+        return RECORD_HEADER_SIZE + chunk.getInt(offset + KEY_LENGTH_OFFSET)
+                + Math.max(chunk.getInt(offset + VALUE_LENGTH_OFFSET), 0);
+    }
+
+    private void addGarbage(long location) {
+        garbageBytes[(int) (location >>> PARITY_SHIFT)]
+                += recordLength(location);
+    }
+
+    private ByteBuffer chunkOf(long location) {
+        return logs[(int) (location >>> PARITY_SHIFT)]
+                .chunk(location & POSITION_MASK);
+    }
+
+    private Path logPath(int parity) {
+        return directory.resolve(DATA_FILE_PREFIX + parity);
+    }
+
+    private static long location(int parity, long position) {
+        return ((long) parity << PARITY_SHIFT) | position;
+    }
+
+    private static int parity(long logGeneration) {
+        return (int) (logGeneration & 1);
+    }
+
+    private static long chunkEnd(long position) {
+        long mask = MappedFile.CHUNK_SIZE - 1;
+        return (position + mask) & ~mask;
+    }
+
+    // index
+
+    private MappedFile createIndex(Path indexPath, int newCapacity) {
+        MappedFile newIndex = new MappedFile(indexPath);
+        newIndex.map(INDEX_HEADER_SIZE + ((long) newCapacity << SLOT_SHIFT));
+        setCapacity(newCapacity);
+        writeHeader(newIndex, DIRTY);
+        return newIndex;
+    }
+
+    private void writeHeader(MappedFile indexFile, int state) {
+        ByteBuffer header = indexFile.chunk(0);
+        header.putLong(0, INDEX_MAGIC);
+        header.putInt(VERSION_OFFSET, VERSION);
+        header.putInt(STATE_OFFSET, state);
+        header.putInt(CAPACITY_OFFSET, capacity);
+        header.putInt(SIZE_OFFSET, size);
+        header.putLong(GENERATION_OFFSET, generation);
+        header.putLong(DATA_END_OFFSET, dataEnd);
+        header.putLong(GARBAGE_OFFSET, garbageBytes[parity(generation)]);
+    }
+
+    private void markDirty() {
+        if (!dirty) {
+            index.chunk(0).putInt(STATE_OFFSET, DIRTY);
+            index.force(INDEX_HEADER_SIZE);
+            dirty = true;
+        }
+    }
+
+    private void setCapacity(int newCapacity) {
+        capacity = newCapacity;
+        mask = newCapacity - 1;
+        threshold = (int) (LOAD_FACTOR * newCapacity);
+    }
+
+    private int find(int hash, ByteBuffer key, int keyOffset, int length) {
+        int slot = hash & mask;
+        while (true) {
+            long location = locationAt(slot);
+            if (location == 0) {
+                return -1;
+            }
+            if (hashAt(slot) == hash
+                    && keyEquals(location, key, keyOffset, length)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private boolean keyEquals(long location, ByteBuffer key, int keyOffset,
+            int length) {
+
+        ByteBuffer chunk = chunkOf(location);
+        int offset = MappedFile.offset(location & POSITION_MASK);
+        return chunk.getInt(offset + KEY_LENGTH_OFFSET) == length
+                && ByteHashing.rangeEquals(chunk, offset + RECORD_HEADER_SIZE,
+                        key, keyOffset, length);
+    }
+
+    /**
+     * Inserts the location of an absent key growing the index if needed.
+     */
+    private void insert(long location, int hash) {
+        if (size >= threshold) {
+            resize();
+        }
+        int slot = hash & mask;
+        while (locationAt(slot) != 0) {
+            slot = (slot + 1) & mask;
+        }
+        setSlot(slot, location, hash);
+        size++;
+    }
+
+    /**
+     * Frees the slot shifting the following ones back as
+     * {@link OffHeapHashMap#remove} does.
+     */
+    private void delete(int slot) {
+        int free = slot;
+        int next = (slot + 1) & mask;
+        while (locationAt(next) != 0) {
+            int home = hashAt(next) & mask;
+            if (((next - home) & mask) >= ((next - free) & mask)) {
+                setSlot(free, locationAt(next), hashAt(next));
+                free = next;
+            }
+            next = (next + 1) & mask;
+        }
+        setSlot(free, 0, 0);
+        size--;
+    }
+
+    /**
+     * Writes the doubled index to a temporary file and moves it over the
+     * index, so a crash leaves one of the two.
+     */
+    private void resize() {
+        if (capacity == MAX_CAPACITY) {
+            throw new IllegalStateException("Max capacity is reached");
+        }
+        MappedFile prevIndex = index;
+        int prevCapacity = capacity;
+        index = createIndex(directory.resolve(INDEX_TMP_FILE), capacity << 1);
+        for (int i = 0; i < prevCapacity; i++) {
+            long position = slotPosition(i);
+            ByteBuffer chunk = prevIndex.chunk(position);
+            int offset = MappedFile.offset(position);
+            long location = chunk.getLong(offset);
+            if (location != 0) {
+                int hash = chunk.getInt(offset + HASH_OFFSET);
+                int slot = hash & mask;
+                while (locationAt(slot) != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                setSlot(slot, location, hash);
+            }
+        }
+        index.force();
+        try {
+            Files.move(directory.resolve(INDEX_TMP_FILE),
+                    directory.resolve(INDEX_FILE),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException exc) {
+            throw new UncheckedIOException(exc);
+        }
+        prevIndex.close();
+    }
+
+    private static long slotPosition(int slot) {
+        return INDEX_HEADER_SIZE + ((long) slot << SLOT_SHIFT);
+    }
+
+    private long locationAt(int slot) {
+        long position = slotPosition(slot);
+        return index.chunk(position).getLong(MappedFile.offset(position));
+    }
+
+    private int hashAt(int slot) {
+        long position = slotPosition(slot);
+        return index.chunk(position)
+                .getInt(MappedFile.offset(position) + HASH_OFFSET);
+    }
+
+    private void setSlot(int slot, long location, int hash) {
+        long position = slotPosition(slot);
+        ByteBuffer chunk = index.chunk(position);
+        int offset = MappedFile.offset(position);
+        chunk.putLong(offset, location);
+        chunk.putInt(offset + HASH_OFFSET, hash);
+    }
+
+    private static int capacityFor(int expectedSize) {
+        int newCapacity = DEFAULT_CAPACITY;
+        while (newCapacity < MAX_CAPACITY
+                && expectedSize >= LOAD_FACTOR * newCapacity) {
+            newCapacity <<= 1;
+        }
+        return newCapacity;
+    }
+
+    // compaction
+
+    private void compactIfNeeded() {
+        long garbage = garbageBytes[parity(generation)];
+        if (compaction != null || compactionFailed
+                || garbage < MIN_COMPACTION_BYTES
+                || garbage < MAX_GARBAGE_RATIO * dataEnd) {
+            return;
+        }
+        Compaction started = new Compaction();
+        compactor = new Thread(() -> runCompaction(started),
+                "persistent-hash-map-compaction");
+        compactor.setDaemon(true);
+        compactor.start();
+    }
+
+    private void runCompaction(Compaction started) {
+        try {
+            while (true) {
+                synchronized (this) {
+                    if (closed || started.step()) {
+                        return;
+                    }
+                }
+            }
+        } catch (RuntimeException exc) {
+            synchronized (this) {
+                compactionFailed = true;
+                compaction = null;
+                compactor = null;
+            }
+            throw exc;
+        }
+    }
+
+    private static void join(Thread thread) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                thread.join();
+                break;
+            } catch (InterruptedException exc) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Copying of live records from the current log to the log of the next
+     * generation; every step runs under the monitor of the map.
+     */
+    private final class Compaction {
+
+        final int sourceParity = parity(generation);
+        final MappedFile source = logs[sourceParity];
+        final long targetGeneration = generation + 1;
+        final int targetParity = parity(targetGeneration);
+        final MappedFile target;
+
+        /**
+         * Tombstones before the end are dropped, since the records they
+         * remove are not copied. Later ones may remove records which are
+         * already copied, so they are copied too.
+         */
+        final long initialEnd = dataEnd;
+        long position = DATA_HEADER_SIZE;
+        long targetEnd = DATA_HEADER_SIZE;
+
+        Compaction() {
+            markDirty();
+            target = createLog(targetGeneration);
+            logs[targetParity] = target;
+            garbageBytes[targetParity] = 0;
+            compaction = this;
+        }
+
+        /**
+         * Copies the next batch and returns true when the compaction is
+         * finished.
+         */
+        boolean step() {
+            for (int i = 0; i < COMPACTION_BATCH && position < dataEnd; i++) {
+                long record = seekRecord(source, position, dataEnd);
+                if (record < 0) {
+                    throw new IllegalStateException("Torn record at "
+                            + position + " of " + source.path());
+                }
+                position = record + move(record);
+            }
+            if (position < dataEnd) {
+                return false;
+            }
+            finish();
+            return true;
+        }
+
+        /**
+         * Copies the record if the index points to it and returns its length.
+         */
+        private int move(long record) {
+            ByteBuffer chunk = source.chunk(record);
+            int offset = MappedFile.offset(record);
+            long location = location(sourceParity, record);
+            int length = recordLength(location);
+            if (chunk.getInt(offset + VALUE_LENGTH_OFFSET) == TOMBSTONE) {
+                if (record >= initialEnd) {
+                    addGarbage(copy(chunk, offset, length));
+                }
+                return length;
+            }
+            int hash = ByteHashing.hash(chunk, offset + RECORD_HEADER_SIZE,
+                    chunk.getInt(offset + KEY_LENGTH_OFFSET));
+            int slot = hash & mask;
+            while (true) {
+                long slotLocation = locationAt(slot);
+                if (slotLocation == 0) {
+                    return length;
+                }
+                if (slotLocation == location) {
+                    setSlot(slot, copy(chunk, offset, length), hash);
+                    return length;
+                }
+                slot = (slot + 1) & mask;
+            }
+        }
+
+        private long copy(ByteBuffer chunk, int offset, int length) {
+            long copy = reserve(target, targetEnd, length);
+            target.chunk(copy).put(MappedFile.offset(copy),
+                    chunk, offset, length);
+            targetEnd = copy + length;
+            return location(targetParity, copy);
+        }
+
+        /**
+         * Switches the map to the new log and deletes the old one. The new
+         * log is written to the storage before the index names it.
+         */
+        private void finish() {
+            target.force();
+            generation = targetGeneration;
+            dataEnd = targetEnd;
+            writeHeader(index, DIRTY);
+            index.force(INDEX_HEADER_SIZE);
+            logs[sourceParity] = null;
+            garbageBytes[sourceParity] = 0;
+            source.delete();
+            compaction = null;
+            compactor = null;
+        }
+    }
+
+    // scratch
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("Map is closed");
+        }
+    }
+
+    private void encodeKey(K key) {
+        encode(keyCodec, Objects.requireNonNull(key), 0);
+        keyLength = scratch.position();
+    }
+
+    /**
+     * Encodes the object into the scratch from the position, growing the
+     * scratch until the object fits.
+     */
+    private <T> void encode(Codec<T> codec, T object, int from) {
+        while (true) {
+            scratch.clear().position(from);
+            try {
+                codec.encode(object, scratch);
+                return;
+            } catch (BufferOverflowException exc) {
+                ByteBuffer larger
+                        = ByteBuffer.allocate(scratch.capacity() << 1);
+                larger.put(0, scratch, 0, from);
+                scratch = larger;
+            }
+        }
+    }
+
+    private int hash() {
+        return ByteHashing.hash(scratch, 0, keyLength);
+    }
+}
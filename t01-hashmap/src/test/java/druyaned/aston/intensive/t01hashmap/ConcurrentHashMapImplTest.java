@@ -0,0 +1,480 @@
+package druyaned.aston.intensive.t01hashmap;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Stress tests in the manner of {@link LockFreeHashMapTest}: several threads
+ * start an operation at once on a shared map, then the outcome is checked
+ * against the outcomes allowed by the sequential semantics. The maps start
+ * small, so the operations race with cooperative transfers of bins.
+ */
+public class ConcurrentHashMapImplTest {
+
+    private static final int THREADS = 4;
+    private static final int ROUNDS = 10;
+
+    private ExecutorService executor;
+
+    @BeforeEach
+    public void setUpExecutor() {
+        executor = Executors.newFixedThreadPool(THREADS);
+    }
+
+    @AfterEach
+    public void shutDownExecutor() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void sequentialOperations() {
+        ConcurrentHashMapImpl<Integer, Integer> map
+                = new ConcurrentHashMapImpl<>();
+        for (int i = 0; i < 10_000; i++) {
+            assertNull(map.put(i, i));
+        }
+        for (int i = 0; i < 10_000; i += 2) {
+            assertEquals(i, map.remove(i));
+        }
+        assertEquals(5_000, map.size());
+        for (int i = 0; i < 10_000; i++) {
+            assertEquals(i % 2 == 0 ? null : i, map.get(i));
+        }
+        assertEquals(1, map.put(1, -1));
+        assertEquals(-1, map.get(1));
+        assertNull(map.remove(0));
+        assertThrows(NullPointerException.class, () -> map.put(null, 0));
+        assertThrows(NullPointerException.class, () -> map.put(0, null));
+    }
+
+    @Test
+    public void disjointPutsAreAllVisible() throws Exception {
+        int perThread = 50_000;
+        for (int round = 0; round < ROUNDS; round++) {
+            ConcurrentHashMapImpl<Integer, Integer> map
+                    = new ConcurrentHashMapImpl<>();
+            runConcurrently(thread -> {
+                for (int i = 0; i < perThread; i++) {
+                    int key = i * THREADS + thread;
+                    assertNull(map.put(key, -key));
+                }
+            });
+            assertEquals(THREADS * perThread, map.size());
+            for (int key = 0; key < THREADS * perThread; key++) {
+                assertEquals(-key, map.get(key));
+            }
+            assertContents(map, THREADS * perThread);
+        }
+    }
+
+    /**
+     * Keys of all threads share a few long bins, so every update locks a bin
+     * which other threads update too. Each thread puts its keys and removes
+     * every other one; the survivors must be exactly the odd keys.
+     */
+    @Test
+    public void collidingUpdatesOfSharedBins() throws Exception {
+        int perThread = 2_000;
+        for (int round = 0; round < ROUNDS; round++) {
+            ConcurrentHashMapImpl<CollidingKey, Integer> map
+                    = new ConcurrentHashMapImpl<>();
+            runConcurrently(thread -> {
+                for (int i = 0; i < perThread; i++) {
+                    int id = i * THREADS + thread;
+                    assertNull(map.put(new CollidingKey(id), id));
+                    if (i % 2 == 1) {
+                        CollidingKey prev = new CollidingKey(id - THREADS);
+                        assertEquals(id - THREADS, map.remove(prev));
+                    }
+                }
+            });
+            assertEquals(THREADS * perThread / 2, map.size());
+            for (int id = 0; id < THREADS * perThread; id++) {
+                Integer expected = (id / THREADS) % 2 == 1 ? id : null;
+                assertEquals(expected, map.get(new CollidingKey(id)));
+            }
+        }
+    }
+
+    /**
+     * Each thread puts its own value under every shared key. The previous
+     * values returned for a key must form one chain: null is returned once,
+     * every value but the final one is returned exactly once.
+     */
+    @Test
+    public void racingPutsReturnEachPreviousValueOnce() throws Exception {
+        int keys = 20_000;
+        for (int round = 0; round < ROUNDS; round++) {
+            ConcurrentHashMapImpl<Integer, Integer> map
+                    = new ConcurrentHashMapImpl<>();
+            List<Integer>[] returned = newLists();
+            runConcurrently(thread -> {
+                for (int key = 0; key < keys; key++) {
+                    Integer prev = map.put(key, key * THREADS + thread);
+                    returned[thread].add(prev == null ? -1 : prev);
+                }
+            });
+            for (int key = 0; key < keys; key++) {
+                Set<Integer> seen = new HashSet<>();
+                for (List<Integer> list : returned) {
+                    assertTrue(seen.add(list.get(key)), "duplicate previous");
+                }
+                Integer last = map.get(key);
+                assertTrue(seen.contains(-1));
+                assertFalse(seen.contains(last), "final value returned");
+                for (int thread = 0; thread < THREADS; thread++) {
+                    int value = key * THREADS + thread;
+                    assertTrue(value == last || seen.contains(value));
+                }
+            }
+            assertEquals(keys, map.size());
+        }
+    }
+
+    /**
+     * All threads remove the same keys; the value of a key must be returned
+     * by exactly one of them.
+     */
+    @Test
+    public void racingRemovesReturnValueOnce() throws Exception {
+        int keys = 50_000;
+        for (int round = 0; round < ROUNDS; round++) {
+            ConcurrentHashMapImpl<Integer, Integer> map
+                    = new ConcurrentHashMapImpl<>();
+            for (int key = 0; key < keys; key++) {
+                map.put(key, key);
+            }
+            int[][] removed = new int[THREADS][keys];
+            runConcurrently(thread -> {
+                for (int key = 0; key < keys; key++) {
+                    removed[thread][key] = map.remove(key) == null ? 0 : 1;
+                }
+            });
+            for (int key = 0; key < keys; key++) {
+                int count = 0;
+                for (int[] byThread : removed) {
+                    count += byThread[key];
+                }
+                assertEquals(1, count, "removals of " + key);
+            }
+            assertEquals(0, map.size());
+            assertFalse(map.entryIterator().hasNext());
+        }
+    }
+
+    /**
+     * Two threads insert many keys and remove some of their own, which forces
+     * transfers of the table; the other threads read stable keys meanwhile
+     * and must always find them with their own values. The final contents
+     * are checked at the end.
+     */
+    @Test
+    public void readersSeeStableKeysDuringResize() throws Exception {
+        int stable = 1_000;
+        int added = 100_000;
+        for (int round = 0; round < ROUNDS; round++) {
+            ConcurrentHashMapImpl<Integer, Integer> map
+                    = new ConcurrentHashMapImpl<>();
+            for (int key = 0; key < stable; key++) {
+                map.put(key, -key);
+            }
+            AtomicInteger writing = new AtomicInteger(2);
+            runConcurrently(thread -> {
+                if (thread < 2) {
+                    for (int i = thread; i < added; i += 2) {
+                        map.put(stable + i, i);
+                        if (i >= 2 && i % 3 == 0) {
+                            assertEquals(i - 2, map.remove(stable + i - 2));
+                        }
+                    }
+                    writing.decrementAndGet();
+                    return;
+                }
+                while (writing.get() > 0) {
+                    for (int key = 0; key < stable; key++) {
+                        assertEquals(-key, map.get(key), "lost " + key);
+                    }
+                }
+            });
+            int size = stable;
+            for (int i = 0; i < added; i++) {
+                boolean removed = i + 2 < added && (i + 2) % 3 == 0;
+                assertEquals(removed ? null : i, map.get(stable + i));
+                size += removed ? 0 : 1;
+            }
+            assertEquals(size, map.size());
+            assertContents(map, size);
+        }
+    }
+
+    /**
+     * Iterators running during transfers return each stable key exactly
+     * once.
+     */
+    @Test
+    public void iteratorSeesStableKeysOnce() throws Exception {
+        int stable = 5_000;
+        for (int round = 0; round < ROUNDS; round++) {
+            ConcurrentHashMapImpl<Integer, Integer> map
+                    = new ConcurrentHashMapImpl<>();
+            for (int key = 0; key < stable; key++) {
+                map.put(key, key);
+            }
+            AtomicBoolean done = new AtomicBoolean();
+            runConcurrently(thread -> {
+                if (thread == 0) {
+                    for (int i = 0; i < 200_000; i++) {
+                        map.put(stable + i, i);
+                        if (i % 3 == 0) {
+                            map.remove(stable + i / 2);
+                        }
+                    }
+                    done.set(true);
+                    return;
+                }
+                while (!done.get()) {
+                    Set<Integer> seen = new HashSet<>();
+                    Iterator<Map.Entry<Integer, Integer>> it
+                            = map.entryIterator();
+                    while (it.hasNext()) {
+                        assertTrue(seen.add(it.next().getKey()), "duplicate");
+                    }
+                    for (int key = 0; key < stable; key++) {
+                        assertTrue(seen.contains(key), "missed " + key);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * All threads increment shared counters by compute; no increment may be
+     * lost.
+     */
+    @Test
+    public void computeLosesNoIncrement() throws Exception {
+        int keys = 64;
+        int perThread = 40_000;
+        for (int round = 0; round < ROUNDS; round++) {
+            ConcurrentHashMapImpl<Integer, Integer> map
+                    = new ConcurrentHashMapImpl<>();
+            runConcurrently(thread -> {
+                for (int i = 0; i < perThread; i++) {
+                    map.compute(i % keys, (k, v) -> v == null ? 1 : v + 1);
+                }
+            });
+            assertCounters(map, keys, THREADS * perThread);
+        }
+    }
+
+    /**
+     * All threads increment shared counters by merge; no increment may be
+     * lost.
+     */
+    @Test
+    public void mergeLosesNoIncrement() throws Exception {
+        int keys = 64;
+        int perThread = 40_000;
+        for (int round = 0; round < ROUNDS; round++) {
+            ConcurrentHashMapImpl<Integer, Integer> map
+                    = new ConcurrentHashMapImpl<>();
+            runConcurrently(thread -> {
+                for (int i = 0; i < perThread; i++) {
+                    map.merge(i % keys, 1, Integer::sum);
+                }
+            });
+            assertCounters(map, keys, THREADS * perThread);
+        }
+    }
+
+    /**
+     * All threads put their own value under the same keys if absent; exactly
+     * one of them wins a key, the others get the value of the winner.
+     */
+    @Test
+    public void putIfAbsentHasOneWinner() throws Exception {
+        int keys = 20_000;
+        for (int round = 0; round < ROUNDS; round++) {
+            ConcurrentHashMapImpl<Integer, Integer> map
+                    = new ConcurrentHashMapImpl<>();
+            List<Integer>[] returned = newLists();
+            runConcurrently(thread -> {
+                for (int key = 0; key < keys; key++) {
+                    Integer prev = map.putIfAbsent(key, key * THREADS + thread);
+                    returned[thread].add(prev);
+                }
+            });
+            for (int key = 0; key < keys; key++) {
+                Integer winner = map.get(key);
+                int winners = 0;
+                for (List<Integer> list : returned) {
+                    if (list.get(key) == null) {
+                        winners++;
+                    } else {
+                        assertEquals(winner, list.get(key));
+                    }
+                }
+                assertEquals(1, winners, "winners of " + key);
+            }
+            assertEquals(keys, map.size());
+        }
+    }
+
+    /**
+     * All threads compute values of the same keys if absent; the function is
+     * applied once per key and all threads must get the value which stays in
+     * the map.
+     */
+    @Test
+    public void computeIfAbsentReturnsTheMappedValue() throws Exception {
+        int keys = 20_000;
+        for (int round = 0; round < ROUNDS; round++) {
+            ConcurrentHashMapImpl<Integer, Integer> map
+                    = new ConcurrentHashMapImpl<>();
+            List<Integer>[] returned = newLists();
+            AtomicInteger calls = new AtomicInteger();
+            runConcurrently(thread -> {
+                for (int key = 0; key < keys; key++) {
+                    returned[thread].add(map.computeIfAbsent(key, k -> {
+                        calls.incrementAndGet();
+                        return k * THREADS + thread;
+                    }));
+                }
+            });
+            assertEquals(keys, calls.get());
+            for (int key = 0; key < keys; key++) {
+                Integer value = map.get(key);
+                assertEquals(key, value / THREADS);
+                for (List<Integer> list : returned) {
+                    assertEquals(value, list.get(key));
+                }
+            }
+            assertEquals(keys, map.size());
+        }
+    }
+
+    /**
+     * Every key starts with the number of threads and each thread decrements
+     * it by computeIfPresent, the last one removes it: the results for a key
+     * must be distinct and exactly one of them null.
+     */
+    @Test
+    public void computeIfPresentDecrementsOnce() throws Exception {
+        int keys = 20_000;
+        for (int round = 0; round < ROUNDS; round++) {
+            ConcurrentHashMapImpl<Integer, Integer> map
+                    = new ConcurrentHashMapImpl<>();
+            for (int key = 0; key < keys; key++) {
+                map.put(key, THREADS);
+            }
+            List<Integer>[] returned = newLists();
+            runConcurrently(thread -> {
+                for (int key = 0; key < keys; key++) {
+                    returned[thread].add(map.computeIfPresent(
+                            key, (k, v) -> v == 1 ? null : v - 1));
+                }
+            });
+            for (int key = 0; key < keys; key++) {
+                Set<Integer> seen = new HashSet<>();
+                for (List<Integer> list : returned) {
+                    Integer value = list.get(key);
+                    assertTrue(seen.add(value == null ? 0 : value),
+                            "duplicate result for " + key);
+                }
+                assertNull(map.get(key));
+            }
+            assertEquals(0, map.size());
+        }
+    }
+
+    /**
+     * Key whose hash is shared by eight consecutive ids.
+     */
+    private record CollidingKey(int id) {
+
+        @Override
+        public int hashCode() {
+            return id >>> 3;
+        }
+    }
+
+    private interface ThreadBody {
+
+        void run(int thread) throws Exception;
+    }
+
+    /**
+     * Runs the body in all threads, which start at once, and rethrows the
+     * first failure.
+     */
+    private void runConcurrently(ThreadBody body) throws Exception {
+        CyclicBarrier start = new CyclicBarrier(THREADS);
+        List<Future<Void>> futures = new ArrayList<>();
+        for (int thread = 0; thread < THREADS; thread++) {
+            int id = thread;
+            Callable<Void> task = () -> {
+                start.await();
+                body.run(id);
+                return null;
+            };
+            futures.add(executor.submit(task));
+        }
+        for (Future<Void> future : futures) {
+            future.get();
+        }
+    }
+
+    private static void assertCounters(HashMapTask<Integer, Integer> map,
+            int keys, int total) {
+
+        assertEquals(keys, map.size());
+        for (int key = 0; key < keys; key++) {
+            assertEquals(total / keys, map.get(key), "counter " + key);
+        }
+    }
+
+    /**
+     * Checks that the iterator returns the given number of distinct entries
+     * and every entry is the mapping of its key.
+     */
+    private static void assertContents(
+            ConcurrentHashMapImpl<Integer, Integer> map, int size) {
+
+        Set<Integer> seen = new HashSet<>();
+        Iterator<Map.Entry<Integer, Integer>> it = map.entryIterator();
+        while (it.hasNext()) {
+            Map.Entry<Integer, Integer> entry = it.next();
+            assertTrue(seen.add(entry.getKey()), "duplicate");
+            assertEquals(map.get(entry.getKey()), entry.getValue());
+        }
+        assertEquals(size, seen.size());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Integer>[] newLists() {
+        List<Integer>[] lists = new List[THREADS];
+        for (int i = 0; i < THREADS; i++) {
+            lists[i] = new ArrayList<>();
+        }
+        return lists;
+    }
+}
@@ -0,0 +1,226 @@
+package druyaned.aston.intensive.t01hashmap;
+
+import druyaned.aston.intensive.t01hashmap.HashMapImpl.TableScheme;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests of the incremental rehash: put, get and remove are interleaved with
+ * a small rehash step while a migration is half done, and every result is
+ * checked against {@link HashMap}. The buckets of the old table which are not
+ * moved yet are counted by {@link HashMapImpl#stats()}, which walks both
+ * tables without migrating.
+ */
+public class HashMapImplIncrementalRehashTest {
+
+    private static final int[] STEPS = {1, 2, 3};
+
+    /**
+     * Grows the map rehash by rehash. Right after a rehash starts, enough
+     * mixed operations are done to move a half of the old table; then every
+     * key is checked with both tables in use, and iteration, which finishes
+     * the migration, must return the same entries.
+     */
+    @Test
+    public void operationsDuringHalfDoneMigration() {
+        for (TableScheme scheme : TableScheme.values()) {
+            for (int step : STEPS) {
+                HashMapImpl<Integer, Integer> map = new HashMapImpl<>(scheme);
+                map.setIncrementalRehash(step);
+                Map<Integer, Integer> expected = new HashMap<>();
+                List<Integer> keys = new ArrayList<>();
+                Random random = new Random(step);
+                int nextKey = 0;
+                while (map.capacity() < 20_000) {
+                    int oldCapacity = map.capacity();
+                    while (map.capacity() == oldCapacity) {
+                        int key = nextKey++ * 7;
+                        keys.add(key);
+                        assertNull(map.put(key, key));
+                        expected.put(key, key);
+                    }
+                    assertEquals(oldCapacity, pendingBuckets(map));
+
+                    int operations = oldCapacity / step / 2;
+                    for (int i = 0; i < operations; i++) {
+                        int key = keys.get(random.nextInt(keys.size()));
+                        switch (random.nextInt(4)) {
+                            case 0 -> assertEquals(expected.get(key),
+                                    map.get(key));
+                            case 1 -> assertEquals(expected.remove(key),
+                                    map.remove(key));
+                            case 2 -> assertEquals(expected.put(key, -i),
+                                    map.put(key, -i));
+                            default -> {
+                                key = nextKey++ * 7;
+                                keys.add(key);
+                                assertNull(map.put(key, key));
+                                expected.put(key, key);
+                            }
+                        }
+                    }
+                    int pending = oldCapacity - operations * step;
+                    assertEquals(pending, pendingBuckets(map));
+                    assertTrue(pending > 0 && pending < oldCapacity);
+
+                    assertEquals(expected.size(), map.size());
+                    for (int key : keys) {
+                        assertEquals(expected.get(key), map.get(key));
+                        assertNull(map.get(key + 1));
+                    }
+                    assertIteration(expected, map);
+                    assertEquals(0, pendingBuckets(map));
+                }
+            }
+        }
+    }
+
+    /**
+     * Random operations over a fixed range of keys grow the map, then remove
+     * most of it until the table shrinks, so rehashes and shrinks may meet a
+     * pending migration. Iteration is checked from time to time during a
+     * migration.
+     */
+    @Test
+    public void randomOperationsAgainstHashMap() {
+        for (TableScheme scheme : TableScheme.values()) {
+            for (int step : STEPS) {
+                HashMapImpl<Integer, Integer> map = new HashMapImpl<>(scheme);
+                map.setIncrementalRehash(step);
+                Map<Integer, Integer> expected = new HashMap<>();
+                Random random = new Random(scheme.ordinal() * 10 + step);
+                int migrating = 0;
+                int iterated = 0;
+                int maxCapacity = 0;
+                for (int i = 0; i < 200_000; i++) {
+                    boolean growing = i < 100_000;
+                    int key = random.nextInt(30_000);
+                    int op = random.nextInt(10);
+                    if (op < (growing ? 5 : 1)) {
+                        assertEquals(expected.put(key, i), map.put(key, i));
+                    } else if (op < (growing ? 7 : 8)) {
+                        assertEquals(expected.remove(key), map.remove(key));
+                    } else {
+                        assertEquals(expected.get(key), map.get(key));
+                    }
+                    assertEquals(expected.size(), map.size());
+                    maxCapacity = Math.max(maxCapacity, map.capacity());
+                    if (i % 97 == 0 && pendingBuckets(map) > 0) {
+                        migrating++;
+                        if (migrating % 10 == 0) {
+                            assertIteration(expected, map);
+                            iterated++;
+                        }
+                    }
+                }
+                assertTrue(migrating > 0, "never sampled a migration");
+                assertTrue(iterated > 0, "never iterated a migration");
+                assertTrue(map.capacity() < maxCapacity, "never shrank");
+                assertIteration(expected, map);
+            }
+        }
+    }
+
+    /**
+     * With a Bloom filter in front of the table, a rehash keeps the old
+     * filter instead of rebuilding it, and the filter of the new table
+     * replaces it when the migration finishes. The filter must never reject
+     * a present key, also while the migration is half done.
+     */
+    @Test
+    public void bloomFilterFollowsMigration() {
+        for (TableScheme scheme : TableScheme.values()) {
+            for (int step : STEPS) {
+                HashMapImpl<Integer, Integer> map = new HashMapImpl<>(scheme);
+                map.setIncrementalRehash(step);
+                map.setBloomFilter(12);
+                Map<Integer, Integer> expected = new HashMap<>();
+                Random random = new Random(step);
+                int nextKey = 0;
+                while (map.capacity() < 20_000) {
+                    int oldCapacity = map.capacity();
+                    long oldBytes = map.bloomFilterBytes();
+                    while (map.capacity() == oldCapacity) {
+                        int key = nextKey++ * 2;
+                        map.put(key, key);
+                        expected.put(key, key);
+                    }
+                    assertEquals(oldBytes, map.bloomFilterBytes());
+
+                    for (int i = 0; i < oldCapacity / step / 2; i++) {
+                        int key = random.nextInt(nextKey) * 2;
+                        if (random.nextInt(4) == 0) {
+                            assertEquals(expected.remove(key),
+                                    map.remove(key));
+                        } else {
+                            key = nextKey++ * 2;
+                            map.put(key, key);
+                            expected.put(key, key);
+                        }
+                    }
+                    assertTrue(pendingBuckets(map) > 0);
+                    assertEquals(oldBytes, map.bloomFilterBytes());
+                    assertFilter(expected, map, nextKey);
+
+                    assertIteration(expected, map);
+                    assertTrue(map.bloomFilterBytes() > oldBytes);
+                    assertFilter(expected, map, nextKey);
+                }
+                int falsePositives = 0;
+                for (int key = 1; key < 2 * nextKey; key += 2) {
+                    falsePositives += map.mightContainKey(key) ? 1 : 0;
+                }
+                assertTrue(falsePositives < nextKey / 20,
+                        "falsePositives=" + falsePositives);
+            }
+        }
+    }
+
+    /**
+     * Checks that every present key passes the filter and that get answers
+     * all keys, present or not, as expected.
+     */
+    private static void assertFilter(Map<Integer, Integer> expected,
+            HashMapImpl<Integer, Integer> map, int keyCount) {
+
+        for (int key : expected.keySet()) {
+            assertTrue(map.mightContainKey(key), "rejected " + key);
+        }
+        for (int key = 0; key < 2 * keyCount; key++) {
+            assertEquals(expected.get(key), map.get(key));
+        }
+    }
+
+    /**
+     * Returns the number of buckets of the old table which are not moved
+     * yet.
+     */
+    private static int pendingBuckets(HashMapImpl<?, ?> map) {
+        long buckets = 0;
+        for (long count : map.stats().getChainLengthHistogram()) {
+            buckets += count;
+        }
+        return (int) (buckets - map.capacity());
+    }
+
+    private static void assertIteration(Map<Integer, Integer> expected,
+            HashMapImpl<Integer, Integer> map) {
+
+        Map<Integer, Integer> actual = new HashMap<>();
+        Iterator<Map.Entry<Integer, Integer>> it = map.entryIterator();
+        while (it.hasNext()) {
+            Map.Entry<Integer, Integer> entry = it.next();
+            assertNull(actual.put(entry.getKey(), entry.getValue()),
+                    "duplicate " + entry.getKey());
+        }
+        assertEquals(expected, actual);
+    }
+}
@@ -0,0 +1,176 @@
+package druyaned.aston.intensive.t01hashmap;
+
+import druyaned.aston.intensive.t01hashmap.HashMapImpl.TableScheme;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests of treeified buckets: keys of one hash code, which are not
+ * {@link Comparable} and come from two classes, are put into one bucket past
+ * {@link HashMapImpl#TREEIFY_THRESHOLD} and removed below
+ * {@link HashMapImpl#UNTREEIFY_THRESHOLD}. After every step the shape of the
+ * bucket, get and remove by equal keys of another identity, remove of
+ * absent keys and iteration are checked against {@link HashMap}.
+ */
+public class HashMapImplTreeBinTest {
+
+    private static final int HASH = 42;
+    private static final int COLLIDING = 24;
+
+    private record Left(int id) {
+
+        @Override
+        public int hashCode() {
+            return HASH;
+        }
+    }
+
+    private record Right(int id) {
+
+        @Override
+        public int hashCode() {
+            return HASH;
+        }
+    }
+
+    @Test
+    public void bucketIsTreeifiedAndUntreeified() {
+        for (TableScheme scheme : TableScheme.values()) {
+            HashMapImpl<Object, Integer> map = new HashMapImpl<>(
+                    scheme, 1024, HashMapImpl.LOAD_FACTOR);
+            Map<Object, Integer> expected = new HashMap<>();
+            List<Object> keys = collidingKeys();
+
+            for (int n = 1; n <= COLLIDING; n++) {
+                Object key = keys.get(n - 1);
+                assertNull(map.put(key, n));
+                expected.put(key, n);
+                assertBucket(map, n > HashMapImpl.TREEIFY_THRESHOLD);
+                assertContents(expected, map, keys);
+            }
+
+            for (int i = 0; i < COLLIDING; i += 3) {
+                Object key = keys.get(i);
+                assertEquals(expected.put(key, -i), map.put(key, -i));
+            }
+            assertContents(expected, map, keys);
+
+            int n = COLLIDING;
+            for (int i : removalOrder()) {
+                Object key = copy(keys.get(i));
+                assertEquals(expected.remove(key), map.remove(key));
+                assertNull(map.remove(key));
+                n--;
+                assertBucket(map, n > HashMapImpl.UNTREEIFY_THRESHOLD);
+                assertContents(expected, map, keys);
+            }
+            assertEquals(0, map.size());
+        }
+    }
+
+    /**
+     * The tree lives among ordinary buckets of a map which starts small, so
+     * it is split by rehashes while growing and moved by shrinks while
+     * removing.
+     */
+    @Test
+    public void treeSurvivesRehashes() {
+        for (TableScheme scheme : TableScheme.values()) {
+            HashMapImpl<Object, Integer> map = new HashMapImpl<>(scheme);
+            Map<Object, Integer> expected = new HashMap<>();
+            List<Object> keys = collidingKeys();
+            for (int i = 0; i < 2_000; i++) {
+                if (i % 50 == 0 && i / 50 < COLLIDING) {
+                    Object key = keys.get(i / 50);
+                    map.put(key, i);
+                    expected.put(key, i);
+                }
+                map.put(i, i);
+                expected.put(i, i);
+            }
+            assertEquals(1, map.stats().getTreeifiedBuckets());
+            assertContents(expected, map, keys);
+            for (int i = 0; i < 2_000; i++) {
+                assertEquals(i, map.remove(i));
+                expected.remove(i);
+                if (i % 100 == 0) {
+                    Object key = copy(keys.get(i / 100));
+                    assertEquals(expected.remove(key), map.remove(key));
+                    assertContents(expected, map, keys);
+                }
+            }
+            assertContents(expected, map, keys);
+        }
+    }
+
+    /**
+     * Keys alternate between the two classes.
+     */
+    private static List<Object> collidingKeys() {
+        List<Object> keys = new ArrayList<>();
+        for (int i = 0; i < COLLIDING; i++) {
+            keys.add(i % 2 == 0 ? new Left(i) : new Right(i));
+        }
+        return keys;
+    }
+
+    /**
+     * Returns an equal key of another identity, so that lookups can not rely
+     * on the order of insertion in the tree.
+     */
+    private static Object copy(Object key) {
+        return key instanceof Left left
+                ? new Left(left.id())
+                : new Right(((Right) key).id());
+    }
+
+    /**
+     * Returns the indexes of the keys in a fixed shuffled order, so that the
+     * tree loses nodes from both sides and the middle.
+     */
+    private static List<Integer> removalOrder() {
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < COLLIDING; i++) {
+            order.add(i);
+        }
+        Collections.shuffle(order, new Random(COLLIDING));
+        return order;
+    }
+
+    private static void assertBucket(HashMapImpl<Object, Integer> map,
+            boolean treeified) {
+
+        assertEquals(treeified ? 1 : 0, map.stats().getTreeifiedBuckets());
+    }
+
+    /**
+     * Checks the size, get of every colliding key, present or not, and that
+     * iteration returns exactly the expected entries.
+     */
+    private static void assertContents(Map<Object, Integer> expected,
+            HashMapImpl<Object, Integer> map, List<Object> keys) {
+
+        assertEquals(expected.size(), map.size());
+        for (Object key : keys) {
+            assertEquals(expected.get(key), map.get(copy(key)), "get " + key);
+        }
+        assertNull(map.get(new Left(-1)));
+        assertNull(map.get(new Right(-1)));
+        Map<Object, Integer> actual = new HashMap<>();
+        Iterator<Map.Entry<Object, Integer>> it = map.entryIterator();
+        while (it.hasNext()) {
+            Map.Entry<Object, Integer> entry = it.next();
+            assertNull(actual.put(entry.getKey(), entry.getValue()),
+                    "duplicate " + entry.getKey());
+        }
+        assertEquals(expected, actual);
+    }
+}
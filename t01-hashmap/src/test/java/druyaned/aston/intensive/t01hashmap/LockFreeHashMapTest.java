@@ -0,0 +1,400 @@
+package druyaned.aston.intensive.t01hashmap;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Stress tests in the manner of jcstress: several threads start an operation
+ * at once on a shared map, then the outcome is checked against the outcomes
+ * allowed by the sequential semantics. The maps start small, so the
+ * operations race with cooperative resizes.
+ */
+public class LockFreeHashMapTest {
+
+    private static final int THREADS = 4;
+    private static final int ROUNDS = 10;
+
+    private ExecutorService executor;
+
+    @BeforeEach
+    public void setUpExecutor() {
+        executor = Executors.newFixedThreadPool(THREADS);
+    }
+
+    @AfterEach
+    public void shutDownExecutor() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void sequentialOperations() {
+        LockFreeHashMap<Integer, Integer> map = new LockFreeHashMap<>();
+        for (int i = 0; i < 10_000; i++) {
+            assertNull(map.put(i, i));
+        }
+        for (int i = 0; i < 10_000; i += 2) {
+            assertEquals(i, map.remove(i));
+        }
+        assertEquals(5_000, map.size());
+        for (int i = 0; i < 10_000; i++) {
+            assertEquals(i % 2 == 0 ? null : i, map.get(i));
+        }
+        assertEquals(1, map.put(1, -1));
+        assertEquals(-1, map.get(1));
+        assertNull(map.remove(0));
+        assertThrows(NullPointerException.class, () -> map.put(null, 0));
+        assertThrows(NullPointerException.class, () -> map.put(0, null));
+    }
+
+    @Test
+    public void disjointPutsAreAllVisible() throws Exception {
+        int perThread = 50_000;
+        for (int round = 0; round < ROUNDS; round++) {
+            LockFreeHashMap<Integer, Integer> map = new LockFreeHashMap<>();
+            runConcurrently(thread -> {
+                for (int i = 0; i < perThread; i++) {
+                    int key = i * THREADS + thread;
+                    assertNull(map.put(key, -key));
+                }
+            });
+            assertEquals(THREADS * perThread, map.size());
+            for (int key = 0; key < THREADS * perThread; key++) {
+                assertEquals(-key, map.get(key));
+            }
+        }
+    }
+
+    /**
+     * Each thread puts its own value under every shared key. The previous
+     * values returned for a key must form one chain: null is returned once,
+     * every value but the final one is returned exactly once.
+     */
+    @Test
+    public void racingPutsReturnEachPreviousValueOnce() throws Exception {
+        int keys = 20_000;
+        for (int round = 0; round < ROUNDS; round++) {
+            LockFreeHashMap<Integer, Integer> map = new LockFreeHashMap<>();
+            List<Integer>[] returned = newLists();
+            runConcurrently(thread -> {
+                for (int key = 0; key < keys; key++) {
+                    Integer prev = map.put(key, key * THREADS + thread);
+                    returned[thread].add(prev == null ? -1 : prev);
+                }
+            });
+            for (int key = 0; key < keys; key++) {
+                Set<Integer> seen = new HashSet<>();
+                for (List<Integer> list : returned) {
+                    assertTrue(seen.add(list.get(key)), "duplicate previous");
+                }
+                Integer last = map.get(key);
+                assertTrue(seen.contains(-1));
+                assertFalse(seen.contains(last), "final value returned");
+                for (int thread = 0; thread < THREADS; thread++) {
+                    int value = key * THREADS + thread;
+                    assertTrue(value == last || seen.contains(value));
+                }
+            }
+            assertEquals(keys, map.size());
+        }
+    }
+
+    /**
+     * All threads remove the same keys; the value of a key must be returned
+     * by exactly one of them.
+     */
+    @Test
+    public void racingRemovesReturnValueOnce() throws Exception {
+        int keys = 50_000;
+        for (int round = 0; round < ROUNDS; round++) {
+            LockFreeHashMap<Integer, Integer> map = new LockFreeHashMap<>();
+            for (int key = 0; key < keys; key++) {
+                map.put(key, key);
+            }
+            int[][] removed = new int[THREADS][keys];
+            runConcurrently(thread -> {
+                for (int key = 0; key < keys; key++) {
+                    removed[thread][key] = map.remove(key) == null ? 0 : 1;
+                }
+            });
+            for (int key = 0; key < keys; key++) {
+                int count = 0;
+                for (int[] byThread : removed) {
+                    count += byThread[key];
+                }
+                assertEquals(1, count, "removals of " + key);
+            }
+            assertEquals(0, map.size());
+        }
+    }
+
+    /**
+     * A writer increases the versions of a few keys while inserting many
+     * other keys, which forces resizes; readers must never see a version go
+     * back, a value of another key, or a stable key missing.
+     */
+    @Test
+    public void readersSeeMonotonicValuesDuringResize() throws Exception {
+        int hotKeys = 16;
+        for (int round = 0; round < ROUNDS; round++) {
+            LockFreeHashMap<Long, Long> map = new LockFreeHashMap<>();
+            for (long key = 0; key < hotKeys; key++) {
+                map.put(key, key << 32);
+            }
+            AtomicBoolean done = new AtomicBoolean();
+            runConcurrently(thread -> {
+                if (thread == 0) {
+                    for (long i = 0; i < 100_000; i++) {
+                        long key = i % hotKeys;
+                        map.put(key, key << 32 | i);
+                        map.put(hotKeys + i, i);
+                        if (i % 3 == 0) {
+                            map.remove(hotKeys + i / 2);
+                        }
+                    }
+                    done.set(true);
+                    return;
+                }
+                long[] lastSeen = new long[hotKeys];
+                while (!done.get()) {
+                    for (int key = 0; key < hotKeys; key++) {
+                        Long value = map.get((long) key);
+                        assertEquals(key, value >>> 32, "foreign value");
+                        long version = value & 0xffffffffL;
+                        assertTrue(version >= lastSeen[key], "went back");
+                        lastSeen[key] = version;
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Iterators running during resizes return each stable key exactly once.
+     */
+    @Test
+    public void iteratorSeesStableKeysOnce() throws Exception {
+        int stable = 5_000;
+        for (int round = 0; round < ROUNDS; round++) {
+            LockFreeHashMap<Integer, Integer> map = new LockFreeHashMap<>();
+            for (int key = 0; key < stable; key++) {
+                map.put(key, key);
+            }
+            AtomicBoolean done = new AtomicBoolean();
+            runConcurrently(thread -> {
+                if (thread == 0) {
+                    for (int i = 0; i < 200_000; i++) {
+                        map.put(stable + i, i);
+                        if (i % 3 == 0) {
+                            map.remove(stable + i / 2);
+                        }
+                    }
+                    done.set(true);
+                    return;
+                }
+                while (!done.get()) {
+                    Set<Integer> seen = new HashSet<>();
+                    Iterator<Map.Entry<Integer, Integer>> it
+                            = map.entryIterator();
+                    while (it.hasNext()) {
+                        assertTrue(seen.add(it.next().getKey()), "duplicate");
+                    }
+                    for (int key = 0; key < stable; key++) {
+                        assertTrue(seen.contains(key), "missed " + key);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * All threads increment shared counters by compute; no increment may be
+     * lost.
+     */
+    @Test
+    public void computeLosesNoIncrement() throws Exception {
+        int keys = 64;
+        int perThread = 40_000;
+        for (int round = 0; round < ROUNDS; round++) {
+            LockFreeHashMap<Integer, Integer> map = new LockFreeHashMap<>();
+            runConcurrently(thread -> {
+                for (int i = 0; i < perThread; i++) {
+                    map.compute(i % keys, (k, v) -> v == null ? 1 : v + 1);
+                }
+            });
+            assertCounters(map, keys, THREADS * perThread);
+        }
+    }
+
+    /**
+     * All threads increment shared counters by merge; no increment may be
+     * lost.
+     */
+    @Test
+    public void mergeLosesNoIncrement() throws Exception {
+        int keys = 64;
+        int perThread = 40_000;
+        for (int round = 0; round < ROUNDS; round++) {
+            LockFreeHashMap<Integer, Integer> map = new LockFreeHashMap<>();
+            runConcurrently(thread -> {
+                for (int i = 0; i < perThread; i++) {
+                    map.merge(i % keys, 1, Integer::sum);
+                }
+            });
+            assertCounters(map, keys, THREADS * perThread);
+        }
+    }
+
+    /**
+     * All threads put their own value under the same keys if absent; exactly
+     * one of them wins a key, the others get the value of the winner.
+     */
+    @Test
+    public void putIfAbsentHasOneWinner() throws Exception {
+        int keys = 20_000;
+        for (int round = 0; round < ROUNDS; round++) {
+            LockFreeHashMap<Integer, Integer> map = new LockFreeHashMap<>();
+            List<Integer>[] returned = newLists();
+            runConcurrently(thread -> {
+                for (int key = 0; key < keys; key++) {
+                    Integer prev = map.putIfAbsent(key, key * THREADS + thread);
+                    returned[thread].add(prev);
+                }
+            });
+            for (int key = 0; key < keys; key++) {
+                Integer winner = map.get(key);
+                int winners = 0;
+                for (List<Integer> list : returned) {
+                    if (list.get(key) == null) {
+                        winners++;
+                    } else {
+                        assertEquals(winner, list.get(key));
+                    }
+                }
+                assertEquals(1, winners, "winners of " + key);
+            }
+            assertEquals(keys, map.size());
+        }
+    }
+
+    /**
+     * All threads compute values of the same keys if absent; all of them
+     * must get the one value which stays in the map.
+     */
+    @Test
+    public void computeIfAbsentReturnsTheMappedValue() throws Exception {
+        int keys = 20_000;
+        for (int round = 0; round < ROUNDS; round++) {
+            LockFreeHashMap<Integer, Integer> map = new LockFreeHashMap<>();
+            List<Integer>[] returned = newLists();
+            runConcurrently(thread -> {
+                for (int key = 0; key < keys; key++) {
+                    returned[thread].add(map.computeIfAbsent(
+                            key, k -> k * THREADS + thread));
+                }
+            });
+            for (int key = 0; key < keys; key++) {
+                Integer value = map.get(key);
+                assertEquals(key, value / THREADS);
+                for (List<Integer> list : returned) {
+                    assertEquals(value, list.get(key));
+                }
+            }
+            assertEquals(keys, map.size());
+        }
+    }
+
+    /**
+     * Every key starts with the number of threads and each thread decrements
+     * it by computeIfPresent, the last one removes it: the results for a key
+     * must be distinct and exactly one of them null.
+     */
+    @Test
+    public void computeIfPresentDecrementsOnce() throws Exception {
+        int keys = 20_000;
+        for (int round = 0; round < ROUNDS; round++) {
+            LockFreeHashMap<Integer, Integer> map = new LockFreeHashMap<>();
+            for (int key = 0; key < keys; key++) {
+                map.put(key, THREADS);
+            }
+            List<Integer>[] returned = newLists();
+            runConcurrently(thread -> {
+                for (int key = 0; key < keys; key++) {
+                    returned[thread].add(map.computeIfPresent(
+                            key, (k, v) -> v == 1 ? null : v - 1));
+                }
+            });
+            for (int key = 0; key < keys; key++) {
+                Set<Integer> seen = new HashSet<>();
+                for (List<Integer> list : returned) {
+                    Integer value = list.get(key);
+                    assertTrue(seen.add(value == null ? 0 : value),
+                            "duplicate result for " + key);
+                }
+                assertNull(map.get(key));
+            }
+            assertEquals(0, map.size());
+        }
+    }
+
+    private interface ThreadBody {
+
+        void run(int thread) throws Exception;
+    }
+
+    /**
+     * Runs the body in all threads, which start at once, and rethrows the
+     * first failure.
+     */
+    private void runConcurrently(ThreadBody body) throws Exception {
+        CyclicBarrier start = new CyclicBarrier(THREADS);
+        List<Future<Void>> futures = new ArrayList<>();
+        for (int thread = 0; thread < THREADS; thread++) {
+            int id = thread;
+            Callable<Void> task = () -> {
+                start.await();
+                body.run(id);
+                return null;
+            };
+            futures.add(executor.submit(task));
+        }
+        for (Future<Void> future : futures) {
+            future.get();
+        }
+    }
+
+    private static void assertCounters(HashMapTask<Integer, Integer> map,
+            int keys, int total) {
+
+        assertEquals(keys, map.size());
+        for (int key = 0; key < keys; key++) {
+            assertEquals(total / keys, map.get(key), "counter " + key);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Integer>[] newLists() {
+        List<Integer>[] lists = new List[THREADS];
+        for (int i = 0; i < THREADS; i++) {
+            lists[i] = new ArrayList<>();
+        }
+        return lists;
+    }
+}
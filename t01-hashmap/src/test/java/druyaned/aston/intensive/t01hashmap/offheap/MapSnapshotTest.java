@@ -0,0 +1,71 @@
+package druyaned.aston.intensive.t01hashmap.offheap;
+
+import druyaned.aston.intensive.t01hashmap.HashMapImpl;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests of snapshots: a round trip through a byte stream, and headers of
+ * truncated or corrupted snapshots, which must fail on the missing records
+ * rather than presize a huge map.
+ */
+public class MapSnapshotTest {
+
+    @Test
+    public void roundTripKeepsEntriesAndCapacity() {
+        HashMapImpl<Long, String> map = new HashMapImpl<>();
+        for (long key = 0; key < 10_000; key++) {
+            map.put(key, "v" + key);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        MapSnapshot.write(map, Codecs.LONG, Codecs.STRING,
+                Channels.newChannel(bytes));
+
+        HashMapImpl<Long, String> read = MapSnapshot.read(
+                Channels.newChannel(
+                        new ByteArrayInputStream(bytes.toByteArray())),
+                Codecs.LONG, Codecs.STRING);
+        assertEquals(map.size(), read.size());
+        assertEquals(map.capacity(), read.capacity());
+        for (long key = 0; key < 10_000; key++) {
+            assertEquals("v" + key, read.get(key));
+        }
+    }
+
+    @Test
+    public void corruptedHeaderDoesNotPresizeHugeMap() {
+        int[][] headers = {
+            {Integer.MAX_VALUE, 0},
+            {Integer.MAX_VALUE, 1 << 30},
+            {10, 1 << 30},
+            {Integer.MAX_VALUE, 15}
+        };
+        for (int[] header : headers) {
+            ByteBuffer snapshot = ByteBuffer.allocate(3 * Integer.BYTES
+                    + 2 * (Integer.BYTES + Long.BYTES));
+            snapshot.putInt(MapSnapshot.MAGIC).putInt(header[0])
+                    .putInt(header[1]);
+            snapshot.putInt(Long.BYTES).putLong(1L);
+            snapshot.putInt(Long.BYTES).putLong(2L);
+            AtomicInteger presize = new AtomicInteger(-1);
+            assertThrows(UncheckedIOException.class, () -> MapSnapshot.read(
+                    Channels.newChannel(
+                            new ByteArrayInputStream(snapshot.array())),
+                    Codecs.LONG, Codecs.LONG, expectedSize -> {
+                        presize.set(expectedSize);
+                        return new HashMapImpl<>(expectedSize);
+                    }));
+            assertTrue(presize.get() >= 0
+                    && presize.get() <= MapSnapshot.MAX_PRESIZE,
+                    "presize=" + presize.get());
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package druyaned.aston.intensive.t01hashmap.offheap;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Recovery tests: a log is written through the map, damaged on disk as a
+ * crash would leave it, and the reopened map must hold exactly the updates
+ * of the records before the damaged one. Positions of the records follow
+ * the format <code>[int crc][int keyLength][int valueLength][key][value]
+ * </code> after the 16-byte header of the log; with 8-byte keys and values
+ * and no compaction all records stay in the first chunk of
+ * <code>data.0</code>.
+ */
+public class PersistentHashMapTest {
+
+    private static final int DATA_HEADER_SIZE = 16;
+    private static final int RECORD_HEADER_SIZE = 12;
+
+    /**
+     * Update of the map, which appends one record; a null value is a
+     * removal, which appends a tombstone.
+     */
+    private record Update(long key, Long value) {
+
+        int recordLength() {
+            return RECORD_HEADER_SIZE + Long.BYTES
+                    + (value == null ? 0 : Long.BYTES);
+        }
+    }
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void reopenedMapHoldsAllUpdates() {
+        List<Update> updates = updates();
+        write(updates);
+        try (PersistentHashMap<Long, Long> map = open()) {
+            assertContents(replay(updates, updates.size()), map);
+        }
+    }
+
+    /**
+     * The log ends in the middle of a record, as if the process was killed
+     * while appending it; the clean index points past the end, so the log is
+     * replayed and cut before the torn record. The map keeps working from the
+     * cut.
+     */
+    @Test
+    public void truncatedRecordIsCut() throws IOException {
+        List<Update> updates = updates();
+        write(updates);
+        for (int torn : new int[]{updates.size() - 1, 1_100, 700, 0}) {
+            try (FileChannel channel = FileChannel.open(log(),
+                    StandardOpenOption.WRITE)) {
+
+                long position = recordPosition(updates, torn);
+                channel.truncate(position + RECORD_HEADER_SIZE + 3);
+            }
+            try (PersistentHashMap<Long, Long> map = open()) {
+                assertContents(replay(updates, torn), map);
+            }
+        }
+        try (PersistentHashMap<Long, Long> map = open()) {
+            assertNull(map.put(-1L, -1L));
+        }
+        try (PersistentHashMap<Long, Long> map = open()) {
+            assertEquals(1, map.size());
+            assertEquals(-1L, map.get(-1L));
+        }
+    }
+
+    /**
+     * A byte of the value of a record is flipped, so its checksum does not
+     * match; the index is lost, so the log is replayed up to that record and
+     * the following records are dropped as well.
+     */
+    @Test
+    public void recordWithFlippedByteIsCut() throws IOException {
+        List<Update> updates = updates();
+        write(updates);
+        int broken = 600;
+        assertTrue(updates.get(broken).value() != null);
+        long position = recordPosition(updates, broken)
+                + RECORD_HEADER_SIZE + Long.BYTES + 5;
+        flipByte(position);
+        Files.delete(directory.resolve("index"));
+        try (PersistentHashMap<Long, Long> map = open()) {
+            assertContents(replay(updates, broken), map);
+        }
+        try (PersistentHashMap<Long, Long> map = open()) {
+            assertContents(replay(updates, broken), map);
+        }
+    }
+
+    /**
+     * The log is cut at a record with a flipped byte, then a put is appended
+     * and the index is lost again. The second recovery must see the new put
+     * after the cut and none of the records which followed the broken one.
+     */
+    @Test
+    public void recordsAfterCutStayDropped() throws IOException {
+        List<Update> updates = updates();
+        write(updates);
+        int broken = 600;
+        flipByte(recordPosition(updates, broken)
+                + RECORD_HEADER_SIZE + Long.BYTES + 5);
+        Files.delete(directory.resolve("index"));
+        Map<Long, Long> expected = replay(updates, broken);
+        try (PersistentHashMap<Long, Long> map = open()) {
+            assertContents(expected, map);
+            assertEquals(expected.put(42L, 4242L), map.put(42L, 4242L));
+        }
+        Files.delete(directory.resolve("index"));
+        try (PersistentHashMap<Long, Long> map = open()) {
+            assertContents(expected, map);
+        }
+    }
+
+    /**
+     * A byte of the key of a tombstone is flipped: the removal and all later
+     * updates are lost, the removed key is back.
+     */
+    @Test
+    public void tombstoneWithFlippedByteIsCut() throws IOException {
+        List<Update> updates = updates();
+        write(updates);
+        int broken = 1_150;
+        Update tombstone = updates.get(broken);
+        assertNull(tombstone.value());
+        flipByte(recordPosition(updates, broken) + RECORD_HEADER_SIZE + 2);
+        Files.delete(directory.resolve("index"));
+        try (PersistentHashMap<Long, Long> map = open()) {
+            Map<Long, Long> expected = replay(updates, broken);
+            assertTrue(expected.containsKey(tombstone.key()));
+            assertContents(expected, map);
+        }
+    }
+
+    /**
+     * Puts 1000 keys, replaces 100 of them, removes 100 others and puts 100
+     * new ones, so the log has overwrites and tombstones but too little
+     * garbage to be compacted. Values are not zero, since a record of zero
+     * bytes cut after its header would be restored by the zeros which fill
+     * the log up to the end of its chunk.
+     */
+    private static List<Update> updates() {
+        List<Update> updates = new ArrayList<>();
+        for (long key = 0; key < 1_000; key++) {
+            updates.add(new Update(key, key * 10 + 1));
+        }
+        for (long key = 0; key < 100; key++) {
+            updates.add(new Update(key, -key - 1));
+        }
+        for (long key = 500; key < 600; key++) {
+            updates.add(new Update(key, null));
+        }
+        for (long key = 1_000; key < 1_100; key++) {
+            updates.add(new Update(key, key * 10 + 1));
+        }
+        return updates;
+    }
+
+    private PersistentHashMap<Long, Long> open() {
+        return new PersistentHashMap<>(directory, Codecs.LONG, Codecs.LONG);
+    }
+
+    private Path log() {
+        return directory.resolve("data.0");
+    }
+
+    private void write(List<Update> updates) {
+        try (PersistentHashMap<Long, Long> map = open()) {
+            for (Update update : updates) {
+                if (update.value() == null) {
+                    map.remove(update.key());
+                } else {
+                    map.put(update.key(), update.value());
+                }
+            }
+        }
+        assertTrue(Files.exists(log()));
+        assertTrue(Files.notExists(directory.resolve("data.1")));
+    }
+
+    private void flipByte(long position) throws IOException {
+        try (FileChannel channel = FileChannel.open(log(),
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+
+            ByteBuffer buffer = ByteBuffer.allocate(1);
+            channel.read(buffer, position);
+            buffer.put(0, (byte) ~buffer.get(0));
+            buffer.rewind();
+            channel.write(buffer, position);
+        }
+    }
+
+    private static long recordPosition(List<Update> updates, int index) {
+        long position = DATA_HEADER_SIZE;
+        for (int i = 0; i < index; i++) {
+            position += updates.get(i).recordLength();
+        }
+        return position;
+    }
+
+    /**
+     * Returns the contents after the first updates.
+     */
+    private static Map<Long, Long> replay(List<Update> updates, int count) {
+        Map<Long, Long> map = new HashMap<>();
+        for (Update update : updates.subList(0, count)) {
+            if (update.value() == null) {
+                map.remove(update.key());
+            } else {
+                map.put(update.key(), update.value());
+            }
+        }
+        return map;
+    }
+
+    private static void assertContents(Map<Long, Long> expected,
+            PersistentHashMap<Long, Long> map) {
+
+        assertEquals(expected.size(), map.size());
+        for (long key = 0; key < 1_100; key++) {
+            assertEquals(expected.get(key), map.get(key), "key " + key);
+        }
+        Map<Long, Long> actual = new HashMap<>();
+        Iterator<Map.Entry<Long, Long>> it = map.entryIterator();
+        while (it.hasNext()) {
+            Map.Entry<Long, Long> entry = it.next();
+            assertNull(actual.put(entry.getKey(), entry.getValue()));
+        }
+        assertEquals(expected, actual);
+    }
+}